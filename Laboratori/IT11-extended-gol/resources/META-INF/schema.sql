@@ -0,0 +1,23 @@
+-- Schema of the game-of-life-pu persistence unit, used by the JPAUtil fast startup mode.
+-- Written from the DDL Hibernate generates for the entity mappings, with "if not exists"
+-- guards added. ExtGOLJPAStartupTests checks that it still matches the mappings.
+create table if not exists Board (id integer generated by default as identity, height integer not null, width integer not null, primary key (id));
+create table if not exists Cell (id bigint generated by default as identity, canTurnHealerIntoVampire boolean not null, cell_x integer not null, cell_y integer not null, cell_mood tinyint not null check (cell_mood between 0 and 2), cell_type tinyint not null check (cell_type between 0 and 3), count_deaths integer not null, is_alive boolean not null, lifepoints integer not null, board_id integer not null, game_id bigint not null, primary key (id));
+create table if not exists Game_eventsMap (Game_id bigint not null, event_type tinyint check (event_type between 0 and 4), step integer not null, primary key (Game_id, step));
+create table if not exists games (id bigint generated by default as identity, name varchar(255) not null unique, board_id integer not null unique, primary key (id));
+create table if not exists generation (id bigint generated by default as identity, step integer not null, board_id integer not null, game_id bigint not null, generation_index integer, primary key (id), unique (game_id, step), unique (board_id, game_id, id));
+create table if not exists Generation_cellLifePoints (Generation_id bigint not null, cell_life_points integer not null, cell_id bigint not null, primary key (Generation_id, cell_id));
+create table if not exists generation_state (generation_id bigint not null, game_id bigint not null, board_id integer not null, is_alive boolean not null, cell_id bigint not null, primary key (board_id, game_id, generation_id, cell_id));
+create table if not exists Tile (id bigint generated by default as identity, lifePointModifier integer, tile_x integer not null, tile_y integer not null, board_id integer not null, cell_id bigint not null unique, game_id bigint not null, primary key (id));
+alter table if exists Cell add constraint if not exists FKknce78s314j19d236k2w4y4vd foreign key (board_id) references Board;
+alter table if exists Cell add constraint if not exists FK7vn29601146m1uo414xk92533 foreign key (game_id) references games;
+alter table if exists Game_eventsMap add constraint if not exists FKgwki2uri7n2xj9ncc7ijqr3pu foreign key (Game_id) references games;
+alter table if exists games add constraint if not exists FK5hoo8jtys1ftlukcsrfp12pcf foreign key (board_id) references Board;
+alter table if exists generation add constraint if not exists FK6gcv62o1uq48bjs9uysmm73fr foreign key (board_id) references Board;
+alter table if exists generation add constraint if not exists FKbelfi4206ih4ah4s1es825xg4 foreign key (game_id) references games;
+alter table if exists Generation_cellLifePoints add constraint if not exists FKojc9iamg3embo4ps3xcdorqte foreign key (cell_id) references Cell;
+alter table if exists Generation_cellLifePoints add constraint if not exists FKc5np4knvqc7fd86b12o0ycwkk foreign key (Generation_id) references generation;
+alter table if exists generation_state add constraint if not exists FKbc6rfkbmsmxiw0ua2kxc3al0d foreign key (cell_id) references Cell;
+alter table if exists Tile add constraint if not exists FK10endk5xfcyadcbuvulxlp91o foreign key (board_id) references Board;
+alter table if exists Tile add constraint if not exists FKecw9ynnvs3wgevy95bd194xqn foreign key (cell_id) references Cell;
+alter table if exists Tile add constraint if not exists FK6j3qdilobvopmd82dt7l4elgb foreign key (game_id) references games;
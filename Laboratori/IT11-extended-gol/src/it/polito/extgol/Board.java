@@ -195,6 +195,24 @@ public class Board {
         return id;
     }
 
+    /**
+     * Returns the number of columns of this Board.
+     *
+     * @return the board width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows of this Board.
+     *
+     * @return the board height
+     */
+    public int getHeight() {
+        return height;
+    }
+
     /**
      * Retrieves the Tile at the specified coordinates.
      *
@@ -216,6 +234,20 @@ public class Board {
         return List.copyOf(tiles.values());
     }
 
+    /**
+     * Returns the tiles of this Board in row-major order, so that the tile
+     * at (x, y) is at index {@code y * width + x}.
+     *
+     * @return a new array holding every tile of the board
+     */
+    Tile[] tileGrid() {
+        Tile[] grid = new Tile[width * height];
+        for (Tile t : tiles.values()) {
+            grid[t.getY() * width + t.getX()] = t;
+        }
+        return grid;
+    }
+
     /**
      * Gathers and returns the set of all Cells currently placed on this Board.
      *
@@ -336,9 +368,7 @@ public class Board {
                 highestEnergyCell = c;
             } else if (currentEnergy == maxEnergy) {
                 // pareggio: confronto la distanza quadrata da (0,0)
-                int currentDistance = c.getX()*c.getX() + c.getY()*c.getY();
-                int bestDistance = highestEnergyCell.getX()*highestEnergyCell.getX() + highestEnergyCell.getY()*highestEnergyCell.getY();
-                if (currentDistance < bestDistance) {
+                if (closerToTopLeft(c, highestEnergyCell)) {
                     highestEnergyCell = c;
                 }
             }
@@ -347,6 +377,24 @@ public class Board {
         return highestEnergyCell;
     }
 
+    /**
+     * Tie-break used by the analytic methods: compares the squared distance
+     * from (0,0) and, when equal, prefers the upper row and then the left column
+     * so that the result does not depend on the iteration order of the cells.
+     *
+     * @param c    the candidate cell
+     * @param best the current best cell
+     * @return true if c should replace best
+     */
+    private static boolean closerToTopLeft(Cell c, Cell best) {
+        int currentDistance = c.getX()*c.getX() + c.getY()*c.getY();
+        int bestDistance = best.getX()*best.getX() + best.getY()*best.getY();
+        if (currentDistance != bestDistance) {
+            return currentDistance < bestDistance;
+        }
+        return c.getY() != best.getY() ? c.getY() < best.getY() : c.getX() < best.getX();
+    }
+
     /**
      * Groups all alive cells in the generation by their currentCoord lifePoints.
      *
@@ -436,9 +484,7 @@ public class Board {
                 mostNeighborsCell=c;
             }else if(currentNeighbors==mostNeighbors){
                 // pareggio: confronto la distanza quadrata da (0,0)
-                int currentDistance = c.getX()*c.getX() + c.getY()*c.getY();
-                int bestDistance = mostNeighborsCell.getX()*mostNeighborsCell.getX() + mostNeighborsCell.getY()*mostNeighborsCell.getY();
-                if (currentDistance < bestDistance) {
+                if (closerToTopLeft(c, mostNeighborsCell)) {
                     mostNeighborsCell = c;
                 }
             }
@@ -404,9 +404,38 @@ public class Cell implements Evolvable, Interactable {
 
     }
 
-    private void setNextMood(CellMood nextMood) {
+    void setNextMood(CellMood nextMood) {
         this.nextMood = nextMood;
     }
+
+    /**
+     * Retrieves the mood this cell will take at the next generation.
+     *
+     * @return the pending CellMood
+     */
+    CellMood getNextMood() {
+        return nextMood;
+    }
+
+    /**
+     * Retrieves the number of consecutive death-inducing generations
+     * survived so far (used by HIGHLANDER cells).
+     *
+     * @return the current death count
+     */
+    int getCountDeaths() {
+        return countDeaths;
+    }
+
+    /**
+     * Updates the number of consecutive death-inducing generations survived.
+     *
+     * @param countDeaths the new death count
+     */
+    void setCountDeaths(int countDeaths) {
+        this.countDeaths = countDeaths;
+    }
+
     public void nextMood() {
         this.setMood(nextMood);
     }
@@ -0,0 +1,93 @@
+package it.polito.extgol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffered reader over a blocking channel, used by the pattern and archive
+ * readers. Memory use is bounded by the buffer capacity regardless of the
+ * size of the input.
+ */
+final class ChannelInput {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean eof;
+
+    ChannelInput(ReadableByteChannel channel) {
+        this.channel = channel;
+        buf.flip();
+    }
+
+    /**
+     * Reads more bytes into the buffer, keeping the unread ones.
+     *
+     * @return false if the end of the channel was reached and nothing was read
+     */
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        buf.compact();
+        int n;
+        try {
+            do {
+                n = channel.read(buf);
+            } while (n == 0 && buf.hasRemaining());
+        } finally {
+            buf.flip();
+        }
+        if (n < 0) eof = true;
+        return n > 0;
+    }
+
+    /**
+     * Returns the next byte, or -1 at the end of the channel.
+     */
+    int read() throws IOException {
+        if (!buf.hasRemaining() && !fill()) return -1;
+        return buf.get() & 0xFF;
+    }
+
+    /**
+     * Makes sure at least n bytes (n at most the buffer size) are buffered.
+     */
+    private void require(int n) throws IOException {
+        while (buf.remaining() < n) {
+            if (!fill()) throw new EOFException("Unexpected end of input");
+        }
+    }
+
+    byte readByte() throws IOException {
+        require(1);
+        return buf.get();
+    }
+
+    int readInt() throws IOException {
+        require(4);
+        return buf.getInt();
+    }
+
+    void readFully(byte[] dst) throws IOException {
+        int off = 0;
+        while (off < dst.length) {
+            if (!buf.hasRemaining()) require(1);
+            int k = Math.min(buf.remaining(), dst.length - off);
+            buf.get(dst, off, k);
+            off += k;
+        }
+    }
+
+    void readFully(int[] dst) throws IOException {
+        int off = 0;
+        while (off < dst.length) {
+            require(4);
+            int k = Math.min(buf.remaining() >>> 2, dst.length - off);
+            buf.asIntBuffer().get(dst, off, k);
+            buf.position(buf.position() + (k << 2));
+            off += k;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package it.polito.extgol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered writer over a blocking channel, used by the pattern and archive
+ * writers. Memory use is bounded by the buffer capacity regardless of the
+ * size of the output.
+ */
+final class ChannelOutput {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+    ChannelOutput(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Makes room for at least n bytes (n at most the buffer size).
+     */
+    private void reserve(int n) throws IOException {
+        if (buf.remaining() < n) flush();
+    }
+
+    void write(int b) throws IOException {
+        reserve(1);
+        buf.put((byte) b);
+    }
+
+    void writeInt(int v) throws IOException {
+        reserve(4);
+        buf.putInt(v);
+    }
+
+    /**
+     * Writes the decimal representation of a non-negative number.
+     */
+    void writeDecimal(int v) throws IOException {
+        reserve(10);
+        if (v >= 10) {
+            int div = 1;
+            while (v / div >= 10) div *= 10;
+            for (; div > 0; div /= 10) buf.put((byte) ('0' + v / div % 10));
+        } else {
+            buf.put((byte) ('0' + v));
+        }
+    }
+
+    void writeAscii(String s) throws IOException {
+        write(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    void write(byte[] src) throws IOException {
+        int off = 0;
+        while (off < src.length) {
+            reserve(1);
+            int k = Math.min(buf.remaining(), src.length - off);
+            buf.put(src, off, k);
+            off += k;
+        }
+    }
+
+    void write(int[] src) throws IOException {
+        int off = 0;
+        while (off < src.length) {
+            reserve(4);
+            int k = Math.min(buf.remaining() >>> 2, src.length - off);
+            buf.asIntBuffer().put(src, off, k);
+            buf.position(buf.position() + (k << 2));
+            off += k;
+        }
+    }
+
+    /**
+     * Writes all the buffered bytes to the channel.
+     */
+    void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+}
@@ -0,0 +1,301 @@
+package it.polito.extgol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator of a simulation distributed over several workers.
+ *
+ * The board is split into a grid of rectangular regions, each one owned by
+ * a {@link DistributedWorker}. Workers run either as threads of this JVM or
+ * as separate JVMs, and talk to the coordinator over local sockets.
+ *
+ * Each generation is evolved in lock-step: the coordinator broadcasts the
+ * step (with the scheduled event, if any), relays the halo rows and columns
+ * produced by each worker to the workers whose halo overlaps its region,
+ * and collects the number of alive cells of every region. The evolved
+ * board is identical to the one computed by a single {@link PrimitiveEngine}.
+ */
+public class DistributedSimulation implements AutoCloseable {
+
+    /** How workers are started. */
+    public enum Mode { THREADS, PROCESSES }
+
+    private static final int ACCEPT_TIMEOUT_MS = 30_000;
+
+    private final int boardWidth;
+    private final int boardHeight;
+    private final List<Peer> peers = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private int step;
+
+    /** Connection with a worker and the halo routes leaving its region. */
+    private static class Peer {
+        final int[] region;
+        final List<int[]> routes = new ArrayList<>();
+        final List<int[]> incoming = new ArrayList<>();
+        byte[][] pending;
+        Socket socket;
+        DataInputStream in;
+        DataOutputStream out;
+
+        Peer(int[] region) {
+            this.region = region;
+        }
+    }
+
+    /**
+     * Starts the workers and distributes the initial state among them.
+     *
+     * @param initial the initial state of the whole board
+     * @param columns the number of regions along the x axis
+     * @param rows    the number of regions along the y axis
+     * @param mode    whether workers run as threads or separate processes
+     * @throws ExtendedGameOfLifeException if the workers cannot be started
+     */
+    public DistributedSimulation(PrimitiveEngine initial, int columns, int rows, Mode mode)
+            throws ExtendedGameOfLifeException {
+        Objects.requireNonNull(initial, "Initial state cannot be null");
+        Objects.requireNonNull(mode, "Mode cannot be null");
+        boardWidth = initial.boardWidth;
+        boardHeight = initial.boardHeight;
+        if (columns <= 0 || rows <= 0 || columns > boardWidth || rows > boardHeight) {
+            throw new IllegalArgumentException("Invalid partition " + columns + "x" + rows);
+        }
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                peers.add(new Peer(new int[]{
+                    c * boardWidth / columns, r * boardHeight / rows,
+                    (c + 1) * boardWidth / columns, (r + 1) * boardHeight / rows}));
+            }
+        }
+        for (int i = 0; i < peers.size(); i++) {
+            for (int j = 0; j < peers.size(); j++) {
+                if (i == j) continue;
+                int[] rect = intersect(peers.get(i).region, window(peers.get(j).region));
+                if (rect != null) {
+                    peers.get(i).routes.add(new int[]{j, rect[0], rect[1], rect[2], rect[3]});
+                    peers.get(j).incoming.add(rect);
+                }
+            }
+            peers.get(i).pending = new byte[peers.get(i).routes.size()][];
+        }
+
+        try (ServerSocket server = new ServerSocket(0, peers.size(), InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(ACCEPT_TIMEOUT_MS);
+            startWorkers(server.getLocalPort(), mode);
+            for (Peer p : peers) {
+                p.socket = server.accept();
+                p.socket.setTcpNoDelay(true);
+                p.in = new DataInputStream(new BufferedInputStream(p.socket.getInputStream(), 1 << 16));
+                p.out = new DataOutputStream(new BufferedOutputStream(p.socket.getOutputStream(), 1 << 16));
+                init(p, initial);
+            }
+        } catch (IOException e) {
+            close();
+            throw new ExtendedGameOfLifeException("Cannot start distributed workers", e);
+        }
+    }
+
+    private void startWorkers(int port, Mode mode) throws IOException {
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        for (int k = 0; k < peers.size(); k++) {
+            if (mode == Mode.THREADS) {
+                Thread t = new Thread(() -> {
+                    try {
+                        DistributedWorker.serve(host, port);
+                    } catch (IOException e) {
+                        // the coordinator notices the dropped connection
+                    }
+                }, "extgol-worker-" + k);
+                t.setDaemon(true);
+                t.start();
+                threads.add(t);
+            } else {
+                String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                 DistributedWorker.class.getName(), host, String.valueOf(port))
+                    .inheritIO()
+                    .start());
+            }
+        }
+    }
+
+    private void init(Peer p, PrimitiveEngine initial) throws IOException {
+        int[] r = p.region, w = window(r);
+        DataOutputStream out = p.out;
+        out.writeInt(boardWidth);
+        out.writeInt(boardHeight);
+        for (int v : r) out.writeInt(v);
+        for (int v : w) out.writeInt(v);
+        DistributedWorker.writeState(out, initial, w[0], w[1], w[2], w[3]);
+        out.writeInt(p.routes.size());
+        for (int[] route : p.routes) {
+            for (int k = 1; k < 5; k++) out.writeInt(route[k]);
+        }
+        out.writeInt(p.incoming.size());
+        out.flush();
+    }
+
+    /** Returns the region extended by the halo and clipped to the board. */
+    private int[] window(int[] r) {
+        int h = DistributedWorker.HALO;
+        return new int[]{
+            Math.max(r[0] - h, 0), Math.max(r[1] - h, 0),
+            Math.min(r[2] + h, boardWidth), Math.min(r[3] + h, boardHeight)};
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int x0 = Math.max(a[0], b[0]), y0 = Math.max(a[1], b[1]);
+        int x1 = Math.min(a[2], b[2]), y1 = Math.min(a[3], b[3]);
+        return x0 < x1 && y0 < y1 ? new int[]{x0, y0, x1, y1} : null;
+    }
+
+    /**
+     * Returns the number of workers of this simulation.
+     *
+     * @return the count of regions
+     */
+    public int getWorkers() {
+        return peers.size();
+    }
+
+    /**
+     * Returns the number of steps evolved so far.
+     *
+     * @return the current step
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Applies the given event (if any) and evolves the board by one generation.
+     *
+     * @param event the event to apply before evolving, or null
+     * @return the number of alive cells after the step
+     * @throws ExtendedGameOfLifeException if a worker fails
+     */
+    public int step(EventType event) throws ExtendedGameOfLifeException {
+        try {
+            for (Peer p : peers) {
+                p.out.writeInt(DistributedWorker.CMD_STEP);
+                p.out.writeInt(event == null ? -1 : event.ordinal());
+                p.out.flush();
+            }
+            // collect the halos produced by every worker...
+            for (Peer p : peers) {
+                for (int k = 0; k < p.routes.size(); k++) {
+                    int[] route = p.routes.get(k);
+                    byte[] buf = new byte[(route[3] - route[1]) * (route[4] - route[2])
+                                          * DistributedWorker.HALO_CELL_BYTES];
+                    p.in.readFully(buf);
+                    p.pending[k] = buf;
+                }
+            }
+            // ...and relay them, in the order each target expects
+            for (Peer p : peers) {
+                for (int k = 0; k < p.routes.size(); k++) {
+                    int[] route = p.routes.get(k);
+                    DataOutputStream out = peers.get(route[0]).out;
+                    for (int c = 1; c < 5; c++) out.writeInt(route[c]);
+                    out.write(p.pending[k]);
+                    p.pending[k] = null;
+                }
+            }
+            int alive = 0;
+            for (Peer p : peers) p.out.flush();
+            for (Peer p : peers) alive += p.in.readInt();
+            step++;
+            return alive;
+        } catch (IOException e) {
+            throw new ExtendedGameOfLifeException("Distributed step " + step + " failed", e);
+        }
+    }
+
+    /**
+     * Evolves the board for the given number of steps, applying the events
+     * scheduled for each step as {@link PrimitiveEngine#run(int, Map)} does.
+     *
+     * @param steps    the number of generations to evolve
+     * @param eventMap the events keyed by step, may be empty
+     * @return the number of alive cells after the last step
+     * @throws ExtendedGameOfLifeException if a worker fails
+     */
+    public int run(int steps, Map<Integer, EventType> eventMap) throws ExtendedGameOfLifeException {
+        int alive = -1;
+        for (int i = 0; i < steps; i++) {
+            alive = step(eventMap.get(step));
+        }
+        return alive;
+    }
+
+    /**
+     * Collects the current state of all the regions into a single engine.
+     *
+     * @return an engine holding the whole board
+     * @throws ExtendedGameOfLifeException if a worker fails
+     */
+    public PrimitiveEngine gather() throws ExtendedGameOfLifeException {
+        PrimitiveEngine res = new PrimitiveEngine(boardWidth, boardHeight);
+        try {
+            for (Peer p : peers) {
+                p.out.writeInt(DistributedWorker.CMD_GATHER);
+                p.out.flush();
+            }
+            for (Peer p : peers) {
+                int[] r = p.region;
+                DistributedWorker.readState(p.in, res, r[0], r[1], r[2], r[3]);
+            }
+        } catch (IOException e) {
+            throw new ExtendedGameOfLifeException("Cannot gather distributed state", e);
+        }
+        return res;
+    }
+
+    /**
+     * Stops the workers and releases the connections.
+     */
+    @Override
+    public void close() {
+        for (Peer p : peers) {
+            if (p.socket == null) continue;
+            try {
+                p.out.writeInt(DistributedWorker.CMD_CLOSE);
+                p.out.flush();
+            } catch (IOException e) {
+                // worker already gone
+            }
+            try {
+                p.socket.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+            p.socket = null;
+        }
+        for (Process pr : processes) {
+            try {
+                if (!pr.waitFor(5, TimeUnit.SECONDS)) pr.destroyForcibly();
+            } catch (InterruptedException e) {
+                pr.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        processes.clear();
+        threads.clear();
+    }
+}
@@ -0,0 +1,193 @@
+package it.polito.extgol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Worker process of a {@link DistributedSimulation}.
+ *
+ * A worker owns a rectangular region of the board and keeps a
+ * {@link PrimitiveEngine} over the region extended by a halo of
+ * {@link #HALO} cells. At each generation, in lock-step with the coordinator:
+ *   1. it applies the scheduled event and the tile modifiers to its region;
+ *   2. it sends the parts of its region falling in other workers' halos and
+ *      receives its own halo (aliveness, lifePoints, mood, BLOOD_MOON flag);
+ *   3. it runs the interaction phase and evolves its region.
+ *
+ * The interaction phase is order dependent: the lifePoints of a cell at the
+ * end of the phase may depend on initiators up to two cells away, whose own
+ * outcome depends on their neighbours. A three-cell halo is therefore needed
+ * to reproduce the single-process result exactly.
+ *
+ * Workers are started by the coordinator, either as threads or as separate
+ * JVMs through {@link #main(String[])}.
+ */
+public class DistributedWorker {
+
+    /** Width of the halo kept around the owned region. */
+    static final int HALO = 3;
+
+    static final int CMD_STEP = 1;
+    static final int CMD_GATHER = 2;
+    static final int CMD_CLOSE = 3;
+
+    /** Bytes sent per halo cell: aliveness, lifePoints, mood, BLOOD_MOON flag. */
+    static final int HALO_CELL_BYTES = 1 + 4 + 1 + 1;
+
+    private PrimitiveEngine engine;
+    private int rx0, ry0, rx1, ry1;
+    private int[][] outgoing;
+    private int incoming;
+
+    private DistributedWorker() {}
+
+    /**
+     * Entry point of a worker JVM.
+     *
+     * @param args the coordinator host and port
+     * @throws IOException if the connection with the coordinator fails
+     */
+    public static void main(String[] args) throws IOException {
+        serve(args[0], Integer.parseInt(args[1]));
+    }
+
+    /**
+     * Connects to the coordinator and serves its commands until closed.
+     *
+     * @param host the coordinator host
+     * @param port the coordinator port
+     * @throws IOException if the connection with the coordinator fails
+     */
+    static void serve(String host, int port) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            new DistributedWorker().loop(in, out);
+        }
+    }
+
+    private void loop(DataInputStream in, DataOutputStream out) throws IOException {
+        init(in);
+        while (true) {
+            int cmd = in.readInt();
+            switch (cmd) {
+                case CMD_STEP -> step(in, out);
+                case CMD_GATHER -> {
+                    writeState(out, engine, rx0, ry0, rx1, ry1);
+                    out.flush();
+                }
+                case CMD_CLOSE -> {
+                    return;
+                }
+                default -> throw new IOException("Unknown command " + cmd);
+            }
+        }
+    }
+
+    private void init(DataInputStream in) throws IOException {
+        int bw = in.readInt(), bh = in.readInt();
+        rx0 = in.readInt(); ry0 = in.readInt(); rx1 = in.readInt(); ry1 = in.readInt();
+        int wx0 = in.readInt(), wy0 = in.readInt(), wx1 = in.readInt(), wy1 = in.readInt();
+        engine = new PrimitiveEngine(bw, bh, wx0, wy0, wx1 - wx0, wy1 - wy0);
+        readState(in, engine, wx0, wy0, wx1, wy1);
+        outgoing = new int[in.readInt()][];
+        for (int k = 0; k < outgoing.length; k++) {
+            outgoing[k] = new int[]{in.readInt(), in.readInt(), in.readInt(), in.readInt()};
+        }
+        incoming = in.readInt();
+    }
+
+    private void step(DataInputStream in, DataOutputStream out) throws IOException {
+        int code = in.readInt();
+        EventType event = code < 0 ? null : EventType.values()[code];
+
+        engine.applyEvent(event, rx0, ry0, rx1, ry1);
+        engine.applyTiles(rx0, ry0, rx1, ry1);
+
+        for (int[] r : outgoing) {
+            writeHalo(out, engine, r[0], r[1], r[2], r[3]);
+        }
+        out.flush();
+
+        for (int k = 0; k < incoming; k++) {
+            int x0 = in.readInt(), y0 = in.readInt(), x1 = in.readInt(), y1 = in.readInt();
+            readHalo(in, engine, x0, y0, x1, y1);
+        }
+
+        // initiators up to two cells outside the region can affect it
+        int wx1 = engine.x0 + engine.width, wy1 = engine.y0 + engine.height;
+        engine.interact(Math.max(rx0 - 2, engine.x0), Math.max(ry0 - 2, engine.y0),
+                        Math.min(rx1 + 2, wx1), Math.min(ry1 + 2, wy1));
+        engine.evolve(rx0, ry0, rx1, ry1);
+
+        int alive = 0;
+        for (int y = ry0; y < ry1; y++)
+            for (int x = rx0; x < rx1; x++)
+                if (engine.alive[engine.index(x, y)]) alive++;
+        out.writeInt(alive);
+        out.flush();
+    }
+
+    // Serialization of rectangles of engine state, shared with the coordinator
+
+    static void writeHalo(DataOutputStream out, PrimitiveEngine e, int x0, int y0, int x1, int y1) throws IOException {
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = e.index(x, y);
+                out.writeBoolean(e.alive[i]);
+                out.writeInt(e.lifePoints[i]);
+                out.writeByte(e.mood[i]);
+                out.writeBoolean(e.canTurn[i]);
+            }
+        }
+    }
+
+    static void readHalo(DataInputStream in, PrimitiveEngine e, int x0, int y0, int x1, int y1) throws IOException {
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = e.index(x, y);
+                e.alive[i] = in.readBoolean();
+                e.lifePoints[i] = in.readInt();
+                e.mood[i] = in.readByte();
+                e.canTurn[i] = in.readBoolean();
+            }
+        }
+    }
+
+    static void writeState(DataOutputStream out, PrimitiveEngine e, int x0, int y0, int x1, int y1) throws IOException {
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = e.index(x, y);
+                out.writeBoolean(e.alive[i]);
+                out.writeInt(e.lifePoints[i]);
+                out.writeInt(e.countDeaths[i]);
+                out.writeByte(e.type[i]);
+                out.writeByte(e.mood[i]);
+                out.writeByte(e.nextMood[i]);
+                out.writeBoolean(e.canTurn[i]);
+                out.writeInt(e.modifier[i]);
+            }
+        }
+    }
+
+    static void readState(DataInputStream in, PrimitiveEngine e, int x0, int y0, int x1, int y1) throws IOException {
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = e.index(x, y);
+                e.alive[i] = in.readBoolean();
+                e.lifePoints[i] = in.readInt();
+                e.countDeaths[i] = in.readInt();
+                e.type[i] = in.readByte();
+                e.mood[i] = in.readByte();
+                e.nextMood[i] = in.readByte();
+                e.canTurn[i] = in.readBoolean();
+                e.modifier[i] = in.readInt();
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package it.polito.extgol;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Monte-Carlo runner of ensembles of randomized extended boards.
+ *
+ * Each run draws a random initial board (aliveness density, CellType and
+ * CellMood distributions, random tile modifiers), evolves it on a
+ * {@link PrimitiveEngine} without touching the database, and folds its
+ * summary into an {@link EnsembleStatistics} accumulator.
+ *
+ * The random generator of run {@code i} is seeded from the master seed and
+ * {@code i} only, and accumulators are exact, so an ensemble gives the same
+ * statistics for the same master seed whatever the number of threads.
+ *
+ * The settings are configured through chained setters, e.g.
+ * {@code new EnsembleRunner(32, 32, 100).density(0.3).modifiers(0.05, -2, 2)}.
+ */
+public class EnsembleRunner {
+
+    /** Increment between the seeds of consecutive runs (golden ratio). */
+    private static final long SEED_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final CellType[] TYPES = CellType.values();
+    private static final CellMood[] MOODS = CellMood.values();
+
+    private final int width;
+    private final int height;
+    private final int steps;
+    private double density = 0.3;
+    private final double[] typeWeights = new double[TYPES.length];
+    private final double[] moodWeights = new double[MOODS.length];
+    private double modifierProbability;
+    private int modifierMin;
+    private int modifierMax;
+    private Map<Integer, EventType> events = Map.of();
+    private int energyBins = 16;
+
+    /**
+     * Creates a runner with all-BASIC, all-NAIVE boards of density 0.3 and
+     * no tile modifiers.
+     *
+     * @param width  the number of columns of each board
+     * @param height the number of rows of each board
+     * @param steps  the number of generations evolved in each run
+     */
+    public EnsembleRunner(int width, int height, int steps) {
+        if (width <= 0 || height <= 0 || steps < 0) {
+            throw new IllegalArgumentException("Invalid ensemble size");
+        }
+        this.width = width;
+        this.height = height;
+        this.steps = steps;
+        typeWeights[CellType.BASIC.ordinal()] = 1;
+        moodWeights[CellMood.NAIVE.ordinal()] = 1;
+    }
+
+    /**
+     * Sets the probability of each cell being initially alive.
+     *
+     * @param density a probability in [0, 1]
+     * @return this runner
+     */
+    public EnsembleRunner density(double density) {
+        if (density < 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be in [0, 1]");
+        }
+        this.density = density;
+        return this;
+    }
+
+    /**
+     * Sets the relative frequencies of the cell types; types not in the map
+     * never occur.
+     *
+     * @param weights the non-negative weight of each type
+     * @return this runner
+     */
+    public EnsembleRunner types(Map<CellType, Double> weights) {
+        setWeights(typeWeights, new EnumMap<>(weights), TYPES);
+        return this;
+    }
+
+    /**
+     * Sets the relative frequencies of the cell moods; moods not in the map
+     * never occur. Moods are also set as pending moods, so they persist
+     * until changed by an interaction.
+     *
+     * @param weights the non-negative weight of each mood
+     * @return this runner
+     */
+    public EnsembleRunner moods(Map<CellMood, Double> weights) {
+        setWeights(moodWeights, new EnumMap<>(weights), MOODS);
+        return this;
+    }
+
+    private static <E extends Enum<E>> void setWeights(double[] target, Map<E, Double> weights, E[] values) {
+        double total = 0;
+        double[] w = new double[values.length];
+        for (Map.Entry<E, Double> e : weights.entrySet()) {
+            if (e.getValue() < 0) throw new IllegalArgumentException("Negative weight for " + e.getKey());
+            w[e.getKey().ordinal()] = e.getValue();
+            total += e.getValue();
+        }
+        if (total <= 0) throw new IllegalArgumentException("At least one positive weight is required");
+        System.arraycopy(w, 0, target, 0, w.length);
+    }
+
+    /**
+     * Places random tile modifiers.
+     *
+     * @param probability the probability of each tile having a modifier
+     * @param min         the smallest modifier (inclusive)
+     * @param max         the largest modifier (inclusive)
+     * @return this runner
+     */
+    public EnsembleRunner modifiers(double probability, int min, int max) {
+        if (probability < 0 || probability > 1 || min > max) {
+            throw new IllegalArgumentException("Invalid modifier settings");
+        }
+        this.modifierProbability = probability;
+        this.modifierMin = min;
+        this.modifierMax = max;
+        return this;
+    }
+
+    /**
+     * Sets the events applied in every run, keyed by step.
+     *
+     * @param events the event schedule
+     * @return this runner
+     */
+    public EnsembleRunner events(Map<Integer, EventType> events) {
+        this.events = Map.copyOf(Objects.requireNonNull(events, "Events cannot be null"));
+        return this;
+    }
+
+    /**
+     * Sets the number of bins of the final energy histogram.
+     *
+     * @param bins the number of bins, one per lifePoints value from 0
+     * @return this runner
+     */
+    public EnsembleRunner energyBins(int bins) {
+        if (bins <= 0) throw new IllegalArgumentException("At least one energy bin is required");
+        this.energyBins = bins;
+        return this;
+    }
+
+    /**
+     * Derives the seed of a run from the master seed.
+     */
+    static long runSeed(long masterSeed, int run) {
+        return masterSeed + (run + 1L) * SEED_GAMMA;
+    }
+
+    /**
+     * Draws the initial board of a run. The same board can be loaded into a
+     * Game with {@link PrimitiveEngine#applyTo(Board)} followed by
+     * {@link Generation#createInitial(Game, Board)}.
+     *
+     * @param masterSeed the master seed of the ensemble
+     * @param run        the index of the run
+     * @return a new engine holding the initial board
+     */
+    public PrimitiveEngine initialBoard(long masterSeed, int run) {
+        SplittableRandom rnd = new SplittableRandom(runSeed(masterSeed, run));
+        PrimitiveEngine e = new PrimitiveEngine(width, height);
+        for (int i = 0; i < width * height; i++) {
+            e.alive[i] = rnd.nextDouble() < density;
+            e.type[i] = (byte) pick(rnd, typeWeights);
+            e.mood[i] = e.nextMood[i] = (byte) pick(rnd, moodWeights);
+            if (modifierProbability > 0 && rnd.nextDouble() < modifierProbability) {
+                e.modifier[i] = rnd.nextInt(modifierMin, modifierMax + 1);
+            }
+        }
+        return e;
+    }
+
+    private static int pick(SplittableRandom rnd, double[] weights) {
+        double total = 0;
+        for (double w : weights) total += w;
+        double r = rnd.nextDouble() * total;
+        int last = 0;
+        for (int k = 0; k < weights.length; k++) {
+            if (weights[k] == 0) continue;
+            last = k;
+            r -= weights[k];
+            if (r < 0) return k;
+        }
+        return last;
+    }
+
+    /**
+     * Simulates one run and records its summary.
+     */
+    private void simulate(long masterSeed, int run, EnsembleStatistics stats) {
+        PrimitiveEngine e = initialBoard(masterSeed, run);
+        int survival = 0;
+        boolean extinct = e.countAlive() == 0;
+        while (!extinct && e.getStep() < steps) {
+            e.step(events.get(e.getStep()));
+            if (e.countAlive() == 0) {
+                extinct = true;
+            } else {
+                survival++;
+            }
+        }
+        stats.accept(survival, extinct, e);
+    }
+
+    /**
+     * Runs an ensemble on the common pool.
+     *
+     * @param runs       the number of runs
+     * @param masterSeed the seed from which every run is derived
+     * @return the merged statistics of the runs
+     */
+    public EnsembleStatistics run(int runs, long masterSeed) {
+        return IntStream.range(0, runs).parallel().collect(
+            () -> new EnsembleStatistics(energyBins),
+            (stats, i) -> simulate(masterSeed, i, stats),
+            EnsembleStatistics::merge);
+    }
+
+    /**
+     * Runs an ensemble on a dedicated pool of the given parallelism.
+     *
+     * @param runs        the number of runs
+     * @param masterSeed  the seed from which every run is derived
+     * @param parallelism the number of worker threads
+     * @return the merged statistics of the runs
+     */
+    public EnsembleStatistics run(int runs, long masterSeed, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> run(runs, masterSeed)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ensemble interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ensemble failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package it.polito.extgol;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable accumulator of the per-run summaries of an ensemble.
+ *
+ * Every quantity is accumulated as an exact integer (counts, sums and sums
+ * of squares), so merging partial accumulators in any order and grouping
+ * gives exactly the same result: ensemble statistics do not depend on how
+ * runs were spread across threads.
+ *
+ * Energy histograms count the alive cells at the end of each run by
+ * lifePoints; values above the last bin are counted in the last bin and
+ * negative values in the first one.
+ */
+public class EnsembleStatistics {
+
+    /** Aggregated per-run metrics. */
+    public enum Metric { SURVIVAL_TIME, FINAL_POPULATION, FINAL_ENERGY }
+
+    private long runs;
+    private long extinctions;
+    private final long[] sum = new long[Metric.values().length];
+    private final long[] sumSquares = new long[Metric.values().length];
+    private final long[] energyHistogram;
+
+    /**
+     * Creates an empty accumulator.
+     *
+     * @param energyBins the number of bins of the energy histogram
+     */
+    public EnsembleStatistics(int energyBins) {
+        if (energyBins <= 0) {
+            throw new IllegalArgumentException("At least one energy bin is required");
+        }
+        energyHistogram = new long[energyBins];
+    }
+
+    /**
+     * Records the outcome of one run.
+     *
+     * @param survivalTime the number of steps the population survived
+     * @param extinct      whether the population died out
+     * @param engine       the final state of the run
+     */
+    void accept(int survivalTime, boolean extinct, PrimitiveEngine engine) {
+        int population = 0;
+        long energy = 0;
+        int last = energyHistogram.length - 1;
+        for (int i = 0; i < engine.alive.length; i++) {
+            if (!engine.alive[i]) continue;
+            int lp = engine.lifePoints[i];
+            population++;
+            energy += lp;
+            energyHistogram[Math.max(0, Math.min(lp, last))]++;
+        }
+        runs++;
+        if (extinct) extinctions++;
+        add(Metric.SURVIVAL_TIME, survivalTime);
+        add(Metric.FINAL_POPULATION, population);
+        add(Metric.FINAL_ENERGY, energy);
+    }
+
+    private void add(Metric m, long v) {
+        sum[m.ordinal()] += v;
+        sumSquares[m.ordinal()] += v * v;
+    }
+
+    /**
+     * Adds the runs recorded by another accumulator to this one.
+     *
+     * @param other an accumulator with the same number of energy bins
+     * @return this accumulator
+     */
+    public EnsembleStatistics merge(EnsembleStatistics other) {
+        if (other.energyHistogram.length != energyHistogram.length) {
+            throw new IllegalArgumentException("Energy histograms have different bins");
+        }
+        runs += other.runs;
+        extinctions += other.extinctions;
+        for (int k = 0; k < sum.length; k++) {
+            sum[k] += other.sum[k];
+            sumSquares[k] += other.sumSquares[k];
+        }
+        for (int k = 0; k < energyHistogram.length; k++) {
+            energyHistogram[k] += other.energyHistogram[k];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of recorded runs.
+     *
+     * @return the run count
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * Returns the fraction of runs whose population died out.
+     *
+     * @return the extinction rate, or 0 if no run was recorded
+     */
+    public double getExtinctionRate() {
+        return runs == 0 ? 0 : (double) extinctions / runs;
+    }
+
+    /**
+     * Returns the mean of a metric over the recorded runs.
+     *
+     * @param m the metric
+     * @return the sample mean, or 0 if no run was recorded
+     */
+    public double mean(Metric m) {
+        return runs == 0 ? 0 : (double) sum[m.ordinal()] / runs;
+    }
+
+    /**
+     * Returns the sample variance of a metric over the recorded runs.
+     *
+     * @param m the metric
+     * @return the unbiased sample variance, or 0 with fewer than two runs
+     */
+    public double variance(Metric m) {
+        if (runs < 2) return 0;
+        double mean = mean(m);
+        double v = ((double) sumSquares[m.ordinal()] - runs * mean * mean) / (runs - 1);
+        return Math.max(0, v);
+    }
+
+    /**
+     * Returns the normal-approximation confidence interval of the mean of a metric.
+     *
+     * @param m     the metric
+     * @param level the confidence level, in (0, 1)
+     * @return the lower and upper bounds of the interval
+     */
+    public double[] confidenceInterval(Metric m, double level) {
+        double half = runs == 0 ? 0 : quantile(level) * Math.sqrt(variance(m) / runs);
+        double mean = mean(m);
+        return new double[]{mean - half, mean + half};
+    }
+
+    /**
+     * Returns the Wilson confidence interval of the extinction rate.
+     *
+     * @param level the confidence level, in (0, 1)
+     * @return the lower and upper bounds of the interval
+     */
+    public double[] extinctionConfidenceInterval(double level) {
+        if (runs == 0) return new double[]{0, 1};
+        double z = quantile(level), p = getExtinctionRate(), n = runs;
+        double denom = 1 + z * z / n;
+        double center = (p + z * z / (2 * n)) / denom;
+        double half = z * Math.sqrt(p * (1 - p) / n + z * z / (4 * n * n)) / denom;
+        // the bounds are exactly 0 and 1 when no run, or every run, went extinct
+        return new double[]{extinctions == 0 ? 0 : center - half,
+                            extinctions == runs ? 1 : center + half};
+    }
+
+    /**
+     * Returns the energy histogram of the alive cells at the end of the runs.
+     *
+     * @return a copy of the histogram, indexed by lifePoints
+     */
+    public long[] getEnergyHistogram() {
+        return Arrays.copyOf(energyHistogram, energyHistogram.length);
+    }
+
+    /**
+     * Computes the two-sided standard normal quantile for the given
+     * confidence level, by bisection over the normal CDF.
+     */
+    private static double quantile(double level) {
+        if (!(level > 0 && level < 1)) {
+            throw new IllegalArgumentException("Confidence level must be in (0, 1)");
+        }
+        double target = 0.5 + level / 2, lo = 0, hi = 10;
+        for (int k = 0; k < 60; k++) {
+            double mid = (lo + hi) / 2;
+            if (normalCdf(mid) < target) lo = mid; else hi = mid;
+        }
+        return (lo + hi) / 2;
+    }
+
+    /**
+     * Standard normal CDF through the Abramowitz-Stegun approximation of erf
+     * (absolute error below 1.5e-7).
+     */
+    private static double normalCdf(double x) {
+        double z = Math.abs(x) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * z);
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                     + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-z * z);
+        return x >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return "runs=" + runs
+            + ", extinction=" + getExtinctionRate()
+            + ", survival=" + mean(Metric.SURVIVAL_TIME)
+            + ", population=" + mean(Metric.FINAL_POPULATION)
+            + ", energy=" + mean(Metric.FINAL_ENERGY);
+    }
+}
@@ -27,6 +27,7 @@ public class ExtendedGameOfLife {
      *   3. Creates a new Generation object representing the next simulation step.
      *   4. Applies all calculated state changes simultaneously, ensuring consistency.
      *   5. Captures a snapshot of all cells' states into the persistent map for future retrieval.
+     *   6. Notifies the game so that its indexes over the history stay up to date.
      *
      * @param current The current generation snapshot used for evolving to the next state.
      * @return A new Generation object reflecting the evolved board state.
@@ -36,30 +37,17 @@ public class ExtendedGameOfLife {
         Objects.requireNonNull(current, "Current generation cannot be null");
         Board board = current.getBoard();
         Game game = current.getGame();
-        for (Tile tile : current.getBoard().getTiles()) {
-            tile.interact(tile.getCell());
-        }
         // Ensure current generation is properly initialized
         if (board == null || game == null) {
             throw new IllegalStateException(
                 "Generation must have associated Board and Game!");
         }
 
-        // Step 0: Apply all interactions to neighbors
-        for (Tile tile : board.getTiles()) {
-            Cell c = tile.getCell();
-            if (c == null) {
-                throw new IllegalStateException("Missing cell on tile " + tile);
-            }
-            List<Tile> neighbors = c.getNeighbors();
-            for (Tile neighbor : neighbors) {
-                if (neighbor.getCell() == null) {
-                    throw new IllegalStateException("Missing neighbor cell on tile " + neighbor);
-                }
-                c.interact(neighbor.getCell());
-            }
-
-        }
+        // Step 0: Apply tile modifiers and all interactions to neighbors,
+        // skipping the tiles and cell pairs that have no effect
+        InteractionScheduler scheduler = new InteractionScheduler(board.getTiles());
+        scheduler.applyTileModifiers();
+        scheduler.interact();
 
         // Step 1: Compute next state for each cell based only on current generation state
         Map<Cell, Boolean> nextStates = new HashMap<>();
@@ -90,6 +78,9 @@ public class ExtendedGameOfLife {
         // Step 4: Persist snapshot of the next generation state
         nextGen.snapCells();
 
+        // Step 5: Keep the history indexes in sync
+        game.generationEvolved(nextGen);
+
         return nextGen;
     }
 
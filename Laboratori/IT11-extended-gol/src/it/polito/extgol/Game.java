@@ -19,6 +19,7 @@ import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.OrderColumn;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 /**
  * Entity representing a Game of Life simulation instance.
@@ -80,6 +81,20 @@ public class Game {
     @Column(name = "event_type")
     private Map<Integer, EventType> eventsMap = new HashMap<>();
 
+    /**
+     * Pattern search index over the generation history.
+     * Not persisted: it is rebuilt from the generations when first requested.
+     */
+    @Transient
+    private PatternIndex patternIndex;
+
+    /**
+     * Columnar store of the generation history.
+     * Not persisted: it is rebuilt from the generations when first requested.
+     */
+    @Transient
+    private HistoryStore historyStore;
+
     /**
      * Default constructor for JPA.
      */
@@ -328,6 +343,99 @@ public class Game {
         }
     }
 
+    /**
+     * Returns the pattern search index over this game's generations.
+     *
+     * The index is created on first use and catches up with any generation
+     * not indexed yet; afterwards it is updated incrementally each time a new
+     * generation is evolved.
+     *
+     * @return the up-to-date PatternIndex of this game
+     */
+    public PatternIndex getPatternIndex() {
+        if (patternIndex == null) {
+            patternIndex = new PatternIndex(board.getWidth(), board.getHeight());
+        }
+        return catchUp(patternIndex);
+    }
+
+    /**
+     * Returns the columnar history store of this game's generations.
+     *
+     * The store is created on first use from the recorded generations
+     * (e.g. after loading the game) and is then updated incrementally
+     * each time a new generation is evolved; only the moods of the
+     * generations evolved after that are known.
+     *
+     * @return the up-to-date HistoryStore of this game
+     */
+    public HistoryStore getHistoryStore() {
+        if (historyStore == null) {
+            historyStore = new HistoryStore(board.getWidth(), board.getHeight());
+        }
+        return catchUp(historyStore);
+    }
+
+    /**
+     * Returns the history store attached to this game, without creating it
+     * or catching it up with the generations.
+     *
+     * @return the store, or null if it was never requested
+     */
+    HistoryStore attachedHistoryStore() {
+        return historyStore;
+    }
+
+    /**
+     * Appends to the given index all the generations it does not cover yet.
+     */
+    private <T extends GenerationIndex> T catchUp(T index) {
+        for (int i = index.size(); i < generations.size(); i++) {
+            index.append(generations.get(i));
+        }
+        return index;
+    }
+
+    /**
+     * Notifies the game that a new generation has been evolved, so that
+     * the attached indexes can be updated incrementally.
+     *
+     * If the generation does not extend the indexed history (e.g. the game
+     * was run again from the start) the indexes are discarded and rebuilt on demand.
+     *
+     * @param generation the newly evolved generation
+     */
+    void generationEvolved(Generation generation) {
+        patternIndex = extend(patternIndex, generation);
+        historyStore = extend(historyStore, generation);
+        if (historyStore != null) {
+            historyStore.recordMoods(generation);
+        }
+    }
+
+    /**
+     * Notifies the game that the snapshots of a recorded generation were
+     * overwritten: the indexes covering it are discarded and rebuilt on demand.
+     *
+     * @param generation the modified generation
+     */
+    void generationChanged(Generation generation) {
+        if (patternIndex != null && generation.getStep() < patternIndex.size()) {
+            patternIndex = null;
+        }
+        if (historyStore != null && generation.getStep() < historyStore.size()) {
+            historyStore = null;
+        }
+    }
+
+    private static <T extends GenerationIndex> T extend(T index, Generation generation) {
+        if (index == null || generation.getStep() != index.size()) {
+            return null;
+        }
+        index.append(generation);
+        return index;
+    }
+
     /**
      * Retrieves the internal mapping of scheduled events for this game.
      * Each entry maps a generation index to an EventType.
@@ -0,0 +1,376 @@
+package it.polito.extgol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact binary format holding several generations of an extended board.
+ *
+ * Layout (big-endian):
+ * - header: the magic {@code EGOL}, a version byte, width and height;
+ * - board section: the CellType ordinal of every cell and the lifePoints
+ *   modifier of every tile, row-major;
+ * - one frame per generation: a marker byte {@code 1}, the step, the
+ *   aliveness bitset, the lifePoints and the CellMood ordinal ({@code -1}
+ *   for none, {@code -2} if unknown) of every cell;
+ * - a marker byte {@code 0} closing the archive.
+ *
+ * Archives are written and read frame by frame through fixed-size buffers,
+ * so only one generation is held in memory at a time.
+ */
+public final class GenerationArchive {
+
+    private static final int MAGIC = 0x45474F4C; // "EGOL"
+    private static final byte VERSION = 1;
+    private static final byte FRAME = 1;
+    private static final byte END = 0;
+
+    /** Mood code of the cells whose mood at the frame step is not known. */
+    private static final byte UNKNOWN_MOOD = -2;
+
+    private static final CellType[] TYPES = CellType.values();
+    private static final int MOODS = CellMood.values().length;
+
+    private GenerationArchive() {} // utility class need not to be instantiated
+
+    /**
+     * Writes every generation of a game to the channel.
+     *
+     * Moods are not part of the persisted generation snapshots: they are
+     * archived only for the generations whose moods are known, see
+     * {@link Writer#append(Generation)}.
+     *
+     * @param game the game to export
+     * @param out  the channel to write to
+     * @throws IOException if writing fails
+     */
+    public static void writeGame(Game game, WritableByteChannel out) throws IOException {
+        try (Writer w = new Writer(out, game.getBoard())) {
+            for (Generation g : game.getGenerations()) {
+                w.append(g);
+            }
+        }
+    }
+
+    /**
+     * Streaming writer of an archive.
+     */
+    public static final class Writer implements Closeable {
+        private final ChannelOutput out;
+        private final int width;
+        private final int height;
+        private final long[] bits;
+        private final int[] lifePoints;
+        private final byte[] moods;
+        private boolean closed;
+
+        /**
+         * Starts an archive for the board of an engine.
+         *
+         * @param channel the channel to write to
+         * @param engine  the engine providing the cell types and tile modifiers
+         * @throws IOException if writing fails
+         */
+        public Writer(WritableByteChannel channel, PrimitiveEngine engine) throws IOException {
+            this(channel, engine.width, engine.height);
+            out.write(engine.type);
+            out.write(engine.modifier);
+        }
+
+        /**
+         * Starts an archive for a Board.
+         *
+         * @param channel the channel to write to
+         * @param board   the board providing the cell types and tile modifiers
+         * @throws IOException if writing fails
+         */
+        public Writer(WritableByteChannel channel, Board board) throws IOException {
+            this(channel, board.getWidth(), board.getHeight());
+            Tile[] grid = board.tileGrid();
+            byte[] types = new byte[grid.length];
+            int[] modifiers = new int[grid.length];
+            for (int i = 0; i < grid.length; i++) {
+                CellType t = grid[i].getCell().getType();
+                types[i] = (byte) (t == null ? CellType.BASIC : t).ordinal();
+                Integer m = grid[i].getLifePointModifier();
+                modifiers[i] = m == null ? 0 : m;
+            }
+            out.write(types);
+            out.write(modifiers);
+        }
+
+        private Writer(WritableByteChannel channel, int width, int height) throws IOException {
+            Objects.requireNonNull(channel, "Channel cannot be null");
+            this.out = new ChannelOutput(channel);
+            this.width = width;
+            this.height = height;
+            int n = width * height;
+            bits = new long[(n + 63) >>> 6];
+            lifePoints = new int[n];
+            moods = new byte[n];
+            out.writeInt(MAGIC);
+            out.write(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+        }
+
+        /**
+         * Appends the current state of an engine as a frame.
+         *
+         * @param engine the engine to record, of the same size as the archive
+         * @throws IOException if writing fails
+         */
+        public void append(PrimitiveEngine engine) throws IOException {
+            checkSize(engine.width, engine.height);
+            Arrays.fill(bits, 0);
+            for (int i = 0; i < engine.alive.length; i++) {
+                if (engine.alive[i]) bits[i >>> 6] |= 1L << i;
+            }
+            frame(engine.getStep(), engine.lifePoints, engine.mood);
+        }
+
+        /**
+         * Appends a generation as a frame.
+         *
+         * Moods are written only where they are known: from the history
+         * store of the game if it recorded the generation live, or from the
+         * cells for the last generation of the game, whose state they hold.
+         * Otherwise every cell of the frame is marked with an unknown mood.
+         *
+         * @param generation the generation to record, of the same size as the archive
+         * @throws IOException if writing fails
+         */
+        public void append(Generation generation) throws IOException {
+            Board b = generation.getBoard();
+            checkSize(b.getWidth(), b.getHeight());
+            int step = generation.getStep();
+            Game game = generation.getGame();
+            HistoryStore store = game == null ? null : game.attachedHistoryStore();
+            boolean recorded = store != null && step < store.size() && store.isMoodRecorded(step);
+            List<Generation> history = game == null ? List.of() : game.getGenerations();
+            boolean current = !recorded && !history.isEmpty() && history.get(history.size() - 1) == generation;
+            Arrays.fill(bits, 0);
+            for (Map.Entry<Cell, Boolean> e : generation.getCellAlivenessStates().entrySet()) {
+                Cell c = e.getKey();
+                int i = c.getY() * width + c.getX();
+                if (e.getValue()) bits[i >>> 6] |= 1L << i;
+                if (recorded) {
+                    moods[i] = PrimitiveEngine.code(store.getMood(step, c.getX(), c.getY()));
+                } else {
+                    moods[i] = current ? PrimitiveEngine.code(c.getMood()) : UNKNOWN_MOOD;
+                }
+            }
+            for (Map.Entry<Cell, Integer> e : generation.getCellLifePoints().entrySet()) {
+                lifePoints[e.getKey().getY() * width + e.getKey().getX()] = e.getValue();
+            }
+            frame(generation.getStep(), lifePoints, moods);
+        }
+
+        private void checkSize(int w, int h) {
+            if (w != width || h != height) {
+                throw new IllegalArgumentException("Expected a " + width + "x" + height + " board");
+            }
+        }
+
+        private void frame(int step, int[] lp, byte[] mood) throws IOException {
+            if (closed) throw new IOException("Archive already closed");
+            out.write(FRAME);
+            out.writeInt(step);
+            for (long w : bits) {
+                out.writeInt((int) (w >>> 32));
+                out.writeInt((int) w);
+            }
+            out.write(lp);
+            out.write(mood);
+        }
+
+        /**
+         * Terminates the archive and flushes it; the channel is left open.
+         *
+         * @throws IOException if writing fails
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            out.write(END);
+            out.flush();
+        }
+    }
+
+    /**
+     * Streaming reader of an archive.
+     */
+    public static final class Reader implements Closeable {
+        private final ChannelInput in;
+        private final int width;
+        private final int height;
+        private final byte[] types;
+        private final int[] modifiers;
+        private final long[] bits;
+        private final byte[] moods;
+        private int step = -1;
+        private boolean moodKnown;
+        private boolean done;
+
+        /**
+         * Opens an archive, reading its header and board section.
+         *
+         * @param channel the channel to read from
+         * @throws IOException if reading fails or the data is not an archive
+         */
+        public Reader(ReadableByteChannel channel) throws IOException {
+            Objects.requireNonNull(channel, "Channel cannot be null");
+            in = new ChannelInput(channel);
+            if (in.readInt() != MAGIC) throw new IOException("Not a generation archive");
+            byte version = in.readByte();
+            if (version != VERSION) throw new IOException("Unsupported archive version " + version);
+            width = in.readInt();
+            height = in.readInt();
+            if (width <= 0 || height <= 0) throw new IOException("Invalid board size " + width + "x" + height);
+            int n = width * height;
+            types = new byte[n];
+            modifiers = new int[n];
+            in.readFully(types);
+            in.readFully(modifiers);
+            for (byte t : types) {
+                if (t < 0 || t >= TYPES.length) throw new IOException("Invalid cell type " + t);
+            }
+            bits = new long[(n + 63) >>> 6];
+            moods = new byte[n];
+        }
+
+        /**
+         * Returns the number of columns of the archived board.
+         *
+         * @return the board width
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Returns the number of rows of the archived board.
+         *
+         * @return the board height
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Returns the step of the last frame read.
+         *
+         * @return the step, or -1 if no frame was read yet
+         */
+        public int getStep() {
+            return step;
+        }
+
+        /**
+         * Checks whether the moods of every cell of the last frame read are
+         * known; cells with an unknown mood keep their mood when reading.
+         *
+         * @return false if some mood of the frame is unknown
+         */
+        public boolean isMoodKnown() {
+            return moodKnown;
+        }
+
+        /**
+         * Reads the next frame into an engine of the same size: aliveness,
+         * lifePoints, known moods, types and tile modifiers are overwritten.
+         *
+         * @param engine the engine to fill
+         * @return false if the archive has no more frames
+         * @throws IOException if reading fails or a mood code is invalid
+         */
+        public boolean next(PrimitiveEngine engine) throws IOException {
+            if (engine.width != width || engine.height != height) {
+                throw new IllegalArgumentException("Expected a " + width + "x" + height + " engine");
+            }
+            if (!nextFrame()) return false;
+            for (int i = 0; i < engine.alive.length; i++) {
+                engine.alive[i] = (bits[i >>> 6] & (1L << i)) != 0;
+            }
+            in.readFully(engine.lifePoints);
+            readMoods();
+            for (int i = 0; i < moods.length; i++) {
+                if (moods[i] != UNKNOWN_MOOD) engine.mood[i] = moods[i];
+            }
+            System.arraycopy(types, 0, engine.type, 0, types.length);
+            System.arraycopy(modifiers, 0, engine.modifier, 0, modifiers.length);
+            return true;
+        }
+
+        /**
+         * Reads the next frame into the cells and tiles of a Board of the
+         * same size: aliveness, lifePoints, known moods, types and tile
+         * modifiers are overwritten.
+         *
+         * @param board the board to fill
+         * @return false if the archive has no more frames
+         * @throws IOException if reading fails or a mood code is invalid
+         */
+        public boolean next(Board board) throws IOException {
+            if (board.getWidth() != width || board.getHeight() != height) {
+                throw new IllegalArgumentException("Expected a " + width + "x" + height + " board");
+            }
+            if (!nextFrame()) return false;
+            Tile[] grid = board.tileGrid();
+            int[] lp = new int[grid.length];
+            in.readFully(lp);
+            readMoods();
+            for (int i = 0; i < grid.length; i++) {
+                Cell c = grid[i].getCell();
+                c.setAlive((bits[i >>> 6] & (1L << i)) != 0);
+                c.setLifePoints(lp[i]);
+                if (moods[i] != UNKNOWN_MOOD) c.setMood(PrimitiveEngine.mood(moods[i]));
+                c.setType(TYPES[types[i]]);
+                grid[i].setLifePointModifier(modifiers[i]);
+            }
+            return true;
+        }
+
+        private void readMoods() throws IOException {
+            in.readFully(moods);
+            moodKnown = true;
+            for (byte m : moods) {
+                if (m == UNKNOWN_MOOD) {
+                    moodKnown = false;
+                } else if (m != PrimitiveEngine.NO_MOOD && (m < 0 || m >= MOODS)) {
+                    throw new IOException("Invalid cell mood " + m + " at step " + step);
+                }
+            }
+        }
+
+        private boolean nextFrame() throws IOException {
+            if (done) return false;
+            byte marker = in.readByte();
+            if (marker == END) {
+                done = true;
+                return false;
+            }
+            if (marker != FRAME) throw new IOException("Corrupted archive after step " + step);
+            step = in.readInt();
+            for (int k = 0; k < bits.length; k++) {
+                bits[k] = ((long) in.readInt() << 32) | (in.readInt() & 0xFFFFFFFFL);
+            }
+            return true;
+        }
+
+        /**
+         * Releases the reader; the channel is left open.
+         */
+        @Override
+        public void close() {
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package it.polito.extgol;
+
+/**
+ * Contract for in-memory structures that index a game's generation history
+ * and are kept up to date incrementally as new generations are evolved.
+ *
+ * Generations must be appended in step order, starting from step 0.
+ */
+interface GenerationIndex {
+
+    /**
+     * Returns the number of generations indexed so far; the next generation
+     * to be appended must have this step.
+     *
+     * @return the count of indexed generations
+     */
+    int size();
+
+    /**
+     * Indexes the given generation, which must be the one following the
+     * last indexed generation.
+     *
+     * @param generation the generation to index
+     * @throws IllegalArgumentException if the generation is out of sequence
+     */
+    void append(Generation generation);
+}
@@ -0,0 +1,410 @@
+package it.polito.extgol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar store of the state of every cell across a game's generations.
+ *
+ * For each step the store keeps three primitive columns indexed by tile id
+ * ({@code y * width + x}): an aliveness bitset, the lifePoints and the mood
+ * ordinal of every cell. Cross-generation queries then become tight loops
+ * (or parallel streams) over contiguous arrays instead of lookups in the
+ * per-generation {@code Map<Cell, ...>} snapshots.
+ *
+ * The store of a Game is obtained with {@link Game#getHistoryStore()}; it is
+ * filled live while the game runs and can be rebuilt from the generations of
+ * a loaded game. Moods are not part of the persisted snapshots, so they are
+ * recorded only for the generations evolved while the store is attached:
+ * for the other steps they are unknown, see {@link #isMoodRecorded(int)}.
+ */
+public class HistoryStore implements GenerationIndex {
+
+    /** Marker stored for cells with no mood assigned. */
+    private static final byte NO_MOOD = -1;
+
+    private static final CellMood[] MOODS = CellMood.values();
+
+    private final int width;
+    private final int height;
+    private final int cells;
+
+    /** Aliveness bitset of each step. */
+    private final List<long[]> alive = new ArrayList<>();
+
+    /** LifePoints of each tile, per step. */
+    private final List<int[]> lifePoints = new ArrayList<>();
+
+    /** Mood ordinal of each tile, per step. */
+    private final List<byte[]> moods = new ArrayList<>();
+
+    /** Shared mood column of the steps whose moods were not observed. */
+    private final byte[] unknownMoods;
+
+    /**
+     * Constructs an empty store for boards of the given size.
+     *
+     * @param width  the number of columns of the board
+     * @param height the number of rows of the board
+     */
+    public HistoryStore(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.cells = width * height;
+        this.unknownMoods = new byte[cells];
+        Arrays.fill(unknownMoods, NO_MOOD);
+    }
+
+    @Override
+    public int size() {
+        return alive.size();
+    }
+
+    @Override
+    public void append(Generation generation) {
+        Objects.requireNonNull(generation, "Generation cannot be null");
+        if (generation.getStep() != size()) {
+            throw new IllegalArgumentException(
+                "Expected generation " + size() + " but got " + generation.getStep());
+        }
+        long[] bits = new long[(cells + 63) >>> 6];
+        int[] lp = new int[cells];
+
+        for (Map.Entry<Cell, Boolean> e : generation.getCellAlivenessStates().entrySet()) {
+            Cell c = e.getKey();
+            int id = c.getY() * width + c.getX();
+            if (e.getValue()) bits[id >>> 6] |= 1L << id;
+        }
+        for (Map.Entry<Cell, Integer> e : generation.getCellLifePoints().entrySet()) {
+            Cell c = e.getKey();
+            lp[c.getY() * width + c.getX()] = e.getValue();
+        }
+
+        alive.add(bits);
+        lifePoints.add(lp);
+        moods.add(unknownMoods);
+    }
+
+    /**
+     * Records the moods of the last appended generation from the current
+     * moods of its cells; called by evolve right after the generation is
+     * created, the only time those moods are known.
+     *
+     * @param generation the generation just evolved
+     * @throws IllegalArgumentException if it is not the last appended one
+     */
+    void recordMoods(Generation generation) {
+        if (generation.getStep() != size() - 1) {
+            throw new IllegalArgumentException(
+                "Expected generation " + (size() - 1) + " but got " + generation.getStep());
+        }
+        byte[] mood = new byte[cells];
+        for (Cell c : generation.getCellAlivenessStates().keySet()) {
+            mood[c.getY() * width + c.getX()] = c.getMood() == null ? NO_MOOD : (byte) c.getMood().ordinal();
+        }
+        moods.set(generation.getStep(), mood);
+    }
+
+    /**
+     * Returns the number of columns of the recorded board.
+     *
+     * @return the board width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows of the recorded board.
+     *
+     * @return the board height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    private int id(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("No tile at " + x + "," + y);
+        }
+        return y * width + x;
+    }
+
+    private static boolean bit(long[] bits, int id) {
+        return (bits[id >>> 6] & (1L << id)) != 0;
+    }
+
+    // Raw column access
+
+    /**
+     * Checks whether a cell was alive at the given step.
+     *
+     * @param step the generation step
+     * @param x    the column of the cell
+     * @param y    the row of the cell
+     * @return true if the cell was alive
+     */
+    public boolean isAlive(int step, int x, int y) {
+        return bit(alive.get(step), id(x, y));
+    }
+
+    /**
+     * Returns the lifePoints of a cell at the given step.
+     *
+     * @param step the generation step
+     * @param x    the column of the cell
+     * @param y    the row of the cell
+     * @return the recorded lifePoints
+     */
+    public int getLifePoints(int step, int x, int y) {
+        return lifePoints.get(step)[id(x, y)];
+    }
+
+    /**
+     * Checks whether the moods of the given step were recorded, that is
+     * whether the generation was evolved while the store was attached.
+     *
+     * @param step the generation step
+     * @return true if the moods of the step are known
+     */
+    public boolean isMoodRecorded(int step) {
+        return moods.get(step) != unknownMoods;
+    }
+
+    /**
+     * Returns the mood of a cell at the given step.
+     *
+     * @param step the generation step
+     * @param x    the column of the cell
+     * @param y    the row of the cell
+     * @return the recorded mood, or null if the cell had none or the moods
+     *         of the step are unknown
+     */
+    public CellMood getMood(int step, int x, int y) {
+        byte m = moods.get(step)[id(x, y)];
+        return m == NO_MOOD ? null : MOODS[m];
+    }
+
+    // Per-cell time series
+
+    /**
+     * Returns the lifePoints of a cell at every recorded step.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return an array indexed by step
+     */
+    public int[] lifePointsSeries(int x, int y) {
+        int id = id(x, y);
+        int[] series = new int[size()];
+        for (int s = 0; s < series.length; s++) {
+            series[s] = lifePoints.get(s)[id];
+        }
+        return series;
+    }
+
+    /**
+     * Returns the aliveness of a cell at every recorded step.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return an array indexed by step
+     */
+    public boolean[] alivenessSeries(int x, int y) {
+        int id = id(x, y);
+        boolean[] series = new boolean[size()];
+        for (int s = 0; s < series.length; s++) {
+            series[s] = bit(alive.get(s), id);
+        }
+        return series;
+    }
+
+    /**
+     * Returns the longest run of consecutive steps in which a cell stayed alive.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return the length of the longest alive run
+     */
+    public int longestAliveRun(int x, int y) {
+        int id = id(x, y);
+        int best = 0, run = 0;
+        for (long[] bits : alive) {
+            run = bit(bits, id) ? run + 1 : 0;
+            best = Math.max(best, run);
+        }
+        return best;
+    }
+
+    // Whole-board aggregates over time
+
+    /**
+     * Counts, for each tile, the number of steps its cell was alive.
+     *
+     * @return an array indexed by tile id ({@code y * width + x})
+     */
+    public int[] aliveStepsPerCell() {
+        int[] counts = new int[cells];
+        IntStream.range(0, cells).parallel().forEach(id -> {
+            int n = 0;
+            for (long[] bits : alive) {
+                if (bit(bits, id)) n++;
+            }
+            counts[id] = n;
+        });
+        return counts;
+    }
+
+    /**
+     * Computes, for each tile, the average lifePoints of its cell over all
+     * recorded steps.
+     *
+     * @return an array indexed by tile id ({@code y * width + x})
+     */
+    public double[] averageLifePointsPerCell() {
+        double[] avg = new double[cells];
+        int steps = size();
+        if (steps == 0) return avg;
+        IntStream.range(0, cells).parallel().forEach(id -> {
+            long sum = 0;
+            for (int[] lp : lifePoints) {
+                sum += lp[id];
+            }
+            avg[id] = (double) sum / steps;
+        });
+        return avg;
+    }
+
+    // Per-step aggregates
+
+    /**
+     * Counts the alive cells at the given step.
+     *
+     * @param step the generation step
+     * @return the number of alive cells
+     */
+    public int countAlive(int step) {
+        int n = 0;
+        for (long w : alive.get(step)) {
+            n += Long.bitCount(w);
+        }
+        return n;
+    }
+
+    /**
+     * Computes the lifePoints statistics of the alive cells at the given step.
+     *
+     * @param step the generation step
+     * @return the summary statistics over the alive cells' lifePoints
+     */
+    public IntSummaryStatistics lifePointsStatistics(int step) {
+        long[] bits = alive.get(step);
+        int[] lp = lifePoints.get(step);
+        IntSummaryStatistics stats = new IntSummaryStatistics();
+        for (int id = 0; id < cells; id++) {
+            if (bit(bits, id)) stats.accept(lp[id]);
+        }
+        return stats;
+    }
+
+    /**
+     * Counts the alive cells of each mood at the given step.
+     *
+     * @param step the generation step
+     * @return a Map from mood to the number of alive cells having it, all
+     *         zero if the moods of the step are unknown
+     */
+    public Map<CellMood, Integer> countMoods(int step) {
+        long[] bits = alive.get(step);
+        byte[] mood = moods.get(step);
+        int[] counts = new int[MOODS.length];
+        for (int id = 0; id < cells; id++) {
+            if (bit(bits, id) && mood[id] != NO_MOOD) counts[mood[id]]++;
+        }
+        Map<CellMood, Integer> res = new EnumMap<>(CellMood.class);
+        for (CellMood m : MOODS) {
+            res.put(m, counts[m.ordinal()]);
+        }
+        return res;
+    }
+
+    // Windowed aggregates
+
+    /**
+     * Computes the moving average of the alive cells count over a sliding
+     * window of the given size, for every step in [fromStep, toStep].
+     * Windows are truncated at step 0.
+     *
+     * @param fromStep the first step (inclusive)
+     * @param toStep   the last step (inclusive)
+     * @param window   the number of steps in each window
+     * @return an array whose i-th element refers to step {@code fromStep + i}
+     * @throws IllegalArgumentException if the steps are not a range of recorded
+     *                                  steps or the window is not positive
+     */
+    public double[] windowedAliveAverage(int fromStep, int toStep, int window) {
+        checkWindow(fromStep, toStep, window);
+        long[] prefix = new long[toStep + 2];
+        for (int s = 0; s <= toStep; s++) {
+            prefix[s + 1] = prefix[s] + countAlive(s);
+        }
+        return windowed(prefix, null, fromStep, toStep, window);
+    }
+
+    /**
+     * Computes the average lifePoints of the alive cells over a sliding
+     * window of the given size, for every step in [fromStep, toStep].
+     * Windows are truncated at step 0; windows with no alive cells yield 0.
+     *
+     * @param fromStep the first step (inclusive)
+     * @param toStep   the last step (inclusive)
+     * @param window   the number of steps in each window
+     * @return an array whose i-th element refers to step {@code fromStep + i}
+     * @throws IllegalArgumentException if the steps are not a range of recorded
+     *                                  steps or the window is not positive
+     */
+    public double[] windowedLifePointsAverage(int fromStep, int toStep, int window) {
+        checkWindow(fromStep, toStep, window);
+        long[] sums = new long[toStep + 2];
+        long[] counts = new long[toStep + 2];
+        IntSummaryStatistics[] perStep = IntStream.rangeClosed(0, toStep).parallel()
+            .mapToObj(this::lifePointsStatistics)
+            .toArray(IntSummaryStatistics[]::new);
+        for (int s = 0; s <= toStep; s++) {
+            sums[s + 1] = sums[s] + perStep[s].getSum();
+            counts[s + 1] = counts[s] + perStep[s].getCount();
+        }
+        return windowed(sums, counts, fromStep, toStep, window);
+    }
+
+    private void checkWindow(int fromStep, int toStep, int window) {
+        if (fromStep < 0 || toStep >= size() || fromStep > toStep) {
+            throw new IllegalArgumentException(
+                "Invalid step range [" + fromStep + ", " + toStep + "] for " + size() + " steps");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+    }
+
+    /**
+     * Evaluates windowed averages from prefix sums; when counts is null the
+     * denominator is the number of steps in the window.
+     */
+    private static double[] windowed(long[] sums, long[] counts, int fromStep, int toStep, int window) {
+        double[] res = new double[toStep - fromStep + 1];
+        for (int s = fromStep; s <= toStep; s++) {
+            int start = Math.max(0, s - window + 1);
+            long sum = sums[s + 1] - sums[start];
+            long n = counts == null ? s + 1 - start : counts[s + 1] - counts[start];
+            res[s - fromStep] = n == 0 ? 0 : (double) sum / n;
+        }
+        return res;
+    }
+}
@@ -0,0 +1,88 @@
+package it.polito.extgol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schedules the interaction phase of a generation, enumerating only the
+ * tile modifiers and the cell pairs that can actually have an effect.
+ *
+ * Of all the ordered pairs visited by {@link Cell#interact(Cell)}, only
+ * HEALER→NAIVE, HEALER→VAMPIRE and VAMPIRE→NAIVE pairs with an alive target
+ * exchange lifePoints or change a mood; moods and aliveness do not change
+ * during the phase, so every other pair can be skipped up front. Likewise,
+ * only tiles with a non-zero modifier hosting an alive cell affect their cell.
+ *
+ * The scheduler indexes only the HEALER and VAMPIRE cells of a board, alive
+ * or not, since a dead initiator still acts on its alive neighbours, then
+ * visits the remaining pairs in the same relative order as the exhaustive
+ * loop over the board tiles and their neighbours, so the outcome is
+ * unchanged even when it depends on the order of the interactions.
+ */
+final class InteractionScheduler {
+
+    /** Tiles with a non-zero modifier hosting an alive cell. */
+    private final List<Tile> modifierTiles = new ArrayList<>();
+
+    /** Initiators (HEALER and VAMPIRE cells) in board tile order. */
+    private final List<Cell> initiators = new ArrayList<>();
+
+    /**
+     * Indexes the current state of the given tiles.
+     *
+     * @param tiles the tiles of the board, in the order the interaction
+     *              phase visits them
+     */
+    InteractionScheduler(List<Tile> tiles) {
+        for (Tile t : tiles) {
+            Cell c = t.getCell();
+            if (c == null) {
+                throw new IllegalStateException("Missing cell on tile " + t);
+            }
+            Integer mod = t.getLifePointModifier();
+            if (mod != null && mod != 0 && c.isAlive()) {
+                modifierTiles.add(t);
+            }
+            CellMood m = c.getMood();
+            if (m == CellMood.HEALER || m == CellMood.VAMPIRE) {
+                initiators.add(c);
+            }
+        }
+    }
+
+    /**
+     * Applies the non-zero tile modifiers to the alive cells on them.
+     */
+    void applyTileModifiers() {
+        for (Tile t : modifierTiles) {
+            t.interact(t.getCell());
+        }
+    }
+
+    /**
+     * Runs every effective interaction between neighbouring cells.
+     */
+    void interact() {
+        for (Cell c : initiators) {
+            CellMood mine = c.getMood();
+            for (Tile t : c.getNeighbors()) {
+                Cell other = t.getCell();
+                if (other == null) {
+                    throw new IllegalStateException("Missing neighbor cell on tile " + t);
+                }
+                if (other.isAlive() && affects(mine, other.getMood())) {
+                    c.interact(other);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether an initiator of the first mood can affect an alive
+     * target of the second one.
+     */
+    private static boolean affects(CellMood initiator, CellMood target) {
+        return target == CellMood.NAIVE
+            || (initiator == CellMood.HEALER && target == CellMood.VAMPIRE);
+    }
+}
@@ -1,5 +1,12 @@
 package it.polito.extgol;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
@@ -10,27 +17,146 @@ import jakarta.persistence.Persistence;
  *
  * Uses a singleton EntityManagerFactory tied to the persistence unit
  * "game-of-life-pu" to create short-lived EntityManager instances.
+ *
+ * By default the factory is built lazily on first use, with the settings
+ * of persistence.xml. Calling {@link #startAsync()} at application start
+ * enables the fast startup mode instead: the factory is built in the
+ * background, the schema is created from the pre-generated
+ * META-INF/schema.sql script rather than validated against the entities,
+ * and SQL echo is turned off unless the {@value #DEBUG_PROPERTY} system
+ * property is true.
  */
 public class JPAUtil {
 
     /** The singleton EntityManagerFactory. */
-    private static EntityManagerFactory emf;
+    private static volatile EntityManagerFactory emf;
 
     /** The name of the persistence unit defined in persistence.xml. */
     private static final String PU_NAME = "game-of-life-pu";
 
+    /** System property enabling SQL echo in fast startup mode. */
+    public static final String DEBUG_PROPERTY = "extgol.jpa.debug";
+
+    /** Whether the current or pending factory is built with the fast startup settings. */
+    private static volatile boolean fastStartup;
+
+    /** Pending background build started by {@link #startAsync()}. */
+    private static CompletableFuture<EntityManagerFactory> pending;
+
+    /** Start time of the current factory build, or -1 if unknown. */
+    private static volatile long startNanos = -1;
+
+    /** Time from the start of the factory build to the first SQL statement, or -1. */
+    private static volatile long firstQueryNanos = -1;
+
+    /** Hibernate setting of the inspector that sees every SQL statement of the sessions. */
+    private static final String STATEMENT_INSPECTOR = "hibernate.session_factory.statement_inspector";
+
     private JPAUtil() {} // utility class need not to be instantiated
-    
+
+    /**
+     * Returns the property overrides of the fast startup mode.
+     */
+    private static Map<String, Object> fastProperties() {
+        Map<String, Object> props = new HashMap<>();
+        boolean debug = Boolean.getBoolean(DEBUG_PROPERTY);
+        props.put("hibernate.hbm2ddl.auto", "none");
+        props.put("jakarta.persistence.schema-generation.database.action", "create");
+        props.put("jakarta.persistence.schema-generation.create-source", "script");
+        props.put("jakarta.persistence.schema-generation.create-script-source", "META-INF/schema.sql");
+        props.put("hibernate.show_sql", String.valueOf(debug));
+        props.put("hibernate.format_sql", String.valueOf(debug));
+        return props;
+    }
+
+    private static EntityManagerFactory build() {
+        Map<String, Object> props = fastStartup ? fastProperties() : new HashMap<>();
+        props.put(STATEMENT_INSPECTOR, (StatementInspector) JPAUtil::firstStatement);
+        return Persistence.createEntityManagerFactory(PU_NAME, props);
+    }
+
+    /**
+     * Records the time to the first SQL statement run by the sessions of
+     * the current factory; schema creation does not go through sessions.
+     *
+     * @param sql the statement about to run
+     * @return the statement, unchanged
+     */
+    private static String firstStatement(String sql) {
+        long start = startNanos;
+        if (firstQueryNanos < 0 && start >= 0) {
+            firstQueryNanos = System.nanoTime() - start;
+        }
+        return sql;
+    }
+
     /**
      * Lazily initializes (if necessary) and returns the shared EntityManagerFactory.
+     * Concurrent first callers wait for a single factory to be built; if a
+     * background build is in progress, they wait for it.
      *
      * @return the open EntityManagerFactory for the configured persistence unit
      */
     private static EntityManagerFactory getCurrentFactory() {
-        if (emf == null || !emf.isOpen()) {
-            emf = Persistence.createEntityManagerFactory(PU_NAME);
+        EntityManagerFactory f = emf;
+        if (f != null && f.isOpen()) {
+            return f;
+        }
+        CompletableFuture<EntityManagerFactory> future;
+        synchronized (JPAUtil.class) {
+            f = emf;
+            if (f != null && f.isOpen()) {
+                return f;
+            }
+            future = pending;
+            if (future == null) {
+                fastStartup = false;
+                startNanos = System.nanoTime();
+                firstQueryNanos = -1;
+                emf = f = build();
+                return f;
+            }
+        }
+        return future.join();
+    }
+
+    /**
+     * Starts building the shared factory in the background, in fast startup
+     * mode. If a factory is already open or being built, it is returned
+     * as is, in the mode it was built with.
+     *
+     * @return a future completed when the factory is ready, or exceptionally
+     *         if it could not be built
+     */
+    public static CompletableFuture<EntityManagerFactory> startAsync() {
+        synchronized (JPAUtil.class) {
+            if (pending != null) {
+                return pending;
+            }
+            EntityManagerFactory f = emf;
+            if (f != null && f.isOpen()) {
+                return CompletableFuture.completedFuture(f);
+            }
+            fastStartup = true;
+            startNanos = System.nanoTime();
+            firstQueryNanos = -1;
+            // the factory is published before the future completes, so that
+            // whoever joins it finds emf already set
+            CompletableFuture<EntityManagerFactory> future = CompletableFuture.supplyAsync(() -> {
+                EntityManagerFactory built = null;
+                try {
+                    built = build();
+                    return built;
+                } finally {
+                    synchronized (JPAUtil.class) {
+                        if (built != null) emf = built;
+                        pending = null;
+                    }
+                }
+            });
+            pending = future;
+            return future;
         }
-        return emf;
     }
 
     /**
@@ -45,14 +171,55 @@ public class JPAUtil {
         return getCurrentFactory().createEntityManager();
     }
 
+    /**
+     * Returns the time elapsed from the start of the factory build to the
+     * first SQL statement run by a query or a transaction of its
+     * EntityManagers.
+     *
+     * @return the time to first query, or null if no statement was run
+     *         since the factory was (re)built
+     */
+    public static Duration getTimeToFirstQuery() {
+        long t = firstQueryNanos;
+        return t < 0 ? null : Duration.ofNanos(t);
+    }
+
+    /**
+     * Checks whether the current factory, or the one being built, uses the
+     * fast startup mode.
+     *
+     * @return true if the factory was built by {@link #startAsync()}
+     */
+    public static boolean isFastStartup() {
+        return fastStartup;
+    }
+
     /**
      * Closes the shared EntityManagerFactory if it is open.
+     * A background build still in progress is awaited and closed too.
      *
      * Should be invoked during application shutdown to release resources.
      */
     public static void close() {
-        if (emf != null && emf.isOpen()) {
-            emf.close();
+        CompletableFuture<EntityManagerFactory> future;
+        synchronized (JPAUtil.class) {
+            future = pending;
+        }
+        if (future != null) {
+            try {
+                future.join();
+            } catch (RuntimeException e) {
+                // nothing to close
+            }
+        }
+        synchronized (JPAUtil.class) {
+            if (emf != null && emf.isOpen()) {
+                emf.close();
+            }
+            emf = null;
+            fastStartup = false;
+            startNanos = -1;
+            firstQueryNanos = -1;
         }
     }
-}
\ No newline at end of file
+}
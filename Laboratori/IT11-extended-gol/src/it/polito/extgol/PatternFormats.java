@@ -0,0 +1,441 @@
+package it.polito.extgol;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streaming readers and writers for the standard Life pattern formats.
+ *
+ * Two formats are supported:
+ * - RLE ({@code x = 3, y = 3, rule = B3/S23} header followed by run-length
+ *   encoded rows, {@code b} dead, {@code o} alive, {@code $} end of row,
+ *   {@code !} end of pattern);
+ * - plaintext ({@code !} comment lines followed by rows of {@code .} dead
+ *   and {@code O} alive cells).
+ *
+ * Patterns are parsed straight from a channel through a fixed-size buffer
+ * and delivered as runs of alive cells to a {@link Sink}, so no per-cell
+ * objects are allocated; RLE patterns are read in memory bounded by the
+ * buffer, while plaintext ones buffer their runs (see
+ * {@link #readPlaintext(ReadableByteChannel, Sink)}). Ready-made sinks load
+ * the pattern into a {@link PrimitiveEngine} or into a {@link Generation};
+ * these hold the whole board, so very large patterns must be read through a
+ * custom {@link Sink}.
+ * Only aliveness is carried by these formats; see {@link GenerationArchive}
+ * for the extended attributes.
+ */
+public final class PatternFormats {
+
+    /** Maximum length of an RLE body line, as recommended by the format. */
+    private static final int RLE_LINE = 70;
+
+    private PatternFormats() {} // utility class need not to be instantiated
+
+    /**
+     * Receiver of the alive cells of a pattern.
+     */
+    public interface Sink {
+
+        /**
+         * Called once, before any run, with the size of the pattern.
+         *
+         * @param width  the number of columns of the pattern
+         * @param height the number of rows of the pattern
+         * @throws IOException if the sink cannot hold a pattern of that size
+         */
+        void begin(int width, int height) throws IOException;
+
+        /**
+         * Called for each horizontal run of alive cells, in row-major order.
+         *
+         * @param x      the column of the first cell of the run
+         * @param y      the row of the run
+         * @param length the number of alive cells in the run
+         */
+        void aliveRun(int x, int y, int length);
+    }
+
+    // Reading
+
+    /**
+     * Parses an RLE pattern, delivering its alive cells to the sink.
+     *
+     * @param in   the channel to read from
+     * @param sink the receiver of the pattern
+     * @throws IOException if reading fails or the pattern is malformed
+     */
+    public static void readRle(ReadableByteChannel in, Sink sink) throws IOException {
+        Objects.requireNonNull(in, "Channel cannot be null");
+        Objects.requireNonNull(sink, "Sink cannot be null");
+        ChannelInput input = new ChannelInput(in);
+
+        // header: comment lines, then "x = m, y = n[, rule = ...]"
+        String header;
+        do {
+            header = readLine(input);
+            if (header == null) throw new IOException("Malformed RLE: missing header");
+            header = header.strip();
+        } while (header.isEmpty() || header.charAt(0) == '#');
+
+        int width = -1, height = -1;
+        for (String field : header.split(",")) {
+            String[] kv = field.split("=", 2);
+            if (kv.length != 2) throw new IOException("Malformed RLE header: " + header);
+            String key = kv[0].strip();
+            try {
+                if (key.equals("x")) width = Integer.parseInt(kv[1].strip());
+                else if (key.equals("y")) height = Integer.parseInt(kv[1].strip());
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed RLE header: " + header, e);
+            }
+        }
+        if (width < 0 || height < 0) throw new IOException("Malformed RLE header: " + header);
+        sink.begin(width, height);
+
+        int x = 0, y = 0, count = 0;
+        int c;
+        while ((c = input.read()) >= 0 && c != '!') {
+            if (c >= '0' && c <= '9') {
+                count = count * 10 + (c - '0');
+                continue;
+            }
+            int n = count == 0 ? 1 : count;
+            count = 0;
+            if (c == 'b' || c == '.') {
+                x += n;
+            } else if (c == 'o' || (c >= 'A' && c <= 'Z')) {
+                if (x + n > width || y >= height) {
+                    throw new IOException("RLE pattern exceeds its declared size at row " + y);
+                }
+                sink.aliveRun(x, y, n);
+                x += n;
+            } else if (c == '$') {
+                x = 0;
+                y += n;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                continue;
+            } else {
+                throw new IOException("Malformed RLE: unexpected '" + (char) c + "' at row " + y);
+            }
+        }
+    }
+
+    /**
+     * Parses a plaintext pattern, delivering its alive cells to the sink.
+     *
+     * The size of a plaintext pattern is only known at its end, while the
+     * sink needs it before any run: all the runs are buffered, as three ints
+     * each, and delivered at the end. Memory use is therefore not bounded,
+     * but grows with the number of runs of the pattern; large patterns
+     * should be stored as RLE.
+     *
+     * @param in   the channel to read from
+     * @param sink the receiver of the pattern
+     * @throws IOException if reading fails or the pattern is malformed
+     */
+    public static void readPlaintext(ReadableByteChannel in, Sink sink) throws IOException {
+        Objects.requireNonNull(in, "Channel cannot be null");
+        Objects.requireNonNull(sink, "Sink cannot be null");
+        ChannelInput input = new ChannelInput(in);
+
+        Runs runs = new Runs();
+        int x = 0, y = 0, width = 0, start = -1;
+        boolean comment = false, lineStart = true;
+        int c;
+        while ((c = input.read()) >= 0) {
+            if (c == '\n') {
+                if (!comment) {
+                    if (start >= 0) {
+                        runs.add(start, y, x - start);
+                        start = -1;
+                    }
+                    width = Math.max(width, x);
+                    y++;
+                }
+                x = 0;
+                comment = false;
+                lineStart = true;
+                continue;
+            }
+            if (comment || c == '\r') continue;
+            if (lineStart && c == '!') {
+                comment = true;
+                continue;
+            }
+            lineStart = false;
+            if (c == 'O' || c == '*') {
+                if (start < 0) start = x;
+            } else if (c == '.') {
+                if (start >= 0) {
+                    runs.add(start, y, x - start);
+                    start = -1;
+                }
+            } else {
+                throw new IOException("Malformed plaintext: unexpected '" + (char) c + "' at row " + y);
+            }
+            x++;
+        }
+        if (!comment && !lineStart) {
+            // last row without a line terminator
+            if (start >= 0) {
+                runs.add(start, y, x - start);
+            }
+            width = Math.max(width, x);
+            y++;
+        }
+
+        sink.begin(width, y);
+        for (int k = 0; k < runs.size; k += 3) {
+            sink.aliveRun(runs.data[k], runs.data[k + 1], runs.data[k + 2]);
+        }
+    }
+
+    /** Growable buffer of (x, y, length) runs. */
+    private static class Runs {
+        int[] data = new int[3 * 64];
+        int size;
+
+        void add(int x, int y, int length) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = x;
+            data[size++] = y;
+            data[size++] = length;
+        }
+    }
+
+    /**
+     * Reads a line of ASCII text, without its terminator.
+     *
+     * @return the line, or null at the end of the input
+     */
+    private static String readLine(ChannelInput input) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = input.read()) >= 0 && c != '\n') {
+            sb.append((char) c);
+        }
+        return c < 0 && sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Reads an RLE pattern into a new engine of the same size, with all the
+     * other cells dead, BASIC and NAIVE.
+     *
+     * The engine holds the whole board, about 18 bytes per cell: large
+     * patterns must be read through {@link #readRle(ReadableByteChannel, Sink)}.
+     *
+     * @param in the channel to read from
+     * @return the loaded engine
+     * @throws IOException if reading fails or the pattern is malformed
+     */
+    public static PrimitiveEngine readRle(ReadableByteChannel in) throws IOException {
+        EngineSink sink = new EngineSink();
+        readRle(in, sink);
+        return sink.engine;
+    }
+
+    /**
+     * Reads a plaintext pattern into a new engine of the same size, with all
+     * the other cells dead, BASIC and NAIVE.
+     *
+     * The engine holds the whole board, about 18 bytes per cell: large
+     * patterns must be read through {@link #readPlaintext(ReadableByteChannel, Sink)}.
+     *
+     * @param in the channel to read from
+     * @return the loaded engine
+     * @throws IOException if reading fails or the pattern is malformed
+     */
+    public static PrimitiveEngine readPlaintext(ReadableByteChannel in) throws IOException {
+        EngineSink sink = new EngineSink();
+        readPlaintext(in, sink);
+        return sink.engine;
+    }
+
+    /**
+     * Returns a sink that places a pattern at the top-left corner of the
+     * board of a generation: the cells of the pattern become alive with 0
+     * lifePoints, all the other cells of the board become dead, and the
+     * aliveness and lifePoints snapshots of the generation are updated to
+     * match, as if it had been created with this state.
+     *
+     * @param generation the generation to load the pattern into
+     * @return a sink writing into the board's cells and the generation
+     */
+    public static Sink into(Generation generation) {
+        Objects.requireNonNull(generation, "Generation cannot be null");
+        Board board = generation.getBoard();
+        Map<Cell, Boolean> aliveness = generation.getCellAlivenessStates();
+        Map<Cell, Integer> lifePoints = generation.getCellLifePoints();
+        return new Sink() {
+            private Tile[] grid;
+
+            @Override
+            public void begin(int width, int height) throws IOException {
+                if (width > board.getWidth() || height > board.getHeight()) {
+                    throw new IOException("Pattern of size " + width + "x" + height
+                        + " does not fit a " + board.getWidth() + "x" + board.getHeight() + " board");
+                }
+                grid = board.tileGrid();
+                for (Tile t : grid) {
+                    Cell c = t.getCell();
+                    c.setAlive(false);
+                    aliveness.put(c, false);
+                    lifePoints.put(c, c.getLifePoints());
+                }
+                Game game = generation.getGame();
+                if (game != null) game.generationChanged(generation);
+            }
+
+            @Override
+            public void aliveRun(int x, int y, int length) {
+                int base = y * board.getWidth() + x;
+                for (int k = 0; k < length; k++) {
+                    Cell c = grid[base + k].getCell();
+                    c.setAlive(true);
+                    c.setLifePoints(0);
+                    aliveness.put(c, true);
+                    lifePoints.put(c, 0);
+                }
+            }
+        };
+    }
+
+    private static class EngineSink implements Sink {
+        PrimitiveEngine engine;
+
+        @Override
+        public void begin(int width, int height) throws IOException {
+            if (width == 0 || height == 0) throw new IOException("Empty pattern");
+            engine = new PrimitiveEngine(width, height);
+        }
+
+        @Override
+        public void aliveRun(int x, int y, int length) {
+            int i = engine.index(x, y);
+            Arrays.fill(engine.alive, i, i + length, true);
+        }
+    }
+
+    // Writing
+
+    /**
+     * Writes the board of an engine as an RLE pattern.
+     *
+     * @param engine the engine to export
+     * @param out    the channel to write to
+     * @throws IOException if writing fails
+     */
+    public static void writeRle(PrimitiveEngine engine, WritableByteChannel out) throws IOException {
+        writeRle(engine.alive, engine.width, engine.height, out);
+    }
+
+    /**
+     * Writes the alive cells of a generation as an RLE pattern.
+     *
+     * @param generation the generation to export
+     * @param out        the channel to write to
+     * @throws IOException if writing fails
+     */
+    public static void writeRle(Generation generation, WritableByteChannel out) throws IOException {
+        Board b = generation.getBoard();
+        writeRle(aliveGrid(generation), b.getWidth(), b.getHeight(), out);
+    }
+
+    /**
+     * Writes the board of an engine as a plaintext pattern.
+     *
+     * @param engine the engine to export
+     * @param out    the channel to write to
+     * @throws IOException if writing fails
+     */
+    public static void writePlaintext(PrimitiveEngine engine, WritableByteChannel out) throws IOException {
+        writePlaintext(engine.alive, engine.width, engine.height, out);
+    }
+
+    /**
+     * Writes the alive cells of a generation as a plaintext pattern.
+     *
+     * @param generation the generation to export
+     * @param out        the channel to write to
+     * @throws IOException if writing fails
+     */
+    public static void writePlaintext(Generation generation, WritableByteChannel out) throws IOException {
+        Board b = generation.getBoard();
+        writePlaintext(aliveGrid(generation), b.getWidth(), b.getHeight(), out);
+    }
+
+    private static boolean[] aliveGrid(Generation generation) {
+        int width = generation.getBoard().getWidth();
+        boolean[] alive = new boolean[width * generation.getBoard().getHeight()];
+        for (Map.Entry<Cell, Boolean> e : generation.getCellAlivenessStates().entrySet()) {
+            if (e.getValue()) alive[e.getKey().getY() * width + e.getKey().getX()] = true;
+        }
+        return alive;
+    }
+
+    private static void writeRle(boolean[] alive, int width, int height, WritableByteChannel channel)
+            throws IOException {
+        ChannelOutput out = new ChannelOutput(channel);
+        out.writeAscii("x = " + width + ", y = " + height + ", rule = B3/S23\n");
+
+        int line = 0;        // length of the current body line
+        int pendingRows = 0; // row ends not yet written
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int x = 0, end = 0;
+            while (x < width) {
+                while (x < width && !alive[row + x]) x++;
+                if (x == width) break;
+                int start = x;
+                while (x < width && alive[row + x]) x++;
+                if (pendingRows > 0) {
+                    line = token(out, line, pendingRows, '$');
+                    pendingRows = 0;
+                }
+                if (start > end) line = token(out, line, start - end, 'b');
+                line = token(out, line, x - start, 'o');
+                end = x;
+            }
+            if (y < height - 1) pendingRows++;
+        }
+        out.write('!');
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Writes a run token, wrapping the line when needed.
+     *
+     * @return the new length of the current line
+     */
+    private static int token(ChannelOutput out, int line, int count, char tag) throws IOException {
+        int len = 1;
+        if (count > 1) {
+            for (int v = count; v > 0; v /= 10) len++;
+        }
+        if (line + len > RLE_LINE) {
+            out.write('\n');
+            line = 0;
+        }
+        if (count > 1) out.writeDecimal(count);
+        out.write(tag);
+        return line + len;
+    }
+
+    private static void writePlaintext(boolean[] alive, int width, int height, WritableByteChannel channel)
+            throws IOException {
+        ChannelOutput out = new ChannelOutput(channel);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                out.write(alive[row + x] ? 'O' : '.');
+            }
+            out.write('\n');
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,333 @@
+package it.polito.extgol;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Searchable index of the aliveness grids of a game's generations.
+ *
+ * For every indexed generation the index keeps a compact bitset of the board
+ * (row-major, one bit per tile) and an inverted index of its alive cells keyed
+ * by their 3×3 neighbourhood. The neighbourhood key is computed with a 2D
+ * rolling window (Rabin–Karp style): while scanning a row, the key of the next
+ * cell is obtained from the previous one by dropping the leftmost column and
+ * shifting in the new rightmost one. With a 3×3 window the 9-bit key is a
+ * perfect hash, so no collision checks are needed on the anchor cell.
+ *
+ * A query picks one alive cell of the pattern as anchor, looks up only the
+ * alive cells of each generation sharing its neighbourhood and verifies the
+ * rest of the pattern against the bitset. The cost of a query is therefore
+ * proportional to the number of candidate anchors, not to the board size.
+ *
+ * The index of a Game is obtained with {@link Game#getPatternIndex()} and is
+ * kept up to date as new generations are evolved.
+ */
+public class PatternIndex implements GenerationIndex {
+
+    /** Number of distinct 3×3 neighbourhood keys. */
+    private static final int KEYS = 1 << 9;
+
+    private final int width;
+    private final int height;
+    private final int words;
+
+    /** Aliveness bitset of each indexed generation, by step. */
+    private final List<long[]> grids = new ArrayList<>();
+
+    /** Start offsets of each key bucket in the postings, by step. */
+    private final List<int[]> bucketStarts = new ArrayList<>();
+
+    /** Row-major positions of the alive cells grouped by key, by step. */
+    private final List<int[]> postings = new ArrayList<>();
+
+    /**
+     * A single occurrence of a pattern: the generation step and the
+     * board coordinates of the pattern's top-left corner.
+     */
+    public static class Match {
+        private final int step;
+        private final int x;
+        private final int y;
+
+        Match(int step, int x, int y) {
+            this.step = step;
+            this.x = x;
+            this.y = y;
+        }
+
+        /**
+         * @return the step of the generation where the pattern appears
+         */
+        public int getStep() {
+            return step;
+        }
+
+        /**
+         * @return the column of the pattern's top-left corner
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * @return the row of the pattern's top-left corner
+         */
+        public int getY() {
+            return y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Match)) return false;
+            Match m = (Match) o;
+            return step == m.step && x == m.x && y == m.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(step, x, y);
+        }
+
+        @Override
+        public String toString() {
+            return step + ":" + x + "," + y;
+        }
+    }
+
+    /**
+     * Constructs an empty index for boards of the given size.
+     *
+     * @param width  the number of columns of the board
+     * @param height the number of rows of the board
+     */
+    public PatternIndex(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = (width * height + 63) >>> 6;
+    }
+
+    /**
+     * Returns the number of generations indexed so far; the next generation
+     * to be appended must have this step.
+     *
+     * @return the count of indexed generations
+     */
+    @Override
+    public int size() {
+        return grids.size();
+    }
+
+    /**
+     * Indexes the given generation, which must be the one following the
+     * last indexed generation.
+     *
+     * @param generation the generation to index
+     * @throws IllegalArgumentException if the generation is out of sequence
+     */
+    @Override
+    public void append(Generation generation) {
+        Objects.requireNonNull(generation, "Generation cannot be null");
+        if (generation.getStep() != size()) {
+            throw new IllegalArgumentException(
+                "Expected generation " + size() + " but got " + generation.getStep());
+        }
+        long[] grid = new long[words];
+        int alive = 0;
+        for (Map.Entry<Cell, Boolean> e : generation.getCellAlivenessStates().entrySet()) {
+            if (e.getValue()) {
+                Cell c = e.getKey();
+                int pos = c.getY() * width + c.getX();
+                grid[pos >>> 6] |= 1L << pos;
+                alive++;
+            }
+        }
+        index(grid, alive);
+    }
+
+    /**
+     * Builds the key buckets for a generation bitset and stores them.
+     */
+    private void index(long[] grid, int alive) {
+        int[] keys = new int[alive];
+        int[] positions = new int[alive];
+        int[] starts = new int[KEYS + 1];
+        int n = 0;
+
+        for (int y = 0; y < height; y++) {
+            // rolling 3x3 window: bits 0-2 left column, 3-5 centre, 6-8 right
+            int key = column(grid, 0, y) << 6;
+            for (int x = 0; x < width; x++) {
+                key = (key >>> 3) | (column(grid, x + 1, y) << 6);
+                if ((key & 0b000_010_000) != 0) {
+                    keys[n] = key;
+                    positions[n] = y * width + x;
+                    starts[key + 1]++;
+                    n++;
+                }
+            }
+        }
+        for (int k = 0; k < KEYS; k++) {
+            starts[k + 1] += starts[k];
+        }
+        int[] fill = starts.clone();
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) {
+            sorted[fill[keys[i]]++] = positions[i];
+        }
+
+        grids.add(grid);
+        bucketStarts.add(starts);
+        postings.add(sorted);
+    }
+
+    /**
+     * Returns the three vertical bits of column x around row y,
+     * treating positions outside the board as dead.
+     */
+    private int column(long[] grid, int x, int y) {
+        if (x < 0 || x >= width) return 0;
+        return (isAlive(grid, x, y - 1) ? 1 : 0)
+             | (isAlive(grid, x, y) ? 2 : 0)
+             | (isAlive(grid, x, y + 1) ? 4 : 0);
+    }
+
+    private boolean isAlive(long[] grid, int x, int y) {
+        if (y < 0 || y >= height) return false;
+        int pos = y * width + x;
+        return (grid[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    /**
+     * Checks whether the cell at the given coordinates was alive at the given step.
+     *
+     * @param step the indexed generation step
+     * @param x    the column
+     * @param y    the row
+     * @return true if the cell was alive
+     */
+    public boolean isAlive(int step, int x, int y) {
+        if (x < 0 || x >= width) return false;
+        return isAlive(grids.get(step), x, y);
+    }
+
+    /**
+     * Finds all the occurrences of a pattern written in the same notation
+     * used by {@link Board#visualize(Generation)}: one line per row,
+     * {@code '0'} (or {@code '.'}) for dead cells and any other character
+     * for alive cells.
+     *
+     * @param pattern  the textual pattern
+     * @param fromStep the first generation step to search (inclusive)
+     * @param toStep   the last generation step to search (inclusive)
+     * @return the matches ordered by step, then row, then column
+     */
+    public List<Match> find(String pattern, int fromStep, int toStep) {
+        Objects.requireNonNull(pattern, "Pattern cannot be null");
+        String[] lines = pattern.strip().split("\\R");
+        boolean[][] rows = new boolean[lines.length][];
+        for (int y = 0; y < lines.length; y++) {
+            String line = lines[y].strip();
+            rows[y] = new boolean[line.length()];
+            for (int x = 0; x < line.length(); x++) {
+                char ch = line.charAt(x);
+                rows[y][x] = ch != '0' && ch != '.';
+            }
+        }
+        return find(rows, fromStep, toStep);
+    }
+
+    /**
+     * Finds all the occurrences of a rectangular pattern: every alive cell of
+     * the pattern must be alive and every dead one must be dead on the board.
+     *
+     * @param pattern  the pattern as rows of aliveness flags, {@code pattern[y][x]}
+     * @param fromStep the first generation step to search (inclusive)
+     * @param toStep   the last generation step to search (inclusive)
+     * @return the matches ordered by step, then row, then column
+     * @throws IllegalArgumentException if the pattern is not rectangular or has no alive cell
+     */
+    public List<Match> find(boolean[][] pattern, int fromStep, int toStep) {
+        Objects.requireNonNull(pattern, "Pattern cannot be null");
+        int ph = pattern.length;
+        int pw = ph > 0 ? pattern[0].length : 0;
+        for (boolean[] row : pattern) {
+            if (row.length != pw) {
+                throw new IllegalArgumentException("Pattern rows must have the same length");
+            }
+        }
+
+        // choose as anchor the alive cell whose neighbourhood is best known
+        int ax = -1, ay = -1, bestUnknown = Integer.MAX_VALUE;
+        for (int y = 0; y < ph; y++) {
+            for (int x = 0; x < pw; x++) {
+                if (!pattern[y][x]) continue;
+                int unknown = 0;
+                for (int dx = -1; dx <= 1; dx++)
+                    for (int dy = -1; dy <= 1; dy++)
+                        if (x + dx < 0 || x + dx >= pw || y + dy < 0 || y + dy >= ph) unknown++;
+                if (unknown < bestUnknown) {
+                    bestUnknown = unknown;
+                    ax = x;
+                    ay = y;
+                }
+            }
+        }
+        if (ax < 0) {
+            throw new IllegalArgumentException("Pattern must contain at least one alive cell");
+        }
+
+        // known bits of the anchor key and positions of the unknown ones
+        int known = 0;
+        int[] unknownBits = new int[bestUnknown];
+        int u = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                int bit = (dx + 1) * 3 + (dy + 1);
+                int px = ax + dx, py = ay + dy;
+                if (px < 0 || px >= pw || py < 0 || py >= ph) unknownBits[u++] = bit;
+                else if (pattern[py][px]) known |= 1 << bit;
+            }
+        }
+        int[] keys = new int[1 << bestUnknown];
+        for (int m = 0; m < keys.length; m++) {
+            int key = known;
+            for (int b = 0; b < bestUnknown; b++)
+                if ((m & (1 << b)) != 0) key |= 1 << unknownBits[b];
+            keys[m] = key;
+        }
+
+        List<Match> matches = new ArrayList<>();
+        int last = Math.min(toStep, size() - 1);
+        for (int step = Math.max(0, fromStep); step <= last; step++) {
+            long[] grid = grids.get(step);
+            int[] starts = bucketStarts.get(step);
+            int[] posts = postings.get(step);
+            for (int key : keys) {
+                for (int i = starts[key]; i < starts[key + 1]; i++) {
+                    int ox = posts[i] % width - ax;
+                    int oy = posts[i] / width - ay;
+                    if (ox < 0 || oy < 0 || ox + pw > width || oy + ph > height) continue;
+                    if (matchesAt(grid, pattern, ox, oy)) {
+                        matches.add(new Match(step, ox, oy));
+                    }
+                }
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::getStep)
+                               .thenComparingInt(Match::getY)
+                               .thenComparingInt(Match::getX));
+        return matches;
+    }
+
+    private boolean matchesAt(long[] grid, boolean[][] pattern, int ox, int oy) {
+        for (int y = 0; y < pattern.length; y++) {
+            for (int x = 0; x < pattern[y].length; x++) {
+                if (isAlive(grid, ox + x, oy + y) != pattern[y][x]) return false;
+            }
+        }
+        return true;
+    }
+}
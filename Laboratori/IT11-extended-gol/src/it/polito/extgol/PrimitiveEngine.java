@@ -0,0 +1,514 @@
+package it.polito.extgol;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * JPA-free simulation engine working on primitive arrays.
+ *
+ * The engine stores the whole state of the extended game (aliveness,
+ * lifePoints, HIGHLANDER death counters, types, moods, pending moods,
+ * BLOOD_MOON flags and tile modifiers) as struct-of-arrays columns indexed
+ * by position, and evolves it with the same rules implemented by
+ * {@link ExtendedGameOfLife#evolve(Generation)} and {@link Game#unrollEvent}.
+ *
+ * The interaction phase of the object model depends on the iteration order
+ * of the tiles, which is not specified. The engine fixes it: initiators are
+ * processed in row-major order and each one visits its neighbours by row,
+ * then column. Whenever the outcome of the interactions does not depend on
+ * their order, the engine matches the object model exactly.
+ *
+ * An engine may cover only a rectangular window of a larger board: this is
+ * used by {@link DistributedSimulation} workers, which own a region of the
+ * board and keep a halo of neighbouring cells around it.
+ */
+public class PrimitiveEngine {
+
+    static final byte NO_MOOD = -1;
+    static final byte NAIVE = (byte) CellMood.NAIVE.ordinal();
+    static final byte VAMPIRE = (byte) CellMood.VAMPIRE.ordinal();
+    static final byte HEALER = (byte) CellMood.HEALER.ordinal();
+
+    private static final CellMood[] MOODS = CellMood.values();
+    private static final CellType[] TYPES = CellType.values();
+
+    /** Board size. */
+    final int boardWidth;
+    final int boardHeight;
+
+    /** Window covered by this engine, in board coordinates. */
+    final int x0;
+    final int y0;
+    final int width;
+    final int height;
+
+    final boolean[] alive;
+    final int[] lifePoints;
+    final int[] countDeaths;
+    final byte[] type;
+    final byte[] mood;
+    final byte[] nextMood;
+    final boolean[] canTurn;
+    final int[] modifier;
+
+    /** Scratch buffer for the next aliveness states. */
+    private final boolean[] next;
+
+    /** Number of steps evolved so far. */
+    private int step;
+
+    /**
+     * Constructs an engine for an empty extended board of the given size:
+     * all cells dead, BASIC and NAIVE, all tile modifiers set to zero.
+     *
+     * @param width  the number of columns of the board
+     * @param height the number of rows of the board
+     */
+    public PrimitiveEngine(int width, int height) {
+        this(width, height, 0, 0, width, height);
+    }
+
+    /**
+     * Constructs an engine covering a window of a board.
+     */
+    PrimitiveEngine(int boardWidth, int boardHeight, int x0, int y0, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Board dimensions must be positive");
+        }
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.width = width;
+        this.height = height;
+        int n = width * height;
+        alive = new boolean[n];
+        lifePoints = new int[n];
+        countDeaths = new int[n];
+        type = new byte[n];
+        mood = new byte[n];
+        nextMood = new byte[n];
+        canTurn = new boolean[n];
+        modifier = new int[n];
+        next = new boolean[n];
+    }
+
+    /**
+     * Captures the current state of all the cells and tiles of a Board.
+     *
+     * @param board the board to copy
+     * @return a new engine holding the same state
+     */
+    public static PrimitiveEngine of(Board board) {
+        Objects.requireNonNull(board, "Board cannot be null");
+        PrimitiveEngine e = new PrimitiveEngine(board.getWidth(), board.getHeight());
+        for (Tile t : board.getTiles()) {
+            Cell c = t.getCell();
+            int i = e.index(t.getX(), t.getY());
+            e.alive[i] = c.isAlive();
+            e.lifePoints[i] = c.getLifePoints();
+            e.countDeaths[i] = c.getCountDeaths();
+            e.type[i] = (byte) c.getType().ordinal();
+            e.mood[i] = code(c.getMood());
+            e.nextMood[i] = code(c.getNextMood());
+            e.canTurn[i] = c.canTurnHealerIntoVampire();
+            e.modifier[i] = t.getLifePointModifier() == null ? 0 : t.getLifePointModifier();
+        }
+        return e;
+    }
+
+    /**
+     * Writes the state held by this engine into the cells of a Board
+     * of the same size.
+     *
+     * @param board the board to update
+     */
+    public void applyTo(Board board) {
+        for (Tile t : board.getTiles()) {
+            Cell c = t.getCell();
+            int i = index(t.getX(), t.getY());
+            c.setAlive(alive[i]);
+            c.setLifePoints(lifePoints[i]);
+            c.setCountDeaths(countDeaths[i]);
+            c.setType(TYPES[type[i]]);
+            c.setMood(mood(mood[i]));
+            c.setNextMood(mood(nextMood[i]));
+            c.setCanTurnHealerIntoVampire(canTurn[i]);
+            t.setLifePointModifier(modifier[i]);
+        }
+    }
+
+    static byte code(CellMood m) {
+        return m == null ? NO_MOOD : (byte) m.ordinal();
+    }
+
+    static CellMood mood(byte code) {
+        return code == NO_MOOD ? null : MOODS[code];
+    }
+
+    /**
+     * Returns the array index of the given board coordinates.
+     */
+    final int index(int x, int y) {
+        return (y - y0) * width + (x - x0);
+    }
+
+    // Accessors
+
+    /**
+     * Returns the number of columns of the board.
+     *
+     * @return the board width
+     */
+    public int getWidth() {
+        return boardWidth;
+    }
+
+    /**
+     * Returns the number of rows of the board.
+     *
+     * @return the board height
+     */
+    public int getHeight() {
+        return boardHeight;
+    }
+
+    /**
+     * Returns the number of generations evolved so far.
+     *
+     * @return the current step
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Checks whether a cell is alive.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return true if the cell is alive
+     */
+    public boolean isAlive(int x, int y) {
+        return alive[index(x, y)];
+    }
+
+    /**
+     * Sets a cell alive or dead; as in {@link Generation#setState} a cell
+     * set alive starts with zero lifePoints.
+     *
+     * @param x     the column of the cell
+     * @param y     the row of the cell
+     * @param state the new aliveness
+     */
+    public void setAlive(int x, int y, boolean state) {
+        int i = index(x, y);
+        alive[i] = state;
+        if (state) lifePoints[i] = 0;
+    }
+
+    /**
+     * Retrieves the lifePoints of a cell.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return the cell lifePoints
+     */
+    public int getLifePoints(int x, int y) {
+        return lifePoints[index(x, y)];
+    }
+
+    /**
+     * Updates the lifePoints of a cell.
+     *
+     * @param x  the column of the cell
+     * @param y  the row of the cell
+     * @param lp the new lifePoints
+     */
+    public void setLifePoints(int x, int y, int lp) {
+        lifePoints[index(x, y)] = lp;
+    }
+
+    /**
+     * Retrieves the type of a cell.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return the cell type
+     */
+    public CellType getType(int x, int y) {
+        return TYPES[type[index(x, y)]];
+    }
+
+    /**
+     * Assigns the type of a cell.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @param t the new type
+     */
+    public void setType(int x, int y, CellType t) {
+        type[index(x, y)] = (byte) t.ordinal();
+    }
+
+    /**
+     * Retrieves the mood of a cell.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @return the cell mood, or null if it has none
+     */
+    public CellMood getMood(int x, int y) {
+        return mood(mood[index(x, y)]);
+    }
+
+    /**
+     * Sets the mood of a cell. As in {@link Cell#setMood(CellMood)}, the
+     * pending mood applied at the next generation is not changed.
+     *
+     * @param x the column of the cell
+     * @param y the row of the cell
+     * @param m the new mood
+     */
+    public void setMood(int x, int y, CellMood m) {
+        mood[index(x, y)] = code(m);
+    }
+
+    /**
+     * Retrieves the lifePoints modifier of a tile.
+     *
+     * @param x the column of the tile
+     * @param y the row of the tile
+     * @return the tile modifier
+     */
+    public int getLifePointModifier(int x, int y) {
+        return modifier[index(x, y)];
+    }
+
+    /**
+     * Updates the lifePoints modifier of a tile.
+     *
+     * @param x   the column of the tile
+     * @param y   the row of the tile
+     * @param mod the new modifier
+     */
+    public void setLifePointModifier(int x, int y, int mod) {
+        modifier[index(x, y)] = mod;
+    }
+
+    /**
+     * Counts the alive cells covered by this engine.
+     *
+     * @return the number of alive cells
+     */
+    public int countAlive() {
+        int n = 0;
+        for (boolean a : alive) if (a) n++;
+        return n;
+    }
+
+    /**
+     * Checks whether another engine holds exactly the same state.
+     *
+     * @param other the engine to compare
+     * @return true if every column is equal
+     */
+    public boolean sameStateAs(PrimitiveEngine other) {
+        return other != null
+            && boardWidth == other.boardWidth && boardHeight == other.boardHeight
+            && x0 == other.x0 && y0 == other.y0
+            && width == other.width && height == other.height
+            && Arrays.equals(alive, other.alive)
+            && Arrays.equals(lifePoints, other.lifePoints)
+            && Arrays.equals(countDeaths, other.countDeaths)
+            && Arrays.equals(type, other.type)
+            && Arrays.equals(mood, other.mood)
+            && Arrays.equals(nextMood, other.nextMood)
+            && Arrays.equals(canTurn, other.canTurn)
+            && Arrays.equals(modifier, other.modifier);
+    }
+
+    // Simulation
+
+    /**
+     * Evolves the board by one generation.
+     */
+    public void step() {
+        step(null);
+    }
+
+    /**
+     * Applies the given event (if any) and evolves the board by one generation.
+     *
+     * @param event the event to apply before evolving, or null
+     */
+    public void step(EventType event) {
+        int x1 = x0 + width, y1 = y0 + height;
+        applyEvent(event, x0, y0, x1, y1);
+        applyTiles(x0, y0, x1, y1);
+        interact(x0, y0, x1, y1);
+        evolve(x0, y0, x1, y1);
+    }
+
+    /**
+     * Evolves the board for the given number of steps, applying the events
+     * scheduled for each step as {@link ExtendedGameOfLife#run(Game, int, Map)} does.
+     *
+     * @param steps    the number of generations to evolve
+     * @param eventMap the events keyed by step, may be empty
+     */
+    public void run(int steps, Map<Integer, EventType> eventMap) {
+        for (int i = 0; i < steps; i++) {
+            step(eventMap.get(step));
+        }
+    }
+
+    /**
+     * Applies a global event to the alive cells in [xa,xb) × [ya,yb).
+     */
+    void applyEvent(EventType event, int xa, int ya, int xb, int yb) {
+        if (event == null) return;
+        for (int y = ya; y < yb; y++) {
+            for (int i = index(xa, y), end = i + (xb - xa); i < end; i++) {
+                if (!alive[i]) continue;
+                switch (event) {
+                    case CATACLYSM -> lifePoints[i] = 0;
+                    case FAMINE -> lifePoints[i]--;
+                    case BLOOM -> lifePoints[i] += 2;
+                    case BLOOD_MOON -> canTurn[i] = true;
+                    case SANCTUARY -> {
+                        if (mood[i] == HEALER) lifePoints[i]++;
+                        if (mood[i] == VAMPIRE) mood[i] = NAIVE;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the tile modifiers to the alive cells in [xa,xb) × [ya,yb).
+     */
+    void applyTiles(int xa, int ya, int xb, int yb) {
+        for (int y = ya; y < yb; y++) {
+            for (int i = index(xa, y), end = i + (xb - xa); i < end; i++) {
+                if (alive[i]) lifePoints[i] += modifier[i];
+            }
+        }
+    }
+
+    /**
+     * Runs the interaction phase for the initiators in [xa,xb) × [ya,yb),
+     * in row-major order, against their neighbours within the window.
+     */
+    void interact(int xa, int ya, int xb, int yb) {
+        for (int y = ya; y < yb; y++) {
+            for (int x = xa; x < xb; x++) {
+                int i = index(x, y);
+                byte my = mood[i];
+                if (my != HEALER && my != VAMPIRE) continue;
+                for (int dy = -1; dy <= 1; dy++) {
+                    int ny = y + dy;
+                    if (ny < y0 || ny >= y0 + height) continue;
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int nx = x + dx;
+                        if ((dx == 0 && dy == 0) || nx < x0 || nx >= x0 + width) continue;
+                        interact(i, index(nx, ny));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Same rules as {@link Cell#interact(Cell)}.
+     */
+    final void interact(int i, int o) {
+        if (!alive[o]) return;
+        byte my = mood[i];
+        byte their = mood[o];
+        if (my == HEALER && their == NAIVE) {
+            if (lifePoints[i] >= 0) {
+                lifePoints[o]++;
+            }
+        } else if (my == HEALER && their == VAMPIRE) {
+            if (lifePoints[i] >= 0) {
+                lifePoints[i]--;
+                lifePoints[o]++;
+            }
+            if (canTurn[o]) nextMood[i] = VAMPIRE;
+        } else if (my == VAMPIRE && their == NAIVE) {
+            if (lifePoints[o] >= 0) {
+                lifePoints[o]--;
+                lifePoints[i]++;
+                nextMood[o] = VAMPIRE;
+            }
+        }
+    }
+
+    /**
+     * Computes and applies the next state of the cells in [xa,xb) × [ya,yb);
+     * neighbour aliveness is read from the whole window.
+     */
+    void evolve(int xa, int ya, int xb, int yb) {
+        for (int y = ya; y < yb; y++) {
+            for (int x = xa; x < xb; x++) {
+                int i = index(x, y);
+                next[i] = evolve(i, countAliveNeighbors(x, y));
+            }
+        }
+        for (int y = ya; y < yb; y++) {
+            for (int i = index(xa, y), end = i + (xb - xa); i < end; i++) {
+                alive[i] = next[i];
+                canTurn[i] = false;
+                mood[i] = nextMood[i];
+            }
+        }
+        step++;
+    }
+
+    private int countAliveNeighbors(int x, int y) {
+        int count = 0;
+        for (int ny = Math.max(y - 1, y0); ny <= Math.min(y + 1, y0 + height - 1); ny++) {
+            for (int nx = Math.max(x - 1, x0); nx <= Math.min(x + 1, x0 + width - 1); nx++) {
+                if ((nx != x || ny != y) && alive[index(nx, ny)]) count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Same rules as {@link Cell#evolve(int)}.
+     */
+    private boolean evolve(int i, int aliveNeighbors) {
+        boolean willLive = alive[i];
+        if (!willLive) {
+            if (aliveNeighbors == 3) {
+                lifePoints[i] = 0;
+                return true;
+            }
+            return false;
+        }
+        CellType t = TYPES[type[i]];
+        switch (t) {
+            case HIGHLANDER:
+                if (aliveNeighbors < 2 || aliveNeighbors > 3) {
+                    countDeaths[i]++;
+                } else {
+                    countDeaths[i] = 0;
+                }
+                if (countDeaths[i] >= 3) willLive = false;
+                break;
+            case SOCIAL:
+                if (aliveNeighbors < 2) willLive = false;
+                break;
+            default:
+                if (aliveNeighbors < t.getMinNeighbors() || aliveNeighbors > t.getMaxNeighbors())
+                    willLive = false;
+        }
+        if (willLive) lifePoints[i]++;
+        else lifePoints[i]--;
+        if (lifePoints[i] < 0) willLive = false;
+        return willLive;
+    }
+}
@@ -0,0 +1,82 @@
+package it.polito.extgol.test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import it.polito.extgol.CellMood;
+import it.polito.extgol.CellType;
+import it.polito.extgol.DistributedSimulation;
+import it.polito.extgol.EventType;
+import it.polito.extgol.PrimitiveEngine;
+
+public class ExtGOLDistributedTests {
+
+    private static final Map<Integer, EventType> EVENTS = Map.of(
+        2, EventType.BLOOD_MOON, 4, EventType.BLOOM, 6, EventType.SANCTUARY, 9, EventType.FAMINE);
+
+    /**
+     * Builds a random board with every cell type and mood and some tile modifiers.
+     */
+    private static PrimitiveEngine randomBoard(int w, int h, long seed) {
+        Random rnd = new Random(seed);
+        PrimitiveEngine e = new PrimitiveEngine(w, h);
+        CellType[] types = CellType.values();
+        CellMood[] moods = CellMood.values();
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                e.setType(x, y, types[rnd.nextInt(types.length)]);
+                e.setMood(x, y, moods[rnd.nextInt(moods.length)]);
+                e.setAlive(x, y, rnd.nextInt(100) < 40);
+                e.setLifePoints(x, y, rnd.nextInt(4));
+                if (rnd.nextInt(10) == 0) e.setLifePointModifier(x, y, rnd.nextInt(5) - 2);
+            }
+        }
+        return e;
+    }
+
+    private static void assertSameAsSingleEngine(DistributedSimulation.Mode mode, int columns, int rows)
+            throws Exception {
+        PrimitiveEngine expected = randomBoard(23, 17, 42);
+        try (DistributedSimulation sim =
+                 new DistributedSimulation(randomBoard(23, 17, 42), columns, rows, mode)) {
+            assertEquals(columns * rows, sim.getWorkers());
+            for (int s = 0; s < 12; s++) {
+                expected.step(EVENTS.get(s));
+                assertEquals(expected.countAlive(), sim.step(EVENTS.get(s)));
+            }
+            assertTrue(expected.sameStateAs(sim.gather()));
+        }
+    }
+
+    @Test
+    public void testThreadWorkersMatchSingleEngine() throws Exception {
+        assertSameAsSingleEngine(DistributedSimulation.Mode.THREADS, 3, 2);
+    }
+
+    @Test
+    public void testNarrowRegionsMatchSingleEngine() throws Exception {
+        // regions narrower than the halo exchange data with non-adjacent workers
+        assertSameAsSingleEngine(DistributedSimulation.Mode.THREADS, 7, 5);
+    }
+
+    @Test
+    public void testProcessWorkersMatchSingleEngine() throws Exception {
+        assertSameAsSingleEngine(DistributedSimulation.Mode.PROCESSES, 2, 2);
+    }
+
+    @Test
+    public void testRunFollowsEventSchedule() throws Exception {
+        PrimitiveEngine expected = randomBoard(12, 12, 7);
+        expected.run(10, EVENTS);
+        try (DistributedSimulation sim = new DistributedSimulation(
+                 randomBoard(12, 12, 7), 2, 3, DistributedSimulation.Mode.THREADS)) {
+            assertEquals(expected.countAlive(), sim.run(10, EVENTS));
+            assertEquals(10, sim.getStep());
+            assertTrue(expected.sameStateAs(sim.gather()));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package it.polito.extgol.test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import it.polito.extgol.CellMood;
+import it.polito.extgol.CellType;
+import it.polito.extgol.EnsembleRunner;
+import it.polito.extgol.EnsembleStatistics;
+import it.polito.extgol.EnsembleStatistics.Metric;
+import it.polito.extgol.EventType;
+import it.polito.extgol.PrimitiveEngine;
+
+public class ExtGOLEnsembleTests {
+
+    private static EnsembleRunner runner() {
+        return new EnsembleRunner(16, 16, 30)
+            .density(0.35)
+            .types(Map.of(CellType.BASIC, 2.0, CellType.LONER, 1.0, CellType.SOCIAL, 1.0))
+            .moods(Map.of(CellMood.NAIVE, 3.0, CellMood.HEALER, 1.0, CellMood.VAMPIRE, 1.0))
+            .modifiers(0.05, -1, 2)
+            .events(Map.of(10, EventType.BLOOM));
+    }
+
+    @Test
+    public void testSameSeedSameStatisticsAcrossThreadCounts() {
+        EnsembleStatistics one = runner().run(200, 1234L, 1);
+        EnsembleStatistics many = runner().run(200, 1234L, 4);
+
+        assertEquals(200, one.getRuns());
+        assertEquals(one.getExtinctionRate(), many.getExtinctionRate(), 0);
+        for (Metric m : Metric.values()) {
+            assertEquals(one.mean(m), many.mean(m), 0);
+            assertEquals(one.variance(m), many.variance(m), 0);
+        }
+        assertArrayEquals(one.getEnergyHistogram(), many.getEnergyHistogram());
+    }
+
+    @Test
+    public void testInitialBoardsAreReproducible() {
+        EnsembleRunner r = runner();
+        assertTrue(r.initialBoard(7L, 3).sameStateAs(r.initialBoard(7L, 3)));
+        PrimitiveEngine a = r.initialBoard(7L, 3), b = r.initialBoard(7L, 4);
+        assertTrue(!a.sameStateAs(b));
+        for (int y = 0; y < a.getHeight(); y++)
+            for (int x = 0; x < a.getWidth(); x++)
+                assertTrue(a.getType(x, y) != CellType.HIGHLANDER);
+    }
+
+    @Test
+    public void testConfidenceIntervalContainsMean() {
+        EnsembleStatistics stats = runner().run(100, 99L);
+        double mean = stats.mean(Metric.FINAL_POPULATION);
+        double[] ci95 = stats.confidenceInterval(Metric.FINAL_POPULATION, 0.95);
+        double[] ci99 = stats.confidenceInterval(Metric.FINAL_POPULATION, 0.99);
+        assertTrue(ci95[0] <= mean && mean <= ci95[1]);
+        assertTrue(ci99[0] <= ci95[0] && ci95[1] <= ci99[1]);
+        // 1.96 standard errors for a 95% interval
+        double se = Math.sqrt(stats.variance(Metric.FINAL_POPULATION) / stats.getRuns());
+        assertEquals(1.96 * se, ci95[1] - mean, 0.01 * se + 1e-9);
+
+        double[] ext = stats.extinctionConfidenceInterval(0.95);
+        assertTrue(ext[0] <= stats.getExtinctionRate() && stats.getExtinctionRate() <= ext[1]);
+    }
+}
@@ -0,0 +1,124 @@
+package it.polito.extgol.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.extgol.Board;
+import it.polito.extgol.Cell;
+import it.polito.extgol.CellMood;
+import it.polito.extgol.Coord;
+import it.polito.extgol.ExtendedGameOfLife;
+import it.polito.extgol.Game;
+import it.polito.extgol.Generation;
+import it.polito.extgol.HistoryStore;
+import it.polito.extgol.JPAUtil;
+
+public class ExtGOLHistoryStoreTests {
+    private ExtendedGameOfLife facade;
+    private Game game;
+    private Board board;
+
+    @AfterClass
+    public static void closeDB() {
+        JPAUtil.close();
+    }
+
+    @Before
+    public void setUp() {
+        facade = new ExtendedGameOfLife();
+        game = Game.createExtended("HistoryGame", 6, 6);
+        board = game.getBoard();
+        Generation.createInitial(game, board, List.of(
+            new Coord(1, 1), new Coord(2, 1), new Coord(1, 2), new Coord(2, 2),
+            new Coord(4, 3), new Coord(4, 4), new Coord(4, 5)
+        ));
+        Board.setInteractableTile(board, new Coord(1, 1), 2);
+    }
+
+    @Test
+    public void testLiveStoreMatchesGenerations() {
+        HistoryStore store = game.getHistoryStore();
+        facade.run(game, 5);
+
+        assertEquals(6, store.size());
+        for (Generation g : game.getGenerations()) {
+            for (Map.Entry<Cell, Boolean> e : g.getCellAlivenessStates().entrySet()) {
+                Cell c = e.getKey();
+                assertEquals(e.getValue(), store.isAlive(g.getStep(), c.getX(), c.getY()));
+                assertEquals((int) g.getCellLifePoints().get(c),
+                             store.getLifePoints(g.getStep(), c.getX(), c.getY()));
+            }
+            assertEquals(g.getAliveCells().size(), store.countAlive(g.getStep()));
+        }
+        // the moods of the initial generation were not observed by the store
+        assertFalse(store.isMoodRecorded(0));
+        assertNull(store.getMood(0, 1, 1));
+        assertEquals(0, store.countMoods(0).values().stream().mapToInt(i -> i).sum());
+        Generation last = game.getGenerations().get(5);
+        assertTrue(store.isMoodRecorded(5));
+        assertEquals(board.countCells(last).intValue(),
+                     store.countMoods(5).values().stream().mapToInt(i -> i).sum());
+    }
+
+    @Test
+    public void testStoreRebuiltAfterRun() {
+        facade.run(game, 4);
+        HistoryStore store = game.getHistoryStore();
+
+        Cell corner = board.getTile(new Coord(1, 1)).getCell();
+        int[] expected = new int[5];
+        int aliveRun = 0, longest = 0;
+        for (Generation g : game.getGenerations()) {
+            expected[g.getStep()] = g.getCellLifePoints().get(corner);
+            aliveRun = g.getCellAlivenessStates().get(corner) ? aliveRun + 1 : 0;
+            longest = Math.max(longest, aliveRun);
+        }
+        assertArrayEquals(expected, store.lifePointsSeries(1, 1));
+        assertEquals(longest, store.longestAliveRun(1, 1));
+        assertEquals(Arrays.stream(expected).average().getAsDouble(),
+                     store.averageLifePointsPerCell()[1 * 6 + 1], 1e-9);
+        // moods of generations evolved before the store existed are unknown
+        for (int step = 0; step < store.size(); step++) {
+            assertFalse(store.isMoodRecorded(step));
+            assertNull(store.getMood(step, 1, 1));
+        }
+    }
+
+    @Test
+    public void testWindowedAggregates() {
+        facade.run(game, 4);
+        HistoryStore store = game.getHistoryStore();
+
+        double[] alive = store.windowedAliveAverage(0, 4, 2);
+        for (int s = 0; s <= 4; s++) {
+            double expected = s == 0 ? store.countAlive(0)
+                                     : (store.countAlive(s) + store.countAlive(s - 1)) / 2.0;
+            assertEquals(expected, alive[s], 1e-9);
+        }
+
+        double[] lp = store.windowedLifePointsAverage(2, 2, 1);
+        assertEquals(store.lifePointsStatistics(2).getAverage(), lp[0], 1e-9);
+    }
+
+    @Test
+    public void testWindowedAggregatesRejectInvalidRanges() {
+        facade.run(game, 4);
+        HistoryStore store = game.getHistoryStore();
+
+        assertThrows(IllegalArgumentException.class, () -> store.windowedAliveAverage(-1, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> store.windowedAliveAverage(0, store.size(), 2));
+        assertThrows(IllegalArgumentException.class, () -> store.windowedLifePointsAverage(3, 2, 2));
+        assertThrows(IllegalArgumentException.class, () -> store.windowedLifePointsAverage(0, 2, 0));
+    }
+}
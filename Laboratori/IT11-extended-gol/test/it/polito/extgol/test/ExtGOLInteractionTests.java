@@ -0,0 +1,112 @@
+package it.polito.extgol.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import it.polito.extgol.Board;
+import it.polito.extgol.Cell;
+import it.polito.extgol.CellMood;
+import it.polito.extgol.Coord;
+import it.polito.extgol.ExtendedGameOfLife;
+import it.polito.extgol.Game;
+import it.polito.extgol.Generation;
+import it.polito.extgol.JPAUtil;
+import it.polito.extgol.Tile;
+
+public class ExtGOLInteractionTests {
+
+    @AfterClass
+    public static void closeDB() {
+        JPAUtil.close();
+    }
+
+    /**
+     * The scheduled evolve must leave every cell exactly as the exhaustive
+     * per-tile loop did, dead HEALER and VAMPIRE initiators included.
+     */
+    @Test
+    public void testScheduledInteractionsMatchExhaustiveLoop() {
+        Game expectedGame = randomGame("ExhaustiveGame", 11);
+        Game game = randomGame("InteractionGame", 11);
+
+        exhaustiveEvolve(expectedGame.getBoard());
+        new ExtendedGameOfLife().run(game, 1);
+
+        Board expected = expectedGame.getBoard();
+        for (Tile t : game.getBoard().getTiles()) {
+            Cell c = t.getCell();
+            Cell e = expected.getTile(new Coord(c.getX(), c.getY())).getCell();
+            assertEquals(e.isAlive(), c.isAlive());
+            assertEquals(e.getLifePoints(), c.getLifePoints());
+            assertEquals(e.getMood(), c.getMood());
+        }
+    }
+
+    private static Game randomGame(String name, long seed) {
+        Random rnd = new Random(seed);
+        Game game = Game.createExtended(name, 12, 12);
+        Board board = game.getBoard();
+        List<Coord> alive = new ArrayList<>();
+        for (int y = 0; y < 12; y++)
+            for (int x = 0; x < 12; x++)
+                if (rnd.nextInt(100) < 45) alive.add(new Coord(x, y));
+        Generation.createInitial(game, board, alive);
+
+        CellMood[] moods = CellMood.values();
+        for (Tile t : board.getTiles()) {
+            Cell c = t.getCell();
+            c.setMood(rnd.nextInt(4) == 0 ? moods[rnd.nextInt(moods.length)] : CellMood.NAIVE);
+            c.setLifePoints(rnd.nextInt(4) - 1);
+            if (rnd.nextInt(6) == 0) t.setLifePointModifier(rnd.nextInt(5) - 2);
+        }
+        return game;
+    }
+
+    /**
+     * The cell updates of evolve as they were before interactions were
+     * scheduled: every tile, then every cell against all its neighbours.
+     */
+    private static void exhaustiveEvolve(Board board) {
+        for (Tile tile : board.getTiles()) {
+            tile.interact(tile.getCell());
+        }
+        for (Tile tile : board.getTiles()) {
+            Cell c = tile.getCell();
+            for (Tile neighbor : c.getNeighbors()) {
+                c.interact(neighbor.getCell());
+            }
+        }
+        Map<Cell, Boolean> nextStates = new HashMap<>();
+        for (Tile tile : board.getTiles()) {
+            Cell c = tile.getCell();
+            nextStates.put(c, c.evolve(c.countAliveNeighbors()));
+        }
+        for (Map.Entry<Cell, Boolean> e : nextStates.entrySet()) {
+            Cell c = e.getKey();
+            c.setAlive(e.getValue());
+            c.setCanTurnHealerIntoVampire(false);
+            c.nextMood();
+        }
+    }
+
+    @Test
+    public void testNaiveBoardIgnoresZeroModifiers() {
+        Game game = Game.createExtended("NaiveGame", 5, 5);
+        Board board = game.getBoard();
+        Generation.createInitial(game, board, List.of(new Coord(1, 1), new Coord(1, 2), new Coord(2, 1), new Coord(2, 2)));
+        board.getTile(new Coord(1, 1)).setLifePointModifier(null);
+        Board.setInteractableTile(board, new Coord(2, 2), 2);
+
+        new ExtendedGameOfLife().run(game, 1);
+
+        assertEquals(1, board.getTile(new Coord(1, 1)).getCell().getLifePoints());
+        assertEquals(3, board.getTile(new Coord(2, 2)).getCell().getLifePoints());
+    }
+}
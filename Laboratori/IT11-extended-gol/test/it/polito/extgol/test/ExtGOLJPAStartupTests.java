@@ -0,0 +1,160 @@
+package it.polito.extgol.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import it.polito.extgol.Coord;
+import it.polito.extgol.ExtendedGameOfLife;
+import it.polito.extgol.Game;
+import it.polito.extgol.Generation;
+import it.polito.extgol.JPAUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+
+public class ExtGOLJPAStartupTests {
+
+    @AfterClass
+    public static void closeDB() {
+        JPAUtil.close();
+    }
+
+    @Test
+    public void testAsyncStartupCreatesSchemaFromScript() throws Exception {
+        JPAUtil.close();
+        EntityManagerFactory emf = JPAUtil.startAsync().get(60, TimeUnit.SECONDS);
+        assertTrue(emf.isOpen());
+        assertTrue(JPAUtil.isFastStartup());
+        // creating the schema and an EntityManager runs no query
+        JPAUtil.getEntityManager().close();
+        assertNull(JPAUtil.getTimeToFirstQuery());
+
+        TestDatabaseUtil.clearDatabase();
+        assertNotNull(JPAUtil.getTimeToFirstQuery());
+
+        Game game = Game.createExtended("FastStartupGame", 4, 4);
+        Generation.createInitial(game, game.getBoard(), List.of(new Coord(1, 1), new Coord(1, 2), new Coord(1, 3)));
+        ExtendedGameOfLife facade = new ExtendedGameOfLife();
+        facade.run(game, 2);
+        facade.saveGame(game);
+
+        EntityManager em = JPAUtil.getEntityManager();
+        try {
+            assertEquals(emf, em.getEntityManagerFactory());
+            Long count = em.createQuery("SELECT COUNT(g) FROM Generation g WHERE g.game.id = :id", Long.class)
+                           .setParameter("id", game.getId())
+                           .getSingleResult();
+            assertEquals(3L, count.longValue());
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentFirstUseBuildsOneFactory() throws Exception {
+        JPAUtil.close();
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Set<EntityManagerFactory> factories = ConcurrentHashMap.newKeySet();
+        try {
+            Future<?>[] tasks = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                tasks[i] = pool.submit(() -> {
+                    start.await();
+                    EntityManager em = JPAUtil.getEntityManager();
+                    factories.add(em.getEntityManagerFactory());
+                    em.close();
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> t : tasks) t.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, factories.size());
+    }
+
+    @Test
+    public void testFastStartupFlagFollowsFactory() throws Exception {
+        JPAUtil.close();
+        JPAUtil.getEntityManager().close();
+        assertFalse(JPAUtil.isFastStartup());
+        // a factory already open is returned as is, without the script
+        JPAUtil.startAsync().get(60, TimeUnit.SECONDS);
+        assertFalse(JPAUtil.isFastStartup());
+
+        JPAUtil.close();
+        JPAUtil.startAsync().get(60, TimeUnit.SECONDS);
+        assertTrue(JPAUtil.isFastStartup());
+        JPAUtil.close();
+        assertFalse(JPAUtil.isFastStartup());
+    }
+
+    /**
+     * Reads the statements of a DDL script, ignoring comments, case, layout
+     * and the "if (not) exists" guards.
+     */
+    private static Set<String> statements(String script) {
+        Set<String> res = new TreeSet<>();
+        for (String line : script.split(";")) {
+            String s = line.replaceAll("(?m)^--.*$", "")
+                           .replaceAll("\\s+", " ")
+                           .replace("( ", "(")
+                           .replace(" )", ")")
+                           .replace(" if not exists", "")
+                           .replace(" if exists", "")
+                           .trim()
+                           .toLowerCase();
+            if (!s.isEmpty()) res.add(s);
+        }
+        return res;
+    }
+
+    @Test
+    public void testSchemaScriptMatchesMappings() throws IOException {
+        Path target = Files.createTempFile("schema", ".sql");
+        try {
+            Map<String, Object> props = new HashMap<>();
+            props.put("jakarta.persistence.schema-generation.database.action", "none");
+            props.put("jakarta.persistence.schema-generation.scripts.action", "create");
+            props.put("jakarta.persistence.schema-generation.scripts.create-target", target.toString());
+            props.put("hibernate.hbm2ddl.auto", "none");
+            Files.delete(target);
+            Persistence.generateSchema("game-of-life-pu", props);
+            String generated = Files.readString(target);
+
+            String script;
+            try (InputStream in = ExtGOLJPAStartupTests.class.getResourceAsStream("/META-INF/schema.sql")) {
+                assertNotNull(in);
+                script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            assertEquals(statements(generated), statements(script));
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+}
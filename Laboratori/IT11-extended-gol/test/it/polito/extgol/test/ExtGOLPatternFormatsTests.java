@@ -0,0 +1,208 @@
+package it.polito.extgol.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.extgol.Board;
+import it.polito.extgol.Cell;
+import it.polito.extgol.CellMood;
+import it.polito.extgol.Coord;
+import it.polito.extgol.ExtendedGameOfLife;
+import it.polito.extgol.Game;
+import it.polito.extgol.Generation;
+import it.polito.extgol.GenerationArchive;
+import it.polito.extgol.HistoryStore;
+import it.polito.extgol.JPAUtil;
+import it.polito.extgol.PatternFormats;
+import it.polito.extgol.PrimitiveEngine;
+
+public class ExtGOLPatternFormatsTests {
+    private ExtendedGameOfLife facade;
+    private Game game;
+    private Board board;
+
+    @AfterClass
+    public static void closeDB() {
+        JPAUtil.close();
+    }
+
+    @Before
+    public void setUp() {
+        facade = new ExtendedGameOfLife();
+        game = Game.createExtended("FormatsGame", 8, 8);
+        board = game.getBoard();
+    }
+
+    private static ReadableByteChannel channel(String text) {
+        return channel(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ReadableByteChannel channel(byte[] data) {
+        return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void testReadRleGlider() throws IOException {
+        PrimitiveEngine e = PatternFormats.readRle(channel(
+            "#N Glider\n#C a comment\nx = 3, y = 3, rule = B3/S23\nbo$2bo$3o!\n"));
+        assertEquals(3, e.getWidth());
+        assertEquals(5, e.countAlive());
+        assertTrue(e.isAlive(1, 0));
+        assertTrue(e.isAlive(2, 1));
+        assertTrue(e.isAlive(0, 2) && e.isAlive(1, 2) && e.isAlive(2, 2));
+    }
+
+    @Test
+    public void testRleRoundTrip() throws IOException {
+        PrimitiveEngine e = new PrimitiveEngine(90, 7);
+        for (int x = 0; x < 90; x += 3) e.setAlive(x, 0, true);
+        for (int x = 10; x < 80; x++) e.setAlive(x, 3, true);
+        e.setAlive(89, 6, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PatternFormats.writeRle(e, Channels.newChannel(bytes));
+        for (String line : bytes.toString(StandardCharsets.US_ASCII).split("\n")) {
+            assertTrue(line.length() <= 70);
+        }
+        assertTrue(e.sameStateAs(PatternFormats.readRle(channel(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void testPlaintextIntoBoard() throws IOException {
+        Generation g = Generation.createInitial(game, board, List.of(new Coord(6, 6)));
+        assertEquals(1, game.getHistoryStore().countAlive(0));
+        PatternFormats.readPlaintext(channel("!Name: Blinker\n.....\n.OOO.\n"), PatternFormats.into(g));
+        assertEquals(3, g.getAliveCells().size());
+        assertTrue(board.getTile(new Coord(2, 1)).getCell().isAlive());
+        assertFalse(board.getTile(new Coord(6, 6)).getCell().isAlive());
+        assertEquals(0, (int) g.getCellLifePoints().get(board.getTile(new Coord(2, 1)).getCell()));
+        assertEquals(3, game.getHistoryStore().countAlive(0));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PatternFormats.writePlaintext(g, Channels.newChannel(bytes));
+        String text = bytes.toString(StandardCharsets.US_ASCII);
+        assertEquals(8, text.split("\n").length);
+        assertTrue(text.startsWith("........\n.OOO....\n"));
+    }
+
+    @Test
+    public void testLargeRleStreamsToSink() throws IOException {
+        int size = 10_000;
+        StringBuilder sb = new StringBuilder("x = " + size + ", y = " + size + "\n");
+        for (int y = 0; y < size; y++) {
+            sb.append(y % 100).append("b").append(size / 2).append("o$");
+        }
+        sb.append('!');
+        long[] counts = new long[2];
+        PatternFormats.readRle(channel(sb.toString()), new PatternFormats.Sink() {
+            @Override
+            public void begin(int width, int height) {
+                assertEquals(size, width);
+                assertEquals(size, height);
+            }
+
+            @Override
+            public void aliveRun(int x, int y, int length) {
+                counts[0]++;
+                counts[1] += length;
+            }
+        });
+        assertEquals(size, counts[0]);
+        assertEquals((long) size * (size / 2), counts[1]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRleExceedingSizeRejected() throws IOException {
+        PatternFormats.readRle(channel("x = 2, y = 1\n3o!"));
+    }
+
+    @Test
+    public void testArchiveRoundTrip() throws IOException {
+        Generation.createInitial(game, board, List.of(
+            new Coord(1, 1), new Coord(2, 1), new Coord(1, 2), new Coord(2, 2), new Coord(5, 5),
+            new Coord(5, 6), new Coord(5, 4)));
+        board.getTile(new Coord(5, 5)).getCell().setMood(CellMood.HEALER);
+        Board.setInteractableTile(board, new Coord(1, 1), 3);
+        HistoryStore store = game.getHistoryStore();
+        facade.run(game, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GenerationArchive.writeGame(game, Channels.newChannel(bytes));
+
+        try (GenerationArchive.Reader reader = new GenerationArchive.Reader(channel(bytes.toByteArray()))) {
+            PrimitiveEngine e = new PrimitiveEngine(reader.getWidth(), reader.getHeight());
+            for (Generation g : game.getGenerations()) {
+                assertTrue(reader.next(e));
+                assertEquals(g.getStep(), reader.getStep());
+                // the moods of the initial generation were never observed
+                assertEquals(g.getStep() > 0, reader.isMoodKnown());
+                for (Map.Entry<Cell, Boolean> s : g.getCellAlivenessStates().entrySet()) {
+                    Cell c = s.getKey();
+                    assertEquals(s.getValue(), e.isAlive(c.getX(), c.getY()));
+                    assertEquals((int) g.getCellLifePoints().get(c), e.getLifePoints(c.getX(), c.getY()));
+                    if (reader.isMoodKnown())
+                        assertEquals(store.getMood(g.getStep(), c.getX(), c.getY()), e.getMood(c.getX(), c.getY()));
+                }
+                assertEquals(3, e.getLifePointModifier(1, 1));
+            }
+            assertFalse(reader.next(e));
+        }
+    }
+
+    @Test
+    public void testArchiveMarksUnknownMoods() throws IOException {
+        Generation.createInitial(game, board, List.of(new Coord(1, 1), new Coord(1, 2), new Coord(1, 3)));
+        facade.run(game, 2);
+        Cell cell = board.getTile(new Coord(1, 2)).getCell();
+        cell.setMood(CellMood.VAMPIRE);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GenerationArchive.writeGame(game, Channels.newChannel(bytes));
+
+        try (GenerationArchive.Reader reader = new GenerationArchive.Reader(channel(bytes.toByteArray()))) {
+            Board target = Game.createExtended("ArchiveTarget", reader.getWidth(), reader.getHeight()).getBoard();
+            Cell read = target.getTile(new Coord(1, 2)).getCell();
+            read.setMood(CellMood.HEALER);
+            // without a history store only the moods of the last generation are known
+            for (int step = 0; step < 2; step++) {
+                assertTrue(reader.next(target));
+                assertFalse(reader.isMoodKnown());
+                assertEquals(CellMood.HEALER, read.getMood());
+            }
+            assertTrue(reader.next(target));
+            assertTrue(reader.isMoodKnown());
+            assertEquals(CellMood.VAMPIRE, read.getMood());
+            assertFalse(reader.next(target));
+        }
+    }
+
+    @Test
+    public void testArchiveRejectsInvalidMood() throws IOException {
+        facade.run(game, 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GenerationArchive.writeGame(game, Channels.newChannel(bytes));
+        byte[] data = bytes.toByteArray();
+        // the mood of the last cell of the last frame precedes the end marker
+        data[data.length - 2] = 42;
+
+        try (GenerationArchive.Reader reader = new GenerationArchive.Reader(channel(data))) {
+            PrimitiveEngine e = new PrimitiveEngine(reader.getWidth(), reader.getHeight());
+            assertTrue(reader.next(e));
+            assertThrows(IOException.class, () -> reader.next(e));
+        }
+    }
+}
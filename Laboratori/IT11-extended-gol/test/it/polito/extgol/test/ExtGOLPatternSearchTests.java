@@ -0,0 +1,92 @@
+package it.polito.extgol.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import it.polito.extgol.Coord;
+import it.polito.extgol.ExtendedGameOfLife;
+import it.polito.extgol.Game;
+import it.polito.extgol.Generation;
+import it.polito.extgol.JPAUtil;
+import it.polito.extgol.PatternIndex;
+
+public class ExtGOLPatternSearchTests {
+    private static final String GLIDER = String.join(System.lineSeparator(),
+            "0C0",
+            "00C",
+            "CCC");
+
+    private ExtendedGameOfLife facade;
+    private Game game;
+
+    @AfterClass
+    public static void closeDB() {
+        JPAUtil.close();
+    }
+
+    @Before
+    public void setUp() {
+        facade = new ExtendedGameOfLife();
+        game = Game.create("PatternGame", 12, 12);
+        Generation.createInitial(game, game.getBoard(), List.of(
+            new Coord(1, 0),
+            new Coord(2, 1),
+            new Coord(0, 2),
+            new Coord(1, 2),
+            new Coord(2, 2)
+        ));
+    }
+
+    @Test
+    public void testGliderFoundEveryFourSteps() {
+        PatternIndex index = game.getPatternIndex();
+        facade.run(game, 12);
+
+        List<PatternIndex.Match> matches = index.find(GLIDER, 0, 12);
+
+        assertEquals("Glider should be found at steps 0, 4, 8 and 12", 4, matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            PatternIndex.Match m = matches.get(i);
+            assertEquals(4 * i, m.getStep());
+            assertEquals("Glider moves down-right by one every 4 steps", i, m.getX());
+            assertEquals("Glider moves down-right by one every 4 steps", i, m.getY());
+        }
+    }
+
+    @Test
+    public void testIndexBuiltAfterRunMatchesVisualize() {
+        facade.run(game, 10);
+        PatternIndex index = game.getPatternIndex();
+        String pattern = String.join(System.lineSeparator(), "C0", "0C");
+
+        List<String> expected = new ArrayList<>();
+        for (Generation g : game.getGenerations()) {
+            String[] rows = game.getBoard().visualize(g).split(System.lineSeparator());
+            for (int y = 0; y + 1 < rows.length; y++)
+                for (int x = 0; x + 1 < rows[y].length(); x++)
+                    if (rows[y].charAt(x) != '0' && rows[y].charAt(x + 1) == '0'
+                        && rows[y + 1].charAt(x) == '0' && rows[y + 1].charAt(x + 1) != '0')
+                        expected.add(g.getStep() + ":" + x + "," + y);
+        }
+
+        List<String> found = new ArrayList<>();
+        for (PatternIndex.Match m : index.find(pattern, 0, 10))
+            found.add(m.toString());
+
+        assertTrue("Pattern should appear at least once", !expected.isEmpty());
+        assertEquals(expected, found);
+    }
+
+    @Test
+    public void testEmptyPatternRejected() {
+        PatternIndex index = game.getPatternIndex();
+        assertThrows(IllegalArgumentException.class, () -> index.find("00\n00", 0, 0));
+    }
+}
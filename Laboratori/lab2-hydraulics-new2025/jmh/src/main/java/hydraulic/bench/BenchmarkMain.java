@@ -0,0 +1,36 @@
+package hydraulic.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, writing the results in JSON to
+ * {@code target/jmh-result.json} unless other result options are given.
+ *
+ * Accepts the command line options of JMH.
+ */
+public final class BenchmarkMain {
+
+	static final String RESULT_FILE = "target/jmh-result.json";
+
+	private BenchmarkMain() { // static class
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		OptionsBuilder builder = new OptionsBuilder();
+		if (cmd.getIncludes().isEmpty())
+			builder.include("hydraulic\\.bench\\..*");
+		if (!cmd.getResultFormat().hasValue())
+			builder.resultFormat(ResultFormatType.JSON);
+		if (!cmd.getResult().hasValue())
+			builder.result(RESULT_FILE);
+		Options options = builder.parent(cmd).build();
+		new Runner(options).run();
+	}
+}
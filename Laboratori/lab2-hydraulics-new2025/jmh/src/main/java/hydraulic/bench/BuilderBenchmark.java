@@ -0,0 +1,39 @@
+package hydraulic.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hydraulic.HSystem;
+
+/**
+ * Cost of building whole networks with the fluent {@link hydraulic.HBuilder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BuilderBenchmark {
+
+	@Param({Networks.CHAIN, Networks.FANOUT, Networks.TREE})
+	public String shape;
+
+	@Param({"1000", "100000", "10000000"})
+	public int size;
+
+	@Benchmark
+	public HSystem build() {
+		return Networks.buildWithBuilder(shape, size);
+	}
+}
@@ -0,0 +1,86 @@
+package hydraulic.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hydraulic.Element;
+import hydraulic.HSystem;
+import hydraulic.Tap;
+
+/**
+ * Cost of deleting a tap in the middle of a chain, per deleted tap.
+ *
+ * Each invocation deletes {@value #BATCH} consecutive taps, a single shot
+ * long enough to be timed; before each iteration the taps are inserted
+ * again, outside the measure, so that every invocation deletes from a chain
+ * of the same length.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DeleteBenchmark {
+
+	static final int BATCH = 100;
+
+	@Param({"1000", "100000", "10000000"})
+	public int size;
+
+	private HSystem system;
+	private final String[] names = new String[BATCH];
+	private Element upstream;
+	private Element downstream;
+	private boolean deleted;
+
+	@Setup
+	public void setup() {
+		system = Networks.chain(size);
+		int first = (size - 2 - BATCH) / 2;
+		for (int i = 0; i < BATCH; i++)
+			names[i] = "T" + (first + i);
+		upstream = system.getElement(names[0]).getUpstream();
+		downstream = system.getElement(names[BATCH - 1]).getDownstream();
+	}
+
+	@Setup(Level.Iteration)
+	public void reinsert() {
+		if (!deleted)
+			return;
+		Element previous = upstream;
+		for (String name : names) {
+			Tap tap = new Tap(name);
+			tap.setOpen(true);
+			system.addElement(tap);
+			previous.connect(tap);
+			previous = tap;
+		}
+		previous.connect(downstream);
+		deleted = false;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int deleteElements() {
+		int done = 0;
+		for (String name : names)
+			if (system.deleteElement(name))
+				done++;
+		deleted = true;
+		return done;
+	}
+}
@@ -0,0 +1,166 @@
+package hydraulic.bench;
+
+import java.util.Arrays;
+
+import hydraulic.Element;
+import hydraulic.HBuilder;
+import hydraulic.HSystem;
+import hydraulic.Multisplit;
+import hydraulic.Sink;
+import hydraulic.Source;
+import hydraulic.Split;
+import hydraulic.Tap;
+
+/**
+ * Generators of the networks used by the benchmarks.
+ *
+ * Each shape is built with about the requested number of elements, all
+ * added to the system; a few elements get a max flow lower than their
+ * input flow, so that checked simulations report some errors.
+ * Elements are connected from the sinks upwards and the source is
+ * connected last, so that flows are propagated only once.
+ */
+final class Networks {
+
+	/** Network shapes. */
+	static final String CHAIN = "chain";
+	static final String FANOUT = "fanout";
+	static final String TREE = "tree";
+
+	static final double FLOW = 1000.0;
+
+	private Networks() { // static class
+	}
+
+	static HSystem build(String shape, int size) {
+		return switch (shape) {
+			case CHAIN -> chain(size);
+			case FANOUT -> fanout(size);
+			case TREE -> tree(size);
+			default -> throw new IllegalArgumentException("Unknown shape " + shape);
+		};
+	}
+
+	/**
+	 * Source, {@code size - 2} open taps and a sink, in a line.
+	 */
+	static HSystem chain(int size) {
+		int taps = Math.max(0, size - 2);
+		HSystem system = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(FLOW);
+		system.addElement(src);
+		Tap[] tap = new Tap[taps];
+		for (int i = 0; i < taps; i++) {
+			tap[i] = new Tap("T" + i);
+			tap[i].setOpen(true);
+			if (i % 1000 == 999)
+				tap[i].setMaxFlow(FLOW / 2);
+			system.addElement(tap[i]);
+		}
+		Sink sink = new Sink("Sink");
+		system.addElement(sink);
+		if (taps == 0) {
+			src.connect(sink);
+			return system;
+		}
+		tap[taps - 1].connect(sink);
+		for (int i = taps - 2; i >= 0; i--)
+			tap[i].connect(tap[i + 1]);
+		src.connect(tap[0]);
+		return system;
+	}
+
+	/**
+	 * Source feeding a multi-split with {@code size - 2} outputs, each to a sink.
+	 */
+	static HSystem fanout(int size) {
+		int outputs = Math.max(1, size - 2);
+		HSystem system = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(FLOW);
+		system.addElement(src);
+		Multisplit ms = new Multisplit("MS", outputs);
+		double[] proportions = new double[outputs];
+		Arrays.fill(proportions, 1.0 / outputs);
+		ms.setProportions(proportions);
+		system.addElement(ms);
+		for (int k = 0; k < outputs; k++) {
+			Sink sink = new Sink("S" + k);
+			if (k % 1000 == 999)
+				sink.setMaxFlow(FLOW / outputs / 2);
+			system.addElement(sink);
+			ms.connect(sink, k);
+		}
+		src.connect(ms);
+		return system;
+	}
+
+	/**
+	 * Source feeding a balanced binary tree of splits whose leaves are
+	 * sinks, with about {@code size} elements.
+	 */
+	static HSystem tree(int size) {
+		int nodes = Math.max(1, size - 1);
+		HSystem system = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(FLOW);
+		system.addElement(src);
+		// heap layout: node i has children 2i+1 and 2i+2; nodes with no children are sinks
+		Element[] node = new Element[nodes];
+		for (int i = 0; i < nodes; i++) {
+			node[i] = 2 * i + 2 < nodes ? new Split("N" + i) : new Sink("N" + i);
+			if (i % 1000 == 999)
+				node[i].setMaxFlow(FLOW / nodes);
+			system.addElement(node[i]);
+		}
+		for (int i = nodes - 1; i >= 0; i--)
+			if (node[i] instanceof Split sp) {
+				sp.connect(node[2 * i + 1], 0);
+				sp.connect(node[2 * i + 2], 1);
+			}
+		src.connect(node[0]);
+		return system;
+	}
+
+	/**
+	 * Builds the same networks with the fluent builder.
+	 */
+	static HSystem buildWithBuilder(String shape, int size) {
+		HBuilder b = HSystem.build().addSource("Src").withFlow(FLOW);
+		switch (shape) {
+			case CHAIN -> {
+				for (int i = 0; i < size - 2; i++)
+					b.linkToTap("T" + i).open();
+				b.linkToSink("Sink");
+			}
+			case FANOUT -> {
+				int outputs = Math.max(1, size - 2);
+				double[] proportions = new double[outputs];
+				Arrays.fill(proportions, 1.0 / outputs);
+				b.linkToMultisplit("MS", outputs).withPropotions(proportions).withOutputs();
+				for (int k = 0; k < outputs; k++) {
+					if (k > 0)
+						b.then();
+					b.linkToSink("S" + k);
+				}
+				b.done();
+			}
+			case TREE -> subtree(b, 0, Math.max(1, size - 1));
+			default -> throw new IllegalArgumentException("Unknown shape " + shape);
+		}
+		return b.complete();
+	}
+
+	private static void subtree(HBuilder b, int i, int nodes) {
+		if (2 * i + 2 >= nodes) {
+			b.linkToSink("N" + i);
+			return;
+		}
+		b.linkToSplit("N" + i).withOutputs();
+		subtree(b, 2 * i + 1, nodes);
+		b.then();
+		subtree(b, 2 * i + 2, nodes);
+		b.done();
+	}
+}
@@ -0,0 +1,63 @@
+package hydraulic.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import hydraulic.HSystem;
+import hydraulic.SimulationObserver;
+
+/**
+ * Cost of the simulation of a whole system, with and without max flow checks.
+ *
+ * The observer hands every notification to a {@link Blackhole}, so the
+ * measures include building the notifications but no observer work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SimulationBenchmark {
+
+	@Param({Networks.CHAIN, Networks.FANOUT, Networks.TREE})
+	public String shape;
+
+	@Param({"1000", "100000", "10000000"})
+	public int size;
+
+	private HSystem system;
+	private SimulationObserver observer;
+
+	@Setup
+	public void setup(Blackhole bh) {
+		system = Networks.build(shape, size);
+		observer = (level, type, name, inFlow, flows) -> {
+			bh.consume(name);
+			bh.consume(inFlow);
+			bh.consume(flows);
+		};
+	}
+
+	@Benchmark
+	public void simulate() {
+		system.simulate(observer);
+	}
+
+	@Benchmark
+	public void simulateChecked() {
+		system.simulate(observer, true);
+	}
+}
@@ -0,0 +1,70 @@
+package hydraulic.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hydraulic.Element;
+import hydraulic.HSystem;
+import hydraulic.TelemetryReconciler;
+
+/**
+ * Throughput of the reconciliation of measured flows, in measurements per
+ * second, with batches of random elements of a tree identified by name or
+ * by id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TelemetryBenchmark {
+
+	static final int BATCH = 4096;
+
+	@Param({"1000", "100000"})
+	public int size;
+
+	private TelemetryReconciler reconciler;
+	private final String[] names = new String[BATCH];
+	private final int[] ids = new int[BATCH];
+	private final double[] flows = new double[BATCH];
+
+	@Setup
+	public void setup() {
+		HSystem system = Networks.tree(size);
+		reconciler = system.reconciler(0.05, 1.0);
+		Element[] elements = system.getElements();
+		Random rnd = new Random(size);
+		for (int i = 0; i < BATCH; i++) {
+			names[i] = elements[rnd.nextInt(elements.length)].getName();
+			ids[i] = reconciler.idOf(names[i]);
+			flows[i] = reconciler.getExpected(names[i]) + rnd.nextGaussian();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int ingestByName() {
+		return reconciler.ingest(names, flows, BATCH);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public int ingestById() {
+		return reconciler.ingest(ids, flows, BATCH);
+	}
+}
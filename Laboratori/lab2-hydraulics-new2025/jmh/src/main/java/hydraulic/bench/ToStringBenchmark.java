@@ -0,0 +1,49 @@
+package hydraulic.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hydraulic.Element;
+
+/**
+ * Cost of the textual layout of a network, starting from the element fed
+ * by the source; only splits lay out the elements downstream of them, so
+ * the layout of a chain covers a single element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ToStringBenchmark {
+
+	@Param({Networks.CHAIN, Networks.FANOUT, Networks.TREE})
+	public String shape;
+
+	@Param({"1000", "100000", "10000000"})
+	public int size;
+
+	private Element root;
+
+	@Setup
+	public void setup() {
+		root = Networks.build(shape, size).getElement("Src").getDownstream();
+	}
+
+	@Benchmark
+	public String layout() {
+		return root.toString();
+	}
+}
@@ -0,0 +1,395 @@
+package hydraulic;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Observer that hands notifications over to another observer running on
+ * its own thread.
+ *
+ * Simulations, from any number of threads, publish notifications into a
+ * bounded ring buffer without locks: a producer claims a slot by advancing
+ * the head with a compare-and-set, fills it and marks it as published. A
+ * single consumer thread delivers the published notifications to the target
+ * observer in batches, in the order the slots were claimed, so the target
+ * needs not be thread-safe.
+ *
+ * When the buffer is full, the {@link Overflow} policy decides whether
+ * producers wait, drop the notification, or sample notifications as the
+ * buffer fills. {@link #awaitDelivery()} waits until all the notifications
+ * published before the call are delivered, e.g. at the end of a simulation.
+ *
+ * The observer keeps counters of delivered and dropped notifications, of the
+ * depth of the queue and of the lag between publication and delivery.
+ */
+public class AsyncObserver implements SimulationObserver, AutoCloseable {
+
+	/**
+	 * How threads wait for the buffer: the consumer when it is empty,
+	 * producers when it is full.
+	 */
+	public enum WaitStrategy {
+		/** Spin, for the lowest latency at the cost of a busy core. */
+		SPIN,
+		/** Yield the processor between checks. */
+		YIELD,
+		/**
+		 * Park the thread for a short time between checks; an idle consumer
+		 * parks until a notification is published.
+		 */
+		PARK
+	}
+
+	/**
+	 * What producers do when the buffer is full.
+	 */
+	public enum Overflow {
+		/** Wait for the consumer to make room. */
+		BLOCK,
+		/** Drop the notification. */
+		DROP,
+		/**
+		 * Publish only one notification out of the sample rate once the
+		 * buffer is half full, dropping the others and the ones that
+		 * find the buffer full.
+		 */
+		SAMPLE
+	}
+
+	private static final int MAX_BATCH = 256;
+	private static final long PARK_NANOS = 20_000;
+	/** Bit set in the head once closed, so that no more slots can be claimed. */
+	private static final long SEALED = Long.MIN_VALUE;
+
+	private final SimulationObserver target;
+	private final WaitStrategy waitStrategy;
+	private final Overflow overflow;
+	private final int sampleRate;
+	private final int mask;
+
+	// slots of the ring buffer
+	private final Level[] levels;
+	private final String[] types;
+	private final String[] names;
+	private final double[] inFlows;
+	private final double[][] flows;
+	private final long[] publishedAt;
+	/** Sequence + 1 of the notification published in each slot. */
+	private final AtomicLongArray published;
+
+	/** Next sequence to be claimed, with {@link #SEALED} set once closed. */
+	private final AtomicLong head = new AtomicLong();
+	/** Next sequence to be delivered. */
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong offered = new AtomicLong();
+	private volatile long maxDepth;
+	private volatile long lastLag;
+	private volatile long maxLag;
+
+	private final Thread consumer;
+	/** Whether the consumer is parked, or about to, waiting for a notification. */
+	private volatile boolean idle;
+	private volatile boolean closed;
+	private volatile RuntimeException failure;
+
+	/**
+	 * Creates an observer with a buffer of 4096 notifications that parks
+	 * waiting threads and blocks producers when the buffer is full
+	 *
+	 * @param target the observer receiving the notifications
+	 */
+	public AsyncObserver(SimulationObserver target) {
+		this(target, 4096, WaitStrategy.PARK, Overflow.BLOCK, 1);
+	}
+
+	/**
+	 * Creates an observer and starts its consumer thread
+	 *
+	 * @param target the observer receiving the notifications
+	 * @param capacity the number of notifications the buffer can hold,
+	 * 					rounded up to a power of two
+	 * @param waitStrategy how threads wait for the buffer
+	 * @param overflow what producers do when the buffer is full
+	 * @param sampleRate one notification out of this many is kept by
+	 * 					{@link Overflow#SAMPLE}
+	 * @throws IllegalArgumentException if the capacity or the sample rate are not positive
+	 */
+	public AsyncObserver(SimulationObserver target, int capacity, WaitStrategy waitStrategy,
+			Overflow overflow, int sampleRate) {
+		if (capacity <= 0 || capacity > 1 << 30)
+			throw new IllegalArgumentException("Invalid capacity " + capacity);
+		if (sampleRate <= 0)
+			throw new IllegalArgumentException("Invalid sample rate " + sampleRate);
+		this.target = Objects.requireNonNull(target);
+		this.waitStrategy = Objects.requireNonNull(waitStrategy);
+		this.overflow = Objects.requireNonNull(overflow);
+		this.sampleRate = sampleRate;
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		size = Math.max(1, size);
+		mask = size - 1;
+		levels = new Level[size];
+		types = new String[size];
+		names = new String[size];
+		inFlows = new double[size];
+		flows = new double[size][];
+		publishedAt = new long[size];
+		published = new AtomicLongArray(size);
+		consumer = new Thread(this::consume, "async-observer");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	@Override
+	public void notify(Level level, String type, String name, double inFlow, double... flows) {
+		if (closed)
+			throw new IllegalStateException("Observer closed");
+		long seq = claim();
+		if (seq < 0) {
+			dropped.incrementAndGet();
+			return;
+		}
+		int i = (int) seq & mask;
+		levels[i] = level;
+		types[i] = type;
+		names[i] = name;
+		inFlows[i] = inFlow;
+		this.flows[i] = flows == null ? null : flows.clone();
+		publishedAt[i] = System.nanoTime();
+		published.set(i, seq + 1);
+		if (idle)
+			LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Claims the next slot, according to the overflow policy.
+	 *
+	 * @return the sequence of the slot, or -1 if the notification is dropped
+	 */
+	private long claim() {
+		int capacity = mask + 1;
+		boolean sampled = overflow != Overflow.SAMPLE || offered.getAndIncrement() % sampleRate == 0;
+		for (int spins = 0; ; spins++) {
+			long h = head.get();
+			// closed after the check of the caller: nobody would deliver it
+			if ((h & SEALED) != 0)
+				return -1;
+			long depth = h - tail.get();
+			if (depth >= capacity) {
+				if (overflow != Overflow.BLOCK)
+					return -1;
+				if (closed)
+					throw new IllegalStateException("Observer closed");
+				pause(spins);
+				continue;
+			}
+			if (!sampled && depth >= capacity / 2)
+				return -1;
+			if (head.compareAndSet(h, h + 1)) {
+				if (depth + 1 > maxDepth)
+					maxDepth = depth + 1;
+				return h;
+			}
+		}
+	}
+
+	private void pause(int spins) {
+		switch (waitStrategy) {
+			case SPIN -> Thread.onSpinWait();
+			case YIELD -> Thread.yield();
+			case PARK -> {
+				if (spins < 64)
+					Thread.onSpinWait();
+				else
+					LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+	}
+
+	private void consume() {
+		int spins = 0;
+		while (true) {
+			long next = tail.get();
+			int batch = 0;
+			try {
+				while (batch < MAX_BATCH && published.get((int) (next + batch) & mask) == next + batch + 1) {
+					deliver((int) (next + batch) & mask);
+					batch++;
+				}
+			} catch (RuntimeException ex) {
+				if (failure == null)
+					failure = ex;
+				batch++;
+			}
+			if (batch > 0) {
+				tail.set(next + batch);
+				spins = 0;
+			} else if (closed && head.get() == next) {
+				return;
+			} else if (waitStrategy == WaitStrategy.PARK && spins >= 64) {
+				park(next);
+			} else {
+				pause(spins++);
+			}
+		}
+	}
+
+	/**
+	 * Parks the consumer until the notification with the given sequence is
+	 * published or the observer is closed.
+	 *
+	 * The flag is raised before checking the slot, and producers check the
+	 * flag after publishing: either the consumer sees the notification, or
+	 * its producer sees the flag and unparks the consumer.
+	 */
+	private void park(long next) {
+		if (closed) {
+			// a producer still has to publish a claimed slot
+			LockSupport.parkNanos(PARK_NANOS);
+			return;
+		}
+		idle = true;
+		if (published.get((int) next & mask) != next + 1 && !closed)
+			LockSupport.park(this);
+		idle = false;
+	}
+
+	/**
+	 * Delivers the notification of a slot to the target observer.
+	 */
+	private void deliver(int i) {
+		long lag = System.nanoTime() - publishedAt[i];
+		lastLag = lag;
+		if (lag > maxLag)
+			maxLag = lag;
+		target.notify(levels[i], types[i], names[i], inFlows[i], flows[i]);
+		types[i] = names[i] = null;
+		flows[i] = null;
+	}
+
+	/**
+	 * Waits until all the notifications published before the call have been
+	 * delivered to the target observer; typically called at the end of a
+	 * simulation
+	 *
+	 * @throws RuntimeException the first exception thrown by the target observer, if any
+	 */
+	public void awaitDelivery() {
+		long target = head.get() & ~SEALED;
+		for (int spins = 0; tail.get() < target; spins++) {
+			if (!consumer.isAlive())
+				break;
+			pause(spins);
+		}
+		RuntimeException ex = failure;
+		if (ex != null) {
+			failure = null;
+			throw ex;
+		}
+	}
+
+	/**
+	 * Delivers the pending notifications and stops the consumer thread
+	 *
+	 * Producers that were already publishing when the observer was closed
+	 * can still claim slots after the consumer thread stops: the closing
+	 * thread delivers them. Once they are delivered, no more slots can be
+	 * claimed, and any later notification is counted as dropped.
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		LockSupport.unpark(consumer);
+		// slots are delivered here only after the consumer is gone
+		boolean interrupted = false;
+		while (consumer.isAlive()) {
+			try {
+				consumer.join();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		while (true) {
+			long h = head.get();
+			long next = tail.get();
+			if (next == h) {
+				if (head.compareAndSet(h, h | SEALED))
+					break;
+				continue;
+			}
+			int i = (int) next & mask;
+			for (int spins = 0; published.get(i) != next + 1; spins++)
+				pause(spins);
+			try {
+				deliver(i);
+			} catch (RuntimeException ex) {
+				if (failure == null)
+					failure = ex;
+			}
+			tail.set(next + 1);
+		}
+		awaitDelivery();
+	}
+
+	/**
+	 * Returns the number of notifications waiting to be delivered
+	 *
+	 * @return the depth of the queue
+	 */
+	public long getQueueDepth() {
+		return Math.max(0, (head.get() & ~SEALED) - tail.get());
+	}
+
+	/**
+	 * Returns the largest depth the queue reached
+	 *
+	 * @return the max depth of the queue
+	 */
+	public long getMaxQueueDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the number of notifications delivered to the target observer
+	 *
+	 * @return count of delivered notifications
+	 */
+	public long getDelivered() {
+		return tail.get();
+	}
+
+	/**
+	 * Returns the number of notifications dropped by the overflow policy
+	 *
+	 * @return count of dropped notifications
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Returns the time between publication and delivery of the last
+	 * delivered notification
+	 *
+	 * @return the lag, in nanoseconds
+	 */
+	public long getLastLagNanos() {
+		return lastLag;
+	}
+
+	/**
+	 * Returns the longest time between publication and delivery of a notification
+	 *
+	 * @return the max lag, in nanoseconds
+	 */
+	public long getMaxLagNanos() {
+		return maxLag;
+	}
+}
@@ -0,0 +1,338 @@
+package hydraulic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Time-stepped simulation of a system.
+ *
+ * While {@link HSystem#simulate(SimulationObserver)} computes the steady
+ * state, this engine advances the system in ticks of fixed length: the flow
+ * leaving an element reaches the downstream one after the transit delay of
+ * the pipe between them, sinks store the water they receive up to their
+ * capacity and spill the rest, and taps and sources change at the ticks
+ * given by a schedule.
+ *
+ * The system is compiled once when the simulation is created, and the state
+ * of the simulation is kept in arrays indexed by element id: the water in
+ * transit in each pipe is held in a ring buffer with one slot per tick of
+ * delay, all in a single array. Elements are not changed by the simulation.
+ *
+ * Flows are expressed per hour, as in the static simulation, and volumes in
+ * cubic meters.
+ */
+public class DynamicSimulation {
+
+	private static final int NONE = FlowNetwork.NONE;
+
+	private final FlowNetwork net;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private final double tickHours;
+
+	private final double[] sourceFlow;
+	private final boolean[] open;
+	private final int[] delay;
+	private final double[] capacity;
+	private final double[] stored;
+	private final double[] spilled;
+	private final double[] inFlow;
+
+	/** Water in transit: pipe {@code id} uses {@code delay[id] + 1} slots from {@code ringStart[id]}. */
+	private double[] ring;
+	private int[] ringStart;
+	private int[] cursor;
+
+	/** The flows of the last simulated tick. */
+	private final FlowNetwork.Flows flows = new FlowNetwork.Flows() {
+		@Override
+		public double inFlow(int id) {
+			return inFlow[id];
+		}
+
+		@Override
+		public double outFlow(int id, int output) {
+			return DynamicSimulation.this.outFlow(id, output);
+		}
+	};
+
+	private final PriorityQueue<Change> schedule = new PriorityQueue<>();
+	private long changes;
+	private long tick;
+
+	/**
+	 * Scheduled change of a source flow or of a tap status.
+	 */
+	private static final class Change implements Comparable<Change> {
+		final long tick;
+		final long sequence;
+		final int id;
+		final double value;
+
+		Change(long tick, long sequence, int id, double value) {
+			this.tick = tick;
+			this.sequence = sequence;
+			this.id = id;
+			this.value = value;
+		}
+
+		@Override
+		public int compareTo(Change other) {
+			int c = Long.compare(tick, other.tick);
+			return c != 0 ? c : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/**
+	 * Creates a simulation of the current state of a system, with pipes
+	 * without delay and sinks of unlimited capacity
+	 *
+	 * @param system the system
+	 * @param tickHours the length of a tick, in hours
+	 * @throws IllegalArgumentException if the system contains elements
+	 * 							of classes other than the ones of this package,
+	 * 							or the tick length is not positive
+	 */
+	public DynamicSimulation(HSystem system, double tickHours) {
+		if (!(tickHours > 0))
+			throw new IllegalArgumentException("Invalid tick length " + tickHours);
+		this.tickHours = tickHours;
+		net = system.compile();
+		int n = net.size();
+		for (int id = n - 1; id >= 0; id--)
+			ids.put(net.elements[id].getName(), id);
+		sourceFlow = net.sourceFlow.clone();
+		open = net.open.clone();
+		delay = new int[n];
+		capacity = new double[n];
+		Arrays.fill(capacity, Double.POSITIVE_INFINITY);
+		stored = new double[n];
+		spilled = new double[n];
+		inFlow = new double[n];
+		Arrays.fill(inFlow, SimulationObserver.NO_FLOW);
+	}
+
+	private int require(String name, byte kind) {
+		Integer id = ids.get(name);
+		if (id == null || (kind >= 0 && net.kind[id] != kind))
+			throw new IllegalArgumentException("No suitable element " + name);
+		return id;
+	}
+
+	/**
+	 * Sets the transit delay of the pipe feeding an element; delays can
+	 * be set only before the first tick
+	 *
+	 * @param name the name of the element
+	 * @param ticks the delay, in ticks
+	 * @throws IllegalArgumentException if there is no such element, the element
+	 * 							is a source, which no pipe feeds, or the delay is negative
+	 * @throws IllegalStateException if the simulation already started
+	 */
+	public void setDelay(String name, int ticks) {
+		if (ticks < 0)
+			throw new IllegalArgumentException("Invalid delay " + ticks);
+		if (ring != null)
+			throw new IllegalStateException("Simulation already started");
+		int id = require(name, (byte) -1);
+		if (net.kind[id] == FlowNetwork.SOURCE)
+			throw new IllegalArgumentException("No pipe feeds source " + name);
+		delay[id] = ticks;
+	}
+
+	/**
+	 * Sets the volume a sink can store
+	 *
+	 * @param sink the name of the sink
+	 * @param volume the capacity, in cubic meters
+	 * @throws IllegalArgumentException if there is no such sink
+	 */
+	public void setCapacity(String sink, double volume) {
+		capacity[require(sink, FlowNetwork.SINK)] = volume;
+	}
+
+	/**
+	 * Schedules a change of the flow of a source, applied at the beginning
+	 * of the given tick
+	 *
+	 * @param tick the tick
+	 * @param source the name of the source
+	 * @param flow the new flow
+	 * @throws IllegalArgumentException if there is no such source or the tick is past
+	 */
+	public void scheduleFlow(long tick, String source, double flow) {
+		schedule(tick, require(source, FlowNetwork.SOURCE), flow);
+	}
+
+	/**
+	 * Schedules the opening or closing of a tap, applied at the beginning
+	 * of the given tick
+	 *
+	 * @param tick the tick
+	 * @param tap the name of the tap
+	 * @param open whether the tap opens
+	 * @throws IllegalArgumentException if there is no such tap or the tick is past
+	 */
+	public void scheduleOpen(long tick, String tap, boolean open) {
+		schedule(tick, require(tap, FlowNetwork.TAP), open ? 1 : 0);
+	}
+
+	private void schedule(long at, int id, double value) {
+		if (at < tick)
+			throw new IllegalArgumentException("Tick " + at + " already simulated");
+		schedule.add(new Change(at, changes++, id, value));
+	}
+
+	/**
+	 * Returns the next tick to be simulated
+	 *
+	 * @return the number of simulated ticks
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Returns the input flow of an element in the last simulated tick
+	 *
+	 * @param name the name of the element
+	 * @return the input flow, or {@link SimulationObserver#NO_FLOW} for
+	 * 					sources and elements reachable from no source
+	 */
+	public double getInFlow(String name) {
+		return inFlow[require(name, (byte) -1)];
+	}
+
+	/**
+	 * Returns the volume stored by a sink
+	 *
+	 * @param sink the name of the sink
+	 * @return the stored volume
+	 */
+	public double getStored(String sink) {
+		return stored[require(sink, FlowNetwork.SINK)];
+	}
+
+	/**
+	 * Returns the volume a sink could not store because it was full
+	 *
+	 * @param sink the name of the sink
+	 * @return the spilled volume
+	 */
+	public double getSpilled(String sink) {
+		return spilled[require(sink, FlowNetwork.SINK)];
+	}
+
+	/**
+	 * Returns the volume in transit in the pipes
+	 *
+	 * @return the volume in transit
+	 */
+	public double getInTransit() {
+		if (ring == null)
+			return 0;
+		double volume = 0;
+		for (int p = 0; p < net.reachable; p++) {
+			int id = net.order[p];
+			// the slot at the cursor was delivered in the last tick
+			for (int k = 1; k <= delay[id]; k++) {
+				int s = cursor[id] + k;
+				volume += ring[ringStart[id] + (s > delay[id] ? s - delay[id] - 1 : s)];
+			}
+		}
+		return volume * tickHours;
+	}
+
+	private void start() {
+		int n = net.size();
+		ringStart = new int[n];
+		cursor = new int[n];
+		int size = 0;
+		for (int id = 0; id < n; id++) {
+			ringStart[id] = size;
+			size += delay[id] + 1;
+		}
+		ring = new double[size];
+	}
+
+	/**
+	 * Simulates a number of ticks
+	 *
+	 * @param ticks the number of ticks
+	 */
+	public void run(long ticks) {
+		run(ticks, null, false);
+	}
+
+	/**
+	 * Simulates a number of ticks, notifying the observer after each tick of
+	 * the flows of all the elements of the system, in order, and, if requested,
+	 * of the elements whose input flow exceeds their max flow
+	 *
+	 * @param ticks the number of ticks
+	 * @param observer the observer receiving notifications, or {@code null}
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void run(long ticks, SimulationObserver observer, boolean enableMaxFlowCheck) {
+		if (ring == null)
+			start();
+		for (long end = tick + ticks; tick < end; tick++) {
+			applyChanges();
+			step();
+			if (observer != null)
+				notify(observer, enableMaxFlowCheck);
+		}
+	}
+
+	private void applyChanges() {
+		while (!schedule.isEmpty() && schedule.peek().tick <= tick) {
+			Change c = schedule.poll();
+			if (net.kind[c.id] == FlowNetwork.SOURCE)
+				sourceFlow[c.id] = c.value;
+			else
+				open[c.id] = c.value != 0;
+		}
+	}
+
+	private void step() {
+		final byte[] kind = net.kind;
+		final int[] parent = net.parent, slot = net.slot, order = net.order;
+		final double[] ring = this.ring;
+		for (int p = 0; p < net.reachable; p++) {
+			int id = order[p];
+			int up = parent[id];
+			if (up == NONE || kind[id] == FlowNetwork.SOURCE)
+				continue;
+			// the pipe receives the output of the upstream element and
+			// delivers what it received delay[id] ticks before
+			int base = ringStart[id], w = cursor[id];
+			int r = w == delay[id] ? 0 : w + 1;
+			ring[base + w] = outFlow(up, slot[id]);
+			double in = ring[base + r];
+			cursor[id] = r;
+			inFlow[id] = in;
+			if (kind[id] == FlowNetwork.SINK && in > 0) {
+				double volume = in * tickHours;
+				double accepted = Math.min(volume, Math.max(0, capacity[id] - stored[id]));
+				stored[id] += accepted;
+				spilled[id] += volume - accepted;
+			}
+		}
+	}
+
+	private double outFlow(int id, int output) {
+		return switch (net.kind[id]) {
+			case FlowNetwork.SOURCE -> sourceFlow[id];
+			case FlowNetwork.TAP -> open[id] ? inFlow[id] : 0.0;
+			case FlowNetwork.SPLIT -> inFlow[id] * FlowNetwork.EQUAL_FLOW;
+			case FlowNetwork.MULTISPLIT -> inFlow[id] * net.proportions[net.propStart[id] + output];
+			default -> SimulationObserver.NO_FLOW;
+		};
+	}
+
+	private void notify(SimulationObserver observer, boolean enableMaxFlowCheck) {
+		for (int id = 0; id < net.listed; id++)
+			FlowNetwork.notifyElement(observer, flows, id, net.kind[id], net.elements[id].getName(),
+					net.position[id] != NONE, net.outCount[id], net.maxFlow[id], enableMaxFlowCheck);
+	}
+}
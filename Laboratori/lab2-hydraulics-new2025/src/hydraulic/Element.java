@@ -1,5 +1,8 @@
 package hydraulic;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 
 /**
  * Represents the generic abstract element of an hydraulics system.
@@ -17,6 +20,10 @@ public abstract class Element {
 	static protected final int INPUT = 0;
 	static protected final int OUTPUT = 1;
 
+	/** Network recording the changes of this element, if any, and the id of the element in it. */
+	FlowNetwork network;
+	int networkId;
+
 	/**
 	 * getter method for the name of the element
 	 * 
@@ -70,6 +77,17 @@ public abstract class Element {
 		return null;
 	}
 
+	/**
+	 * Replaces an element connected upstream of this element, when the
+	 * element between them is deleted
+	 *
+	 * @param old the deleted element
+	 * @param elem the element taking its place, or {@code null}
+	 */
+	void replaceUpstream(Element old, Element elem) {
+		setUpstream(elem);
+	}
+
 	public void setDownstream(Element elem) {
 		// does nothing by default
 	}
@@ -98,6 +116,40 @@ public abstract class Element {
 
 	public abstract void setTreeFlow();
 
+	/**
+	 * Updates the flows of this element from the output of its upstream element,
+	 * without propagating them downstream.
+	 */
+	void updateFlow() {
+		// does nothing by default
+	}
+
+	/**
+	 * Propagates the flows from an element to all the elements downstream of it,
+	 * in depth-first order, using an explicit stack instead of recursion.
+	 * 
+	 * Elements of classes unknown to the package propagate their flows
+	 * through their own {@link #setTreeFlow()}.
+	 * 
+	 * @param root the element whose flows are updated first
+	 */
+	static void propagateFlow(Element root) {
+		ArrayDeque<Element> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			Element e = stack.pop();
+			if (e != root && FlowNetwork.kindOf(e) < 0) {
+				e.setTreeFlow();
+				continue;
+			}
+			e.updateFlow();
+			Element[] down = FlowNetwork.downstreamOf(e);
+			for (int k = down.length - 1; k >= 0; k--)
+				if (down[k] != null)
+					stack.push(down[k]);
+		}
+	}
+
 	public abstract void print(SimulationObserver observer);
 	
     public abstract void printError(SimulationObserver observer);
@@ -117,26 +169,97 @@ public abstract class Element {
 		return true;
 	}
 
+	/**
+	 * Retrieves the maximum input flow defined for this element
+	 * 
+	 * @return maximum allowed input flow, 0 if not defined
+	 */
+	double getMaxFlow() {
+		return 0.0;
+	}
+
+	/**
+	 * Reports a change of the parameters of this element (flow, opening
+	 * status, proportions or max flow) to the network tracking it.
+	 */
+	final void parameterChanged() {
+		if (network != null)
+			network.parameterChanged(networkId);
+	}
+
+	/**
+	 * Reports a change of the connections of this element to the network tracking it.
+	 */
+	final void topologyChanged() {
+		if (network != null)
+			network.topologyChanged();
+	}
+
 	protected static String pad(String current, String down){
 		int n = current.length();
 		final String fmt = "\n%"+n+"s";
 		return current + down.replace("\n", fmt.formatted("") );
 	}
 
+	/**
+	 * Writes the layout of the tree of elements starting from this element,
+	 * in the same format as {@link #toString()}.
+	 * 
+	 * The tree is visited with an explicit stack, and the indentation of
+	 * each line is appended from a buffer of blanks, so the time is linear
+	 * in the size of the output whatever the depth of the tree.
+	 * 
+	 * @param out the destination of the layout
+	 * @throws IOException if the destination fails
+	 */
+	public void render(Appendable out) throws IOException {
+		StringBuilder blanks = new StringBuilder();
+		ArrayDeque<Object[]> stack = new ArrayDeque<>();
+		// each frame: element outputs, column of the outputs, index of the next output
+		Element e = this;
+		int column = 0;
+		while (true) {
+			if (e != null) {
+				String label = "[" + e.getName() + "] ";
+				out.append(label);
+				Element[] outputs = e.getOutputs();
+				if (outputs != null && outputs.length > 0)
+					stack.push(new Object[]{outputs, new int[]{column + label.length(), 0}});
+				e = null;
+			}
+			Object[] frame = stack.peek();
+			if (frame == null)
+				return;
+			Element[] outputs = (Element[]) frame[0];
+			int[] position = (int[]) frame[1];
+			int i = position[1]++;
+			if (position[1] == outputs.length)
+				stack.pop();
+			if (i > 0) {
+				out.append('\n');
+				while (blanks.length() < position[0])
+					blanks.append(' ');
+				out.append(blanks, 0, position[0]);
+			}
+			out.append("+-> ");
+			if (outputs[i] == null) {
+				out.append('*');
+			} else {
+				e = outputs[i];
+				column = position[0] + 4;
+			}
+		}
+	}
+
 	@Override
 	public String toString(){
-		String res = "[%s] ".formatted(getName());
-		Element[] out = getOutputs();
-		if( out != null){
-			StringBuilder buffer = new StringBuilder();
-			for(int i=0; i<out.length; ++i) {
-				if(i>0) buffer.append("\n");
-				if (out[i] == null) buffer.append("+-> *");
-				else buffer.append(pad("+-> ", out[i].toString()));
-			}
-			res = pad(res,buffer.toString());
+		StringBuilder res = new StringBuilder();
+		try {
+			render(res);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex); // never thrown by a StringBuilder
 		}
-		return res;
+		return res.toString();
 	}
 
 }
@@ -0,0 +1,141 @@
+package hydraulic;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Indexed list of the elements of a system.
+ *
+ * Elements are stored in an array in the order they were added; a hash
+ * index maps each name to the slot of the first element with that name.
+ * Removed elements leave a tombstone (a null slot) and the array is
+ * compacted, preserving the order, when tombstones outnumber the live
+ * elements or when an element is accessed by position. Additions, lookups
+ * by name and removals are thus amortized O(1).
+ */
+final class ElementRegistry extends AbstractList<Element> implements RandomAccess {
+
+	private static final int MIN_COMPACTION = 64;
+
+	private Element[] slots = new Element[16];
+	/** Number of used slots, tombstones included. */
+	private int end;
+	private int live;
+	private final HashMap<String, Integer> index = new HashMap<>();
+	/** Number of live elements whose name is shared with an earlier element. */
+	private int duplicates;
+
+	@Override
+	public boolean add(Element e) {
+		if (end == slots.length)
+			slots = Arrays.copyOf(slots, end * 2);
+		if (index.putIfAbsent(e.getName(), end) != null)
+			duplicates++;
+		slots[end++] = e;
+		live++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Returns the slot of the first element with the given name, or -1.
+	 */
+	int slotOf(String name) {
+		Integer slot = index.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * Returns the element in a slot.
+	 */
+	Element at(int slot) {
+		return slots[slot];
+	}
+
+	/**
+	 * Returns the first element with the given name, or null.
+	 */
+	Element lookup(String name) {
+		int slot = slotOf(name);
+		return slot < 0 ? null : slots[slot];
+	}
+
+	/**
+	 * Removes the element in a slot, leaving a tombstone.
+	 */
+	void removeSlot(int slot) {
+		Element e = slots[slot];
+		slots[slot] = null;
+		live--;
+		modCount++;
+		String name = e.getName();
+		if (index.get(name) == slot) {
+			index.remove(name);
+			if (duplicates > 0) {
+				// another element with the same name becomes the first one
+				for (int s = slot + 1; s < end; s++)
+					if (slots[s] != null && Objects.equals(name, slots[s].getName())) {
+						index.put(name, s);
+						duplicates--;
+						break;
+					}
+			}
+		} else {
+			duplicates--;
+		}
+		if (end - live > Math.max(MIN_COMPACTION, live))
+			compact();
+	}
+
+	/**
+	 * Removes the tombstones, preserving the order of the elements.
+	 */
+	private void compact() {
+		if (end == live)
+			return;
+		int n = 0;
+		for (int s = 0; s < end; s++)
+			if (slots[s] != null)
+				slots[n++] = slots[s];
+		Arrays.fill(slots, n, end, null);
+		end = n;
+		index.clear();
+		duplicates = 0;
+		for (int s = 0; s < end; s++)
+			if (index.putIfAbsent(slots[s].getName(), s) != null)
+				duplicates++;
+	}
+
+	@Override
+	public Element get(int i) {
+		compact();
+		if (i < 0 || i >= live)
+			throw new IndexOutOfBoundsException("Invalid element " + i);
+		return slots[i];
+	}
+
+	@Override
+	public int size() {
+		return live;
+	}
+
+	@Override
+	public Object[] toArray() {
+		return toArray(new Element[0]);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T[] toArray(T[] a) {
+		compact();
+		if (a.length < live)
+			return (T[]) Arrays.copyOf(slots, live, a.getClass());
+		System.arraycopy(slots, 0, a, 0, live);
+		if (a.length > live)
+			a[live] = null;
+		return a;
+	}
+}
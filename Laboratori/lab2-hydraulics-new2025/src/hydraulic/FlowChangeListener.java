@@ -0,0 +1,23 @@
+package hydraulic;
+
+/**
+ * Interface for listeners of the differences between two consecutive
+ * incremental simulations of a system.
+ * 
+ * @see HSystem#simulateIncremental(SimulationObserver, boolean)
+ */
+@FunctionalInterface
+public interface FlowChangeListener {
+	/**
+	 * Notifies that the flows of an element changed since the last simulation,
+	 * either because its input flow changed or because its own parameters did.
+	 * 
+	 * For sources, whose input flow is undefined, both flows are
+	 * {@link SimulationObserver#NO_FLOW}.
+	 * 
+	 * @param element the changed element
+	 * @param previousInFlow the input flow computed by the previous simulation
+	 * @param inFlow the input flow computed by the last simulation
+	 */
+	void flowChanged(Element element, double previousInFlow, double inFlow);
+}
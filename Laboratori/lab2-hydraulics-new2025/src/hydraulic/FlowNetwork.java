@@ -0,0 +1,920 @@
+package hydraulic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compiled, flat representation of the elements of an {@link HSystem}.
+ *
+ * The element graph is turned into struct-of-arrays form: each element gets
+ * an integer id (its position in the system, followed by the elements that
+ * are reachable but were not added to the system) and its kind, parameters
+ * and parent are stored in primitive arrays. The elements reachable from the
+ * sources are listed in depth-first pre-order, so every element comes after
+ * its parent and every subtree is a contiguous range of the order.
+ *
+ * The simulation is then a single linear pass over the order, followed by
+ * the notifications, which are the same sent by the element-based
+ * simulation: elements reachable from no source report their stale state
+ * as they always did.
+ *
+ * A network is obtained with {@link HSystem#compile()}. Changes to the
+ * parameters of the elements (flows, tap status, proportions, max flows)
+ * are picked up by {@link #refresh()}; topology changes require a new
+ * compilation.
+ *
+ * A network can also track its elements, which then report to it every
+ * parameter change: the next incremental simulation recomputes only the
+ * subtrees below the changed elements, which are contiguous ranges of the
+ * pre-order, and notifies only the elements whose flows changed.
+ */
+public class FlowNetwork {
+
+	static final byte SOURCE = 0;
+	static final byte TAP = 1;
+	static final byte SPLIT = 2;
+	static final byte MULTISPLIT = 3;
+	static final byte SINK = 4;
+
+	/** Ranges of the pre-order up to this size are simulated by a single task. */
+	static final int PARALLEL_GRAIN = 1 << 13;
+
+	private static final String[] TYPE_NAMES = {"Source", "Tap", "Split", "Split", "Sink"};
+	static final double EQUAL_FLOW = 0.5;
+	static final int NONE = -1;
+
+	/** Elements by id; the first {@code listed} ones are those of the system, in order. */
+	final Element[] elements;
+	final int listed;
+	/** Ids of the elements. */
+	private final IdentityHashMap<Element, Integer> ids;
+	final byte[] kind;
+
+	/** Parent element id, or NONE for sources and unreachable elements. */
+	final int[] parent;
+	/** Output index of the parent the element is connected to. */
+	final int[] slot;
+	/** Position in the pre-order, or NONE if unreachable. */
+	final int[] position;
+	/** Depth in its tree (0 for sources). */
+	final int[] depth;
+
+	/** Reachable element ids in depth-first pre-order. */
+	final int[] order;
+	/** Number of elements in the pre-order. */
+	int reachable;
+	/** Number of reachable elements in the subtree of each element (itself included). */
+	final int[] subtreeSize;
+
+	/** Element parameters. */
+	final double[] sourceFlow;
+	final boolean[] open;
+	final double[] maxFlow;
+	/** Proportions of multi-split {@code id} start at {@code propStart[id]}. */
+	final int[] propStart;
+	final double[] proportions;
+	/** Number of connected outputs, used by the multi-split notification. */
+	final int[] outCount;
+
+	/** Input flow of each element computed by the last simulation. */
+	final double[] inFlow;
+
+	/** Ratio between the input flow of each element and the flow of its source (1 for sources). */
+	private double[] transfer;
+	/** Source feeding each reachable element. */
+	private int[] sourceOf;
+	private boolean transferValid;
+
+	/** Elements whose parameters changed since the last incremental simulation. */
+	private boolean[] dirty;
+	private int[] dirtyIds;
+	private int dirtyCount;
+	/** Elements whose flows changed during the current incremental simulation. */
+	private boolean[] changed;
+	private int[] changedIds;
+	private double[] previousFlow;
+	/** Whether the connections of a tracked element changed. */
+	private boolean stale;
+	private boolean simulated;
+	private boolean lastCheck;
+
+	private FlowNetwork(Element[] elements, int listed, IdentityHashMap<Element, Integer> ids) {
+		int n = elements.length;
+		this.elements = elements;
+		this.listed = listed;
+		this.ids = ids;
+		kind = new byte[n];
+		parent = new int[n];
+		slot = new int[n];
+		position = new int[n];
+		depth = new int[n];
+		subtreeSize = new int[n];
+		sourceFlow = new double[n];
+		open = new boolean[n];
+		maxFlow = new double[n];
+		propStart = new int[n];
+		outCount = new int[n];
+		inFlow = new double[n];
+		Arrays.fill(parent, NONE);
+		Arrays.fill(position, NONE);
+		Arrays.fill(inFlow, SimulationObserver.NO_FLOW);
+
+		int props = 0;
+		for (int id = 0; id < n; id++) {
+			kind[id] = kindOf(elements[id]);
+			if (kind[id] == MULTISPLIT) {
+				propStart[id] = props;
+				props += ((Multisplit) elements[id]).getNumOutputs();
+			}
+		}
+		proportions = new double[props];
+		order = new int[n];
+	}
+
+	/**
+	 * Determines the kind of an element.
+	 *
+	 * @return the kind, or -1 for element classes unknown to the network
+	 */
+	static byte kindOf(Element e) {
+		Class<?> c = e.getClass();
+		if (c == Source.class) return SOURCE;
+		if (c == Tap.class) return TAP;
+		if (c == Split.class) return SPLIT;
+		if (c == Multisplit.class) return MULTISPLIT;
+		if (c == Sink.class) return SINK;
+		return -1;
+	}
+
+	/**
+	 * Returns the elements connected downstream of an element, in output order;
+	 * unconnected outputs are null.
+	 */
+	static Element[] downstreamOf(Element e) {
+		if (e instanceof Split s)
+			return s.downstream;
+		Element d = e.getDownstream();
+		return d == null ? new Element[0] : new Element[]{d};
+	}
+
+	/**
+	 * Compiles the given elements.
+	 *
+	 * @param system the elements of the system, in order
+	 * @return the compiled network
+	 * @throws IllegalArgumentException if an element is of an unknown class
+	 */
+	static FlowNetwork compile(List<Element> system) {
+		return compile(system, true);
+	}
+
+	/**
+	 * Compiles the given elements, if they are all of known classes.
+	 *
+	 * @param system the elements of the system, in order
+	 * @return the compiled network, or {@code null} if an element of the
+	 * 					system or reachable from its sources is of an unknown class
+	 */
+	static FlowNetwork tryCompile(List<Element> system) {
+		return compile(system, false);
+	}
+
+	private static FlowNetwork compile(List<Element> system, boolean required) {
+		IdentityHashMap<Element, Integer> ids = new IdentityHashMap<>(system.size() * 2);
+		Element[] all = system.toArray(new Element[0]);
+		for (int id = 0; id < all.length; id++) {
+			if (!required && kindOf(all[id]) < 0) return null;
+			ids.putIfAbsent(all[id], id);
+		}
+
+		// elements reachable from the sources but not part of the system
+		int n = all.length;
+		boolean[] visited = new boolean[Math.max(16, n)];
+		int[] stack = new int[16];
+		for (int root = 0; root < system.size(); root++) {
+			if (kindOf(all[root]) != SOURCE || visited[root]) continue;
+			int sp = 0;
+			stack[sp++] = root;
+			visited[root] = true;
+			while (sp > 0) {
+				for (Element d : downstreamOf(all[stack[--sp]])) {
+					if (d == null) continue;
+					Integer id = ids.get(d);
+					if (id == null) {
+						if (!required && kindOf(d) < 0) return null;
+						if (n == all.length) all = Arrays.copyOf(all, n * 2 + 16);
+						if (n == visited.length) visited = Arrays.copyOf(visited, n * 2);
+						all[n] = d;
+						ids.put(d, n);
+						id = n++;
+					}
+					if (visited[id]) continue;
+					visited[id] = true;
+					if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+					stack[sp++] = id;
+				}
+			}
+		}
+		for (int id = 0; id < n; id++) {
+			if (kindOf(all[id]) >= 0) continue;
+			if (!required) return null;
+			throw new IllegalArgumentException("Unsupported element " + all[id].getName());
+		}
+
+		FlowNetwork net = new FlowNetwork(Arrays.copyOf(all, n), system.size(), ids);
+		net.link();
+		net.refresh();
+		return net;
+	}
+
+	/**
+	 * Builds the pre-order of the elements reachable from the sources of the
+	 * system; an element reachable from several sources is attached to the
+	 * first one that reaches it.
+	 */
+	private void link() {
+		int size = 0;
+		int[] stack = new int[16];
+		for (int root = 0; root < listed; root++) {
+			if (kind[root] != SOURCE || position[root] != NONE) continue;
+			int sp = 0;
+			stack[sp++] = root;
+			depth[root] = 0;
+			while (sp > 0) {
+				int id = stack[--sp];
+				position[id] = size;
+				order[size++] = id;
+				Element[] down = downstreamOf(elements[id]);
+				// push in reverse so that outputs are visited in order
+				for (int k = down.length - 1; k >= 0; k--) {
+					Element d = down[k];
+					if (d == null) continue;
+					int child = ids.get(d);
+					if (position[child] != NONE || parent[child] != NONE || child == root) continue;
+					parent[child] = id;
+					slot[child] = kind[id] == MULTISPLIT ? ((Split) elements[id]).getIndex(d) : k;
+					depth[child] = depth[id] + 1;
+					if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+					stack[sp++] = child;
+				}
+			}
+		}
+		reachable = size;
+		for (int p = size - 1; p >= 0; p--) {
+			int id = order[p];
+			subtreeSize[id] += 1;
+			if (parent[id] != NONE) subtreeSize[parent[id]] += subtreeSize[id];
+		}
+	}
+
+	/**
+	 * Reads again the parameters of the elements: source flows, tap status,
+	 * multi-split proportions and max flows.
+	 */
+	public void refresh() {
+		for (int id = 0; id < elements.length; id++)
+			readParameters(id);
+	}
+
+	/**
+	 * Reads again the parameters of an element.
+	 *
+	 * @return whether any parameter changed
+	 */
+	private boolean readParameters(int id) {
+		Element e = elements[id];
+		boolean updated = false;
+		double max = e.getMaxFlow();
+		if (!same(max, maxFlow[id])) {
+			maxFlow[id] = max;
+			updated = true;
+		}
+		switch (kind[id]) {
+			case SOURCE -> {
+				double flow = e.getFlow();
+				if (!same(flow, sourceFlow[id])) {
+					sourceFlow[id] = flow;
+					updated = true;
+				}
+			}
+			case TAP -> {
+				boolean isOpen = ((Tap) e).isOpen();
+				if (isOpen != open[id]) {
+					open[id] = isOpen;
+					updated = true;
+					transferValid = false;
+				}
+			}
+			case SPLIT -> outCount[id] = ((Split) e).numberDownstream;
+			case MULTISPLIT -> {
+				Multisplit ms = (Multisplit) e;
+				outCount[id] = ms.numberDownstream;
+				for (int k = 0; k < ms.getNumOutputs(); k++) {
+					double p = ms.getProportion(k);
+					if (!same(p, proportions[propStart[id] + k])) {
+						proportions[propStart[id] + k] = p;
+						updated = true;
+						transferValid = false;
+					}
+				}
+			}
+			default -> { }
+		}
+		return updated;
+	}
+
+	private static boolean same(double a, double b) {
+		return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+	}
+
+	/**
+	 * Returns the id of an element of the network.
+	 *
+	 * @throws IllegalArgumentException if the element is not part of the network
+	 */
+	int idOf(Element e) {
+		Integer id = ids.get(e);
+		if (id == null)
+			throw new IllegalArgumentException("Element " + e.getName() + " is not part of the network");
+		return id;
+	}
+
+	/**
+	 * Returns the number of compiled elements, including the reachable
+	 * elements that were not added to the system.
+	 *
+	 * @return count of elements
+	 */
+	public int size() {
+		return elements.length;
+	}
+
+	/**
+	 * Computes the flow leaving an output of an element.
+	 */
+	final double outFlow(int id, int output) {
+		return switch (kind[id]) {
+			case SOURCE -> sourceFlow[id];
+			case TAP -> open[id] ? inFlow[id] : 0.0;
+			case SPLIT -> inFlow[id] * EQUAL_FLOW;
+			case MULTISPLIT -> inFlow[id] * proportions[propStart[id] + output];
+			default -> SimulationObserver.NO_FLOW;
+		};
+	}
+
+	/**
+	 * Computes the input flow of every reachable element, in a single pass
+	 * over the pre-order.
+	 */
+	void computeFlows() {
+		computeFlows(0, reachable);
+	}
+
+	/**
+	 * Computes the input flows of the elements in the given range of the
+	 * pre-order, whose parents outside the range are already computed.
+	 */
+	void computeFlows(int from, int to) {
+		for (int p = from; p < to; p++) {
+			int id = order[p];
+			int up = parent[id];
+			inFlow[id] = up == NONE || kind[id] == SOURCE
+					? SimulationObserver.NO_FLOW
+					: outFlow(up, slot[id]);
+		}
+	}
+
+	/**
+	 * Simulates the network, notifying the observer of the flows of all the
+	 * elements of the system, as {@link HSystem#simulate(SimulationObserver)} does.
+	 *
+	 * @param observer the observer receiving notifications
+	 */
+	public void simulate(SimulationObserver observer) {
+		simulate(observer, false);
+	}
+
+	/**
+	 * Simulates the network, notifying the observer of the flows of all the
+	 * elements of the system and, if requested, of the elements whose input
+	 * flow exceeds their max flow, as
+	 * {@link HSystem#simulate(SimulationObserver, boolean)} does.
+	 *
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void simulate(SimulationObserver observer, boolean enableMaxFlowCheck) {
+		computeFlows();
+		writeBack(0, reachable);
+		for (int id = 0; id < listed; id++)
+			notify(observer, id, enableMaxFlowCheck);
+	}
+
+	/**
+	 * Simulates the network as {@link #simulate(SimulationObserver, boolean)}
+	 * does, computing the flows of independent subtrees on a fork/join pool.
+	 *
+	 * The pre-order is split into the trees of the sources, and large trees
+	 * are split further into the subtrees of their splits and multi-splits;
+	 * each task computes the flows of a range of whole subtrees and stores
+	 * them into their elements. The notifications are then sent from the
+	 * calling thread, in the order of the system, so they are the same of
+	 * a sequential simulation.
+	 *
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 * @param pool the pool running the tasks
+	 */
+	public void simulate(SimulationObserver observer, boolean enableMaxFlowCheck, ForkJoinPool pool) {
+		pool.invoke(new RangeTask(0, reachable));
+		for (int id = 0; id < listed; id++)
+			notify(observer, id, enableMaxFlowCheck);
+	}
+
+	/**
+	 * Computes and writes back the flows of a range of whole subtrees of the
+	 * pre-order, whose parents are already computed.
+	 *
+	 * A range with several subtrees forks tasks for all of them but the
+	 * largest one, grouping the small ones, and goes on with the largest
+	 * one itself; a range with a single subtree computes its root and goes
+	 * on with the subtrees below it. The largest subtree is thus handled by a
+	 * loop in the same task, and deep chains do not nest tasks.
+	 *
+	 * Groups smaller than {@link #PARALLEL_GRAIN} are computed in place
+	 * rather than forked, and the forked tasks are joined in reverse order,
+	 * so that each join finds its task on top of the deque of the worker:
+	 * a deep chain of splits would otherwise fork a task for the leaf of
+	 * each split and take quadratic time to join them.
+	 */
+	private final class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		RangeTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<RangeTask> forked = new ArrayList<>();
+			int from = this.from, to = this.to;
+			while (to - from > PARALLEL_GRAIN) {
+				if (subtreeSize[order[from]] == to - from) {
+					computeFlows(from, from + 1);
+					writeBack(from, from + 1);
+					from++;
+					continue;
+				}
+				int largest = from;
+				for (int p = from; p < to; p += subtreeSize[order[p]])
+					if (subtreeSize[order[p]] > subtreeSize[order[largest]])
+						largest = p;
+				int start = from;
+				for (int p = from; p < to; ) {
+					int end = p + subtreeSize[order[p]];
+					if (p == largest) {
+						fork(forked, start, p);
+						start = end;
+					} else if (end - start >= PARALLEL_GRAIN) {
+						fork(forked, start, end);
+						start = end;
+					}
+					p = end;
+				}
+				fork(forked, start, to);
+				to = largest + subtreeSize[order[largest]];
+				from = largest;
+			}
+			computeFlows(from, to);
+			writeBack(from, to);
+			for (int i = forked.size() - 1; i >= 0; i--)
+				forked.get(i).join();
+		}
+
+		private void fork(List<RangeTask> forked, int start, int end) {
+			if (end - start >= PARALLEL_GRAIN) {
+				RangeTask t = new RangeTask(start, end);
+				t.fork();
+				forked.add(t);
+			} else if (start < end) {
+				computeFlows(start, end);
+				writeBack(start, end);
+			}
+		}
+	}
+
+	/**
+	 * Computes the transfer coefficients, if tap status or proportions
+	 * changed since they were last computed.
+	 *
+	 * Every element is linear, so the input flow of an element is its
+	 * coefficient times the flow of its source: the product of the gains
+	 * (1 or 0 for taps, 0.5 for splits, the proportion for multi-splits)
+	 * along the path from the source.
+	 */
+	private void computeTransfer() {
+		if (transferValid)
+			return;
+		if (transfer == null) {
+			transfer = new double[elements.length];
+			sourceOf = new int[elements.length];
+		}
+		for (int p = 0; p < reachable; p++) {
+			int id = order[p];
+			int up = parent[id];
+			if (up == NONE) {
+				transfer[id] = 1.0;
+				sourceOf[id] = id;
+				continue;
+			}
+			double gain = switch (kind[up]) {
+				case TAP -> open[up] ? 1.0 : 0.0;
+				case SPLIT -> EQUAL_FLOW;
+				case MULTISPLIT -> proportions[propStart[up] + slot[id]];
+				default -> 1.0;
+			};
+			transfer[id] = transfer[up] * gain;
+			sourceOf[id] = sourceOf[up];
+		}
+		transferValid = true;
+	}
+
+	/**
+	 * Returns the ratio between the input flow of an element and the flow of
+	 * the source feeding it.
+	 *
+	 * The coefficients depend only on the connections, on the tap status
+	 * and on the proportions: they are computed once and cached until one
+	 * of those changes.
+	 *
+	 * @param e the element
+	 * @return the transfer coefficient, or {@link SimulationObserver#NO_FLOW}
+	 * 					if the element is reachable from no source
+	 */
+	public double getTransferCoefficient(Element e) {
+		int id = idOf(e);
+		if (position[id] == NONE)
+			return SimulationObserver.NO_FLOW;
+		computeTransfer();
+		return transfer[id];
+	}
+
+	/**
+	 * Computes the input flow an element would have if the given source
+	 * delivered the given flow, without simulating the network.
+	 *
+	 * Results are the ones of a simulation up to rounding errors.
+	 *
+	 * @param e the element
+	 * @param source the source
+	 * @param flow the flow of the source
+	 * @return the input flow of the element, the flow itself if the element is
+	 * 					the source, or {@link SimulationObserver#NO_FLOW} if the element
+	 * 					is not fed by the source
+	 */
+	public double flowAt(Element e, Source source, double flow) {
+		int id = idOf(e);
+		int src = idOf(source);
+		if (position[id] == NONE || position[src] == NONE)
+			return SimulationObserver.NO_FLOW;
+		computeTransfer();
+		if (sourceOf[id] != src)
+			return SimulationObserver.NO_FLOW;
+		return id == src ? flow : transfer[id] * flow;
+	}
+
+	/**
+	 * Computes the maximum flow of a source such that no element fed by it
+	 * exceeds its max flow, as the minimum ratio between the max flow and
+	 * the transfer coefficient of the elements with a max flow.
+	 *
+	 * @param source the source
+	 * @return the max admissible flow, {@link Double#POSITIVE_INFINITY} if
+	 * 					no element limits it, or {@link Double#NaN} if even a
+	 * 					null flow violates a max flow
+	 */
+	public double maxAdmissibleFlow(Source source) {
+		int src = idOf(source);
+		if (position[src] == NONE)
+			return Double.POSITIVE_INFINITY;
+		computeTransfer();
+		double limit = Double.POSITIVE_INFINITY;
+		int from = position[src] + 1, to = position[src] + subtreeSize[src];
+		for (int p = from; p < to; p++) {
+			int id = order[p];
+			double max = maxFlow[id];
+			if (max == 0)
+				continue;
+			double c = transfer[id];
+			if (c > 0)
+				limit = Math.min(limit, max / c);
+			else if (max < 0)
+				return Double.NaN;
+		}
+		return limit < 0 ? Double.NaN : limit;
+	}
+
+	/**
+	 * Makes the elements report their changes to this network, replacing
+	 * any network that was tracking them before; such a network would miss
+	 * the following changes, so it becomes stale.
+	 */
+	void track() {
+		int n = elements.length;
+		dirty = new boolean[n];
+		dirtyIds = new int[n];
+		changed = new boolean[n];
+		changedIds = new int[n];
+		previousFlow = new double[n];
+		for (int id = 0; id < n; id++) {
+			FlowNetwork previous = elements[id].network;
+			if (previous != null && previous != this)
+				previous.stale = true;
+			elements[id].network = this;
+			elements[id].networkId = id;
+		}
+	}
+
+	/**
+	 * Stops tracking the elements that are still tracked by this network.
+	 */
+	void untrack() {
+		for (Element e : elements)
+			if (e.network == this)
+				e.network = null;
+	}
+
+	/**
+	 * Records that the parameters of a tracked element may have changed.
+	 */
+	void parameterChanged(int id) {
+		if (readParameters(id) && !dirty[id]) {
+			dirty[id] = true;
+			dirtyIds[dirtyCount++] = id;
+		}
+	}
+
+	/**
+	 * Drops the changes recorded since the last incremental simulation,
+	 * before a complete simulation of a tracked network: the flows it
+	 * computes replace the ones the changes would be compared against, so
+	 * the next incremental simulation becomes a complete one.
+	 */
+	void discardChanges() {
+		if (dirtyCount == 0)
+			return;
+		for (int k = 0; k < dirtyCount; k++)
+			dirty[dirtyIds[k]] = false;
+		dirtyCount = 0;
+		simulated = false;
+	}
+
+	/**
+	 * Records that the connections of a tracked element changed.
+	 */
+	void topologyChanged() {
+		stale = true;
+	}
+
+	/**
+	 * Checks whether the connections of the elements changed after the
+	 * compilation, so that the network no longer reflects the system.
+	 */
+	boolean isStale() {
+		return stale;
+	}
+
+	/**
+	 * Simulates the changes recorded since the last incremental simulation.
+	 *
+	 * The first simulation, or one with a different max flow check, is a
+	 * complete one; the following ones recompute only the subtrees of the
+	 * changed elements and notify, in system order, only the elements whose
+	 * flows changed.
+	 *
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 * @param listener the listener of the changes, or null
+	 */
+	void simulateChanges(SimulationObserver observer, boolean enableMaxFlowCheck, FlowChangeListener listener) {
+		if (!simulated || enableMaxFlowCheck != lastCheck) {
+			simulate(observer, enableMaxFlowCheck);
+			if (listener != null)
+				for (int id = 0; id < listed; id++)
+					listener.flowChanged(elements[id], SimulationObserver.NO_FLOW, inFlow[id]);
+			for (int k = 0; k < dirtyCount; k++)
+				dirty[dirtyIds[k]] = false;
+			dirtyCount = 0;
+			simulated = true;
+			lastCheck = enableMaxFlowCheck;
+			return;
+		}
+
+		// the changed elements notify their own new parameters
+		int changedCount = 0;
+		int[] starts = new int[dirtyCount];
+		int ranges = 0;
+		for (int k = 0; k < dirtyCount; k++) {
+			int id = dirtyIds[k];
+			dirty[id] = false;
+			changed[id] = true;
+			previousFlow[id] = inFlow[id];
+			changedIds[changedCount++] = id;
+			if (position[id] != NONE) starts[ranges++] = position[id];
+		}
+		dirtyCount = 0;
+
+		// subtrees are nested or disjoint: visiting their roots in pre-order
+		// skips the ones inside a subtree already recomputed
+		Arrays.sort(starts, 0, ranges);
+		int end = 0;
+		for (int r = 0; r < ranges; r++) {
+			int root = order[starts[r]];
+			if (starts[r] < end) continue;
+			end = starts[r] + subtreeSize[root];
+			for (int p = starts[r] + 1; p < end; p++) {
+				int id = order[p];
+				double old = inFlow[id];
+				double in = outFlow(parent[id], slot[id]);
+				if (same(old, in)) continue;
+				inFlow[id] = in;
+				writeBack(p, p + 1);
+				if (!changed[id]) {
+					changed[id] = true;
+					previousFlow[id] = old;
+					changedIds[changedCount++] = id;
+				}
+			}
+		}
+
+		Arrays.sort(changedIds, 0, changedCount);
+		for (int k = 0; k < changedCount; k++) {
+			int id = changedIds[k];
+			changed[id] = false;
+			if (id >= listed) continue;
+			notify(observer, id, enableMaxFlowCheck);
+			if (listener != null)
+				listener.flowChanged(elements[id], previousFlow[id], inFlow[id]);
+		}
+	}
+
+	/**
+	 * Simulates the network, storing the notifications of all the elements
+	 * of the system into a buffer instead of sending them to an observer.
+	 *
+	 * Once the buffer has grown to the size of the network, the simulation
+	 * allocates nothing.
+	 *
+	 * @param result the buffer receiving the notifications, cleared first
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void simulate(SimulationResult result, boolean enableMaxFlowCheck) {
+		computeFlows();
+		writeBack(0, reachable);
+		result.clear();
+		for (int id = 0; id < listed; id++)
+			record(result, id, enableMaxFlowCheck);
+	}
+
+	/**
+	 * Stores the notifications of an element into a buffer.
+	 */
+	void record(SimulationResult result, int id, boolean enableMaxFlowCheck) {
+		Element e = elements[id];
+		if (position[id] == NONE) {
+			result.capture(id, e, kind[id]);
+			e.print(result.recorder);
+			if (kind[id] != SOURCE && enableMaxFlowCheck && !e.maxFlowCheck())
+				e.printError(result.recorder);
+			return;
+		}
+		double in = kind[id] == SOURCE ? SimulationObserver.NO_FLOW : inFlow[id];
+		result.begin(id, e, kind[id], TYPE_NAMES[kind[id]], in);
+		switch (kind[id]) {
+			case SOURCE -> result.addOutFlow(sourceFlow[id]);
+			case TAP -> result.addOutFlow(open[id] ? in : 0.0);
+			case SPLIT -> {
+				result.addOutFlow(in * EQUAL_FLOW);
+				result.addOutFlow(in * EQUAL_FLOW);
+			}
+			case MULTISPLIT -> {
+				for (int k = 0; k < outCount[id]; k++)
+					result.addOutFlow(in * proportions[propStart[id] + k]);
+			}
+			default -> result.addOutFlow(SimulationObserver.NO_FLOW);
+		}
+		if (kind[id] != SOURCE && enableMaxFlowCheck && exceedsMaxFlow(id))
+			result.error(maxFlow[id]);
+	}
+
+	/**
+	 * Sends the notifications of an element.
+	 */
+	void notify(SimulationObserver observer, int id, boolean enableMaxFlowCheck) {
+		if (position[id] == NONE) {
+			// not reached by any source: the element reports its own state
+			Element e = elements[id];
+			e.print(observer);
+			if (kind[id] != SOURCE && enableMaxFlowCheck && !e.maxFlowCheck())
+				e.printError(observer);
+			return;
+		}
+		notifyElement(observer, computed, id, kind[id], elements[id].getName(), true,
+				outCount[id], maxFlow[id], enableMaxFlowCheck);
+	}
+
+	/**
+	 * Flows of the elements of a compiled topology, by id, as computed by
+	 * one of the simulations of the package.
+	 */
+	interface Flows {
+		/** Returns the input flow of an element reached by the sources. */
+		double inFlow(int id);
+
+		/** Returns the flow leaving an output of an element reached by the sources. */
+		double outFlow(int id, int output);
+	}
+
+	/** The flows computed by this network. */
+	private final Flows computed = new Flows() {
+		@Override
+		public double inFlow(int id) {
+			return inFlow[id];
+		}
+
+		@Override
+		public double outFlow(int id, int output) {
+			return FlowNetwork.this.outFlow(id, output);
+		}
+	};
+
+	/**
+	 * Sends the notifications of an element of a compiled topology, with
+	 * the types and flows of the element-based simulation; an element
+	 * reached by no source reports no flows at all.
+	 *
+	 * @param observer the observer receiving notifications
+	 * @param flows the computed flows
+	 * @param id the element id
+	 * @param kind the kind of the element
+	 * @param name the name of the element
+	 * @param reached whether a source reaches the element
+	 * @param outCount the number of outputs notified by a multi-split
+	 * @param maxFlow the max flow of the element
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	static void notifyElement(SimulationObserver observer, Flows flows, int id, byte kind, String name,
+			boolean reached, int outCount, double maxFlow, boolean enableMaxFlowCheck) {
+		String type = TYPE_NAMES[kind];
+		double in = kind == SOURCE || !reached ? SimulationObserver.NO_FLOW : flows.inFlow(id);
+		switch (kind) {
+			case SOURCE -> observer.notifyFlow(type, name, in, flows.outFlow(id, 0));
+			case TAP -> observer.notifyFlow(type, name, in, reached ? flows.outFlow(id, 0) : SimulationObserver.NO_FLOW);
+			case SPLIT -> {
+				double out = reached ? flows.outFlow(id, 0) : SimulationObserver.NO_FLOW;
+				observer.notifyFlow(type, name, in, out, out);
+			}
+			case MULTISPLIT -> {
+				double[] out = new double[outCount];
+				for (int k = 0; k < out.length; k++)
+					out[k] = reached ? flows.outFlow(id, k) : SimulationObserver.NO_FLOW;
+				observer.notifyFlow(type, name, in, out);
+			}
+			default -> observer.notifyFlow(type, name, in, SimulationObserver.NO_FLOW);
+		}
+		if (kind != SOURCE && enableMaxFlowCheck && maxFlow != 0 && !(maxFlow >= in))
+			observer.notifyFlowError(type, name, in, maxFlow);
+	}
+
+	/**
+	 * Checks the input flow of an element against its max flow, with the
+	 * same semantics as {@link Element#maxFlowCheck()}.
+	 */
+	final boolean exceedsMaxFlow(int id) {
+		double max = maxFlow[id];
+		return max != 0 && !(max >= inFlow[id]);
+	}
+
+	/**
+	 * Stores the computed flows of the elements in the given range of the
+	 * pre-order back into the elements, so that their state is the same
+	 * left by the element-based simulation.
+	 */
+	void writeBack(int from, int to) {
+		for (int p = from; p < to; p++) {
+			int id = order[p];
+			if (kind[id] == SOURCE) continue;
+			Element e = elements[id];
+			e.setFlow(inFlow[id]);
+			if (kind[id] == TAP) ((Tap) e).setOpen(open[id]);
+		}
+	}
+}
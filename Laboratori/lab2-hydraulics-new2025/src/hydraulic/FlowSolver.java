@@ -0,0 +1,381 @@
+package hydraulic;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Solver of the flows of systems of any shape.
+ *
+ * {@link FlowNetwork} requires every element to have a single upstream
+ * element; this solver accepts any directed graph of elements, including
+ * {@link Merge} junctions and loops. The input flow of an element is the
+ * sum of the flows of all the pipes entering it; pipes carry water only
+ * downstream, as through a check valve.
+ *
+ * The graph is compiled once into arrays of incoming pipes and split in
+ * strongly connected components, visited in topological order: an element
+ * outside loops is solved in a single step from its already solved inputs,
+ * and the elements of a loop are solved together by Gauss-Seidel iterations,
+ * until the relative change of every flow is below the tolerance. Acyclic
+ * systems are thus solved in linear time.
+ *
+ * The solver reflects the connections at the time it was created; the
+ * parameters of the elements are read again by each {@link #solve()}.
+ */
+public final class FlowSolver {
+
+	/** Kind of {@link Merge} elements, besides the ones of {@link FlowNetwork}. */
+	static final byte MERGE = 5;
+
+	/** Default relative tolerance of the flows of loops. */
+	public static final double DEFAULT_TOLERANCE = 1e-12;
+	/** Default maximum number of iterations for a loop. */
+	public static final int DEFAULT_MAX_ITERATIONS = 10_000;
+
+	private final Element[] elements;
+	private final IdentityHashMap<Element, Integer> ids;
+	private final byte[] kind;
+	/** Pipes entering element {@code v}: {@code inStart[v]} to {@code inStart[v + 1]}. */
+	private final int[] inStart;
+	private final int[] inFrom;
+	private final int[] inSlot;
+	/** Whether an element is reachable from a source. */
+	private final boolean[] reachable;
+	/** Reachable elements by component, components in topological order. */
+	private final int[] components;
+	private final int[] componentStart;
+	private final int componentCount;
+	private final boolean[] loop;
+
+	private final double[] gain;
+	private final double[] inFlow;
+	private double tolerance = DEFAULT_TOLERANCE;
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	private int iterations;
+
+	/**
+	 * Determines the kind of an element, including merges.
+	 *
+	 * @return the kind, or -1 for element classes unknown to the solver
+	 */
+	static byte kindOf(Element e) {
+		return e.getClass() == Merge.class ? MERGE : FlowNetwork.kindOf(e);
+	}
+
+	/**
+	 * Checks whether all the elements of a system, and the ones connected
+	 * to them, are of classes known to the solver.
+	 */
+	static boolean canSolve(List<Element> system) {
+		IdentityHashMap<Element, Boolean> seen = new IdentityHashMap<>();
+		ArrayDeque<Element> stack = new ArrayDeque<>(system);
+		while (!stack.isEmpty()) {
+			Element e = stack.pop();
+			if (seen.put(e, Boolean.TRUE) != null) continue;
+			if (kindOf(e) < 0) return false;
+			for (Element d : FlowNetwork.downstreamOf(e))
+				if (d != null) stack.push(d);
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles the given elements.
+	 *
+	 * @param system the elements of the system
+	 * @throws IllegalArgumentException if an element is of an unknown class
+	 */
+	FlowSolver(List<Element> system) {
+		ids = new IdentityHashMap<>(system.size() * 2);
+		Element[] all = system.toArray(new Element[0]);
+		int n = 0;
+		for (Element e : all)
+			if (ids.putIfAbsent(e, n) == null)
+				all[n++] = e;
+		// elements connected to the system but not part of it
+		int pipes = 0;
+		for (int id = 0; id < n; id++) {
+			if (kindOf(all[id]) < 0)
+				throw new IllegalArgumentException("Unsupported element " + all[id].getName());
+			for (Element d : FlowNetwork.downstreamOf(all[id])) {
+				if (d == null) continue;
+				pipes++;
+				if (ids.containsKey(d)) continue;
+				if (n == all.length) all = Arrays.copyOf(all, n * 2 + 16);
+				ids.put(d, n);
+				all[n++] = d;
+			}
+		}
+		elements = Arrays.copyOf(all, n);
+		kind = new byte[n];
+		for (int id = 0; id < n; id++)
+			kind[id] = kindOf(elements[id]);
+
+		// pipes, both outgoing (for the visits) and incoming (for the solution)
+		int[] outStart = new int[n + 1];
+		int[] outTo = new int[pipes];
+		inStart = new int[n + 1];
+		for (int id = 0, o = 0; id < n; id++) {
+			for (Element d : FlowNetwork.downstreamOf(elements[id]))
+				if (d != null) {
+					int to = ids.get(d);
+					outTo[o++] = to;
+					inStart[to + 1]++;
+				}
+			outStart[id + 1] = o;
+		}
+		for (int id = 0; id < n; id++)
+			inStart[id + 1] += inStart[id];
+		inFrom = new int[pipes];
+		inSlot = new int[pipes];
+		int[] fill = Arrays.copyOf(inStart, n);
+		for (int id = 0; id < n; id++) {
+			Element[] down = FlowNetwork.downstreamOf(elements[id]);
+			for (int k = 0; k < down.length; k++)
+				if (down[k] != null) {
+					int p = fill[ids.get(down[k])]++;
+					inFrom[p] = id;
+					inSlot[p] = k;
+				}
+		}
+
+		reachable = new boolean[n];
+		int[] stack = new int[16];
+		int sp = 0;
+		for (int id = 0; id < n; id++)
+			if (kind[id] == FlowNetwork.SOURCE) {
+				reachable[id] = true;
+				if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+				stack[sp++] = id;
+			}
+		while (sp > 0) {
+			int v = stack[--sp];
+			for (int o = outStart[v]; o < outStart[v + 1]; o++)
+				if (!reachable[outTo[o]]) {
+					reachable[outTo[o]] = true;
+					if (sp == stack.length) stack = Arrays.copyOf(stack, sp * 2);
+					stack[sp++] = outTo[o];
+				}
+		}
+
+		// strongly connected components of the reachable elements (Tarjan),
+		// found in reverse topological order
+		int[] index = new int[n];
+		int[] low = new int[n];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[n];
+		int[] sccStack = new int[n];
+		int sccTop = 0;
+		int[] callNode = new int[16];
+		int[] callEdge = new int[16];
+		int[] found = new int[n];
+		int[] foundStart = new int[n + 1];
+		int foundCount = 0, foundSize = 0, counter = 0;
+		for (int root = 0; root < n; root++) {
+			if (!reachable[root] || index[root] >= 0) continue;
+			int depth = 0;
+			callNode[0] = root;
+			callEdge[0] = outStart[root];
+			index[root] = low[root] = counter++;
+			sccStack[sccTop++] = root;
+			onStack[root] = true;
+			while (depth >= 0) {
+				int v = callNode[depth];
+				if (callEdge[depth] < outStart[v + 1]) {
+					int w = outTo[callEdge[depth]++];
+					if (index[w] < 0) {
+						index[w] = low[w] = counter++;
+						sccStack[sccTop++] = w;
+						onStack[w] = true;
+						if (++depth == callNode.length) {
+							callNode = Arrays.copyOf(callNode, depth * 2);
+							callEdge = Arrays.copyOf(callEdge, depth * 2);
+						}
+						callNode[depth] = w;
+						callEdge[depth] = outStart[w];
+					} else if (onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+				if (low[v] == index[v]) {
+					int w;
+					do {
+						w = sccStack[--sccTop];
+						onStack[w] = false;
+						found[foundSize++] = w;
+					} while (w != v);
+					foundStart[++foundCount] = foundSize;
+				}
+				if (--depth >= 0) {
+					int u = callNode[depth];
+					low[u] = Math.min(low[u], low[v]);
+				}
+			}
+		}
+		componentCount = foundCount;
+		components = new int[foundSize];
+		componentStart = new int[foundCount + 1];
+		loop = new boolean[foundCount];
+		for (int c = 0, size = 0; c < foundCount; c++) {
+			int from = foundStart[foundCount - 1 - c], to = foundStart[foundCount - c];
+			System.arraycopy(found, from, components, size, to - from);
+			size += to - from;
+			componentStart[c + 1] = size;
+			if (to - from > 1) {
+				loop[c] = true;
+			} else {
+				int v = found[from];
+				for (int o = outStart[v]; o < outStart[v + 1]; o++)
+					if (outTo[o] == v)
+						loop[c] = true;
+			}
+		}
+
+		gain = new double[pipes];
+		inFlow = new double[n];
+	}
+
+	/**
+	 * Sets the relative tolerance of the flows of loops
+	 *
+	 * @param tolerance the tolerance
+	 */
+	public void setTolerance(double tolerance) {
+		if (!(tolerance > 0))
+			throw new IllegalArgumentException("Invalid tolerance " + tolerance);
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Sets the maximum number of iterations used to solve a loop
+	 *
+	 * @param maxIterations the max number of iterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		if (maxIterations <= 0)
+			throw new IllegalArgumentException("Invalid number of iterations " + maxIterations);
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Returns the number of elements, including the ones connected to the
+	 * system but not part of it
+	 *
+	 * @return count of elements
+	 */
+	public int size() {
+		return elements.length;
+	}
+
+	/**
+	 * Checks whether the system contains loops reachable from a source
+	 *
+	 * @return {@code true} if there are no loops
+	 */
+	public boolean isAcyclic() {
+		for (boolean l : loop)
+			if (l) return false;
+		return true;
+	}
+
+	/**
+	 * Returns the largest number of iterations used for a loop by the
+	 * last {@link #solve()}
+	 *
+	 * @return count of iterations, 0 for acyclic systems
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns the input flow of an element computed by the last {@link #solve()}
+	 *
+	 * @param e the element
+	 * @return the input flow, or {@link SimulationObserver#NO_FLOW} for
+	 * 					sources and elements reachable from no source
+	 * @throws IllegalArgumentException if the element is not part of the solver
+	 */
+	public double getInFlow(Element e) {
+		Integer id = ids.get(e);
+		if (id == null)
+			throw new IllegalArgumentException("Unknown element " + e.getName());
+		return inFlow[id];
+	}
+
+	/**
+	 * Computes the flows of all the elements, with the current parameters,
+	 * and stores them in the elements, as a simulation does
+	 *
+	 * @throws IllegalStateException if the flows of a loop do not converge,
+	 * 					e.g. because water circulates in it without losses
+	 */
+	public void solve() {
+		// pipe gains; a pipe leaving a source carries the flow of the source
+		for (int p = 0; p < gain.length; p++) {
+			Element from = elements[inFrom[p]];
+			gain[p] = switch (kind[inFrom[p]]) {
+				case FlowNetwork.SOURCE -> from.getFlow();
+				case FlowNetwork.TAP -> ((Tap) from).isOpen() ? 1.0 : 0.0;
+				case FlowNetwork.SPLIT -> FlowNetwork.EQUAL_FLOW;
+				case FlowNetwork.MULTISPLIT -> ((Multisplit) from).getProportion(inSlot[p]);
+				case MERGE -> 1.0;
+				default -> 0.0;
+			};
+		}
+		Arrays.fill(inFlow, SimulationObserver.NO_FLOW);
+		iterations = 0;
+		for (int c = 0; c < componentCount; c++) {
+			int from = componentStart[c], to = componentStart[c + 1];
+			if (!loop[c]) {
+				int v = components[from];
+				if (kind[v] != FlowNetwork.SOURCE)
+					inFlow[v] = sum(v);
+				continue;
+			}
+			for (int i = from; i < to; i++)
+				if (kind[components[i]] != FlowNetwork.SOURCE)
+					inFlow[components[i]] = 0.0;
+			solveLoop(from, to);
+		}
+		for (int id = 0; id < elements.length; id++) {
+			if (!reachable[id] || kind[id] == FlowNetwork.SOURCE) continue;
+			elements[id].setFlow(inFlow[id]);
+			if (kind[id] == FlowNetwork.TAP)
+				((Tap) elements[id]).setOpen(((Tap) elements[id]).isOpen());
+		}
+	}
+
+	private void solveLoop(int from, int to) {
+		for (int it = 1; it <= maxIterations; it++) {
+			boolean changed = false;
+			for (int i = from; i < to; i++) {
+				int v = components[i];
+				if (kind[v] == FlowNetwork.SOURCE) continue;
+				double next = sum(v);
+				if (Math.abs(next - inFlow[v]) > tolerance * Math.max(1.0, Math.abs(next)))
+					changed = true;
+				inFlow[v] = next;
+			}
+			if (!changed) {
+				iterations = Math.max(iterations, it);
+				return;
+			}
+		}
+		throw new IllegalStateException("The flows do not converge in the loop through "
+				+ elements[components[from]].getName());
+	}
+
+	private double sum(int v) {
+		double in = 0.0;
+		for (int p = inStart[v]; p < inStart[v + 1]; p++) {
+			int u = inFrom[p];
+			if (!reachable[u]) continue;
+			in += kind[u] == FlowNetwork.SOURCE ? gain[p] : gain[p] * inFlow[u];
+		}
+		return in;
+	}
+}
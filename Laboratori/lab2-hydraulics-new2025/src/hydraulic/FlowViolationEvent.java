@@ -0,0 +1,28 @@
+package hydraulic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of an element whose input flow exceeds its max flow.
+ */
+@Name("hydraulic.FlowViolation")
+@Label("Max Flow Violation")
+@Category("Hydraulics")
+@Description("Element whose input flow exceeds its max flow in a checked simulation")
+final class FlowViolationEvent extends jdk.jfr.Event {
+
+	@Label("Type")
+	String type;
+
+	@Label("Element")
+	String element;
+
+	@Label("Input Flow")
+	double inFlow;
+
+	@Label("Max Flow")
+	double maxFlow;
+}
@@ -0,0 +1,212 @@
+package hydraulic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Loader and writer of hydraulic systems in a line-oriented text format.
+ *
+ * Each line declares an element or a link; empty lines and lines
+ * starting with {@code #} are ignored:
+ * <pre>
+ * source   &lt;name&gt; &lt;flow&gt;
+ * tap      &lt;name&gt; open|closed [max=&lt;flow&gt;]
+ * split    &lt;name&gt; [max=&lt;flow&gt;]
+ * multisplit &lt;name&gt; &lt;outputs&gt; &lt;proportion&gt;... [max=&lt;flow&gt;]
+ * sink     &lt;name&gt; [max=&lt;flow&gt;]
+ * link     &lt;from&gt; &lt;to&gt; [&lt;output&gt;]
+ * </pre>
+ * Elements are added to the system in the order they are declared, and
+ * must be declared before being linked; names cannot contain blanks.
+ *
+ * The input is read in a single pass, keeping only the elements built
+ * so far and the index of their names; flows are propagated once, at
+ * the end.
+ */
+public final class HLoader {
+
+	private HLoader() { // static class
+	}
+
+	/**
+	 * Loads a system from a file
+	 *
+	 * @param file the path of the file
+	 * @return the loaded system
+	 * @throws IOException if the file cannot be read or is malformed
+	 */
+	public static HSystem load(Path file) throws IOException {
+		try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return load(in);
+		}
+	}
+
+	/**
+	 * Loads a system from a text stream
+	 *
+	 * @param in the source of the text
+	 * @return the loaded system
+	 * @throws IOException if the stream cannot be read or is malformed
+	 */
+	public static HSystem load(Reader in) throws IOException {
+		BufferedReader reader = in instanceof BufferedReader b ? b : new BufferedReader(in, 1 << 16);
+		HSystem system = new HSystem();
+		HashMap<String, Element> names = new HashMap<>();
+		List<Source> sources = new ArrayList<>();
+		String line;
+		int number = 0;
+		try {
+			while ((line = reader.readLine()) != null) {
+				number++;
+				String[] tokens = line.trim().split("\\s+");
+				if (tokens[0].isEmpty() || tokens[0].startsWith("#"))
+					continue;
+				if (tokens[0].equals("link")) {
+					link(names, tokens);
+					continue;
+				}
+				Element e = element(tokens);
+				if (names.putIfAbsent(e.getName(), e) != null)
+					throw new IllegalArgumentException("duplicate element " + e.getName());
+				if (e instanceof Source s) {
+					s.deferFlow = true;
+					sources.add(s);
+				}
+				system.addElement(e);
+			}
+		} catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+			throw new IOException("Line " + number + ": " + ex.getMessage(), ex);
+		} finally {
+			for (Source s : sources) {
+				s.deferFlow = false;
+				s.flowPending = false;
+			}
+		}
+		for (Source s : sources)
+			s.setTreeFlow();
+		return system;
+	}
+
+	private static Element element(String[] tokens) {
+		String name = tokens[1];
+		int next = 2;
+		Element e;
+		switch (tokens[0]) {
+			case "source" -> {
+				Source s = new Source(name);
+				s.setFlow(Double.parseDouble(tokens[next++]));
+				e = s;
+			}
+			case "tap" -> {
+				Tap t = new Tap(name);
+				String status = tokens[next++];
+				if (!status.equals("open") && !status.equals("closed"))
+					throw new IllegalArgumentException("invalid tap status " + status);
+				t.setOpen(status.equals("open"));
+				e = t;
+			}
+			case "split" -> e = new Split(name);
+			case "multisplit" -> {
+				int outputs = Integer.parseInt(tokens[next++]);
+				Multisplit ms = new Multisplit(name, outputs);
+				double[] props = new double[outputs];
+				for (int k = 0; k < outputs; k++)
+					props[k] = Double.parseDouble(tokens[next++]);
+				ms.setProportions(props);
+				e = ms;
+			}
+			case "sink" -> e = new Sink(name);
+			default -> throw new IllegalArgumentException("unknown declaration " + tokens[0]);
+		}
+		if (next < tokens.length) {
+			if (!tokens[next].startsWith("max=") || next + 1 < tokens.length || e instanceof Source)
+				throw new IllegalArgumentException("unexpected " + tokens[next]);
+			e.setMaxFlow(Double.parseDouble(tokens[next].substring(4)));
+		}
+		return e;
+	}
+
+	private static void link(HashMap<String, Element> names, String[] tokens) {
+		if (tokens.length > 4)
+			throw new IllegalArgumentException("unexpected " + tokens[4]);
+		Element from = names.get(tokens[1]);
+		Element to = names.get(tokens[2]);
+		if (from == null || to == null)
+			throw new IllegalArgumentException("unknown element " + (from == null ? tokens[1] : tokens[2]));
+		if (from instanceof Split) {
+			if (tokens.length < 4)
+				throw new IllegalArgumentException("missing output of " + tokens[1]);
+			from.connect(to, Integer.parseInt(tokens[3]));
+		} else {
+			if (tokens.length > 3)
+				throw new IllegalArgumentException(tokens[1] + " has a single output");
+			from.connect(to);
+		}
+	}
+
+	/**
+	 * Writes a system in the text format, declaring all the elements of
+	 * the system, in order, followed by their links
+	 *
+	 * @param system the system to be written
+	 * @param out the destination of the text
+	 * @throws IOException if the destination fails
+	 * @throws IllegalArgumentException if the system contains elements of
+	 * 					classes other than the ones of this package, duplicate
+	 * 					names, names with blanks, or links to elements outside
+	 * 					the system
+	 */
+	public static void write(HSystem system, Writer out) throws IOException {
+		StringBuilder line = new StringBuilder(64);
+		HashMap<Element, Boolean> listed = new HashMap<>();
+		HashMap<String, Boolean> names = new HashMap<>();
+		for (Element e : system.elements) {
+			String name = e.getName();
+			if (name == null || name.isEmpty() || name.chars().anyMatch(Character::isWhitespace))
+				throw new IllegalArgumentException("Invalid element name '" + name + "'");
+			if (names.put(name, Boolean.TRUE) != null)
+				throw new IllegalArgumentException("Duplicate element name " + name);
+			line.setLength(0);
+			switch (FlowNetwork.kindOf(e)) {
+				case FlowNetwork.SOURCE -> line.append("source ").append(name).append(' ').append(e.getFlow());
+				case FlowNetwork.TAP -> line.append("tap ").append(name).append(((Tap) e).isOpen() ? " open" : " closed");
+				case FlowNetwork.SPLIT -> line.append("split ").append(name);
+				case FlowNetwork.MULTISPLIT -> {
+					Multisplit ms = (Multisplit) e;
+					line.append("multisplit ").append(name).append(' ').append(ms.getNumOutputs());
+					for (int k = 0; k < ms.getNumOutputs(); k++)
+						line.append(' ').append(ms.getProportion(k));
+				}
+				case FlowNetwork.SINK -> line.append("sink ").append(name);
+				default -> throw new IllegalArgumentException("Unsupported element " + name);
+			}
+			if (e.getMaxFlow() != 0)
+				line.append(" max=").append(e.getMaxFlow());
+			out.append(line).append('\n');
+			listed.put(e, Boolean.TRUE);
+		}
+		for (Element e : system.elements) {
+			Element[] down = FlowNetwork.downstreamOf(e);
+			for (int k = 0; k < down.length; k++) {
+				if (down[k] == null)
+					continue;
+				if (!listed.containsKey(down[k]))
+					throw new IllegalArgumentException("Element " + down[k].getName() + " is not part of the system");
+				line.setLength(0);
+				line.append("link ").append(e.getName()).append(' ').append(down[k].getName());
+				if (e instanceof Split)
+					line.append(' ').append(k);
+				out.append(line).append('\n');
+			}
+		}
+		out.flush();
+	}
+}
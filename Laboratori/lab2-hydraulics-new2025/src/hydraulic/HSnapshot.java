@@ -0,0 +1,312 @@
+package hydraulic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Compact binary snapshot of a hydraulic system.
+ *
+ * The snapshot stores the elements of the system, and the elements
+ * connected to them that were not added to it, as columns of fixed-size
+ * values, each section aligned to 8 bytes:
+ * <pre>
+ * header      "HSYS", version, listed, total, outputs, proportions, name bytes, 0
+ * kinds       byte[total]
+ * flags       byte[total]     (bit 0: tap open)
+ * connected   int[total]      (connected outputs of splits)
+ * outCount    int[total]      (outputs of each element)
+ * maxFlow     double[total]
+ * flow        double[total]   (flow of sources)
+ * outputs     int[outputs]    (downstream element id, or -1)
+ * proportions double[proportions]
+ * nameEnd     int[total]      (end offset of each name)
+ * names       byte[name bytes] (UTF-8)
+ * </pre>
+ * The first {@code listed} elements are the ones of the system, in order.
+ * Snapshots are loaded by memory-mapping the file and reading each column
+ * in bulk; the flows are then propagated once from the sources.
+ */
+public final class HSnapshot {
+
+	private static final int MAGIC = 0x48535953; // "HSYS"
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+	private static final int CHUNK = 1 << 20;
+	private static final byte OPEN = 1;
+
+	private HSnapshot() { // static class
+	}
+
+	/**
+	 * Saves a snapshot of a system
+	 *
+	 * @param system the system
+	 * @param file the path of the snapshot
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if the system contains elements of
+	 * 					classes other than the ones of this package
+	 */
+	public static void save(HSystem system, Path file) throws IOException {
+		Element[] all = system.elements.toArray(new Element[0]);
+		int listed = all.length;
+		IdentityHashMap<Element, Integer> ids = new IdentityHashMap<>(listed * 2);
+		for (int id = 0; id < listed; id++)
+			ids.putIfAbsent(all[id], id);
+		int n = listed;
+		// elements connected to the system but not part of it
+		for (int id = 0; id < n; id++) {
+			for (Element d : FlowNetwork.downstreamOf(all[id])) {
+				if (d == null || ids.containsKey(d))
+					continue;
+				if (n == all.length)
+					all = Arrays.copyOf(all, n * 2 + 16);
+				ids.put(d, n);
+				all[n++] = d;
+			}
+		}
+
+		byte[] kinds = new byte[n];
+		byte[] flags = new byte[n];
+		int[] connected = new int[n];
+		int[] outCount = new int[n];
+		double[] maxFlow = new double[n];
+		double[] flow = new double[n];
+		int outputs = 0, props = 0;
+		for (int id = 0; id < n; id++) {
+			Element e = all[id];
+			kinds[id] = FlowNetwork.kindOf(e);
+			if (kinds[id] < 0)
+				throw new IllegalArgumentException("Unsupported element " + e.getName());
+			outCount[id] = FlowNetwork.downstreamOf(e).length;
+			if (e instanceof Split sp)
+				connected[id] = sp.numberDownstream;
+			if (e instanceof Tap t && t.isOpen())
+				flags[id] = OPEN;
+			if (e instanceof Multisplit ms)
+				props += ms.getNumOutputs();
+			if (e instanceof Source)
+				flow[id] = e.getFlow();
+			maxFlow[id] = e.getMaxFlow();
+			outputs += outCount[id];
+		}
+		int[] out = new int[outputs];
+		double[] proportions = new double[props];
+		int[] nameEnd = new int[n];
+		byte[][] names = new byte[n][];
+		int o = 0, p = 0, nameBytes = 0;
+		for (int id = 0; id < n; id++) {
+			for (Element d : FlowNetwork.downstreamOf(all[id]))
+				out[o++] = d == null ? -1 : ids.get(d);
+			if (all[id] instanceof Multisplit ms)
+				for (int k = 0; k < ms.getNumOutputs(); k++)
+					proportions[p++] = ms.getProportion(k);
+			String name = all[id].getName();
+			names[id] = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+			nameBytes += names[id].length;
+			nameEnd[id] = nameBytes;
+		}
+
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Output output = new Output(ch);
+			output.buf.putInt(MAGIC).putInt(VERSION).putInt(listed).putInt(n)
+				.putInt(outputs).putInt(props).putInt(nameBytes).putInt(0);
+			output.put(kinds, n);
+			output.align();
+			output.put(flags, n);
+			output.align();
+			output.put(connected, n);
+			output.put(outCount, n);
+			output.put(maxFlow, n);
+			output.put(flow, n);
+			output.put(out, outputs);
+			output.put(proportions, props);
+			output.put(nameEnd, n);
+			for (byte[] name : names)
+				output.put(name, name.length);
+			output.flush();
+		}
+	}
+
+	/**
+	 * Buffered writer of the sections of a snapshot.
+	 */
+	private static final class Output {
+		final FileChannel ch;
+		final ByteBuffer buf = ByteBuffer.allocateDirect(CHUNK);
+		/** Bytes already written to the channel. */
+		long written;
+
+		Output(FileChannel ch) {
+			this.ch = ch;
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining())
+				written += ch.write(buf);
+			buf.clear();
+		}
+
+		void ensure(int needed) throws IOException {
+			if (buf.remaining() < needed)
+				flush();
+		}
+
+		void align() throws IOException {
+			ensure(8);
+			while ((written + buf.position()) % 8 != 0)
+				buf.put((byte) 0);
+		}
+
+		void put(byte[] values, int length) throws IOException {
+			for (int i = 0; i < length; ) {
+				ensure(1);
+				int count = Math.min(length - i, buf.remaining());
+				buf.put(values, i, count);
+				i += count;
+			}
+		}
+
+		void put(int[] values, int length) throws IOException {
+			for (int i = 0; i < length; i++) {
+				ensure(4);
+				buf.putInt(values[i]);
+			}
+			align();
+		}
+
+		void put(double[] values, int length) throws IOException {
+			for (int i = 0; i < length; i++) {
+				ensure(8);
+				buf.putDouble(values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Loads a system from a snapshot
+	 *
+	 * @param file the path of the snapshot
+	 * @return the loaded system
+	 * @throws IOException if the file cannot be read or is not a valid snapshot
+	 */
+	public static HSystem load(Path file) throws IOException {
+		MappedByteBuffer map;
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (ch.size() > Integer.MAX_VALUE)
+				throw new IOException("Snapshot too large to be mapped");
+			map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+		try {
+			return read(map);
+		} catch (RuntimeException ex) {
+			throw new IOException("Invalid snapshot: " + ex.getMessage(), ex);
+		}
+	}
+
+	private static int aligned(int position) {
+		return (position + 7) & ~7;
+	}
+
+	private static HSystem read(ByteBuffer map) throws IOException {
+		if (map.getInt() != MAGIC)
+			throw new IOException("Not a system snapshot");
+		if (map.getInt() != VERSION)
+			throw new IOException("Unsupported snapshot version");
+		int listed = map.getInt(), n = map.getInt(), outputs = map.getInt(), props = map.getInt(), nameBytes = map.getInt();
+		map.position(HEADER);
+
+		byte[] kinds = new byte[n];
+		map.get(kinds);
+		map.position(aligned(map.position()));
+		byte[] flags = new byte[n];
+		map.get(flags);
+		map.position(aligned(map.position()));
+		int[] connected = new int[n];
+		map.asIntBuffer().get(connected);
+		map.position(aligned(map.position() + 4 * n));
+		int[] outCount = new int[n];
+		map.asIntBuffer().get(outCount);
+		map.position(aligned(map.position() + 4 * n));
+		double[] maxFlow = new double[n];
+		map.asDoubleBuffer().get(maxFlow);
+		map.position(map.position() + 8 * n);
+		double[] flow = new double[n];
+		map.asDoubleBuffer().get(flow);
+		map.position(map.position() + 8 * n);
+		int[] out = new int[outputs];
+		map.asIntBuffer().get(out);
+		map.position(aligned(map.position() + 4 * outputs));
+		double[] proportions = new double[props];
+		map.asDoubleBuffer().get(proportions);
+		map.position(map.position() + 8 * props);
+		int[] nameEnd = new int[n];
+		map.asIntBuffer().get(nameEnd);
+		map.position(aligned(map.position() + 4 * n));
+		byte[] names = new byte[nameBytes];
+		map.get(names);
+
+		Element[] all = new Element[n];
+		int p = 0;
+		for (int id = 0; id < n; id++) {
+			int start = id == 0 ? 0 : nameEnd[id - 1];
+			String name = new String(names, start, nameEnd[id] - start, StandardCharsets.UTF_8);
+			Element e = switch (kinds[id]) {
+				case FlowNetwork.SOURCE -> {
+					Source s = new Source(name);
+					s.setFlow(flow[id]);
+					s.deferFlow = true;
+					yield s;
+				}
+				case FlowNetwork.TAP -> {
+					Tap t = new Tap(name);
+					t.setOpen((flags[id] & OPEN) != 0);
+					yield t;
+				}
+				case FlowNetwork.SPLIT -> new Split(name);
+				case FlowNetwork.MULTISPLIT -> {
+					Multisplit ms = new Multisplit(name, outCount[id]);
+					ms.setProportions(Arrays.copyOfRange(proportions, p, p + outCount[id]));
+					p += outCount[id];
+					yield ms;
+				}
+				case FlowNetwork.SINK -> new Sink(name);
+				default -> throw new IOException("Unknown element kind " + kinds[id]);
+			};
+			e.setMaxFlow(maxFlow[id]);
+			all[id] = e;
+		}
+
+		HSystem system = new HSystem();
+		for (int id = 0; id < listed; id++)
+			system.addElement(all[id]);
+		int o = 0;
+		for (int id = 0; id < n; id++) {
+			for (int k = 0; k < outCount[id]; k++, o++) {
+				if (out[o] < 0)
+					continue;
+				if (all[id] instanceof Split)
+					all[id].connect(all[out[o]], k);
+				else
+					all[id].connect(all[out[o]]);
+			}
+			if (all[id] instanceof Split sp)
+				sp.numberDownstream = connected[id];
+		}
+		for (Element e : all)
+			if (e instanceof Source s) {
+				s.deferFlow = false;
+				s.flowPending = false;
+				s.setTreeFlow();
+			}
+		return system;
+	}
+}
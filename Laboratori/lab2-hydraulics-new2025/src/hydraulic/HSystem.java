@@ -1,6 +1,11 @@
 package hydraulic;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main class that acts as a container of the elements for
@@ -9,7 +14,10 @@ import java.util.ArrayList;
  */
 public class HSystem {
 
-	ArrayList<Element> elements = new ArrayList<>();
+	ElementRegistry elements = new ElementRegistry();
+	private FlowNetwork tracked;
+	private FlowChangeListener changeListener;
+	private SimulationMetrics metrics;
 
 // R1
 	/**
@@ -20,6 +28,8 @@ public class HSystem {
 	public void addElement(Element elem){
 		
 		elements.add(elem);
+		if (tracked != null)
+			tracked.topologyChanged();
 	}
 
 	/**
@@ -40,13 +50,17 @@ public class HSystem {
 	 */
 	public Element[] getElements(){
 		
-		Element[] elemArray = new Element[size()];
-		int i = 0;
-
-		for (Element e : elements)
-			elemArray[i++] = e;
+		return elements.toArray(new Element[0]);
+	}
 
-		return elemArray;
+	/**
+	 * returns the first element added to the system with the given name
+	 * 
+	 * @param name the name of the element
+	 * @return the element, or {@code null} if not present
+	 */
+	public Element getElement(String name) {
+		return elements.lookup(name);
 	}
 
 // R4
@@ -62,15 +76,23 @@ public class HSystem {
 	 * @param observer the observer receiving notifications
 	 */
 	public void simulate(SimulationObserver observer){
-		
-		for (Element e : elements)
-			if (e instanceof Source s)
-				s.setTreeFlow();
-
-		for (Element e : elements)
-			e.print(observer);
+		simulate(observer, false);
 	}
 
+	/**
+	 * Compiles the elements of the system into a flat network that
+	 * can be simulated repeatedly in a single linear pass.
+	 * 
+	 * The network reflects the current connections; parameter changes
+	 * can be loaded with {@link FlowNetwork#refresh()}.
+	 * 
+	 * @return the compiled network
+	 * @throws IllegalArgumentException if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	public FlowNetwork compile() {
+		return FlowNetwork.compile(elements);
+	}
 
 // R6
 	/**
@@ -79,21 +101,390 @@ public class HSystem {
 	 */
 	public boolean deleteElement(String name) {
 		
-		boolean done;
-		Element elementToDelete = null;
+		int slot = elements.slotOf(name);
+		if (slot < 0)
+			return false;
 
-		for (Element e : elements)
-			if (name.equals(e.getName())) {
-				elementToDelete = e;
-				break;
+		boolean done = elements.at(slot).delete();
+		if (done) {
+			elements.removeSlot(slot);
+			if (tracked != null)
+				tracked.topologyChanged();
+		}
+
+		return done;
+	}
+
+	/**
+	 * starts a bulk edit of the system
+	 * 
+	 * The operations of the edit are recorded and applied together by
+	 * {@link Edit#commit()}.
+	 * 
+	 * @return the edit object
+	 */
+	public Edit edit() {
+		return new Edit();
+	}
+
+	/**
+	 * Bulk edit of a system: additions, connections, deletions and
+	 * parameter changes that are applied in order when the edit is committed.
+	 */
+	public class Edit {
+		private final List<Operation> ops = new ArrayList<>();
+		/** Whether elements of classes unknown to {@link FlowNetwork} are rejected. */
+		boolean compiledOnly;
+
+		private Edit() {
+		}
+
+		/**
+		 * adds a new element to the system
+		 * 
+		 * @param elem the new element
+		 * @return this edit
+		 */
+		public Edit add(Element elem) {
+			ops.add(new Add(elem));
+			return this;
+		}
+
+		/**
+		 * connects an element downstream of another one
+		 * 
+		 * @param from the upstream element
+		 * @param to the downstream element
+		 * @return this edit
+		 */
+		public Edit connect(Element from, Element to) {
+			ops.add(new Link(from, to, -1, false));
+			return this;
+		}
+
+		/**
+		 * connects an element to a specific output of another one
+		 * 
+		 * @param from the upstream element
+		 * @param to the downstream element
+		 * @param index the output index
+		 * @return this edit
+		 */
+		public Edit connect(Element from, Element to, int index) {
+			ops.add(new Link(from, to, index, false));
+			return this;
+		}
+
+		/**
+		 * replaces the element connected to an output of an element,
+		 * detaching the previous one
+		 * 
+		 * @param from the upstream element
+		 * @param to the new downstream element
+		 * @param index the output index, ignored for single-output elements
+		 * @return this edit
+		 */
+		public Edit reconnect(Element from, Element to, int index) {
+			ops.add(new Link(from, to, index, true));
+			return this;
+		}
+
+		/**
+		 * deletes the element with the given name
+		 * 
+		 * @param name the name of the element
+		 * @return this edit
+		 */
+		public Edit delete(String name) {
+			ops.add(new Delete(name));
+			return this;
+		}
+
+		/**
+		 * sets the flow of a source
+		 * 
+		 * @param source the source
+		 * @param flow the new flow
+		 * @return this edit
+		 */
+		public Edit setFlow(Source source, double flow) {
+			ops.add(new Change(source, () -> source.setFlow(flow)));
+			return this;
+		}
+
+		/**
+		 * opens or closes a tap
+		 * 
+		 * @param tap the tap
+		 * @param open whether the tap is open
+		 * @return this edit
+		 */
+		public Edit setOpen(Tap tap, boolean open) {
+			ops.add(new Change(tap, () -> tap.setOpen(open)));
+			return this;
+		}
+
+		/**
+		 * sets the max flow of an element
+		 * 
+		 * @param elem the element
+		 * @param maxFlow the new max flow
+		 * @return this edit
+		 */
+		public Edit setMaxFlow(Element elem, double maxFlow) {
+			ops.add(new Change(elem, () -> elem.setMaxFlow(maxFlow)));
+			return this;
+		}
+
+		/**
+		 * sets the proportions of a multi-split
+		 * 
+		 * @param ms the multi-split
+		 * @param proportions the new proportions, at most one per output
+		 * @return this edit
+		 */
+		public Edit setProportions(Multisplit ms, double... proportions) {
+			ops.add(new Proportions(ms, proportions.clone()));
+			return this;
+		}
+
+		/**
+		 * applies all the operations of the edit, in order
+		 * 
+		 * All the operations are checked before applying any of them: an
+		 * invalid edit leaves the system unchanged. Flows are propagated from
+		 * the sources only once, after all the connections; the tracked
+		 * network, if any, is invalidated once.
+		 * 
+		 * The edit is not undone if an element throws while it is applied,
+		 * which the elements of this package do only when an unconnected
+		 * element is deleted; the operations applied before stay in place.
+		 * 
+		 * @return {@code true} if every deletion was performed, {@code false}
+		 * 							if some element refused to be deleted
+		 * @throws IllegalArgumentException if an element is {@code null}, an
+		 * 							output index is not an output of the element, or
+		 * 							a multi-split gets more proportions than outputs
+		 * @throws IllegalStateException if a deleted name is not in the system
+		 */
+		public boolean commit() {
+			HashMap<String, Integer> pending = new HashMap<>();
+			for (Operation op : ops)
+				op.check(pending);
+
+			List<Source> deferred = new ArrayList<>();
+			for (Element e : elements)
+				if (e instanceof Source s)
+					deferred.add(s);
+			for (Operation op : ops)
+				if (op instanceof Add add && add.elem instanceof Source s)
+					deferred.add(s);
+			for (Source s : deferred)
+				s.deferFlow = true;
+
+			boolean all = true;
+			try {
+				for (Operation op : ops)
+					if (!op.apply())
+						all = false;
+			} finally {
+				for (Source s : deferred) {
+					s.deferFlow = false;
+					if (s.flowPending) {
+						s.flowPending = false;
+						s.setTreeFlow();
+					}
+				}
+				ops.clear();
+				if (tracked != null)
+					tracked.topologyChanged();
 			}
+			return all;
+		}
 
-		
-		done = elementToDelete.delete();
-		if (done)
-			elements.remove(elementToDelete);
+		/**
+		 * Checks that an element and the ones downstream of it are of classes
+		 * known to {@link FlowNetwork}, if the edit requires so.
+		 */
+		private void checkSupported(Element elem) {
+			if (!compiledOnly)
+				return;
+			IdentityHashMap<Element, Boolean> seen = new IdentityHashMap<>();
+			ArrayDeque<Element> stack = new ArrayDeque<>();
+			stack.push(elem);
+			while (!stack.isEmpty()) {
+				Element e = stack.pop();
+				if (seen.put(e, Boolean.TRUE) != null) continue;
+				if (FlowNetwork.kindOf(e) < 0)
+					throw new IllegalArgumentException("Unsupported element " + e.getName());
+				for (Element d : FlowNetwork.downstreamOf(e))
+					if (d != null) stack.push(d);
+			}
+		}
 
-		return done;
+		/**
+		 * Operation recorded by an edit.
+		 */
+		private abstract class Operation {
+			/**
+			 * Checks the operation before any operation of the edit is applied.
+			 * 
+			 * @param pending the change in the number of elements with each
+			 * 					name made by the operations before this one
+			 */
+			abstract void check(HashMap<String, Integer> pending);
+
+			/**
+			 * Applies the operation.
+			 * 
+			 * @return {@code false} if an element refused to be deleted
+			 */
+			abstract boolean apply();
+		}
+
+		private final class Add extends Operation {
+			private final Element elem;
+
+			Add(Element elem) {
+				this.elem = elem;
+			}
+
+			@Override
+			void check(HashMap<String, Integer> pending) {
+				if (elem == null)
+					throw new IllegalArgumentException("Cannot add a null element");
+				checkSupported(elem);
+				pending.merge(elem.getName(), 1, Integer::sum);
+			}
+
+			@Override
+			boolean apply() {
+				elements.add(elem);
+				return true;
+			}
+		}
+
+		/**
+		 * Connection of an element to an output of another one; a replaced
+		 * output of a split must be given explicitly.
+		 */
+		private final class Link extends Operation {
+			private final Element from;
+			private final Element to;
+			private final int index;
+			private final boolean replace;
+
+			Link(Element from, Element to, int index, boolean replace) {
+				this.from = from;
+				this.to = to;
+				this.index = index;
+				this.replace = replace;
+			}
+
+			@Override
+			void check(HashMap<String, Integer> pending) {
+				if (from == null || to == null)
+					throw new IllegalArgumentException("Cannot connect a null element");
+				if (from instanceof Split sp && (index >= 0 || replace)
+						&& (index < 0 || index >= sp.downstream.length))
+					throw new IllegalArgumentException("Invalid output " + index + " of " + from.getName());
+				checkSupported(to);
+			}
+
+			@Override
+			boolean apply() {
+				if (replace)
+					detach();
+				if (index < 0 || !(from instanceof Split))
+					from.connect(to);
+				else
+					from.connect(to, index);
+				return true;
+			}
+
+			private void detach() {
+				if (from instanceof Split sp) {
+					Element old = sp.downstream[index];
+					if (old != null) {
+						sp.setDownstream(null, index);
+						if (sp.getIndex(old) < 0)
+							old.replaceUpstream(from, null);
+					}
+				} else {
+					Element old = from.getDownstream();
+					if (old != null)
+						old.replaceUpstream(from, null);
+				}
+			}
+		}
+
+		private final class Delete extends Operation {
+			private final String name;
+
+			Delete(String name) {
+				this.name = name;
+			}
+
+			@Override
+			void check(HashMap<String, Integer> pending) {
+				int count = pending.getOrDefault(name, 0) + (elements.slotOf(name) >= 0 ? 1 : 0);
+				if (count == 0)
+					throw new IllegalStateException("Element " + name + " not in the system");
+				pending.merge(name, -1, Integer::sum);
+			}
+
+			@Override
+			boolean apply() {
+				int slot = elements.slotOf(name);
+				if (!elements.at(slot).delete())
+					return false;
+				elements.removeSlot(slot);
+				return true;
+			}
+		}
+
+		/**
+		 * Change of a parameter of an element.
+		 */
+		private class Change extends Operation {
+			private final Element elem;
+			private final Runnable action;
+
+			Change(Element elem, Runnable action) {
+				this.elem = elem;
+				this.action = action;
+			}
+
+			@Override
+			void check(HashMap<String, Integer> pending) {
+				if (elem == null)
+					throw new IllegalArgumentException("Cannot change a null element");
+			}
+
+			@Override
+			boolean apply() {
+				action.run();
+				return true;
+			}
+		}
+
+		private final class Proportions extends Change {
+			private final Multisplit ms;
+			private final double[] proportions;
+
+			Proportions(Multisplit ms, double[] proportions) {
+				super(ms, () -> ms.setProportions(proportions));
+				this.ms = ms;
+				this.proportions = proportions;
+			}
+
+			@Override
+			void check(HashMap<String, Integer> pending) {
+				super.check(pending);
+				if (proportions.length > ms.getNumOutputs())
+					throw new IllegalArgumentException("Too many proportions for " + ms.getName());
+			}
+		}
 	}
 
 // R7
@@ -109,9 +500,19 @@ public class HSystem {
 	 */
 	public void simulate(SimulationObserver observer, boolean enableMaxFlowCheck) {
 		
-		for (Element e : elements)
-			if (e instanceof Source s)
-				s.setTreeFlow();
+		SimulationEvent event = new SimulationEvent();
+		if (metrics != null || event.isEnabled()) {
+			simulateInstrumented(observer, enableMaxFlowCheck, event);
+			return;
+		}
+
+		FlowNetwork network = completeNetwork();
+		if (network != null) {
+			network.simulate(observer, enableMaxFlowCheck);
+			return;
+		}
+
+		propagateFlows();
 
 		for (Element e : elements) {
 			e.print(observer);
@@ -120,6 +521,345 @@ public class HSystem {
 		}
 	}
 
+	/**
+	 * Simulates the system as {@link #simulate(SimulationObserver, boolean)}
+	 * does, measuring its phases for the metrics and the flight recorder.
+	 */
+	private void simulateInstrumented(SimulationObserver observer, boolean enableMaxFlowCheck, SimulationEvent event) {
+		event.begin();
+		SimulationMetrics.Recorder recorder = new SimulationMetrics.Recorder(observer);
+		int[] counts = new int[FlowSolver.MERGE + 2];
+		int depth = -1;
+		long start = System.nanoTime();
+		FlowNetwork network = completeNetwork();
+		if (network != null) {
+			network.computeFlows();
+			network.writeBack(0, network.reachable);
+		} else {
+			propagateFlows();
+		}
+		long propagated = System.nanoTime();
+		if (network != null) {
+			for (int id = 0; id < network.listed; id++)
+				network.notify(recorder, id, enableMaxFlowCheck);
+		} else {
+			for (Element e : elements) {
+				e.print(recorder);
+				if (!(e instanceof Source) && enableMaxFlowCheck && !(e.maxFlowCheck()))
+					e.printError(recorder);
+			}
+		}
+		long notified = System.nanoTime();
+
+		if (network != null) {
+			for (int id = 0; id < network.listed; id++)
+				counts[network.kind[id] + 1]++;
+			for (int p = 0; p < network.reachable; p++)
+				depth = Math.max(depth, network.depth[network.order[p]]);
+		} else {
+			for (Element e : elements)
+				counts[FlowSolver.kindOf(e) + 1]++;
+		}
+		if (metrics != null)
+			metrics.record(propagated - start, notified - propagated, counts, depth,
+					enableMaxFlowCheck, recorder.violators);
+		event.end();
+		if (event.shouldCommit()) {
+			event.elements = elements.size();
+			event.maxDepth = depth;
+			event.checked = enableMaxFlowCheck;
+			event.errors = recorder.violators.size();
+			event.propagation = propagated - start;
+			event.notification = notified - propagated;
+			event.commit();
+		}
+	}
+
+	/**
+	 * enables the collection of metrics by the simulations of the system
+	 * 
+	 * Only {@link #simulate(SimulationObserver, boolean)} and
+	 * {@link #simulate(SimulationObserver)} are measured; any metrics
+	 * collected before are discarded.
+	 * 
+	 * @param window the number of checked simulations over which the
+	 * 					max flow violations of each element are counted
+	 * @return the metrics
+	 */
+	public SimulationMetrics enableMetrics(int window) {
+		metrics = new SimulationMetrics(window);
+		return metrics;
+	}
+
+	/**
+	 * disables the collection of metrics
+	 */
+	public void disableMetrics() {
+		metrics = null;
+	}
+
+	/**
+	 * retrieves the metrics of the system
+	 * 
+	 * @return the metrics, or {@code null} if not enabled
+	 */
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * starts the simulation of the system, computing the flows of
+	 * independent source trees and of large subtrees in parallel on the
+	 * common fork/join pool
+	 * 
+	 * The notifications are the same, and in the same order, of
+	 * {@link #simulate(SimulationObserver, boolean)}, and are sent from
+	 * the calling thread.
+	 * 
+	 * @see FlowNetwork#simulate(SimulationObserver, boolean, ForkJoinPool)
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void simulateParallel(SimulationObserver observer, boolean enableMaxFlowCheck) {
+		simulateParallel(observer, enableMaxFlowCheck, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * starts the simulation of the system, computing the flows of
+	 * independent source trees and of large subtrees in parallel on the
+	 * given pool
+	 * 
+	 * Systems that cannot be compiled are simulated sequentially.
+	 * 
+	 * @see #simulateParallel(SimulationObserver, boolean)
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 * @param pool the pool computing the flows
+	 */
+	public void simulateParallel(SimulationObserver observer, boolean enableMaxFlowCheck, ForkJoinPool pool) {
+		FlowNetwork network = completeNetwork();
+		if (network != null)
+			network.simulate(observer, enableMaxFlowCheck, pool);
+		else
+			simulate(observer, enableMaxFlowCheck);
+	}
+
+	/**
+	 * Computes the flows of a system that cannot be compiled, storing them
+	 * in the elements: systems with merges or loops are solved as a whole,
+	 * while elements of unknown classes propagate their own flows.
+	 */
+	private void propagateFlows() {
+		if (FlowSolver.canSolve(elements)) {
+			new FlowSolver(elements).solve();
+			return;
+		}
+		for (Element e : elements)
+			if (e instanceof Source s)
+				s.setTreeFlow();
+	}
+
+	/**
+	 * creates a solver of the flows of the current connections of the
+	 * system, which can contain merges and loops
+	 * 
+	 * @return the solver
+	 * @throws IllegalArgumentException if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	public FlowSolver solver() {
+		return new FlowSolver(elements);
+	}
+
+	/**
+	 * starts an incremental simulation of the system
+	 * 
+	 * @see #simulateIncremental(SimulationObserver, boolean)
+	 * @param observer the observer receiving notifications
+	 */
+	public void simulateIncremental(SimulationObserver observer) {
+		simulateIncremental(observer, false);
+	}
+
+	/**
+	 * starts an incremental simulation of the system
+	 * 
+	 * The first incremental simulation is a complete one. After it, the
+	 * elements report to the system the changes of their parameters (e.g.
+	 * {@link Tap#setOpen(boolean)}, {@link Source#setFlow(double)} or
+	 * {@link Multisplit#setProportions(double...)}), and the following
+	 * incremental simulations recompute only the flows downstream of the
+	 * changed elements, notifying the observer only about the elements
+	 * whose flows changed.
+	 * 
+	 * Adding, deleting or connecting elements makes the next incremental
+	 * simulation a complete one again, and so does any other simulation
+	 * run after parameter changes not yet simulated incrementally.
+	 * 
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void simulateIncremental(SimulationObserver observer, boolean enableMaxFlowCheck) {
+		FlowNetwork network = trackedNetwork();
+		if (network == null)
+			simulate(observer, enableMaxFlowCheck);
+		else
+			network.simulateChanges(observer, enableMaxFlowCheck, changeListener);
+	}
+
+	/**
+	 * Returns the compiled network tracking the changes of the elements,
+	 * compiling it again if the connections changed.
+	 * 
+	 * @return the network, or {@code null} if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	private FlowNetwork trackedNetwork() {
+		if (tracked == null || tracked.isStale()) {
+			if (tracked != null)
+				tracked.untrack();
+			tracked = FlowNetwork.tryCompile(elements);
+			if (tracked == null)
+				return null;
+			tracked.track();
+		}
+		return tracked;
+	}
+
+	/**
+	 * Returns the compiled network tracking the changes of the elements,
+	 * ready for a complete simulation: it is compiled again only after
+	 * changes of the connections, since it already holds the current
+	 * parameters of the elements.
+	 * 
+	 * @return the network, or {@code null} if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	private FlowNetwork completeNetwork() {
+		FlowNetwork network = trackedNetwork();
+		if (network != null)
+			network.discardChanges();
+		return network;
+	}
+
+	private FlowNetwork requireTrackedNetwork() {
+		FlowNetwork network = trackedNetwork();
+		if (network == null)
+			throw new IllegalArgumentException("The system contains unsupported elements");
+		return network;
+	}
+
+	/**
+	 * computes the input flow an element would have if a source delivered
+	 * the given flow, through cached transfer coefficients
+	 * 
+	 * The coefficients are computed again only after changes of connections,
+	 * tap status or multi-split proportions.
+	 * 
+	 * @see FlowNetwork#flowAt(Element, Source, double)
+	 * @param elem the element
+	 * @param source the source
+	 * @param flow the flow of the source
+	 * @return the input flow of the element
+	 */
+	public double flowAt(Element elem, Source source, double flow) {
+		return requireTrackedNetwork().flowAt(elem, source, flow);
+	}
+
+	/**
+	 * computes the maximum flow of a source for which no element
+	 * fed by it exceeds its maximum flow
+	 * 
+	 * @see FlowNetwork#maxAdmissibleFlow(Source)
+	 * @param source the source
+	 * @return the max admissible flow of the source
+	 */
+	public double maxAdmissibleFlow(Source source) {
+		return requireTrackedNetwork().maxAdmissibleFlow(source);
+	}
+
+	/**
+	 * prepares the what-if analysis of toggling taps and deleting elements
+	 * with the current state of the system, which is not changed
+	 * 
+	 * @return the analysis
+	 * @throws IllegalArgumentException if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	public WhatIf whatIf() {
+		return new WhatIf(compile());
+	}
+
+	/**
+	 * prepares the optimization of the multi-split proportions and of the
+	 * tap status of the system, with the current max flows and source flows
+	 * 
+	 * @return the optimizer
+	 * @throws IllegalArgumentException if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	public ProportionOptimizer optimizer() {
+		return new ProportionOptimizer(compile());
+	}
+
+	/**
+	 * prepares the reconciliation of measured flows against the flows
+	 * simulated with the current state of the system
+	 * 
+	 * @see TelemetryReconciler
+	 * @param alpha the smoothing factor of the residual averages, in (0, 1]
+	 * @param threshold the default threshold of the average residuals, positive
+	 * @return the reconciler
+	 * @throws IllegalArgumentException if the parameters are out of range, or
+	 * 							the system contains elements of classes other
+	 * 							than the ones of this package
+	 */
+	public TelemetryReconciler reconciler(double alpha, double threshold) {
+		return new TelemetryReconciler(compile(), alpha, threshold);
+	}
+
+	/**
+	 * sets the listener of the changes found by each incremental simulation
+	 * 
+	 * After a complete simulation, all the elements are reported as changed.
+	 * 
+	 * @param listener the listener, or {@code null} to remove it
+	 */
+	public void setFlowChangeListener(FlowChangeListener listener) {
+		changeListener = listener;
+	}
+
+	/**
+	 * starts the simulation of the system, storing the notifications into
+	 * a columnar buffer instead of sending them to an observer
+	 * 
+	 * The network compiled for the system is kept until the connections
+	 * change, so repeated simulations allocate nothing once the buffer has
+	 * grown to the size of the system.
+	 * 
+	 * @see FlowNetwork#simulate(SimulationResult, boolean)
+	 * @param result the buffer receiving the notifications, cleared first
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void simulate(SimulationResult result, boolean enableMaxFlowCheck) {
+		FlowNetwork network = completeNetwork();
+		if (network != null) {
+			network.simulate(result, enableMaxFlowCheck);
+			return;
+		}
+
+		propagateFlows();
+
+		result.clear();
+		for (int id = 0; id < elements.size(); id++) {
+			Element e = elements.get(id);
+			result.capture(id, e, FlowSolver.kindOf(e));
+			e.print(result.recorder);
+			if (!(e instanceof Source) && enableMaxFlowCheck && !(e.maxFlowCheck()))
+				e.printError(result.recorder);
+		}
+	}
+
 // R8
 	/**
 	 * creates a new builder that can be used to create a 
@@ -0,0 +1,187 @@
+package hydraulic;
+
+import java.util.Arrays;
+
+/**
+ * Represents a junction where several pipes merge into one.
+ *
+ * Any number of elements can be connected upstream of a merge; its
+ * output flow is the sum of the flows it receives. Systems containing
+ * merges are not trees, and are simulated by {@link FlowSolver}.
+ */
+public class Merge extends Element {
+
+	private double[] flows;
+	private Element[] upstream;
+	private int numberUpstream;
+	private Element downstream;
+	private double maxFlow;
+
+	/**
+	 * Constructor
+	 * @param name name of the merge element
+	 */
+	public Merge(String name) {
+		super.name = name;
+		flows = new double[]{
+			SimulationObserver.NO_FLOW,
+			SimulationObserver.NO_FLOW
+		};
+		upstream = new Element[2];
+		downstream = null;
+		maxFlow = 0.0;
+	}
+
+	@Override
+	public void setFlow(double flow) {
+		flows[INPUT] = flow;
+		flows[OUTPUT] = flow;
+	}
+
+	@Override
+	public double getFlow() {
+		return flows[INPUT];
+	}
+
+	@Override
+	public double getOutFlow() {
+		return flows[OUTPUT];
+	}
+
+	@Override
+	public void connect(Element elem) {
+		downstream = elem;
+		topologyChanged();
+		elem.setFlow(getOutFlow());
+		elem.setUpstream(this);
+	}
+
+	/**
+	 * Adds an element to the ones upstream of this merge.
+	 */
+	@Override
+	public void setUpstream(Element elem) {
+		if (elem == null)
+			return;
+		for (int i = 0; i < numberUpstream; i++)
+			if (upstream[i] == elem)
+				return;
+		if (numberUpstream == upstream.length)
+			upstream = Arrays.copyOf(upstream, numberUpstream * 2);
+		upstream[numberUpstream++] = elem;
+		topologyChanged();
+	}
+
+	/**
+	 * Replaces an element upstream of this merge, keeping its position;
+	 * the element is just removed if its replacement is {@code null} or
+	 * already connected to this merge.
+	 */
+	@Override
+	void replaceUpstream(Element old, Element elem) {
+		int at = -1;
+		boolean present = elem == null;
+		for (int i = 0; i < numberUpstream; i++) {
+			if (upstream[i] == old)
+				at = i;
+			else if (upstream[i] == elem)
+				present = true;
+		}
+		if (at < 0) {
+			setUpstream(elem);
+			return;
+		}
+		if (present) {
+			System.arraycopy(upstream, at + 1, upstream, at, numberUpstream - at - 1);
+			upstream[--numberUpstream] = null;
+		} else
+			upstream[at] = elem;
+		topologyChanged();
+	}
+
+	/**
+	 * Retrieves the first element connected upstream of this merge
+	 *
+	 * @return upstream element, or {@code null}
+	 */
+	@Override
+	public Element getUpstream() {
+		return numberUpstream > 0 ? upstream[0] : null;
+	}
+
+	/**
+	 * Retrieves the elements connected upstream of this merge
+	 *
+	 * @return upstream elements, in connection order
+	 */
+	public Element[] getUpstreams() {
+		return Arrays.copyOf(upstream, numberUpstream);
+	}
+
+	@Override
+	public void setDownstream(Element elem) {
+		downstream = elem;
+		topologyChanged();
+	}
+
+	@Override
+	public Element getDownstream() {
+		return downstream;
+	}
+
+	/**
+	 * Does not propagate flows: the flow of a merge depends on all its
+	 * inputs, and is computed by the simulation of the system.
+	 */
+	@Override
+	public void setTreeFlow() {
+		// flows through merges are computed by FlowSolver
+	}
+
+	@Override
+	public void print(SimulationObserver observer) {
+		observer.notifyFlow("Merge", getName(), flows[INPUT], flows[OUTPUT]);
+	}
+
+	@Override
+	public void printError(SimulationObserver observer) {
+		observer.notifyFlowError("Merge", getName(), flows[INPUT], maxFlow);
+	}
+
+	/**
+	 * Deletes the merge, connecting its only upstream element to its
+	 * downstream element; merges with several inputs cannot be deleted.
+	 */
+	@Override
+	public boolean delete() {
+		if (numberUpstream > 1)
+			return false;
+		Element up = getUpstream();
+		if (downstream != null) {
+			if (up != null)
+				up.connect(downstream);
+			downstream.replaceUpstream(this, up);
+		} else if (up != null)
+			up.setDownstream(null);
+		downstream = null;
+		Arrays.fill(upstream, null);
+		numberUpstream = 0;
+		return true;
+	}
+
+	@Override
+	public void setMaxFlow(double maxFlow) {
+		this.maxFlow = maxFlow;
+		parameterChanged();
+	}
+
+	@Override
+	double getMaxFlow() {
+		return maxFlow;
+	}
+
+	@Override
+	public boolean maxFlowCheck() {
+		return maxFlow != 0 ? maxFlow >= flows[INPUT] : true;
+	}
+}
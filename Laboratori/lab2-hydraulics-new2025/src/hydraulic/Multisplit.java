@@ -34,14 +34,35 @@ public class Multisplit extends Split {
 		return flows[INPUT];
 	}
 
+	/**
+	 * Retrieves the proportion of the input flow sent to an output
+	 * 
+	 * @param index the output index
+	 * @return the proportion of flow for that output
+	 */
+	double getProportion(int index) {
+		return outFlowProportions[index];
+	}
+
+	/**
+	 * Retrieves the number of outputs of this multi-split
+	 * 
+	 * @return count of outputs
+	 */
+	int getNumOutputs() {
+		return outFlowProportions.length;
+	}
+
 	public double getOutFlow(int index) {
 		return flows[INPUT] * outFlowProportions[index];
 	}
 
 	@Override
 	public void connect(Element elem, int index){
+		outputChanged(index, elem);
 		downstream[index] = elem;
 		numberDownstream++;
+		topologyChanged();
 		elem.setFlow(getOutFlow(index));
 		elem.setUpstream(this);
 	}
@@ -71,6 +92,7 @@ public class Multisplit extends Split {
 
 		for (double p : proportions)
 			outFlowProportions[i++] = p;
+		parameterChanged();
 	}
 	
 }
@@ -0,0 +1,447 @@
+package hydraulic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Optimizer of the proportions of the multi-splits and of the status of the
+ * taps of a system, meeting the flow demands of the sinks without exceeding
+ * the max flow of any element.
+ *
+ * The optimizer works on a compiled network, in two passes over its
+ * pre-order. Going up, it computes for each element the input flow it
+ * wants, to meet the demands of the sinks below it, and the largest input
+ * flow it accepts without any element below it exceeding its max flow:
+ * <ul>
+ * <li>a sink wants its demand and accepts up to its max flow;
+ * <li>a tap wants the flow wanted by its output, and is opened only if that
+ * flow is positive; a closed tap accepts up to its own max flow;
+ * <li>a split sends half of its input to each output, so it wants twice the
+ * larger flow wanted by its outputs and accepts twice the smaller one;
+ * <li>a multi-split wants the sum of the flows wanted by its outputs and
+ * accepts the sum of the flows they accept.
+ * </ul>
+ * Going down, each multi-split divides its input among its outputs: when the
+ * input is less than the wanted flow, each output gets the same fraction of
+ * the flow it wants; otherwise the excess is divided in proportion to the
+ * flow each output can still accept, with unconnected or unlimited outputs
+ * taking all of it. Only when the input exceeds the flow accepted by all
+ * the outputs some element is bound to exceed its max flow.
+ *
+ * After a complete {@link #solve()}, each change of a demand, max flow or
+ * source flow is solved again incrementally: the wanted and accepted flows
+ * are recomputed only up to the first element whose values do not change,
+ * and the flows are divided again only below it, where they change.
+ *
+ * The proportions and tap status found are applied to the elements by
+ * {@link #apply()}.
+ */
+public final class ProportionOptimizer {
+
+	private static final int NONE = FlowNetwork.NONE;
+	private static final double UNLIMITED = Double.POSITIVE_INFINITY;
+
+	private final FlowNetwork net;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	/** Element connected to each output, starting at {@code outStart[id]}. */
+	private final int[] outStart;
+	private final int[] outCount;
+	private final int[] outChild;
+
+	/** Parameters of the problem. */
+	private final double[] demand;
+	private final double[] limit;
+	private final double[] supply;
+
+	/** Flow wanted and flow accepted by each element. */
+	private final double[] want;
+	private final double[] accept;
+
+	/** Solution: input flows, tap status and multi-split proportions. */
+	private final double[] in;
+	private final boolean[] open;
+	private final double[] proportions;
+	private final boolean[] exceeding;
+	private int exceedingCount;
+
+	/** Elements to divide again the flows of. */
+	private final boolean[] dirty;
+	private boolean solved;
+
+	/**
+	 * Prepares the optimization of a compiled network, starting from the
+	 * current max flows, source flows, tap status and proportions; the
+	 * demands of all the sinks are 0.
+	 */
+	ProportionOptimizer(FlowNetwork net) {
+		this.net = net;
+		int n = net.size();
+		for (int id = net.listed - 1; id >= 0; id--)
+			ids.put(net.elements[id].getName(), id);
+		outStart = new int[n + 1];
+		outCount = new int[n];
+		for (int id = 0; id < n; id++) {
+			outCount[id] = switch (net.kind[id]) {
+				case FlowNetwork.SOURCE, FlowNetwork.TAP -> 1;
+				case FlowNetwork.SPLIT -> 2;
+				case FlowNetwork.MULTISPLIT -> ((Multisplit) net.elements[id]).getNumOutputs();
+				default -> 0;
+			};
+			outStart[id + 1] = outStart[id] + outCount[id];
+		}
+		outChild = new int[outStart[n]];
+		Arrays.fill(outChild, NONE);
+		for (int p = 0; p < net.reachable; p++) {
+			int v = net.order[p];
+			int u = net.parent[v];
+			if (u != NONE && net.slot[v] < outCount[u])
+				outChild[outStart[u] + net.slot[v]] = v;
+		}
+
+		demand = new double[n];
+		limit = net.maxFlow.clone();
+		supply = net.sourceFlow.clone();
+		want = new double[n];
+		accept = new double[n];
+		in = new double[n];
+		Arrays.fill(in, SimulationObserver.NO_FLOW);
+		open = net.open.clone();
+		proportions = net.proportions.clone();
+		exceeding = new boolean[n];
+		dirty = new boolean[n];
+	}
+
+	/**
+	 * Sets the flow a sink should receive
+	 *
+	 * @param sink the name of the sink
+	 * @param flow the demand of the sink
+	 * @throws IllegalArgumentException if there is no such sink
+	 */
+	public void setDemand(String sink, double flow) {
+		int id = require(sink, FlowNetwork.SINK);
+		demand[id] = flow;
+		changed(id);
+	}
+
+	/**
+	 * Sets the max flow an element can receive, without changing the element
+	 *
+	 * @param name the name of the element
+	 * @param maxFlow the max flow, 0 for unlimited
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public void setMaxFlow(String name, double maxFlow) {
+		int id = require(name, NONE);
+		limit[id] = maxFlow;
+		changed(id);
+	}
+
+	/**
+	 * Sets the flow of a source, without changing the source
+	 *
+	 * @param source the name of the source
+	 * @param flow the flow of the source
+	 * @throws IllegalArgumentException if there is no such source
+	 */
+	public void setSourceFlow(String source, double flow) {
+		int id = require(source, FlowNetwork.SOURCE);
+		supply[id] = flow;
+		changed(id);
+	}
+
+	private int require(String name, int expected) {
+		Integer id = ids.get(name);
+		if (id == null || (expected != NONE && net.kind[id] != expected))
+			throw new IllegalArgumentException("No suitable element " + name);
+		return id;
+	}
+
+	/**
+	 * Solves the whole network.
+	 *
+	 * @return whether no element exceeds its max flow
+	 */
+	public boolean solve() {
+		for (int p = net.reachable - 1; p >= 0; p--)
+			gather(net.order[p]);
+		Arrays.fill(exceeding, false);
+		exceedingCount = 0;
+		for (int p = 0; p < net.reachable; p++)
+			dirty[net.order[p]] = true;
+		divide(0, net.reachable);
+		solved = true;
+		return exceedingCount == 0;
+	}
+
+	/**
+	 * Solves again the part of the network affected by a change of an element.
+	 */
+	private void changed(int id) {
+		if (!solved || net.position[id] == NONE)
+			return;
+		int top = id;
+		dirty[id] = true;
+		boolean moved = gather(id);
+		// the parent of a changed element divides its flow again,
+		// even if its own wanted and accepted flows do not change
+		while (moved && net.parent[top] != NONE) {
+			top = net.parent[top];
+			dirty[top] = true;
+			moved = gather(top);
+		}
+		divide(net.position[top], net.position[top] + net.subtreeSize[top]);
+	}
+
+	private double limitOf(int id) {
+		return limit[id] != 0 ? Math.max(limit[id], 0.0) : UNLIMITED;
+	}
+
+	/**
+	 * Computes the flows wanted and accepted by an element from those of its
+	 * outputs.
+	 *
+	 * @return whether they changed
+	 */
+	private boolean gather(int id) {
+		double w, a;
+		switch (net.kind[id]) {
+			case FlowNetwork.SINK -> {
+				a = limitOf(id);
+				w = Math.min(Math.max(demand[id], 0.0), a);
+			}
+			case FlowNetwork.SOURCE -> {
+				int c = outChild[outStart[id]];
+				w = c != NONE ? want[c] : 0.0;
+				a = c != NONE ? accept[c] : UNLIMITED;
+			}
+			case FlowNetwork.TAP -> {
+				int c = outChild[outStart[id]];
+				w = c != NONE ? want[c] : 0.0;
+				a = w > 0 ? Math.min(limitOf(id), accept[c]) : limitOf(id);
+				w = Math.min(w, a);
+			}
+			case FlowNetwork.SPLIT -> {
+				double most = 0.0, least = UNLIMITED;
+				for (int k = outStart[id]; k < outStart[id + 1]; k++) {
+					int c = outChild[k];
+					if (c == NONE)
+						continue;
+					most = Math.max(most, want[c]);
+					least = Math.min(least, accept[c]);
+				}
+				a = Math.min(limitOf(id), least / FlowNetwork.EQUAL_FLOW);
+				w = Math.min(most / FlowNetwork.EQUAL_FLOW, a);
+			}
+			case FlowNetwork.MULTISPLIT -> {
+				double total = 0.0, accepted = 0.0;
+				for (int k = outStart[id]; k < outStart[id + 1]; k++) {
+					int c = outChild[k];
+					total += c != NONE ? want[c] : 0.0;
+					accepted += c != NONE ? accept[c] : UNLIMITED;
+				}
+				a = Math.min(limitOf(id), accepted);
+				w = Math.min(total, a);
+			}
+			default -> {
+				w = 0.0;
+				a = UNLIMITED;
+			}
+		}
+		boolean moved = w != want[id] || a != accept[id];
+		want[id] = w;
+		accept[id] = a;
+		return moved;
+	}
+
+	/**
+	 * Divides the flows in a range of whole subtrees of the pre-order,
+	 * skipping the subtrees whose input did not change.
+	 */
+	private void divide(int from, int to) {
+		for (int p = from; p < to; ) {
+			int id = net.order[p];
+			if (!dirty[id]) {
+				p += net.subtreeSize[id];
+				continue;
+			}
+			dirty[id] = false;
+			if (net.kind[id] == FlowNetwork.SOURCE)
+				in[id] = supply[id];
+			check(id);
+			double x = in[id];
+			switch (net.kind[id]) {
+				case FlowNetwork.SOURCE -> feed(outChild[outStart[id]], x);
+				case FlowNetwork.TAP -> {
+					int c = outChild[outStart[id]];
+					if (c != NONE) {
+						open[id] = want[c] > 0;
+						feed(c, open[id] ? x : 0.0);
+					}
+				}
+				case FlowNetwork.SPLIT -> {
+					for (int k = outStart[id]; k < outStart[id + 1]; k++)
+						feed(outChild[k], x * FlowNetwork.EQUAL_FLOW);
+				}
+				case FlowNetwork.MULTISPLIT -> {
+					share(id, x);
+					for (int k = outStart[id]; k < outStart[id + 1]; k++)
+						feed(outChild[k], x * proportions[net.propStart[id] + k - outStart[id]]);
+				}
+				default -> {
+				}
+			}
+			p++;
+		}
+	}
+
+	private void feed(int id, double flow) {
+		if (id != NONE && Double.compare(flow, in[id]) != 0) {
+			in[id] = flow;
+			dirty[id] = true;
+		}
+	}
+
+	private void check(int id) {
+		double max = limit[id];
+		boolean over = net.kind[id] != FlowNetwork.SOURCE && max != 0 && !(max >= in[id]);
+		if (over != exceeding[id]) {
+			exceeding[id] = over;
+			exceedingCount += over ? 1 : -1;
+		}
+	}
+
+	/**
+	 * Computes the proportions of a multi-split dividing the given input.
+	 */
+	private void share(int id, double x) {
+		if (!(x > 0))
+			return;
+		int first = outStart[id], m = outCount[id], base = net.propStart[id];
+		double wanted = 0.0, room = 0.0, accepted = 0.0;
+		int unlimited = 0;
+		for (int k = 0; k < m; k++) {
+			int c = outChild[first + k];
+			double w = c != NONE ? want[c] : 0.0;
+			double a = c != NONE ? accept[c] : UNLIMITED;
+			wanted += w;
+			if (a == UNLIMITED)
+				unlimited++;
+			else {
+				room += a - w;
+				accepted += a;
+			}
+		}
+		double excess = x - wanted;
+		boolean feasible = excess <= 0 || unlimited > 0 || excess <= room;
+		for (int k = 0; k < m; k++) {
+			int c = outChild[first + k];
+			double w = c != NONE ? want[c] : 0.0;
+			double a = c != NONE ? accept[c] : UNLIMITED;
+			double flow;
+			if (excess <= 0)
+				flow = x * (w / wanted);
+			else if (unlimited > 0)
+				flow = w + (a == UNLIMITED ? excess / unlimited : 0.0);
+			else if (excess <= room)
+				flow = room > 0 ? w + excess * ((a - w) / room) : w;
+			else
+				flow = accepted > 0 ? a + (excess - room) * (a / accepted) : x / m;
+			if (feasible)
+				flow = Math.min(flow, a);
+			double share = flow / x;
+			// the simulation multiplies the input by the proportion
+			while (feasible && x * share > a)
+				share = Math.nextDown(share);
+			proportions[base + k] = share;
+		}
+	}
+
+	/**
+	 * Checks whether the solution found lets no element exceed its max flow
+	 *
+	 * @return whether the solution is feasible
+	 */
+	public boolean isFeasible() {
+		return exceedingCount == 0;
+	}
+
+	/**
+	 * Returns the elements whose input flow exceeds their max flow with the
+	 * solution found
+	 *
+	 * @return the names of the elements, in pre-order
+	 */
+	public List<String> getViolations() {
+		List<String> names = new ArrayList<>(exceedingCount);
+		for (int p = 0; p < net.reachable && names.size() < exceedingCount; p++)
+			if (exceeding[net.order[p]])
+				names.add(net.elements[net.order[p]].getName());
+		return names;
+	}
+
+	/**
+	 * Returns the input flow of an element with the solution found
+	 *
+	 * @param name the name of the element
+	 * @return the input flow, or {@code NaN} for sources and unreachable elements
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public double getInFlow(String name) {
+		int id = require(name, NONE);
+		return net.kind[id] == FlowNetwork.SOURCE ? SimulationObserver.NO_FLOW : in[id];
+	}
+
+	/**
+	 * Returns the proportions found for a multi-split
+	 *
+	 * @param name the name of the multi-split
+	 * @return the proportions of its outputs
+	 * @throws IllegalArgumentException if there is no such multi-split
+	 */
+	public double[] getProportions(String name) {
+		int id = require(name, FlowNetwork.MULTISPLIT);
+		int base = net.propStart[id];
+		return Arrays.copyOfRange(proportions, base, base + outCount[id]);
+	}
+
+	/**
+	 * Returns the status found for a tap
+	 *
+	 * @param name the name of the tap
+	 * @return whether the tap should be open
+	 * @throws IllegalArgumentException if there is no such tap
+	 */
+	public boolean isOpen(String name) {
+		return open[require(name, FlowNetwork.TAP)];
+	}
+
+	/**
+	 * Sets the proportions and tap status found on the elements that need
+	 * them changed.
+	 *
+	 * @return the number of elements changed
+	 */
+	public int apply() {
+		int changes = 0;
+		for (int p = 0; p < net.reachable; p++) {
+			int id = net.order[p];
+			Element e = net.elements[id];
+			if (net.kind[id] == FlowNetwork.TAP && open[id] != net.open[id]) {
+				((Tap) e).setOpen(open[id]);
+				net.open[id] = open[id];
+				changes++;
+			} else if (net.kind[id] == FlowNetwork.MULTISPLIT) {
+				int base = net.propStart[id], end = base + outCount[id];
+				if (!Arrays.equals(proportions, base, end, net.proportions, base, end)) {
+					((Multisplit) e).setProportions(Arrays.copyOfRange(proportions, base, end));
+					System.arraycopy(proportions, base, net.proportions, base, end - base);
+					changes++;
+				}
+			}
+		}
+		return changes;
+	}
+}
@@ -0,0 +1,293 @@
+package hydraulic;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Batch of simulation scenarios of the same compiled network.
+ *
+ * Each scenario has its own source flows, tap opening status and
+ * multi-split proportions, initialized to the ones the network was
+ * compiled or refreshed with. The parameters and the results are stored
+ * as matrices with one row per element and one column per scenario, so
+ * that evaluating an element is a tight loop over the scenarios.
+ *
+ * The evaluation never modifies the elements: results are returned as a
+ * {@link Result} holding the input flow of every element in every
+ * scenario and the bitmaps of the scenarios violating the max flows.
+ * Elements reachable from no source have no flow ({@link SimulationObserver#NO_FLOW})
+ * and no violation in any scenario.
+ */
+public class ScenarioBatch {
+
+	/** Scenarios evaluated by each task; a multiple of 64 so tasks never share a bitmap word. */
+	private static final int BLOCK = 256;
+
+	private final FlowNetwork net;
+	private final int scenarios;
+	/** Row of each source in {@code flows} and of each tap in {@code open}. */
+	private final int[] row;
+	private final double[] flows;
+	private final boolean[] open;
+	/** Proportion {@code k} of multi-split {@code id} is row {@code propStart[id] + k}. */
+	private final double[] proportions;
+
+	/**
+	 * Creates a batch of scenarios, all with the current parameters of the network.
+	 *
+	 * @param network the compiled network
+	 * @param scenarios the number of scenarios
+	 */
+	public ScenarioBatch(FlowNetwork network, int scenarios) {
+		if (scenarios <= 0)
+			throw new IllegalArgumentException("At least one scenario is required");
+		this.net = network;
+		this.scenarios = scenarios;
+		int n = network.size();
+		row = new int[n];
+		int sources = 0, taps = 0;
+		for (int id = 0; id < n; id++) {
+			if (network.kind[id] == FlowNetwork.SOURCE) row[id] = sources++;
+			else if (network.kind[id] == FlowNetwork.TAP) row[id] = taps++;
+		}
+		flows = new double[sources * scenarios];
+		open = new boolean[taps * scenarios];
+		proportions = new double[network.proportions.length * scenarios];
+		for (int id = 0; id < n; id++) {
+			if (network.kind[id] == FlowNetwork.SOURCE)
+				Arrays.fill(flows, row[id] * scenarios, (row[id] + 1) * scenarios, network.sourceFlow[id]);
+			else if (network.kind[id] == FlowNetwork.TAP)
+				Arrays.fill(open, row[id] * scenarios, (row[id] + 1) * scenarios, network.open[id]);
+		}
+		for (int k = 0; k < network.proportions.length; k++)
+			Arrays.fill(proportions, k * scenarios, (k + 1) * scenarios, network.proportions[k]);
+	}
+
+	/**
+	 * Returns the number of scenarios of the batch
+	 *
+	 * @return count of scenarios
+	 */
+	public int getScenarios() {
+		return scenarios;
+	}
+
+	private int idOf(Element e, byte kind) {
+		int id = net.idOf(e);
+		if (net.kind[id] != kind)
+			throw new IllegalArgumentException("Wrong kind of element " + e.getName());
+		return id;
+	}
+
+	private void checkScenario(int scenario) {
+		if (scenario < 0 || scenario >= scenarios)
+			throw new IndexOutOfBoundsException("Invalid scenario " + scenario);
+	}
+
+	/**
+	 * Defines the flow of a source in a scenario
+	 *
+	 * @param source the source
+	 * @param scenario the scenario index
+	 * @param flow the flow of the source
+	 * @return this batch
+	 */
+	public ScenarioBatch setFlow(Source source, int scenario, double flow) {
+		checkScenario(scenario);
+		flows[row[idOf(source, FlowNetwork.SOURCE)] * scenarios + scenario] = flow;
+		return this;
+	}
+
+	/**
+	 * Defines the flows of a source in all the scenarios
+	 *
+	 * @param source the source
+	 * @param flow the flow of the source in each scenario
+	 * @return this batch
+	 */
+	public ScenarioBatch setFlows(Source source, double... flow) {
+		if (flow.length != scenarios)
+			throw new IllegalArgumentException("Expected one flow per scenario");
+		System.arraycopy(flow, 0, flows, row[idOf(source, FlowNetwork.SOURCE)] * scenarios, scenarios);
+		return this;
+	}
+
+	/**
+	 * Defines the opening status of a tap in a scenario
+	 *
+	 * @param tap the tap
+	 * @param scenario the scenario index
+	 * @param isOpen opening status of the tap
+	 * @return this batch
+	 */
+	public ScenarioBatch setOpen(Tap tap, int scenario, boolean isOpen) {
+		checkScenario(scenario);
+		open[row[idOf(tap, FlowNetwork.TAP)] * scenarios + scenario] = isOpen;
+		return this;
+	}
+
+	/**
+	 * Defines the proportions of a multi-split in a scenario
+	 *
+	 * @param ms the multi-split
+	 * @param scenario the scenario index
+	 * @param values the proportion of each output
+	 * @return this batch
+	 */
+	public ScenarioBatch setProportions(Multisplit ms, int scenario, double... values) {
+		checkScenario(scenario);
+		int id = idOf(ms, FlowNetwork.MULTISPLIT);
+		if (values.length > ms.getNumOutputs())
+			throw new IllegalArgumentException("Too many proportions for " + ms.getName());
+		for (int k = 0; k < values.length; k++)
+			proportions[(net.propStart[id] + k) * scenarios + scenario] = values[k];
+		return this;
+	}
+
+	/**
+	 * Evaluates all the scenarios on the common pool
+	 *
+	 * @return the flows and violations of all the scenarios
+	 */
+	public Result evaluate() {
+		Result res = new Result();
+		IntStream.range(0, (scenarios + BLOCK - 1) / BLOCK).parallel()
+				.forEach(b -> evaluate(res, b * BLOCK, Math.min(scenarios, (b + 1) * BLOCK)));
+		return res;
+	}
+
+	/**
+	 * Evaluates all the scenarios on a dedicated pool of the given parallelism
+	 *
+	 * @param parallelism the number of worker threads
+	 * @return the flows and violations of all the scenarios
+	 */
+	public Result evaluate(int parallelism) {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.submit(() -> evaluate()).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Evaluation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Evaluation failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Evaluates the scenarios in {@code [from, to)}, visiting the elements in pre-order.
+	 */
+	private void evaluate(Result res, int from, int to) {
+		final int s = scenarios;
+		final double[] in = res.inFlow;
+		for (int p = 0; p < net.reachable; p++) {
+			int id = net.order[p];
+			int up = net.parent[id];
+			int base = id * s;
+			if (up == FlowNetwork.NONE || net.kind[id] == FlowNetwork.SOURCE) {
+				// sources have no input flow
+				continue;
+			}
+			int upBase = up * s;
+			switch (net.kind[up]) {
+				case FlowNetwork.SOURCE -> {
+					int src = row[up] * s;
+					for (int j = from; j < to; j++)
+						in[base + j] = flows[src + j];
+				}
+				case FlowNetwork.TAP -> {
+					int tap = row[up] * s;
+					for (int j = from; j < to; j++)
+						in[base + j] = open[tap + j] ? in[upBase + j] : 0.0;
+				}
+				case FlowNetwork.SPLIT -> {
+					for (int j = from; j < to; j++)
+						in[base + j] = in[upBase + j] * FlowNetwork.EQUAL_FLOW;
+				}
+				case FlowNetwork.MULTISPLIT -> {
+					int prop = (net.propStart[up] + net.slot[id]) * s;
+					for (int j = from; j < to; j++)
+						in[base + j] = in[upBase + j] * proportions[prop + j];
+				}
+				default -> { }
+			}
+			double max = net.maxFlow[id];
+			if (max != 0) {
+				long[] bits = res.violations;
+				int word = id * res.words;
+				for (int j = from; j < to; j++)
+					if (!(max >= in[base + j]))
+						bits[word + (j >>> 6)] |= 1L << j;
+			}
+		}
+	}
+
+	/**
+	 * Results of the evaluation of a batch of scenarios.
+	 */
+	public class Result {
+		/** Input flow of element {@code id} in scenario {@code s} at {@code id * scenarios + s}. */
+		final double[] inFlow;
+		/** Bitmap of the violating scenarios of element {@code id} starting at {@code id * words}. */
+		final long[] violations;
+		final int words;
+
+		private Result() {
+			inFlow = new double[net.size() * scenarios];
+			Arrays.fill(inFlow, SimulationObserver.NO_FLOW);
+			words = (scenarios + 63) >>> 6;
+			violations = new long[net.size() * words];
+		}
+
+		/**
+		 * Retrieves the input flow of an element in a scenario
+		 *
+		 * @param e the element
+		 * @param scenario the scenario index
+		 * @return the input flow
+		 */
+		public double getInFlow(Element e, int scenario) {
+			checkScenario(scenario);
+			return inFlow[net.idOf(e) * scenarios + scenario];
+		}
+
+		/**
+		 * Retrieves the input flows of an element in all the scenarios
+		 *
+		 * @param e the element
+		 * @return a new array with the input flow in each scenario
+		 */
+		public double[] getInFlows(Element e) {
+			int base = net.idOf(e) * scenarios;
+			return Arrays.copyOfRange(inFlow, base, base + scenarios);
+		}
+
+		/**
+		 * Retrieves the scenarios where the input flow of an element exceeds its max flow
+		 *
+		 * @param e the element
+		 * @return the set of violating scenario indexes
+		 */
+		public BitSet getViolations(Element e) {
+			int base = net.idOf(e) * words;
+			return BitSet.valueOf(Arrays.copyOfRange(violations, base, base + words));
+		}
+
+		/**
+		 * Retrieves the scenarios where at least one element exceeds its max flow
+		 *
+		 * @return the set of violating scenario indexes
+		 */
+		public BitSet getViolatingScenarios() {
+			long[] any = new long[words];
+			for (int k = 0; k < violations.length; k++)
+				any[k % words] |= violations[k];
+			return BitSet.valueOf(any);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package hydraulic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a simulation of a system.
+ */
+@Name("hydraulic.Simulation")
+@Label("Hydraulic Simulation")
+@Category("Hydraulics")
+@Description("Simulation of a hydraulic system, with the duration of its phases")
+final class SimulationEvent extends jdk.jfr.Event {
+
+	@Label("Elements")
+	int elements;
+
+	@Label("Max Depth")
+	@Description("Longest path from a source, -1 if not computed")
+	int maxDepth;
+
+	@Label("Checked")
+	boolean checked;
+
+	@Label("Errors")
+	int errors;
+
+	@Label("Propagation")
+	@Timespan(Timespan.NANOSECONDS)
+	long propagation;
+
+	@Label("Notification")
+	@Timespan(Timespan.NANOSECONDS)
+	long notification;
+}
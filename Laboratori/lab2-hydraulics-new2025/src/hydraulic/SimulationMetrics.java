@@ -0,0 +1,211 @@
+package hydraulic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics collected by the simulations of a system.
+ *
+ * Metrics are collected only after {@link HSystem#enableMetrics(int)}; the
+ * simulations of a system without metrics pay a single check. For each
+ * simulation the metrics record the time spent computing the flows
+ * (compilation included) and sending the notifications, the number of
+ * elements of each kind and the depth of the deepest element.
+ *
+ * They also count, for each element, in how many of the last checked
+ * simulations its input flow exceeded its max flow, so that elements that
+ * are persistently over their max flow stand out from occasional ones.
+ *
+ * The same measures are recorded as flight recorder events,
+ * {@code hydraulic.Simulation} and {@code hydraulic.FlowViolation},
+ * when those events are enabled, even without metrics.
+ */
+public class SimulationMetrics {
+
+	private final int window;
+	private long simulations;
+	private long lastPropagation;
+	private long totalPropagation;
+	private long lastNotification;
+	private long totalNotification;
+	private int lastErrors;
+	/** Elements by kind, indexed by kind + 1 so that {@link SimulationResult#OTHER} is 0. */
+	private final int[] kindCounts = new int[FlowSolver.MERGE + 2];
+	private int maxDepth = -1;
+
+	/** Violating elements of the last checked simulations, in a ring. */
+	private final String[][] recent;
+	private int next;
+	private final HashMap<String, Integer> violations = new HashMap<>();
+
+	SimulationMetrics(int window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("Invalid window " + window);
+		this.window = window;
+		recent = new String[window][];
+	}
+
+	/**
+	 * Observer forwarding the notifications of a simulation and collecting
+	 * the names of the elements exceeding their max flow.
+	 */
+	static final class Recorder implements SimulationObserver {
+		private final SimulationObserver target;
+		final List<String> violators = new ArrayList<>();
+
+		Recorder(SimulationObserver target) {
+			this.target = target;
+		}
+
+		@Override
+		public void notify(Level level, String type, String name, double inFlow, double... flows) {
+			if (level == Level.ERROR) {
+				violators.add(name);
+				FlowViolationEvent event = new FlowViolationEvent();
+				if (event.shouldCommit()) {
+					event.type = type;
+					event.element = name;
+					event.inFlow = inFlow;
+					event.maxFlow = flows.length > 0 ? flows[0] : SimulationObserver.NO_FLOW;
+					event.commit();
+				}
+			}
+			target.notify(level, type, name, inFlow, flows);
+		}
+	}
+
+	/**
+	 * Records the measures of a simulation.
+	 */
+	void record(long propagation, long notification, int[] counts, int depth,
+			boolean checked, List<String> violators) {
+		simulations++;
+		lastPropagation = propagation;
+		totalPropagation += propagation;
+		lastNotification = notification;
+		totalNotification += notification;
+		System.arraycopy(counts, 0, kindCounts, 0, kindCounts.length);
+		maxDepth = depth;
+		lastErrors = violators.size();
+		if (!checked)
+			return;
+		String[] evicted = recent[next];
+		if (evicted != null)
+			for (String name : evicted)
+				violations.computeIfPresent(name, (k, c) -> c == 1 ? null : c - 1);
+		String[] added = violators.toArray(new String[0]);
+		for (String name : added)
+			violations.merge(name, 1, Integer::sum);
+		recent[next] = added;
+		next = (next + 1) % window;
+	}
+
+	/**
+	 * Returns the number of simulations recorded
+	 *
+	 * @return count of simulations
+	 */
+	public long getSimulations() {
+		return simulations;
+	}
+
+	/**
+	 * Returns the time spent computing the flows by the last simulation
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getLastPropagationNanos() {
+		return lastPropagation;
+	}
+
+	/**
+	 * Returns the time spent computing the flows by all the simulations
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getTotalPropagationNanos() {
+		return totalPropagation;
+	}
+
+	/**
+	 * Returns the time spent sending notifications by the last simulation
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getLastNotificationNanos() {
+		return lastNotification;
+	}
+
+	/**
+	 * Returns the time spent sending notifications by all the simulations
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getTotalNotificationNanos() {
+		return totalNotification;
+	}
+
+	/**
+	 * Returns the number of elements of a kind in the system at the last simulation
+	 *
+	 * @param kind one of the kind codes of {@link SimulationResult}
+	 * @return count of elements
+	 */
+	public int getElementCount(byte kind) {
+		if (kind < SimulationResult.OTHER || kind > SimulationResult.MERGE)
+			throw new IllegalArgumentException("Invalid kind " + kind);
+		return kindCounts[kind + 1];
+	}
+
+	/**
+	 * Returns the length of the longest path from a source at the last
+	 * simulation, the source excluded
+	 *
+	 * @return the depth, or -1 if not known, for systems with merges or
+	 * 					elements of other classes
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Returns the number of max flow errors of the last simulation
+	 *
+	 * @return count of errors
+	 */
+	public int getLastErrorCount() {
+		return lastErrors;
+	}
+
+	/**
+	 * Returns the number of checked simulations the violation counters refer to
+	 *
+	 * @return the size of the window
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Returns in how many of the last checked simulations the input flow of
+	 * an element exceeded its max flow
+	 *
+	 * @param name the name of the element
+	 * @return count of violations in the window
+	 */
+	public int getViolations(String name) {
+		return violations.getOrDefault(name, 0);
+	}
+
+	/**
+	 * Returns the violation counters of all the elements with at least one
+	 * violation in the last checked simulations
+	 *
+	 * @return map from element names to counts of violations
+	 */
+	public Map<String, Integer> getViolationCounts() {
+		return new HashMap<>(violations);
+	}
+}
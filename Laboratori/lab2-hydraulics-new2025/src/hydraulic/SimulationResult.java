@@ -0,0 +1,281 @@
+package hydraulic;
+
+import java.util.Arrays;
+
+/**
+ * Reusable columnar buffer holding the notifications of a simulation.
+ *
+ * It is an alternative to {@link SimulationObserver}: instead of calling an
+ * observer for each element, the simulation appends one entry per notified
+ * element to parallel arrays (element id and kind, input flow, offset and
+ * count of its output flows in a shared array, error flag and max flow).
+ * The arrays grow when needed and are reused by the following simulations,
+ * so repeated simulations of a network with
+ * {@link FlowNetwork#simulate(SimulationResult, boolean)} allocate nothing.
+ *
+ * The entries can be sent to a legacy observer with {@link #replay(SimulationObserver)},
+ * which sends exactly the notifications the simulation would have sent.
+ */
+public class SimulationResult {
+
+	/** Kind codes of the entries. */
+	public static final byte SOURCE = FlowNetwork.SOURCE;
+	public static final byte TAP = FlowNetwork.TAP;
+	public static final byte SPLIT = FlowNetwork.SPLIT;
+	public static final byte MULTISPLIT = FlowNetwork.MULTISPLIT;
+	public static final byte SINK = FlowNetwork.SINK;
+	public static final byte MERGE = FlowSolver.MERGE;
+	/** Kind code of the elements of classes other than the ones of this package. */
+	public static final byte OTHER = -1;
+
+	private int size;
+	private int[] ids;
+	private Element[] elements;
+	private byte[] kinds;
+	private String[] types;
+	private double[] inFlows;
+	private int[] outStart;
+	private int[] outCount;
+	private boolean[] errors;
+	private double[] maxFlows;
+	private int errorCount;
+
+	private double[] outFlows;
+	private int outSize;
+
+	/** Pending entry of an element that reports its own state. */
+	private int pendingId;
+	private Element pendingElement;
+	private byte pendingKind;
+
+	/**
+	 * Observer appending to this buffer the notifications sent by
+	 * {@link Element#print(SimulationObserver)} and
+	 * {@link Element#printError(SimulationObserver)} for the pending element.
+	 */
+	final SimulationObserver recorder = (level, type, name, inFlow, flows) -> {
+		switch (level) {
+			case STATUS -> {
+				begin(pendingId, pendingElement, pendingKind, type, inFlow);
+				for (double f : flows)
+					addOutFlow(f);
+			}
+			case ERROR -> error(flows[0]);
+		}
+	};
+
+	/**
+	 * Creates an empty buffer
+	 */
+	public SimulationResult() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty buffer with room for the given number of elements
+	 *
+	 * @param capacity initial number of entries
+	 */
+	public SimulationResult(int capacity) {
+		capacity = Math.max(1, capacity);
+		ids = new int[capacity];
+		elements = new Element[capacity];
+		kinds = new byte[capacity];
+		types = new String[capacity];
+		inFlows = new double[capacity];
+		outStart = new int[capacity];
+		outCount = new int[capacity];
+		errors = new boolean[capacity];
+		maxFlows = new double[capacity];
+		outFlows = new double[capacity * 2];
+	}
+
+	/**
+	 * Empties the buffer, keeping its capacity
+	 */
+	void clear() {
+		Arrays.fill(elements, 0, size, null);
+		size = 0;
+		outSize = 0;
+		errorCount = 0;
+	}
+
+	/**
+	 * Sets the element whose own notifications are captured by {@link #recorder}.
+	 */
+	void capture(int id, Element e, byte kind) {
+		pendingId = id;
+		pendingElement = e;
+		pendingKind = kind;
+	}
+
+	/**
+	 * Appends the entry of an element, without output flows and errors.
+	 */
+	void begin(int id, Element e, byte kind, String type, double inFlow) {
+		if (size == ids.length) {
+			int n = size * 2;
+			ids = Arrays.copyOf(ids, n);
+			elements = Arrays.copyOf(elements, n);
+			kinds = Arrays.copyOf(kinds, n);
+			types = Arrays.copyOf(types, n);
+			inFlows = Arrays.copyOf(inFlows, n);
+			outStart = Arrays.copyOf(outStart, n);
+			outCount = Arrays.copyOf(outCount, n);
+			errors = Arrays.copyOf(errors, n);
+			maxFlows = Arrays.copyOf(maxFlows, n);
+		}
+		ids[size] = id;
+		elements[size] = e;
+		kinds[size] = kind;
+		types[size] = type;
+		inFlows[size] = inFlow;
+		outStart[size] = outSize;
+		outCount[size] = 0;
+		errors[size] = false;
+		size++;
+	}
+
+	/**
+	 * Appends an output flow to the last entry.
+	 */
+	void addOutFlow(double flow) {
+		if (outSize == outFlows.length)
+			outFlows = Arrays.copyOf(outFlows, outSize * 2);
+		outFlows[outSize++] = flow;
+		outCount[size - 1]++;
+	}
+
+	/**
+	 * Marks the last entry as exceeding its max flow.
+	 */
+	void error(double maxFlow) {
+		if (!errors[size - 1])
+			errorCount++;
+		errors[size - 1] = true;
+		maxFlows[size - 1] = maxFlow;
+	}
+
+	/**
+	 * Returns the number of entries, i.e. of notified elements
+	 *
+	 * @return count of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of the element of an entry: its position in the system
+	 *
+	 * @param i the entry index
+	 * @return the element id
+	 */
+	public int getId(int i) {
+		return ids[check(i)];
+	}
+
+	/**
+	 * Returns the element of an entry
+	 *
+	 * @param i the entry index
+	 * @return the element
+	 */
+	public Element getElement(int i) {
+		return elements[check(i)];
+	}
+
+	/**
+	 * Returns the kind code of the element of an entry, one of the
+	 * constants of this class
+	 *
+	 * @param i the entry index
+	 * @return the kind code
+	 */
+	public byte getKind(int i) {
+		return kinds[check(i)];
+	}
+
+	/**
+	 * Returns the input flow of an entry
+	 *
+	 * @param i the entry index
+	 * @return the input flow
+	 */
+	public double getInFlow(int i) {
+		return inFlows[check(i)];
+	}
+
+	/**
+	 * Returns the number of output flows of an entry
+	 *
+	 * @param i the entry index
+	 * @return count of output flows
+	 */
+	public int getOutFlowCount(int i) {
+		return outCount[check(i)];
+	}
+
+	/**
+	 * Returns an output flow of an entry
+	 *
+	 * @param i the entry index
+	 * @param k the output index
+	 * @return the output flow
+	 */
+	public double getOutFlow(int i, int k) {
+		if (k < 0 || k >= outCount[check(i)])
+			throw new IndexOutOfBoundsException("Invalid output " + k);
+		return outFlows[outStart[i] + k];
+	}
+
+	/**
+	 * Checks whether the input flow of an entry exceeds its max flow
+	 *
+	 * @param i the entry index
+	 * @return whether an error was detected
+	 */
+	public boolean hasError(int i) {
+		return errors[check(i)];
+	}
+
+	/**
+	 * Returns the max flow of an entry with an error
+	 *
+	 * @param i the entry index
+	 * @return the max flow, or {@link SimulationObserver#NO_FLOW} without errors
+	 */
+	public double getMaxFlow(int i) {
+		return errors[check(i)] ? maxFlows[i] : SimulationObserver.NO_FLOW;
+	}
+
+	/**
+	 * Returns the number of entries with an error
+	 *
+	 * @return count of errors
+	 */
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	private int check(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Invalid entry " + i);
+		return i;
+	}
+
+	/**
+	 * Sends the notifications stored in the buffer to an observer, in order
+	 *
+	 * @param observer the observer receiving notifications
+	 */
+	public void replay(SimulationObserver observer) {
+		for (int i = 0; i < size; i++) {
+			String name = elements[i].getName();
+			observer.notifyFlow(types[i], name, inFlows[i],
+					Arrays.copyOfRange(outFlows, outStart[i], outStart[i] + outCount[i]));
+			if (errors[i])
+				observer.notifyFlowError(types[i], name, inFlows[i], maxFlows[i]);
+		}
+	}
+}
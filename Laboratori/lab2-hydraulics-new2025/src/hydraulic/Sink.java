@@ -37,10 +37,16 @@ public class Sink extends Element {
 	@Override
 	public void setUpstream(Element elem) {
 		upstream = elem;
+		topologyChanged();
 	}
 	
 	@Override
 	public void setTreeFlow() {
+		propagateFlow(this);
+	}
+
+	@Override
+	void updateFlow() {
 		if (upstream instanceof Multisplit ms) 
 			setFlow(ms.getOutFlow(ms.getIndex(this)));
 		else
@@ -74,6 +80,12 @@ public class Sink extends Element {
 	@Override
 	public void setMaxFlow(double maxFlow) {
 		this.maxFlow = maxFlow;
+		parameterChanged();
+	}
+
+	@Override
+	double getMaxFlow() {
+		return maxFlow;
 	}
 
 	@Override
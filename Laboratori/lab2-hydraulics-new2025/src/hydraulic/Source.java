@@ -10,6 +10,9 @@ public class Source extends Element {
 
 	private double[] flows;
 	private Element downstream;
+	/** Whether flow propagation on connection is deferred, and whether one is pending. */
+	boolean deferFlow;
+	boolean flowPending;
 
 	/**
 	 * constructor
@@ -33,6 +36,7 @@ public class Source extends Element {
 	public void setFlow(double flow){
 		
 		flows[OUTPUT] = flow;
+		parameterChanged();
 	}
 
 	@Override
@@ -49,9 +53,13 @@ public class Source extends Element {
 	@Override
 	public void connect(Element elem) {
 		downstream = elem;
+		topologyChanged();
 		elem.setFlow(getFlow());
 		elem.setUpstream(this);
-		setTreeFlow();
+		if (deferFlow)
+			flowPending = true;
+		else
+			setTreeFlow();
 	}
 
 	@Override
@@ -61,8 +69,7 @@ public class Source extends Element {
 
 	@Override
 	public void setTreeFlow() {
-		if (downstream != null)
-			downstream.setTreeFlow();
+		propagateFlow(this);
 	}
 
 	@Override
@@ -83,7 +90,7 @@ public class Source extends Element {
 		setTreeFlow();
 		flows[OUTPUT] = tmp;
 
-		downstream.setUpstream(null);
+		downstream.replaceUpstream(this, null);
 
 		return true;
 	}
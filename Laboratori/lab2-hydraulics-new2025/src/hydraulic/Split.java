@@ -1,5 +1,7 @@
 package hydraulic;
 
+import java.util.IdentityHashMap;
+
 /**
  * Represents a split element, a.k.a. T element
  * 
@@ -15,6 +17,10 @@ public class Split extends Element {
 	protected int numberDownstream;
 	private final double EQUAL_FLOW = 0.5;
 	protected double maxFlow;
+	/** First output index of each downstream element, built on demand for elements with many outputs. */
+	private IdentityHashMap<Element, Integer> indexes;
+	private boolean repeated;
+	private static final int INDEXED_OUTPUTS = 16;
 	
 	/**
 	 * Constructor
@@ -54,18 +60,23 @@ public class Split extends Element {
 	@Override
 	public void setUpstream(Element elem) {
 		upstream = elem;
+		topologyChanged();
 	}
 
 	public void setDownstream(Element elem, int index) {
+		outputChanged(index, elem);
 		downstream[index] = elem;
 		if (elem == null)
 			numberDownstream--;
+		topologyChanged();
 	}
 
 	@Override
 	public void connect(Element elem, int index){
+		outputChanged(index, elem);
 		downstream[index] = elem;
 		numberDownstream++;
+		topologyChanged();
 		elem.setFlow(getFlow()*EQUAL_FLOW);
 		elem.setUpstream(this);
 	}
@@ -85,6 +96,16 @@ public class Split extends Element {
 	}
 
 	public int getIndex(Element elem) {
+		if (downstream.length > INDEXED_OUTPUTS) {
+			if (indexes == null) {
+				indexes = new IdentityHashMap<>();
+				repeated = false;
+				for (int k = 0; k < downstream.length; k++)
+					outputChanged(k, downstream[k]);
+			}
+			Integer index = indexes.get(elem);
+			return index == null ? -1 : index;
+		}
 		int i = 0;
 
 		for (Element e : downstream) {
@@ -96,16 +117,41 @@ public class Split extends Element {
 		return -1;
 	}
 
+	/**
+	 * Keeps the index of the outputs up to date before an output is replaced.
+	 */
+	void outputChanged(int index, Element elem) {
+		if (indexes == null)
+			return;
+		Element old = downstream[index];
+		if (old != null && old != elem) {
+			if (repeated) {
+				// the old element could be connected to other outputs: rebuild on demand
+				indexes = null;
+				return;
+			}
+			indexes.remove(old);
+		}
+		if (elem != null) {
+			Integer previous = indexes.get(elem);
+			if (previous == null || index < previous)
+				indexes.put(elem, index);
+			if (previous != null && previous != index)
+				repeated = true;
+		}
+	}
+
 	@Override
 	public void setTreeFlow() {
+		propagateFlow(this);
+	}
+
+	@Override
+	void updateFlow() {
 		if (upstream instanceof Multisplit ms) 
 			setFlow(ms.getOutFlow(ms.getIndex(this)));
 		else
 			setFlow(upstream.getOutFlow());
-
-		for (Element e : downstream)
-			if (e != null)
-				e.setTreeFlow();
 	}
 
 	@Override
@@ -142,12 +188,14 @@ public class Split extends Element {
 		if (downstreamElement != null) {
 			if (upstream != null)
 				upstream.connect(downstreamElement);
-			downstreamElement.setUpstream(upstream);
+			downstreamElement.replaceUpstream(this, upstream);
 		} else 
 			upstream.setDownstream(null);
 		
-		if (i < numberDownstream)
+		if (i < numberDownstream) {
+			outputChanged(i, null);
 			downstream[i] = null;
+		}
 		upstream = null;
 
 		return true;
@@ -156,6 +204,12 @@ public class Split extends Element {
 	@Override
 	public void setMaxFlow(double maxFlow) {
 		this.maxFlow = maxFlow;
+		parameterChanged();
+	}
+
+	@Override
+	double getMaxFlow() {
+		return maxFlow;
 	}
 
 	@Override
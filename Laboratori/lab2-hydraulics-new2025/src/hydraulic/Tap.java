@@ -43,8 +43,18 @@ public class Tap extends Element {
 			flows[OUTPUT] = 0.0;
 		else
 			flows[OUTPUT] = flows[INPUT];
+		parameterChanged();
 	}
 	
+	/**
+	 * Retrieves the opening status of the tap
+	 * 
+	 * @return true if the tap is open
+	 */
+	boolean isOpen() {
+		return open;
+	}
+
 	@Override
 	public void setFlow(double flow) {
 		flows[INPUT] = flow;
@@ -64,6 +74,7 @@ public class Tap extends Element {
 	@Override
 	public void connect(Element elem){
 		downstream = elem;
+		topologyChanged();
 		elem.setFlow(getFlow());
 		elem.setUpstream(this);
 	}
@@ -71,6 +82,7 @@ public class Tap extends Element {
 	@Override
 	public void setUpstream(Element elem) {
 		upstream = elem;
+		topologyChanged();
 	}
 
 	@Override
@@ -81,6 +93,7 @@ public class Tap extends Element {
 	@Override
 	public void setDownstream(Element elem) {
 		downstream = elem;
+		topologyChanged();
 	}
 
 	@Override
@@ -90,14 +103,16 @@ public class Tap extends Element {
 
 	@Override
 	public void setTreeFlow() {
+		propagateFlow(this);
+	}
+
+	@Override
+	void updateFlow() {
 		if (upstream instanceof Multisplit ms) 
 			setFlow(ms.getOutFlow(ms.getIndex(this)));
 		else
 			setFlow(upstream.getOutFlow());
 		setOpen(open);
-
-		if (downstream != null)
-			downstream.setTreeFlow();
 	}
 
 	@Override
@@ -115,7 +130,7 @@ public class Tap extends Element {
 		if (downstream != null) {
 			if (upstream != null)
 				upstream.connect(downstream);
-			downstream.setUpstream(upstream);
+			downstream.replaceUpstream(this, upstream);
 		} else 
 			upstream.setDownstream(null);
 		downstream = null;
@@ -127,6 +142,12 @@ public class Tap extends Element {
 	@Override
 	public void setMaxFlow(double maxFlow) {
 		this.maxFlow = maxFlow;
+		parameterChanged();
+	}
+
+	@Override
+	double getMaxFlow() {
+		return maxFlow;
 	}
 
 	@Override
@@ -0,0 +1,30 @@
+package hydraulic;
+
+/**
+ * Interface for listeners of the alerts raised by a {@link TelemetryReconciler}
+ * when the measured flows of an element drift away from the simulated ones.
+ */
+@FunctionalInterface
+public interface TelemetryListener {
+	/**
+	 * Notifies that the average difference between the measured and the
+	 * simulated input flow of an element exceeded its threshold.
+	 *
+	 * @param alert the kind of anomaly
+	 * @param element the measured element
+	 * @param expected the simulated input flow of the element
+	 * @param residual the average of the measured flow minus the simulated one
+	 */
+	void alertRaised(TelemetryReconciler.Alert alert, Element element, double expected, double residual);
+
+	/**
+	 * Notifies that the measured flows of an element came back close to
+	 * the simulated ones, or that the element is no longer reconciled
+	 * against the same simulated flow.
+	 *
+	 * @param alert the kind of the anomaly raised before
+	 * @param element the measured element
+	 */
+	default void alertCleared(TelemetryReconciler.Alert alert, Element element) {
+	}
+}
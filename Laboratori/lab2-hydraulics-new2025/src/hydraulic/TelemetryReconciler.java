@@ -0,0 +1,364 @@
+package hydraulic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reconciliation of measured flows against the simulated flows of a system.
+ *
+ * The simulated input flow of each element (the flow of sources) is computed
+ * once, when the reconciler is created, and again only by {@link #refresh()}.
+ * Each measurement is compared against it without simulating: the residual,
+ * measured flow minus simulated flow, updates an exponentially weighted
+ * moving average and variance of the element, kept in primitive arrays.
+ *
+ * After the minimum number of samples, an element whose average residual
+ * exceeds its threshold raises an alert, cleared when the average falls
+ * back below half the threshold:
+ * <ul>
+ * <li>{@link Alert#STUCK_OPEN} if the element is fed by a closed tap, but
+ * receives flow;
+ * <li>{@link Alert#STUCK_CLOSED} if the element is fed by an open tap, but
+ * receives almost no flow;
+ * <li>{@link Alert#LEAK} if the element receives less flow than simulated;
+ * <li>{@link Alert#EXCESS} if the element receives more flow than simulated.
+ * </ul>
+ *
+ * Measurements are processed in the calling thread, and a reconciler must
+ * be fed by a single thread.
+ */
+public final class TelemetryReconciler {
+
+	/**
+	 * Kinds of anomalies.
+	 */
+	public enum Alert {
+		/** Less flow than simulated. */
+		LEAK,
+		/** More flow than simulated. */
+		EXCESS,
+		/** Flow downstream of a closed tap. */
+		STUCK_OPEN,
+		/** No flow downstream of an open tap. */
+		STUCK_CLOSED
+	}
+
+	private static final Alert[] ALERTS = Alert.values();
+	private static final byte NO_ALERT = -1;
+
+	private final FlowNetwork net;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	private final double alpha;
+	private int minSamples;
+	private TelemetryListener listener;
+
+	/** Simulated input flows. */
+	private final double[] expected;
+	private final double[] threshold;
+	/** Residual statistics. */
+	private final long[] samples;
+	private final double[] mean;
+	private final double[] variance;
+	/** Active alert of each element, as an index of {@link Alert}, or NO_ALERT. */
+	private final byte[] alert;
+	private int alertCount;
+	private long accepted;
+	private long rejected;
+
+	/**
+	 * Prepares the reconciliation against a compiled network, computing its
+	 * flows.
+	 */
+	TelemetryReconciler(FlowNetwork net, double alpha, double threshold) {
+		if (!(alpha > 0 && alpha <= 1))
+			throw new IllegalArgumentException("Invalid smoothing factor " + alpha);
+		if (!(threshold > 0))
+			throw new IllegalArgumentException("Invalid threshold " + threshold);
+		this.net = net;
+		this.alpha = alpha;
+		int n = net.size();
+		for (int id = net.listed - 1; id >= 0; id--)
+			ids.put(net.elements[id].getName(), id);
+		minSamples = (int) Math.ceil(1 / alpha);
+		expected = new double[n];
+		this.threshold = new double[n];
+		Arrays.fill(this.threshold, threshold);
+		samples = new long[n];
+		mean = new double[n];
+		variance = new double[n];
+		alert = new byte[n];
+		Arrays.fill(alert, NO_ALERT);
+		net.computeFlows();
+		for (int id = 0; id < n; id++)
+			expected[id] = simulated(id);
+	}
+
+	private double simulated(int id) {
+		if (net.position[id] == FlowNetwork.NONE)
+			return SimulationObserver.NO_FLOW;
+		return net.kind[id] == FlowNetwork.SOURCE ? net.sourceFlow[id] : net.inFlow[id];
+	}
+
+	/**
+	 * Sets the listener of the alerts
+	 *
+	 * @param listener the listener, or {@code null} for none
+	 */
+	public void setListener(TelemetryListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets the number of samples of an element needed before raising alerts
+	 * on it, by default the inverse of the smoothing factor
+	 *
+	 * @param minSamples the number of samples
+	 * @throws IllegalArgumentException if the number is negative
+	 */
+	public void setMinSamples(int minSamples) {
+		if (minSamples < 0)
+			throw new IllegalArgumentException("Invalid number of samples " + minSamples);
+		this.minSamples = minSamples;
+	}
+
+	/**
+	 * Sets the threshold of the average residual of an element
+	 *
+	 * @param name the name of the element
+	 * @param threshold the threshold, positive
+	 * @throws IllegalArgumentException if there is no such element, or the
+	 * 							threshold is not positive
+	 */
+	public void setThreshold(String name, double threshold) {
+		if (!(threshold > 0))
+			throw new IllegalArgumentException("Invalid threshold " + threshold);
+		this.threshold[require(name)] = threshold;
+	}
+
+	/**
+	 * Returns the id of an element, to pass measurements by id
+	 *
+	 * @param name the name of the element
+	 * @return the id, or -1 if there is no such element
+	 */
+	public int idOf(String name) {
+		Integer id = ids.get(name);
+		return id != null ? id : -1;
+	}
+
+	private int require(String name) {
+		Integer id = ids.get(name);
+		if (id == null)
+			throw new IllegalArgumentException("No element " + name);
+		return id;
+	}
+
+	/**
+	 * Processes a batch of measurements of the input flows of elements by name
+	 *
+	 * Measurements of unknown or unreachable elements, and {@code NaN} ones,
+	 * are counted as rejected.
+	 *
+	 * @param names the names of the measured elements
+	 * @param flows the measured flows
+	 * @param count the number of measurements in the batch
+	 * @return the number of measurements accepted
+	 */
+	public int ingest(String[] names, double[] flows, int count) {
+		int done = 0;
+		for (int i = 0; i < count; i++) {
+			Integer id = ids.get(names[i]);
+			if (id == null)
+				rejected++;
+			else if (update(id, flows[i]))
+				done++;
+		}
+		return done;
+	}
+
+	/**
+	 * Processes a batch of measurements of the input flows of elements by id
+	 *
+	 * @see #idOf(String)
+	 * @param elementIds the ids of the measured elements
+	 * @param flows the measured flows
+	 * @param count the number of measurements in the batch
+	 * @return the number of measurements accepted
+	 */
+	public int ingest(int[] elementIds, double[] flows, int count) {
+		int done = 0;
+		for (int i = 0; i < count; i++) {
+			int id = elementIds[i];
+			if (id < 0 || id >= net.listed)
+				rejected++;
+			else if (update(id, flows[i]))
+				done++;
+		}
+		return done;
+	}
+
+	private boolean update(int id, double flow) {
+		double residual = flow - expected[id];
+		if (Double.isNaN(residual)) {
+			rejected++;
+			return false;
+		}
+		accepted++;
+		long n = ++samples[id];
+		if (n == 1) {
+			mean[id] = residual;
+			variance[id] = 0.0;
+		} else {
+			double d = residual - mean[id];
+			mean[id] += alpha * d;
+			variance[id] = (1 - alpha) * (variance[id] + alpha * d * d);
+		}
+		if (n < minSamples)
+			return true;
+		double m = mean[id], limit = threshold[id];
+		if (alert[id] == NO_ALERT) {
+			if (Math.abs(m) > limit)
+				raise(id, classify(id, m));
+		} else if (Math.abs(m) < limit / 2)
+			clear(id);
+		return true;
+	}
+
+	private Alert classify(int id, double m) {
+		int up = net.parent[id];
+		if (up != FlowNetwork.NONE && net.kind[up] == FlowNetwork.TAP) {
+			if (!net.open[up] && m > 0)
+				return Alert.STUCK_OPEN;
+			if (net.open[up] && m < 0 && Math.abs(expected[id] + m) <= threshold[id])
+				return Alert.STUCK_CLOSED;
+		}
+		return m < 0 ? Alert.LEAK : Alert.EXCESS;
+	}
+
+	private void raise(int id, Alert kind) {
+		alert[id] = (byte) kind.ordinal();
+		alertCount++;
+		if (listener != null)
+			listener.alertRaised(kind, net.elements[id], expected[id], mean[id]);
+	}
+
+	private void clear(int id) {
+		Alert kind = ALERTS[alert[id]];
+		alert[id] = NO_ALERT;
+		alertCount--;
+		if (listener != null)
+			listener.alertCleared(kind, net.elements[id]);
+	}
+
+	/**
+	 * Reads again the parameters of the elements and computes again the
+	 * simulated flows; the statistics and the alerts of the elements whose
+	 * simulated flow changed are reset.
+	 */
+	public void refresh() {
+		net.refresh();
+		net.computeFlows();
+		for (int id = 0; id < expected.length; id++) {
+			double flow = simulated(id);
+			if (Double.compare(flow, expected[id]) == 0)
+				continue;
+			expected[id] = flow;
+			samples[id] = 0;
+			mean[id] = 0.0;
+			variance[id] = 0.0;
+			if (alert[id] != NO_ALERT)
+				clear(id);
+		}
+	}
+
+	/**
+	 * Returns the simulated input flow of an element
+	 *
+	 * @param name the name of the element
+	 * @return the flow, the flow of the source for sources
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public double getExpected(String name) {
+		return expected[require(name)];
+	}
+
+	/**
+	 * Returns the average residual of an element
+	 *
+	 * @param name the name of the element
+	 * @return the moving average of the measured minus the simulated flows
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public double getMeanResidual(String name) {
+		return mean[require(name)];
+	}
+
+	/**
+	 * Returns the variance of the residuals of an element
+	 *
+	 * @param name the name of the element
+	 * @return the moving variance of the residuals
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public double getVariance(String name) {
+		return variance[require(name)];
+	}
+
+	/**
+	 * Returns the number of measurements of an element since its simulated
+	 * flow last changed
+	 *
+	 * @param name the name of the element
+	 * @return count of measurements
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public long getSamples(String name) {
+		return samples[require(name)];
+	}
+
+	/**
+	 * Returns the active alert of an element
+	 *
+	 * @param name the name of the element
+	 * @return the alert, or {@code null} if none
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public Alert getAlert(String name) {
+		byte a = alert[require(name)];
+		return a == NO_ALERT ? null : ALERTS[a];
+	}
+
+	/**
+	 * Returns the elements with an active alert
+	 *
+	 * @return the names of the elements, in the order of the system
+	 */
+	public List<String> getAlertedElements() {
+		List<String> names = new ArrayList<>(alertCount);
+		for (int id = 0; id < net.listed && names.size() < alertCount; id++)
+			if (alert[id] != NO_ALERT)
+				names.add(net.elements[id].getName());
+		return names;
+	}
+
+	/**
+	 * Returns the number of measurements processed
+	 *
+	 * @return count of measurements
+	 */
+	public long getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * Returns the number of measurements of unknown or unreachable elements,
+	 * or with no flow
+	 *
+	 * @return count of measurements
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+}
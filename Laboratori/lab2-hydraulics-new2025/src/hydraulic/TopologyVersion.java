@@ -0,0 +1,265 @@
+package hydraulic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Immutable version of the topology and parameters of a system.
+ *
+ * A version holds no reference to the elements: it stores the compiled
+ * network (kinds, parents, pre-order, names) and the parameters of the
+ * elements in its own arrays, and simulations write their results into
+ * arrays owned by the caller. Any number of threads can thus simulate the
+ * same version concurrently, without locks and while the system is edited.
+ *
+ * Versions created by a parameter change share with the previous one the
+ * whole topology and all the unchanged parameters: parameter columns are
+ * split in chunks, and a change copies only the chunk holding the changed
+ * value.
+ *
+ * @see VersionedSystem
+ */
+public final class TopologyVersion {
+
+	private static final int NONE = FlowNetwork.NONE;
+
+	private final long version;
+	// topology, shared by all the versions with the same connections
+	private final String[] names;
+	private final HashMap<String, Integer> ids;
+	private final int listed;
+	private final byte[] kind;
+	private final int[] parent;
+	private final int[] slot;
+	private final int[] order;
+	private final int reachable;
+	private final int[] propStart;
+	private final int[] propCount;
+	private final int[] outCount;
+	// parameters
+	private final Column flow;
+	private final Column open;
+	private final Column maxFlow;
+	private final Column proportions;
+
+	private TopologyVersion(long version, TopologyVersion topology,
+			Column flow, Column open, Column maxFlow, Column proportions) {
+		this.version = version;
+		this.names = topology.names;
+		this.ids = topology.ids;
+		this.listed = topology.listed;
+		this.kind = topology.kind;
+		this.parent = topology.parent;
+		this.slot = topology.slot;
+		this.order = topology.order;
+		this.reachable = topology.reachable;
+		this.propStart = topology.propStart;
+		this.propCount = topology.propCount;
+		this.outCount = topology.outCount;
+		this.flow = flow;
+		this.open = open;
+		this.maxFlow = maxFlow;
+		this.proportions = proportions;
+	}
+
+	private TopologyVersion(long version, FlowNetwork net) {
+		int n = net.size();
+		this.version = version;
+		names = new String[n];
+		ids = new HashMap<>(n * 2);
+		for (int id = n - 1; id >= 0; id--) {
+			names[id] = net.elements[id].getName();
+			ids.put(names[id], id);
+		}
+		listed = net.listed;
+		kind = net.kind.clone();
+		parent = net.parent.clone();
+		slot = net.slot.clone();
+		order = Arrays.copyOf(net.order, net.reachable);
+		reachable = net.reachable;
+		propStart = net.propStart.clone();
+		propCount = new int[n];
+		outCount = net.outCount.clone();
+		double[] openValues = new double[n];
+		for (int id = 0; id < n; id++) {
+			openValues[id] = net.open[id] ? 1 : 0;
+			if (kind[id] == FlowNetwork.MULTISPLIT)
+				propCount[id] = ((Multisplit) net.elements[id]).getNumOutputs();
+		}
+		flow = new Column(net.sourceFlow);
+		open = new Column(openValues);
+		maxFlow = new Column(net.maxFlow);
+		proportions = new Column(net.proportions);
+	}
+
+	/**
+	 * Creates the first version of a compiled network.
+	 */
+	static TopologyVersion of(FlowNetwork net, long version) {
+		return new TopologyVersion(version, net);
+	}
+
+	/**
+	 * Returns the number of this version, increasing with each change
+	 *
+	 * @return the version number
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of elements of the version, including the elements
+	 * reachable from the system but not added to it
+	 *
+	 * @return count of elements
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Returns the id of the element with the given name: its position in
+	 * the system, or a larger id for the elements not added to it
+	 *
+	 * @param name the name of the element
+	 * @return the id, or -1 if there is no such element
+	 */
+	public int idOf(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the name of an element
+	 *
+	 * @param id the element id
+	 * @return the name
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+
+	int require(String name, byte expected) {
+		int id = idOf(name);
+		if (id < 0 || (expected >= 0 && kind[id] != expected
+				&& !(expected == FlowNetwork.SPLIT && kind[id] == FlowNetwork.MULTISPLIT)))
+			throw new IllegalArgumentException("No suitable element " + name);
+		return id;
+	}
+
+	TopologyVersion withFlow(long next, int id, double value) {
+		return new TopologyVersion(next, this, flow.with(id, value), open, maxFlow, proportions);
+	}
+
+	TopologyVersion withOpen(long next, int id, boolean value) {
+		return new TopologyVersion(next, this, flow, open.with(id, value ? 1 : 0), maxFlow, proportions);
+	}
+
+	TopologyVersion withMaxFlow(long next, int id, double value) {
+		return new TopologyVersion(next, this, flow, open, maxFlow.with(id, value), proportions);
+	}
+
+	TopologyVersion withProportions(long next, int id, double[] values) {
+		Column p = proportions;
+		for (int k = 0; k < values.length && k < propCount[id]; k++)
+			p = p.with(propStart[id] + k, values[k]);
+		return new TopologyVersion(next, this, flow, open, maxFlow, p);
+	}
+
+	/**
+	 * Computes the input flows of all the elements.
+	 *
+	 * @param inFlow the array receiving the input flow of each element, by id;
+	 * 					elements reachable from no source get {@link SimulationObserver#NO_FLOW}
+	 * @return the same array
+	 */
+	public double[] simulate(double[] inFlow) {
+		if (inFlow.length < names.length)
+			throw new IllegalArgumentException("Array too short for " + names.length + " elements");
+		Arrays.fill(inFlow, 0, names.length, SimulationObserver.NO_FLOW);
+		for (int p = 0; p < reachable; p++) {
+			int id = order[p];
+			int up = parent[id];
+			if (up != NONE && kind[id] != FlowNetwork.SOURCE)
+				inFlow[id] = outFlow(inFlow, up, slot[id]);
+		}
+		return inFlow;
+	}
+
+	private double outFlow(double[] inFlow, int id, int output) {
+		return switch (kind[id]) {
+			case FlowNetwork.SOURCE -> flow.get(id);
+			case FlowNetwork.TAP -> open.get(id) != 0 ? inFlow[id] : 0.0;
+			case FlowNetwork.SPLIT -> inFlow[id] * FlowNetwork.EQUAL_FLOW;
+			case FlowNetwork.MULTISPLIT -> inFlow[id] * proportions.get(propStart[id] + output);
+			default -> SimulationObserver.NO_FLOW;
+		};
+	}
+
+	/**
+	 * Simulates the version, notifying the observer of the flows of all the
+	 * elements of the system, in order, and, if requested, of the elements
+	 * whose input flow exceeds their max flow.
+	 *
+	 * The notifications are the ones of {@link HSystem#simulate(SimulationObserver, boolean)},
+	 * except that elements reachable from no source report no flows instead
+	 * of the flows left by previous simulations.
+	 *
+	 * @param observer the observer receiving notifications
+	 * @param enableMaxFlowCheck whether max flows are checked
+	 */
+	public void simulate(SimulationObserver observer, boolean enableMaxFlowCheck) {
+		double[] in = simulate(new double[names.length]);
+		FlowNetwork.Flows flows = new FlowNetwork.Flows() {
+			@Override
+			public double inFlow(int id) {
+				return in[id];
+			}
+
+			@Override
+			public double outFlow(int id, int output) {
+				return TopologyVersion.this.outFlow(in, id, output);
+			}
+		};
+		for (int id = 0; id < listed; id++)
+			FlowNetwork.notifyElement(observer, flows, id, kind[id], names[id],
+					parent[id] != NONE || kind[id] == FlowNetwork.SOURCE,
+					outCount[id], maxFlow.get(id), enableMaxFlowCheck);
+	}
+
+	/**
+	 * Column of parameter values split in chunks; a changed copy shares
+	 * all the chunks but the one holding the changed value.
+	 */
+	private static final class Column {
+		private static final int SHIFT = 10;
+		private static final int CHUNK = 1 << SHIFT;
+
+		private final double[][] chunks;
+
+		Column(double[] values) {
+			int length = values.length;
+			chunks = new double[(length + CHUNK - 1) >>> SHIFT][];
+			for (int c = 0; c < chunks.length; c++)
+				chunks[c] = Arrays.copyOfRange(values, c << SHIFT, Math.min(length, (c + 1) << SHIFT));
+		}
+
+		private Column(double[][] chunks) {
+			this.chunks = chunks;
+		}
+
+		double get(int i) {
+			return chunks[i >>> SHIFT][i & (CHUNK - 1)];
+		}
+
+		Column with(int i, double value) {
+			if (Double.doubleToLongBits(get(i)) == Double.doubleToLongBits(value))
+				return this;
+			double[][] copy = chunks.clone();
+			copy[i >>> SHIFT] = copy[i >>> SHIFT].clone();
+			copy[i >>> SHIFT][i & (CHUNK - 1)] = value;
+			return new Column(copy);
+		}
+	}
+}
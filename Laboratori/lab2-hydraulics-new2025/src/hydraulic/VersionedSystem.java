@@ -0,0 +1,149 @@
+package hydraulic;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Hydraulic system that can be simulated by many threads while it is edited.
+ *
+ * Readers get the current {@link TopologyVersion} with {@link #current()}, a
+ * single volatile read, and simulate it without locks: a version never
+ * changes once published. Edits are serialized and each one publishes a new
+ * version atomically, so readers see either the version before an edit or
+ * the one after it, never a half-applied edit.
+ *
+ * Parameter changes derive the new version from the current one, sharing the
+ * topology and the unchanged parameters; changes of the connections compile
+ * the system again.
+ *
+ * The wrapped system must be changed only through this object.
+ */
+public class VersionedSystem {
+
+	private final HSystem system;
+	private final AtomicReference<TopologyVersion> current = new AtomicReference<>();
+	private long nextVersion;
+
+	/**
+	 * Creates a versioned system, publishing the first version of its
+	 * current state
+	 *
+	 * @param system the system
+	 * @throws IllegalArgumentException if the system contains elements
+	 * 							of classes other than the ones of this package
+	 */
+	public VersionedSystem(HSystem system) {
+		this.system = Objects.requireNonNull(system);
+		current.set(TopologyVersion.of(system.compile(), nextVersion++));
+	}
+
+	/**
+	 * Returns the current version; it never blocks
+	 *
+	 * @return the current version
+	 */
+	public TopologyVersion current() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the flow of a source and publishes the new version
+	 *
+	 * @param source the name of the source
+	 * @param flow the new flow
+	 * @return the published version
+	 * @throws IllegalArgumentException if there is no such source
+	 */
+	public synchronized TopologyVersion setFlow(String source, double flow) {
+		TopologyVersion v = current.get();
+		int id = v.require(source, FlowNetwork.SOURCE);
+		((Source) element(v, id)).setFlow(flow);
+		return publish(v.withFlow(nextVersion++, id, flow));
+	}
+
+	/**
+	 * Opens or closes a tap and publishes the new version
+	 *
+	 * @param tap the name of the tap
+	 * @param open whether the tap is open
+	 * @return the published version
+	 * @throws IllegalArgumentException if there is no such tap
+	 */
+	public synchronized TopologyVersion setOpen(String tap, boolean open) {
+		TopologyVersion v = current.get();
+		int id = v.require(tap, FlowNetwork.TAP);
+		((Tap) element(v, id)).setOpen(open);
+		return publish(v.withOpen(nextVersion++, id, open));
+	}
+
+	/**
+	 * Sets the max flow of an element and publishes the new version
+	 *
+	 * @param name the name of the element
+	 * @param maxFlow the new max flow
+	 * @return the published version
+	 * @throws IllegalArgumentException if there is no such element
+	 */
+	public synchronized TopologyVersion setMaxFlow(String name, double maxFlow) {
+		TopologyVersion v = current.get();
+		int id = v.require(name, (byte) -1);
+		Element e = element(v, id);
+		e.setMaxFlow(maxFlow);
+		// sources ignore max flows
+		return publish(v.withMaxFlow(nextVersion++, id, e.getMaxFlow()));
+	}
+
+	/**
+	 * Sets the proportions of a multi-split and publishes the new version
+	 *
+	 * @param name the name of the multi-split
+	 * @param proportions the new proportions
+	 * @return the published version
+	 * @throws IllegalArgumentException if there is no such multi-split
+	 */
+	public synchronized TopologyVersion setProportions(String name, double... proportions) {
+		TopologyVersion v = current.get();
+		int id = v.require(name, FlowNetwork.MULTISPLIT);
+		((Multisplit) element(v, id)).setProportions(proportions);
+		return publish(v.withProportions(nextVersion++, id, proportions));
+	}
+
+	/**
+	 * Applies a group of changes to the system and publishes the resulting
+	 * version, compiled again; readers see either none or all of the changes
+	 *
+	 * The changes are recorded into an {@link HSystem.Edit}, which is then
+	 * committed by this method. The edit checks all its operations before
+	 * applying any of them, so a group of changes that is rejected, or that
+	 * throws while it is recorded, leaves both the system and the current
+	 * version unchanged.
+	 *
+	 * @param changes the changes to record
+	 * @return the published version
+	 * @throws IllegalArgumentException if the changes are not valid, e.g. they
+	 * 							add elements of classes other than the ones of
+	 * 							this package
+	 * @throws IllegalStateException if the changes delete elements that are
+	 * 							not in the system
+	 */
+	public synchronized TopologyVersion update(Consumer<HSystem.Edit> changes) {
+		HSystem.Edit edit = system.edit();
+		edit.compiledOnly = true;
+		changes.accept(edit);
+		edit.commit();
+		return publish(TopologyVersion.of(system.compile(), nextVersion++));
+	}
+
+	private Element element(TopologyVersion v, int id) {
+		Element e = system.getElement(v.getName(id));
+		if (e == null)
+			throw new IllegalArgumentException("No element " + v.getName(id));
+		return e;
+	}
+
+	private TopologyVersion publish(TopologyVersion v) {
+		current.set(v);
+		return v;
+	}
+}
@@ -0,0 +1,300 @@
+package hydraulic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What-if analysis of the effect on the sinks of toggling taps and
+ * deleting elements, without changing the system.
+ *
+ * The analysis starts from the flows of a compiled network and, in a single
+ * pass over its pre-order, prepares:
+ * <ul>
+ * <li>the prefix sums of the flows of the sinks, so that the flow reaching
+ * the sinks of any subtree, a contiguous range of the pre-order, is a
+ * difference of two sums;
+ * <li>for each element, the flow {@code U[v]} it would receive if the
+ * nearest pipe with no flow above it (a closed tap or a multi-split output
+ * with proportion 0) carried the whole flow of its element, and the element
+ * owning that pipe;
+ * <li>for each element owning such a pipe, the sum of {@code U[s]} over the
+ * sinks it blocks.
+ * </ul>
+ * Every action then either removes, scales or restores the flows of a
+ * subtree, and its total effect on the sinks is computed in constant time;
+ * the change of each sink is listed only on request.
+ *
+ * Deletions are evaluated as {@link HSystem#deleteElement(String)} performs
+ * them: an element fed by a source or a tap is replaced by the element
+ * downstream of it, while an element fed by a split or a multi-split
+ * leaves the elements downstream of it disconnected, and they keep
+ * reporting the flows they had.
+ */
+public final class WhatIf {
+
+	private static final int NONE = FlowNetwork.NONE;
+	// effects on the sinks in a range of the pre-order: none, loss of their flow,
+	// flow multiplied by a factor, or restored flow blocked by an element
+	private static final int NOTHING = 0, LOSE = 1, SCALE = 2, RESTORE = 3;
+
+	/**
+	 * Actions that can be evaluated.
+	 */
+	public enum Action {
+		/** Opening a closed tap or closing an open one. */
+		TOGGLE,
+		/** Deleting an element from the system. */
+		DELETE
+	}
+
+	private final FlowNetwork net;
+	private final HashMap<String, Integer> ids = new HashMap<>();
+	/** Flow of the sinks at positions before {@code p} of the pre-order. */
+	private final double[] sinkPrefix;
+	private final double[] unblocked;
+	private final int[] blockedBy;
+	private final double[] blockedFlow;
+
+	/**
+	 * Prepares the analysis of a compiled network, computing its flows.
+	 */
+	WhatIf(FlowNetwork net) {
+		this.net = net;
+		net.computeFlows();
+		int n = net.size();
+		for (int id = net.listed - 1; id >= 0; id--)
+			ids.put(net.elements[id].getName(), id);
+		sinkPrefix = new double[net.reachable + 1];
+		unblocked = new double[n];
+		blockedBy = new int[n];
+		blockedFlow = new double[n];
+		Arrays.fill(blockedBy, NONE);
+		for (int p = 0; p < net.reachable; p++) {
+			int v = net.order[p];
+			int u = net.parent[v];
+			sinkPrefix[p + 1] = sinkPrefix[p] + (net.kind[v] == FlowNetwork.SINK ? net.inFlow[v] : 0.0);
+			if (u == NONE || net.kind[v] == FlowNetwork.SOURCE)
+				continue;
+			if (net.kind[u] == FlowNetwork.SOURCE) {
+				unblocked[v] = net.sourceFlow[u];
+				continue;
+			}
+			double g = gain(u, net.slot[v]);
+			if (g == 0) {
+				unblocked[v] = net.inFlow[u];
+				blockedBy[v] = u;
+			} else {
+				unblocked[v] = unblocked[u] * g;
+				blockedBy[v] = blockedBy[u];
+			}
+			if (net.kind[v] == FlowNetwork.SINK && blockedBy[v] != NONE)
+				blockedFlow[blockedBy[v]] += unblocked[v];
+		}
+	}
+
+	/**
+	 * Fraction of the input flow of an element sent to one of its outputs.
+	 */
+	private double gain(int id, int output) {
+		return switch (net.kind[id]) {
+			case FlowNetwork.TAP -> net.open[id] ? 1.0 : 0.0;
+			case FlowNetwork.SPLIT -> FlowNetwork.EQUAL_FLOW;
+			case FlowNetwork.MULTISPLIT -> net.proportions[net.propStart[id] + output];
+			default -> 1.0;
+		};
+	}
+
+	/**
+	 * Effect of an action on the sinks.
+	 */
+	public final class Impact {
+		private final String name;
+		private final Action action;
+		private final boolean allowed;
+		private final int effect;
+		private final int from;
+		private final int to;
+		private final double factor;
+		private final int owner;
+
+		private Impact(String name, Action action, boolean allowed, int effect, int from, int to, double factor, int owner) {
+			this.name = name;
+			this.action = action;
+			this.allowed = allowed;
+			this.effect = effect;
+			this.from = from;
+			this.to = to;
+			this.factor = factor;
+			this.owner = owner;
+		}
+
+		/**
+		 * Returns the name of the element the action applies to
+		 *
+		 * @return the name of the element
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the evaluated action
+		 *
+		 * @return the action
+		 */
+		public Action getAction() {
+			return action;
+		}
+
+		/**
+		 * Checks whether the action can be performed: splits with several
+		 * connected outputs and elements not in the system cannot be deleted,
+		 * only taps can be toggled
+		 *
+		 * @return whether the action is allowed
+		 */
+		public boolean isAllowed() {
+			return allowed;
+		}
+
+		/**
+		 * Returns the change of the total flow reaching the sinks
+		 *
+		 * @return the change, negative for a loss
+		 */
+		public double getSinkFlowChange() {
+			return switch (effect) {
+				case LOSE -> -(sinkPrefix[to] - sinkPrefix[from]);
+				case SCALE -> (factor - 1) * (sinkPrefix[to] - sinkPrefix[from]);
+				case RESTORE -> blockedFlow[owner];
+				default -> 0.0;
+			};
+		}
+
+		/**
+		 * Returns the change of the input flow of each affected sink
+		 *
+		 * @return map from the names of the sinks, in pre-order, to their flow change
+		 */
+		public Map<String, Double> getSinkChanges() {
+			Map<String, Double> changes = new LinkedHashMap<>();
+			if (effect == NOTHING)
+				return changes;
+			for (int p = from; p < to; p++) {
+				int s = net.order[p];
+				if (net.kind[s] != FlowNetwork.SINK)
+					continue;
+				double change = switch (effect) {
+					case LOSE -> -net.inFlow[s];
+					case SCALE -> (factor - 1) * net.inFlow[s];
+					default -> blockedBy[s] == owner ? unblocked[s] : 0.0;
+				};
+				if (change != 0)
+					changes.put(net.elements[s].getName(), change);
+			}
+			return changes;
+		}
+
+		@Override
+		public String toString() {
+			return action + " " + name + ": " + (allowed ? getSinkFlowChange() : "not allowed");
+		}
+	}
+
+	private Impact none(String name, Action action, boolean allowed) {
+		return new Impact(name, action, allowed, NOTHING, 0, 0, 1.0, NONE);
+	}
+
+	/**
+	 * Evaluates the effect of an action on an element of the system
+	 *
+	 * @param action the action
+	 * @param name the name of the element
+	 * @return the impact of the action
+	 */
+	public Impact evaluate(Action action, String name) {
+		Integer boxed = ids.get(name);
+		if (boxed == null)
+			return none(name, action, false);
+		int id = boxed;
+		int pos = net.position[id];
+		byte kind = net.kind[id];
+		if (action == Action.TOGGLE) {
+			if (kind != FlowNetwork.TAP)
+				return none(name, action, false);
+			if (pos == NONE)
+				return none(name, action, true);
+			if (net.open[id])
+				return new Impact(name, action, true, LOSE, pos + 1, pos + net.subtreeSize[id], 1.0, NONE);
+			return new Impact(name, action, true, RESTORE, pos + 1, pos + net.subtreeSize[id], 1.0, id);
+		}
+
+		if ((kind == FlowNetwork.SPLIT || kind == FlowNetwork.MULTISPLIT) && net.outCount[id] > 1)
+			return none(name, action, false);
+		if (pos == NONE)
+			return none(name, action, true);
+		int end = pos + net.subtreeSize[id];
+		switch (kind) {
+			case FlowNetwork.SINK -> {
+				return new Impact(name, action, true, LOSE, pos, end, 1.0, NONE);
+			}
+			case FlowNetwork.SOURCE -> {
+				return new Impact(name, action, true, LOSE, pos + 1, end, 1.0, NONE);
+			}
+			default -> {
+				int up = net.parent[id];
+				if (end == pos + 1 || up == NONE)
+					return none(name, action, true);
+				int child = net.order[pos + 1];
+				// the elements downstream are disconnected and keep their flows
+				if (net.kind[up] == FlowNetwork.SPLIT || net.kind[up] == FlowNetwork.MULTISPLIT)
+					return none(name, action, true);
+				// the element downstream takes the place of the deleted one
+				double g = gain(id, net.slot[child]);
+				if (g == 0)
+					return new Impact(name, action, true, RESTORE, pos + 1, end, 1.0, id);
+				return new Impact(name, action, true, SCALE, pos + 1, end, 1 / g, NONE);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the effect of an action on many elements
+	 *
+	 * @param action the action
+	 * @param names the names of the elements
+	 * @return the impacts, in the order of the names
+	 */
+	public List<Impact> evaluate(Action action, Collection<String> names) {
+		List<Impact> impacts = new ArrayList<>(names.size());
+		for (String name : names)
+			impacts.add(evaluate(action, name));
+		return impacts;
+	}
+
+	/**
+	 * Evaluates the effect of an action on many elements and ranks the
+	 * allowed ones by decreasing size of the change of the flow reaching
+	 * the sinks
+	 *
+	 * @param action the action
+	 * @param names the names of the elements
+	 * @return the impacts of the allowed actions, largest first
+	 */
+	public List<Impact> rank(Action action, Collection<String> names) {
+		List<Impact> impacts = new ArrayList<>(names.size());
+		for (String name : names) {
+			Impact impact = evaluate(action, name);
+			if (impact.isAllowed())
+				impacts.add(impact);
+		}
+		impacts.sort(Comparator.comparingDouble((Impact i) -> Math.abs(i.getSinkFlowChange())).reversed());
+		return impacts;
+	}
+}
@@ -0,0 +1,69 @@
+package it.polito.oop.test;
+
+import java.util.List;
+import java.util.Random;
+
+import hydraulic.Element;
+import hydraulic.HSystem;
+import hydraulic.Multisplit;
+import hydraulic.Sink;
+import hydraulic.Split;
+import hydraulic.Tap;
+
+/**
+ * Generator of random trees of elements.
+ */
+class RandomTrees {
+
+	private RandomTrees() {
+	}
+
+	/**
+	 * Adds a random tree of about the given size below an element.
+	 */
+	static void grow(HSystem s, Random rnd, Element up, int output, int size, String prefix) {
+		grow(s, rnd, up, output, size, prefix, null);
+	}
+
+	/**
+	 * Adds a random tree of about the given size below an element,
+	 * collecting the names of its sinks.
+	 */
+	static void grow(HSystem s, Random rnd, Element up, int output, int size, String prefix, List<String> sinks) {
+		Element e;
+		if (size <= 1) {
+			e = new Sink(prefix);
+			if (sinks != null)
+				sinks.add(prefix);
+		} else {
+			switch (rnd.nextInt(3)) {
+				case 0 -> {
+					Tap t = new Tap(prefix);
+					t.setOpen(rnd.nextInt(5) > 0);
+					e = t;
+				}
+				case 1 -> e = new Split(prefix);
+				default -> {
+					Multisplit ms = new Multisplit(prefix, 3);
+					ms.setProportions(0.2, 0.3, 0.5);
+					e = ms;
+				}
+			}
+		}
+		e.setMaxFlow(rnd.nextInt(3) == 0 ? rnd.nextInt(1000) : 0.0);
+		s.addElement(e);
+		if (up instanceof Split)
+			up.connect(e, output);
+		else
+			up.connect(e);
+		if (e instanceof Multisplit) {
+			for (int k = 0; k < 3; k++)
+				grow(s, rnd, e, k, (size - 1) / 3, prefix + "." + k, sinks);
+		} else if (e instanceof Split) {
+			grow(s, rnd, e, 0, (size - 1) / 2, prefix + ".0", sinks);
+			grow(s, rnd, e, 1, (size - 1) / 2, prefix + ".1", sinks);
+		} else if (e instanceof Tap) {
+			grow(s, rnd, e, 0, size - 1, prefix + ".t", sinks);
+		}
+	}
+}
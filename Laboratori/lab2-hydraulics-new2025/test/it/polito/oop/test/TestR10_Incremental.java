@@ -0,0 +1,136 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class TestR10_Incremental {
+
+	private final List<String> notified = new ArrayList<>();
+	private final SimulationObserver recorder = (level, type, name, in, flows) -> notified.add(name);
+
+	@Test
+	public void testOnlyChangedElementsNotified(){
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Split sp = new Split("Sp");
+		Tap t1 = new Tap("T1");
+		Tap t2 = new Tap("T2");
+		Sink s1 = new Sink("S1");
+		Sink s2 = new Sink("S2");
+		s.addElement(src);
+		s.addElement(sp);
+		s.addElement(t1);
+		s.addElement(t2);
+		s.addElement(s1);
+		s.addElement(s2);
+		src.connect(sp);
+		sp.connect(t1, 0);
+		sp.connect(t2, 1);
+		t1.connect(s1);
+		t2.connect(s2);
+		src.setFlow(20);
+		t1.setOpen(true);
+		t2.setOpen(true);
+
+		s.simulateIncremental(recorder);
+		assertEquals("First simulation must be complete", 6, notified.size());
+
+		notified.clear();
+		s.simulateIncremental(recorder);
+		assertTrue("Nothing changed", notified.isEmpty());
+
+		t1.setOpen(false);
+		notified.clear();
+		StoreObserver obs = new StoreObserver();
+		s.simulateIncremental((level, type, name, in, flows) -> {
+			notified.add(name);
+			obs.notify(level, type, name, in, flows);
+		});
+		assertEquals(List.of("T1", "S1"), notified);
+		assertEquals(0.0, obs.inFlowOf("S1"), 0.001);
+		assertEquals("Element state not updated", 0.0, s1.getFlow(), 0.001);
+
+		src.setFlow(40);
+		notified.clear();
+		s.simulateIncremental(recorder);
+		// S1 still receives nothing from the closed tap
+		assertEquals(List.of("Src", "Sp", "T1", "T2", "S2"), notified);
+	}
+
+	@Test
+	public void testChangeListenerAndTopology(){
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Multisplit ms = new Multisplit("MS", 2);
+		Sink s1 = new Sink("S1");
+		Sink s2 = new Sink("S2");
+		s.addElement(src);
+		s.addElement(ms);
+		s.addElement(s1);
+		s.addElement(s2);
+		src.connect(ms);
+		ms.connect(s1, 0);
+		ms.connect(s2, 1);
+		src.setFlow(10);
+		ms.setProportions(0.5, 0.5);
+
+		List<String> diff = new ArrayList<>();
+		s.setFlowChangeListener((e, before, after) -> diff.add(e.getName() + ":" + before + "->" + after));
+		s.simulateIncremental(recorder);
+
+		diff.clear();
+		ms.setProportions(0.2, 0.8);
+		s.simulateIncremental(recorder);
+		assertEquals(List.of("MS:10.0->10.0", "S1:5.0->2.0", "S2:5.0->8.0"), diff);
+
+		// a new connection makes the next simulation complete
+		Sink s3 = new Sink("S3");
+		s.addElement(s3);
+		ms.setDownstream(null, 1);
+		ms.connect(s3, 1);
+		notified.clear();
+		s.simulateIncremental(recorder);
+		assertEquals(5, notified.size());
+	}
+
+	@Test
+	public void testWideNetwork(){
+		final int N = 100_000;
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Multisplit ms = new Multisplit("MS", N);
+		s.addElement(src);
+		s.addElement(ms);
+		src.connect(ms);
+		Tap[] taps = new Tap[N];
+		double[] props = new double[N];
+		for (int i = 0; i < N; ++i) {
+			taps[i] = new Tap("T" + i);
+			taps[i].setOpen(true);
+			Sink k = new Sink("S" + i);
+			s.addElement(taps[i]);
+			s.addElement(k);
+			ms.connect(taps[i], i);
+			taps[i].connect(k);
+			props[i] = 1.0 / N;
+		}
+		ms.setProportions(props);
+		src.setFlow(N);
+
+		s.simulateIncremental(recorder);
+		assertEquals(2 + 2 * N, notified.size());
+		for (int i = 0; i < 100; ++i) {
+			taps[i * 7].setOpen(i % 2 == 0);
+			notified.clear();
+			s.simulateIncremental(recorder);
+			assertEquals(i % 2 == 0 ? 0 : 2, notified.size());
+		}
+	}
+}
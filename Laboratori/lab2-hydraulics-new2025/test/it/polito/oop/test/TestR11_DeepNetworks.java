@@ -0,0 +1,103 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestR11_DeepNetworks {
+
+	private static final int DEPTH = 200_000;
+
+	/**
+	 * Recursive layout with repeated padding, as originally produced by toString()
+	 */
+	private static String legacyLayout(Element e) {
+		String res = "[%s] ".formatted(e.getName());
+		Element[] out = e.getOutputs();
+		if (out != null) {
+			StringBuilder buffer = new StringBuilder();
+			for (int i = 0; i < out.length; ++i) {
+				if (i > 0) buffer.append("\n");
+				if (out[i] == null) buffer.append("+-> *");
+				else buffer.append(pad("+-> ", legacyLayout(out[i])));
+			}
+			res = pad(res, buffer.toString());
+		}
+		return res;
+	}
+
+	private static String pad(String current, String down) {
+		return current + down.replace("\n", "\n" + " ".repeat(current.length()));
+	}
+
+	@Test
+	public void testLayoutUnchanged(){
+		Random rnd = new Random(3);
+		for (int round = 0; round < 20; ++round) {
+			Split root = new Split("Root");
+			Split[] splits = {root};
+			int count = 1;
+			for (int i = 0; i < 30; ++i) {
+				Split parent = splits[rnd.nextInt(count)];
+				int index = rnd.nextInt(2);
+				if (parent.getOutputs() != null && parent.getOutputs()[index] != null) continue;
+				Element child;
+				if (rnd.nextBoolean()) {
+					Split sp = rnd.nextBoolean() ? new Split("Sp" + i) : new Multisplit("MS" + i, 2);
+					if (count == splits.length) splits = java.util.Arrays.copyOf(splits, count * 2);
+					splits[count++] = sp;
+					child = sp;
+				} else {
+					child = new Sink("Sink" + i);
+				}
+				parent.connect(child, index);
+			}
+			assertEquals(legacyLayout(root), root.toString());
+		}
+	}
+
+	@Test
+	public void testDeepChainPropagation(){
+		Source src = new Source("Src");
+		Tap first = new Tap("T0");
+		first.setOpen(true);
+		Element prev = first;
+		for (int i = 1; i < DEPTH; ++i) {
+			Tap t = new Tap("T" + i);
+			t.setOpen(true);
+			prev.connect(t);
+			prev = t;
+		}
+		Sink end = new Sink("End");
+		prev.connect(end);
+
+		src.setFlow(12);
+		src.connect(first);
+		assertEquals("Flow not propagated to the end of the chain", 12.0, end.getFlow(), 0.001);
+
+		assertTrue(src.delete());
+		assertTrue(Double.isNaN(end.getFlow()));
+	}
+
+	@Test
+	public void testDeepLayout() throws Exception {
+		Multisplit root = new Multisplit("M0", 1);
+		Multisplit prev = root;
+		for (int i = 1; i < DEPTH; ++i) {
+			Multisplit ms = new Multisplit("M" + i, 1);
+			prev.connect(ms, 0);
+			prev = ms;
+		}
+		prev.connect(new Sink("End"), 0);
+
+		StringBuilder out = new StringBuilder();
+		root.render(out);
+		assertTrue(out.toString().startsWith("[M0] +-> [M1] +-> [M2] "));
+		assertTrue(out.toString().endsWith("+-> [End] "));
+	}
+}
@@ -0,0 +1,102 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestR12_Scenarios {
+
+	@Test
+	public void testBatchMatchesSimulation(){
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Tap t = new Tap("T");
+		Multisplit ms = new Multisplit("MS", 3);
+		Split sp = new Split("Sp");
+		Tap t2 = new Tap("T2");
+		Sink s1 = new Sink("S1"), s2 = new Sink("S2"), s3 = new Sink("S3"), s4 = new Sink("S4");
+		Element[] all = {src, t, ms, sp, t2, s1, s2, s3, s4};
+		for (Element e : all) s.addElement(e);
+		src.connect(t);
+		t.connect(ms);
+		ms.connect(sp, 0);
+		ms.connect(t2, 1);
+		ms.connect(s3, 2);
+		sp.connect(s1, 0);
+		sp.connect(s4, 1);
+		t2.connect(s2);
+		src.setFlow(10);
+		t.setOpen(true);
+		t2.setOpen(true);
+		ms.setProportions(0.2, 0.3, 0.5);
+		s3.setMaxFlow(30);
+		sp.setMaxFlow(25);
+
+		final int N = 1000;
+		Random rnd = new Random(5);
+		double[] flows = new double[N];
+		boolean[] tOpen = new boolean[N], t2Open = new boolean[N];
+		double[][] props = new double[N][];
+		ScenarioBatch batch = new ScenarioBatch(s.compile(), N);
+		for (int i = 0; i < N; ++i) {
+			flows[i] = rnd.nextInt(200);
+			tOpen[i] = rnd.nextInt(4) > 0;
+			t2Open[i] = rnd.nextBoolean();
+			double a = rnd.nextDouble(), b = rnd.nextDouble() * (1 - a);
+			props[i] = new double[]{a, b, 1 - a - b};
+			batch.setOpen(t, i, tOpen[i]).setOpen(t2, i, t2Open[i]).setProportions(ms, i, props[i]);
+		}
+		batch.setFlows(src, flows);
+		ScenarioBatch.Result res = batch.evaluate(3);
+
+		// the live system is left untouched
+		assertEquals(10.0, src.getFlow(), 0.0);
+
+		BitSet expectedViolating = new BitSet();
+		for (int i = 0; i < N; i += 37) {
+			src.setFlow(flows[i]);
+			t.setOpen(tOpen[i]);
+			t2.setOpen(t2Open[i]);
+			ms.setProportions(props[i]);
+			StoreObserver obs = new StoreObserver();
+			s.simulate(obs, true);
+			for (Element e : all)
+				if (!(e instanceof Source))
+					assertEquals("Wrong flow of " + e.getName() + " in scenario " + i,
+							obs.inFlowOf(e.getName()), res.getInFlow(e, i), 1e-9);
+			assertEquals(obs.containsError("S3"), res.getViolations(s3).get(i));
+			assertEquals(obs.containsError("Sp"), res.getViolations(sp).get(i));
+			if (obs.getErrorCount() > 0) expectedViolating.set(i);
+		}
+		BitSet violating = res.getViolatingScenarios();
+		for (int i = 0; i < N; i += 37)
+			assertEquals(expectedViolating.get(i), violating.get(i));
+		assertEquals(N, res.getInFlows(s2).length);
+	}
+
+	@Test
+	public void testSameResultWhateverParallelism(){
+		HSystem s = HSystem.build()
+				.addSource("Src")
+				.linkToSplit("Sp")
+				.withOutputs()
+					.linkToSink("A")
+					.then()
+					.linkToSink("B")
+				.done()
+				.complete();
+		ScenarioBatch batch = new ScenarioBatch(s.compile(), 777);
+		Source src = (Source) s.getElements()[0];
+		for (int i = 0; i < 777; ++i) batch.setFlow(src, i, i);
+		ScenarioBatch.Result one = batch.evaluate(1), many = batch.evaluate(4);
+		Element a = s.getElements()[2];
+		assertArrayEquals(one.getInFlows(a), many.getInFlows(a), 0.0);
+		assertEquals(388.0 / 2, one.getInFlow(a, 388), 0.0);
+	}
+}
@@ -0,0 +1,118 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class TestR13_ResultBuffer {
+
+	private static HSystem system() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Tap t = new Tap("T");
+		Multisplit ms = new Multisplit("MS", 3);
+		Split sp = new Split("Sp");
+		Sink s1 = new Sink("S1"), s2 = new Sink("S2"), s3 = new Sink("S3");
+		Tap orphan = new Tap("Orphan");
+		for (Element e : new Element[]{src, t, ms, sp, s1, s2, s3, orphan}) s.addElement(e);
+		src.connect(t);
+		t.connect(ms);
+		ms.connect(sp, 0);
+		ms.connect(s3, 2);
+		sp.connect(s1, 0);
+		sp.connect(s2, 1);
+		src.setFlow(50);
+		t.setOpen(true);
+		ms.setProportions(0.6, 0.1, 0.3);
+		s1.setMaxFlow(10);
+		orphan.setMaxFlow(-1);
+		return s;
+	}
+
+	@Test
+	public void testReplayMatchesObserver(){
+		List<String> expected = new ArrayList<>(), replayed = new ArrayList<>();
+		system().simulate(new TraceObserver(expected), true);
+
+		SimulationResult res = new SimulationResult(2);
+		system().simulate(res, true);
+		res.replay(new TraceObserver(replayed));
+		assertEquals(expected, replayed);
+
+		assertEquals(8, res.size());
+		assertEquals(SimulationResult.MULTISPLIT, res.getKind(2));
+		assertEquals(2, res.getOutFlowCount(2));
+		assertEquals(30.0, res.getOutFlow(2, 0), 1e-9);
+		assertTrue(res.hasError(4));
+		assertEquals(10.0, res.getMaxFlow(4), 0.0);
+		assertEquals("Orphan", res.getElement(7).getName());
+		assertEquals(2, res.getErrorCount());
+	}
+
+	@Test
+	public void testUnknownElementsFallback(){
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Sink sink = new Sink("Sink") { };
+		s.addElement(src);
+		s.addElement(sink);
+		src.connect(sink);
+		src.setFlow(3);
+
+		List<String> expected = new ArrayList<>(), replayed = new ArrayList<>();
+		s.simulate(new TraceObserver(expected));
+		SimulationResult res = new SimulationResult();
+		s.simulate(res, false);
+		res.replay(new TraceObserver(replayed));
+		assertEquals(expected, replayed);
+		assertEquals(SimulationResult.OTHER, res.getKind(1));
+	}
+
+	@Test
+	public void testRepeatedSimulationsDoNotAllocate(){
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		s.addElement(src);
+		Split prev = new Split("Root");
+		s.addElement(prev);
+		src.connect(prev);
+		for (int i = 0; i < 5000; ++i) {
+			Split sp = new Split("Sp" + i);
+			Sink k = new Sink("K" + i);
+			s.addElement(sp);
+			s.addElement(k);
+			prev.connect(sp, 0);
+			prev.connect(k, 1);
+			prev = sp;
+		}
+		src.setFlow(1);
+		FlowNetwork net = s.compile();
+		SimulationResult res = new SimulationResult();
+		net.simulate(res, true);
+
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		long before = bean.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < 100; ++i)
+			net.simulate(res, true);
+		long allocated = bean.getThreadAllocatedBytes(tid) - before;
+		assertTrue("Allocated " + allocated + " bytes", allocated < 64 * 1024);
+		assertEquals(2 + 2 * 5000, res.size());
+
+		// the system reuses its network once compiled
+		s.simulate(res, true);
+		before = bean.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < 100; ++i)
+			s.simulate(res, true);
+		allocated = bean.getThreadAllocatedBytes(tid) - before;
+		assertTrue("Allocated " + allocated + " bytes", allocated < 64 * 1024);
+		assertEquals(2 + 2 * 5000, res.size());
+	}
+}
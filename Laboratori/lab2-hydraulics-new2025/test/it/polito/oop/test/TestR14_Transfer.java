@@ -0,0 +1,81 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class TestR14_Transfer {
+
+	private final Source src = new Source("Src");
+	private final Tap t = new Tap("T");
+	private final Multisplit ms = new Multisplit("MS", 2);
+	private final Split sp = new Split("Sp");
+	private final Sink s1 = new Sink("S1"), s2 = new Sink("S2"), s3 = new Sink("S3");
+	private final Source other = new Source("Other");
+	private final Sink s4 = new Sink("S4");
+
+	private HSystem system() {
+		HSystem s = new HSystem();
+		for (Element e : new Element[]{src, t, ms, sp, s1, s2, s3, other, s4}) s.addElement(e);
+		src.connect(t);
+		t.connect(ms);
+		ms.connect(sp, 0);
+		ms.connect(s3, 1);
+		sp.connect(s1, 0);
+		sp.connect(s2, 1);
+		other.connect(s4);
+		t.setOpen(true);
+		ms.setProportions(0.4, 0.6);
+		return s;
+	}
+
+	@Test
+	public void testFlowAt(){
+		HSystem s = system();
+		assertEquals(20.0, s.flowAt(s1, src, 100), 1e-9);
+		assertEquals(60.0, s.flowAt(s3, src, 100), 1e-9);
+		assertEquals(100.0, s.flowAt(src, src, 100), 0.0);
+		assertTrue(Double.isNaN(s.flowAt(s4, src, 100)));
+		assertEquals(5.0, s.flowAt(s4, other, 5), 0.0);
+
+		// coefficients follow tap and proportion changes
+		ms.setProportions(0.8, 0.2);
+		assertEquals(40.0, s.flowAt(s2, src, 100), 1e-9);
+		t.setOpen(false);
+		assertEquals(0.0, s.flowAt(s2, src, 100), 0.0);
+
+		src.setFlow(100);
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs);
+		assertEquals(obs.inFlowOf("S2"), s.flowAt(s2, src, 100), 1e-9);
+	}
+
+	@Test
+	public void testMaxAdmissibleFlow(){
+		HSystem s = system();
+		s1.setMaxFlow(30);
+		s3.setMaxFlow(45);
+		s4.setMaxFlow(1);
+		// S1 gets 0.2 of the source, S3 gets 0.6
+		assertEquals(75.0, s.maxAdmissibleFlow(src), 1e-9);
+
+		src.setFlow(75);
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertFalse(obs.containsError("S3"));
+		assertFalse(obs.containsError("S1"));
+
+		src.setFlow(76);
+		obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertTrue(obs.containsError("S3"));
+
+		t.setOpen(false);
+		assertEquals(Double.POSITIVE_INFINITY, s.maxAdmissibleFlow(src), 0.0);
+		s2.setMaxFlow(-1);
+		assertTrue(Double.isNaN(s.maxAdmissibleFlow(src)));
+	}
+}
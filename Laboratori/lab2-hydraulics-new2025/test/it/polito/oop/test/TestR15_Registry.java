@@ -0,0 +1,105 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class TestR15_Registry {
+
+	@Test
+	public void testLookupAndOrder(){
+		HSystem s = new HSystem();
+		Sink[] sinks = new Sink[1000];
+		for (int i = 0; i < sinks.length; ++i) {
+			sinks[i] = new Sink("S" + i);
+			s.addElement(sinks[i]);
+		}
+		assertSame(sinks[500], s.getElement("S500"));
+		assertNull(s.getElement("none"));
+		assertFalse(s.deleteElement("none"));
+
+		for (int i = 0; i < sinks.length; i += 2)
+			assertTrue(s.deleteElement("S" + i));
+		assertEquals(500, s.size());
+		Element[] left = s.getElements();
+		for (int i = 0; i < left.length; ++i)
+			assertSame("Order not preserved", sinks[2 * i + 1], left[i]);
+		assertNull(s.getElement("S10"));
+		assertSame(sinks[11], s.getElement("S11"));
+	}
+
+	@Test
+	public void testDuplicateNames(){
+		HSystem s = new HSystem();
+		Sink a = new Sink("X"), b = new Sink("X");
+		s.addElement(a);
+		s.addElement(b);
+		assertSame(a, s.getElement("X"));
+		assertTrue(s.deleteElement("X"));
+		assertSame(b, s.getElement("X"));
+	}
+
+	@Test
+	public void testBulkEdit(){
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Split sp = new Split("Sp");
+		Tap t = new Tap("T");
+		Sink k1 = new Sink("K1"), k2 = new Sink("K2");
+		src.setFlow(8);
+		t.setOpen(true);
+		s.edit().add(src).add(sp).add(t).add(k1).add(k2)
+			.connect(src, sp).connect(sp, t, 0).connect(t, k1).connect(sp, k2, 1)
+			.commit();
+		assertEquals(5, s.size());
+		assertEquals("Flow not propagated after commit", 4.0, k1.getFlow(), 0.0);
+
+		// an unknown name rejects the whole edit
+		HSystem.Edit bad = s.edit().delete("T").delete("Nope");
+		assertThrows(IllegalStateException.class, bad::commit);
+		assertEquals(5, s.size());
+
+		// so does an invalid connection, even after valid operations
+		Sink k4 = new Sink("K4");
+		HSystem.Edit wrong = s.edit().add(k4).delete("T").connect(sp, k4, 2);
+		assertThrows(IllegalArgumentException.class, wrong::commit);
+		assertEquals(5, s.size());
+		assertNotNull(s.getElement("T"));
+		assertThrows(IllegalArgumentException.class, s.edit().reconnect(sp, null, 0)::commit);
+
+		Sink k3 = new Sink("K3");
+		assertTrue(s.edit().add(k3).reconnect(sp, k3, 1).delete("K2").commit());
+		assertSame(k3, sp.getOutputs()[1]);
+		assertNull(s.getElement("K2"));
+
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs);
+		assertEquals(4.0, obs.inFlowOf("K3"), 0.0);
+	}
+
+	@Test
+	public void testManyDeletions(){
+		final int N = 100_000;
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Multisplit ms = new Multisplit("MS", N);
+		HSystem.Edit build = s.edit().add(src).add(ms).connect(src, ms);
+		for (int i = 0; i < N; ++i) {
+			Tap t = new Tap("T" + i);
+			Sink k = new Sink("K" + i);
+			build.add(t).add(k).connect(ms, t, i).connect(t, k);
+		}
+		build.commit();
+		assertEquals(2 + 2 * N, s.size());
+
+		HSystem.Edit del = s.edit();
+		for (int i = 0; i < N; ++i)
+			del.delete("T" + i);
+		assertTrue(del.commit());
+		assertEquals(2 + N, s.size());
+		assertSame(s.getElement("K0"), s.getElements()[2]);
+	}
+}
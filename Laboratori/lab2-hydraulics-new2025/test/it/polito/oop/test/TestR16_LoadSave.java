@@ -0,0 +1,106 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class TestR16_LoadSave {
+
+	private static final String TEXT = """
+			# sample network
+			source Src 20.0
+			tap T open max=30.0
+			multisplit MS 2 0.25 0.75
+			split Sp max=4.0
+			sink S1
+			sink S2 max=100.0
+			sink S3
+			link Src T
+			link T MS
+			link MS Sp 0
+			link MS S3 1
+			link Sp S1 0
+			link Sp S2 1
+			""";
+
+	private static List<String> trace(HSystem s) {
+		List<String> log = new ArrayList<>();
+		s.simulate(new TraceObserver(log), true);
+		return log;
+	}
+
+	@Test
+	public void testTextRoundTrip() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		assertEquals(7, s.size());
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertEquals(2.5, obs.inFlowOf("S1"), 1e-9);
+		assertEquals(15.0, obs.inFlowOf("S3"), 1e-9);
+		assertTrue(obs.containsError("Sp"));
+
+		StringWriter out = new StringWriter();
+		HLoader.write(s, out);
+		HSystem copy = HLoader.load(new StringReader(out.toString()));
+		assertEquals(trace(s), trace(copy));
+		StringWriter again = new StringWriter();
+		HLoader.write(copy, again);
+		assertEquals(out.toString(), again.toString());
+	}
+
+	@Test
+	public void testMalformedText() {
+		IOException ex = assertThrows(IOException.class,
+				() -> HLoader.load(new StringReader("source Src 1\nlink Src Nope\n")));
+		assertTrue(ex.getMessage(), ex.getMessage().startsWith("Line 2"));
+		assertThrows(IOException.class, () -> HLoader.load(new StringReader("valve V\n")));
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		final int N = 100_000;
+		StringBuilder text = new StringBuilder("source Src 1000\nmultisplit MS ").append(N);
+		for (int i = 0; i < N; ++i) text.append(' ').append(1.0 / N);
+		text.append("\nlink Src MS\n");
+		for (int i = 0; i < N; ++i) {
+			text.append("tap T").append(i).append(i % 3 == 0 ? " closed" : " open").append('\n');
+			text.append("sink K").append(i).append(" max=").append(i % 100).append('\n');
+			text.append("link MS T").append(i).append(' ').append(i).append('\n');
+			text.append("link T").append(i).append(" K").append(i).append('\n');
+		}
+		HSystem s = HLoader.load(new StringReader(text.toString()));
+
+		Path file = Files.createTempFile("hsystem", ".snap");
+		try {
+			HSnapshot.save(s, file);
+			HSystem copy = HSnapshot.load(file);
+			assertEquals(s.size(), copy.size());
+			assertEquals(trace(s), trace(copy));
+			assertEquals(s.getElements()[7].toString(), copy.getElements()[7].toString());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testInvalidSnapshot() throws IOException {
+		Path file = Files.createTempFile("hsystem", ".snap");
+		try {
+			Files.writeString(file, "not a snapshot at all");
+			assertThrows(IOException.class, () -> HSnapshot.load(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+
+public class TestR17_Versions {
+
+	private static final String TEXT = """
+			source Src 20.0
+			split Sp
+			tap T1 open
+			tap T2 open max=5.0
+			sink S1
+			sink S2
+			link Src Sp
+			link Sp T1 0
+			link Sp T2 1
+			link T1 S1
+			link T2 S2
+			""";
+
+	@Test
+	public void testSameNotifications() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		VersionedSystem vs = new VersionedSystem(s);
+		List<String> expected = new ArrayList<>();
+		s.simulate(new TraceObserver(expected), true);
+		List<String> actual = new ArrayList<>();
+		vs.current().simulate(new TraceObserver(actual), true);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testPublishedVersionsDoNotChange() throws IOException {
+		VersionedSystem vs = new VersionedSystem(HLoader.load(new StringReader(TEXT)));
+		TopologyVersion v0 = vs.current();
+		TopologyVersion v1 = vs.setOpen("T1", false);
+		TopologyVersion v2 = vs.setFlow("Src", 40.0);
+		assertSame(v2, vs.current());
+		assertTrue(v0.getVersion() < v1.getVersion() && v1.getVersion() < v2.getVersion());
+
+		int s1 = v0.idOf("S1"), s2 = v0.idOf("S2");
+		double[] in = v0.simulate(new double[v0.size()]);
+		assertEquals(10.0, in[s1], 1e-9);
+		assertEquals(10.0, in[s2], 1e-9);
+		v1.simulate(in);
+		assertEquals(0.0, in[s1], 1e-9);
+		assertEquals(10.0, in[s2], 1e-9);
+		v2.simulate(in);
+		assertEquals(0.0, in[s1], 1e-9);
+		assertEquals(20.0, in[s2], 1e-9);
+
+		StoreObserver obs = new StoreObserver();
+		v2.simulate(obs, true);
+		assertTrue(obs.containsError("T2"));
+		obs = new StoreObserver();
+		vs.setMaxFlow("T2", 50.0).simulate(obs, true);
+		assertFalse(obs.containsError("T2"));
+
+		assertThrows(IllegalArgumentException.class, () -> vs.setOpen("S1", true));
+		assertThrows(IllegalArgumentException.class, () -> vs.setFlow("Missing", 1.0));
+	}
+
+	@Test
+	public void testTopologyUpdate() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		Element sp = s.getElement("Sp");
+		VersionedSystem vs = new VersionedSystem(s);
+		TopologyVersion before = vs.current();
+		Sink s3 = new Sink("S3");
+		TopologyVersion after = vs.update(e -> e.add(s3).reconnect(sp, s3, 1));
+		double[] in = after.simulate(new double[after.size()]);
+		assertEquals(10.0, in[after.idOf("S3")], 1e-9);
+		assertTrue(Double.isNaN(in[after.idOf("S2")]));
+		assertEquals(-1, before.idOf("S3"));
+		in = before.simulate(new double[before.size()]);
+		assertEquals(10.0, in[before.idOf("S2")], 1e-9);
+	}
+
+	@Test
+	public void testRejectedUpdate() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		Element sp = s.getElement("Sp");
+		Tap t1 = (Tap) s.getElement("T1");
+		VersionedSystem vs = new VersionedSystem(s);
+		TopologyVersion before = vs.current();
+		List<String> expected = new ArrayList<>();
+		before.simulate(new TraceObserver(expected), true);
+
+		Sink s3 = new Sink("S3");
+		assertThrows(IllegalArgumentException.class,
+				() -> vs.update(e -> e.setOpen(t1, false).add(s3).connect(sp, s3, 2)));
+		assertThrows(IllegalArgumentException.class,
+				() -> vs.update(e -> e.add(s3).reconnect(sp, new Sink("S4") { }, 1)));
+		assertThrows(IllegalStateException.class, () -> vs.update(e -> e.delete("T1").delete("Nope")));
+		assertThrows(UnsupportedOperationException.class, () -> vs.update(e -> {
+			e.setOpen(t1, false);
+			throw new UnsupportedOperationException();
+		}));
+		assertSame(before, vs.current());
+
+		// the system was left untouched: recompiling it gives the same notifications
+		TopologyVersion after = vs.update(e -> { });
+		List<String> actual = new ArrayList<>();
+		after.simulate(new TraceObserver(actual), true);
+		assertEquals(expected, actual);
+		assertEquals(before.size(), after.size());
+	}
+
+	@Test
+	public void testUnreachableElements() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT + """
+				tap Orphan closed max=1.0
+				multisplit OMS 3 0.2 0.3 0.5
+				sink OS
+				link OMS OS 1
+				"""));
+		VersionedSystem vs = new VersionedSystem(s);
+		List<String> expected = new ArrayList<>();
+		expected.add("STATUS Tap Orphan NaN [NaN]");
+		expected.add("ERROR Tap Orphan NaN [1.0]");
+		expected.add("STATUS Split OMS NaN [NaN]");
+		expected.add("STATUS Sink OS NaN [NaN]");
+		List<String> actual = new ArrayList<>();
+		vs.current().simulate(new TraceObserver(actual), true);
+		assertEquals(expected, actual.subList(actual.size() - 4, actual.size()));
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrentReaders() throws Exception {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		Tap t1 = (Tap) s.getElement("T1"), t2 = (Tap) s.getElement("T2");
+		VersionedSystem vs = new VersionedSystem(s);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<String> failure = new AtomicReference<>();
+		Thread[] readers = new Thread[4];
+		for (int r = 0; r < readers.length; r++) {
+			readers[r] = new Thread(() -> {
+				double[] in = new double[16];
+				while (!done.get() && failure.get() == null) {
+					TopologyVersion v = vs.current();
+					v.simulate(in);
+					double src = in[v.idOf("Sp")];
+					double s1 = in[v.idOf("S1")], s2 = in[v.idOf("S2")];
+					// both taps change in the same edit
+					if (s1 != s2 || (s1 != 0 && s1 != src / 2))
+						failure.compareAndSet(null, "version " + v.getVersion() + ": " + s1 + " " + s2);
+				}
+			});
+			readers[r].start();
+		}
+		for (int i = 0; i < 2000; i++) {
+			boolean open = i % 2 == 0;
+			vs.update(e -> e.setOpen(t1, open).setOpen(t2, open));
+			vs.setFlow("Src", i);
+		}
+		done.set(true);
+		for (Thread t : readers)
+			t.join();
+		assertNull(failure.get());
+	}
+}
@@ -0,0 +1,136 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class TestR18_Dynamic {
+
+	private static final String TEXT = """
+			source Src 10.0
+			tap T open
+			split Sp
+			sink S1
+			sink S2 max=4.0
+			link Src T
+			link T Sp
+			link Sp S1 0
+			link Sp S2 1
+			""";
+
+	private static DynamicSimulation load(double tickHours) throws IOException {
+		return new DynamicSimulation(HLoader.load(new StringReader(TEXT)), tickHours);
+	}
+
+	@Test
+	public void testNoDelayMatchesSteadyState() throws IOException {
+		DynamicSimulation sim = load(1.0);
+		StoreObserver obs = new StoreObserver();
+		sim.run(1, obs, true);
+		assertEquals(5.0, obs.inFlowOf("S1"), 1e-9);
+		assertEquals(5.0, obs.inFlowOf("S2"), 1e-9);
+		assertTrue(obs.containsError("S2"));
+		assertEquals(1, sim.getTick());
+	}
+
+	@Test
+	public void testTransitDelay() throws IOException {
+		DynamicSimulation sim = load(0.5);
+		sim.setDelay("Sp", 2);
+		sim.setDelay("S1", 1);
+		sim.run(2);
+		assertEquals(10.0, sim.getInFlow("T"), 1e-9);
+		assertEquals(0.0, sim.getInFlow("Sp"), 1e-9);
+		assertEquals(10.0, sim.getInTransit(), 1e-9);
+		sim.run(1);
+		assertEquals(10.0, sim.getInFlow("Sp"), 1e-9);
+		assertEquals(0.0, sim.getInFlow("S1"), 1e-9);
+		assertEquals(5.0, sim.getInFlow("S2"), 1e-9);
+		sim.run(1);
+		assertEquals(5.0, sim.getInFlow("S1"), 1e-9);
+		assertEquals(2.5, sim.getStored("S1"), 1e-9);
+		assertEquals(5.0, sim.getStored("S2"), 1e-9);
+		assertThrows(IllegalStateException.class, () -> sim.setDelay("T", 1));
+	}
+
+	@Test
+	public void testSourcesHaveNoDelay() throws IOException {
+		DynamicSimulation sim = load(1.0);
+		assertThrows(IllegalArgumentException.class, () -> sim.setDelay("Src", 1));
+		assertThrows(IllegalArgumentException.class, () -> sim.setDelay("Missing", 1));
+	}
+
+	@Test
+	public void testSameNotificationsAsVersions() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT + """
+				tap Orphan closed max=1.0
+				"""));
+		List<String> expected = new ArrayList<>();
+		new VersionedSystem(s).current().simulate(new TraceObserver(expected), true);
+		List<String> actual = new ArrayList<>();
+		new DynamicSimulation(s, 1.0).run(1, new TraceObserver(actual), true);
+		assertEquals(expected, actual);
+		assertEquals("STATUS Tap Orphan NaN [NaN]", actual.get(actual.size() - 2));
+	}
+
+	@Test
+	public void testScheduleAndCapacity() throws IOException {
+		DynamicSimulation sim = load(1.0);
+		sim.setCapacity("S1", 12.0);
+		sim.scheduleOpen(2, "T", false);
+		sim.scheduleOpen(4, "T", true);
+		sim.scheduleFlow(4, "Src", 20.0);
+		sim.run(2);
+		assertEquals(5.0, sim.getInFlow("S1"), 1e-9);
+		sim.run(1);
+		assertEquals(0.0, sim.getInFlow("S1"), 1e-9);
+		sim.run(2);
+		assertEquals(10.0, sim.getInFlow("S1"), 1e-9);
+		// 5 + 5 + 0 + 0 + 10 received, 12 stored
+		assertEquals(12.0, sim.getStored("S1"), 1e-9);
+		assertEquals(8.0, sim.getSpilled("S1"), 1e-9);
+		assertEquals(20.0, sim.getStored("S2"), 1e-9);
+		assertThrows(IllegalArgumentException.class, () -> sim.scheduleFlow(1, "Src", 1.0));
+		assertThrows(IllegalArgumentException.class, () -> sim.scheduleOpen(9, "Src", true));
+	}
+
+	@Test
+	public void testStreamsEveryTick() throws IOException {
+		DynamicSimulation sim = load(1.0);
+		int[] count = new int[1];
+		sim.run(10, (level, type, name, in, flows) -> count[0]++, false);
+		assertEquals(50, count[0]);
+	}
+
+	@Test(timeout = 60000)
+	public void testLongRun() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(100.0);
+		s.addElement(src);
+		Element last = src;
+		for (int i = 0; i < 1000; i++) {
+			Tap t = new Tap("T" + i);
+			t.setOpen(true);
+			s.addElement(t);
+			last.connect(t);
+			last = t;
+		}
+		Sink sink = new Sink("S");
+		s.addElement(sink);
+		last.connect(sink);
+		DynamicSimulation sim = new DynamicSimulation(s, 1.0);
+		sim.setDelay("S", 3);
+		sim.run(10000);
+		assertEquals(100.0 * (10000 - 3), sim.getStored("S"), 1e-6);
+		assertEquals(300.0, sim.getInTransit(), 1e-9);
+	}
+}
@@ -0,0 +1,155 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+
+public class TestR19_AsyncObserver {
+
+	@Test(timeout = 30000)
+	public void testDeliversSimulation() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		Tap t = new Tap("T");
+		Sink sink = new Sink("S");
+		s.addElement(src);
+		s.addElement(t);
+		s.addElement(sink);
+		src.connect(t);
+		t.connect(sink);
+		src.setFlow(20.0);
+		t.setOpen(true);
+		sink.setMaxFlow(10.0);
+
+		StoreObserver store = new StoreObserver();
+		try (AsyncObserver obs = new AsyncObserver(store)) {
+			s.simulate(obs, true);
+			obs.awaitDelivery();
+			assertEquals(20.0, store.inFlowOf("S"), 1e-9);
+			assertTrue(store.containsError("S"));
+			assertEquals(4, obs.getDelivered());
+			assertEquals(0, obs.getQueueDepth());
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentProducers() throws InterruptedException {
+		int producers = 4, count = 10000;
+		List<String> received = new ArrayList<>();
+		AsyncObserver obs = new AsyncObserver((level, type, name, in, flows) -> received.add(name),
+				64, AsyncObserver.WaitStrategy.YIELD, AsyncObserver.Overflow.BLOCK, 1);
+		Thread[] threads = new Thread[producers];
+		for (int p = 0; p < producers; p++) {
+			String name = "P" + p;
+			threads[p] = new Thread(() -> {
+				for (int i = 0; i < count; i++)
+					obs.notifyFlow("Source", name, i);
+			});
+			threads[p].start();
+		}
+		for (Thread th : threads)
+			th.join();
+		obs.close();
+		assertEquals(producers * count, received.size());
+		assertEquals(0, obs.getDropped());
+		assertTrue(obs.getMaxQueueDepth() <= 64);
+	}
+
+	@Test(timeout = 30000)
+	public void testCloseLosesNothing() throws InterruptedException {
+		for (int round = 0; round < 50; round++) {
+			int producers = 3;
+			AtomicLong attempts = new AtomicLong(), rejected = new AtomicLong();
+			AtomicLong received = new AtomicLong();
+			AsyncObserver obs = new AsyncObserver((level, type, name, in, flows) -> received.incrementAndGet(),
+					64, AsyncObserver.WaitStrategy.YIELD, AsyncObserver.Overflow.DROP, 1);
+			Thread[] threads = new Thread[producers];
+			for (int p = 0; p < producers; p++) {
+				threads[p] = new Thread(() -> {
+					for (int i = 0; i < 100_000; i++) {
+						attempts.incrementAndGet();
+						try {
+							obs.notifyFlow("Source", "S", i);
+						} catch (IllegalStateException ex) {
+							rejected.incrementAndGet();
+							return;
+						}
+					}
+				});
+				threads[p].start();
+			}
+			Thread.sleep(1);
+			obs.close();
+			for (Thread th : threads)
+				th.join();
+			// every notification was delivered, dropped, or rejected by the closed observer
+			assertEquals(received.get(), obs.getDelivered());
+			assertEquals(attempts.get(), obs.getDelivered() + obs.getDropped() + rejected.get());
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testOverflowPolicies() throws InterruptedException {
+		for (AsyncObserver.Overflow policy : new AsyncObserver.Overflow[] {
+				AsyncObserver.Overflow.DROP, AsyncObserver.Overflow.SAMPLE }) {
+			CountDownLatch started = new CountDownLatch(1);
+			CountDownLatch release = new CountDownLatch(1);
+			AsyncObserver obs = new AsyncObserver((level, type, name, in, flows) -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}, 8, AsyncObserver.WaitStrategy.PARK, policy, 4);
+			obs.notifyFlow("Sink", "first", 1.0);
+			started.await();
+			for (int i = 0; i < 100; i++)
+				obs.notifyFlow("Sink", "S" + i, 1.0);
+			assertTrue(obs.getDropped() >= 100 - 8);
+			assertTrue(obs.getQueueDepth() <= 8);
+			release.countDown();
+			obs.close();
+			assertEquals(101, obs.getDelivered() + obs.getDropped());
+			assertTrue(obs.getMaxLagNanos() > 0);
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testIdleConsumerParks() throws InterruptedException {
+		Thread[] consumer = new Thread[1];
+		List<String> received = new ArrayList<>();
+		try (AsyncObserver obs = new AsyncObserver((level, type, name, in, flows) -> {
+			consumer[0] = Thread.currentThread();
+			received.add(name);
+		})) {
+			obs.notifyFlow("Source", "A", 1.0);
+			obs.awaitDelivery();
+			// parked without a timeout until the next notification
+			while (consumer[0].getState() != Thread.State.WAITING)
+				Thread.sleep(1);
+			obs.notifyFlow("Source", "B", 1.0);
+			obs.awaitDelivery();
+			assertEquals(List.of("A", "B"), received);
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testTargetFailure() {
+		AsyncObserver obs = new AsyncObserver((level, type, name, in, flows) -> {
+			throw new IllegalStateException("broken");
+		});
+		obs.notifyFlow("Sink", "S", 1.0);
+		assertThrows(IllegalStateException.class, obs::awaitDelivery);
+		obs.close();
+		assertThrows(IllegalStateException.class, () -> obs.notifyFlow("Sink", "S", 1.0));
+	}
+}
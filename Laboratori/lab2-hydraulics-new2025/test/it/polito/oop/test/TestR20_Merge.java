@@ -0,0 +1,173 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class TestR20_Merge {
+
+	private static Source source(HSystem s, String name, double flow) {
+		Source src = new Source(name);
+		src.setFlow(flow);
+		s.addElement(src);
+		return src;
+	}
+
+	@Test
+	public void testTwoFeeds() {
+		HSystem s = new HSystem();
+		Source a = source(s, "A", 10.0);
+		Source b = source(s, "B", 6.0);
+		Tap t = new Tap("T");
+		t.setOpen(true);
+		Merge m = new Merge("M");
+		Sink sink = new Sink("S");
+		sink.setMaxFlow(12.0);
+		s.addElement(t);
+		s.addElement(m);
+		s.addElement(sink);
+		b.connect(t);
+		a.connect(m);
+		t.connect(m);
+		m.connect(sink);
+		assertEquals(2, m.getUpstreams().length);
+
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertEquals(16.0, obs.inFlowOf("M"), 1e-9);
+		assertEquals(16.0, obs.inFlowOf("S"), 1e-9);
+		assertTrue(obs.containsError("S"));
+		assertFalse(obs.containsError("M"));
+
+		t.setOpen(false);
+		SimulationResult result = new SimulationResult();
+		s.simulate(result, true);
+		assertEquals(SimulationResult.MERGE, result.getKind(3));
+		assertEquals(10.0, result.getInFlow(3), 1e-9);
+		assertEquals(0, result.getErrorCount());
+
+		assertFalse(s.deleteElement("M"));
+	}
+
+	@Test
+	public void testDelete() {
+		HSystem s = new HSystem();
+		Source src = source(s, "Src", 10.0);
+		Source other = source(s, "Other", 5.0);
+		Tap t = new Tap("T");
+		t.setOpen(true);
+		Merge m = new Merge("M");
+		Sink sink = new Sink("S");
+		s.addElement(t);
+		s.addElement(m);
+		s.addElement(sink);
+		src.connect(t);
+		t.connect(m);
+		m.connect(sink);
+
+		assertTrue(s.deleteElement("T"));
+		assertArrayEquals(new Element[]{src}, m.getUpstreams());
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs);
+		assertEquals(10.0, obs.inFlowOf("S"), 1e-9);
+
+		other.connect(m);
+		assertArrayEquals(new Element[]{src, other}, m.getUpstreams());
+		assertTrue(s.deleteElement("Other"));
+		assertArrayEquals(new Element[]{src}, m.getUpstreams());
+
+		assertTrue(s.deleteElement("M"));
+		assertSame(sink, src.getDownstream());
+		obs = new StoreObserver();
+		s.simulate(obs);
+		assertEquals(10.0, obs.inFlowOf("S"), 1e-9);
+	}
+
+	@Test
+	public void testDiamond() {
+		HSystem s = new HSystem();
+		Source src = source(s, "Src", 20.0);
+		Multisplit ms = new Multisplit("MS", 2);
+		ms.setProportions(0.25, 0.75);
+		Merge m = new Merge("M");
+		Sink sink = new Sink("S");
+		s.addElement(ms);
+		s.addElement(m);
+		s.addElement(sink);
+		ms.connect(m, 0);
+		ms.connect(m, 1);
+		m.connect(sink);
+		src.connect(ms);
+		FlowSolver solver = s.solver();
+		solver.solve();
+		assertTrue(solver.isAcyclic());
+		assertEquals(20.0, solver.getInFlow(sink), 1e-9);
+		assertEquals(20.0, sink.getFlow(), 1e-9);
+	}
+
+	@Test
+	public void testLoops() {
+		HSystem s = new HSystem();
+		Source src = source(s, "Src", 10.0);
+		Merge m = new Merge("M");
+		Split sp = new Split("Sp");
+		Sink sink = new Sink("S");
+		s.addElement(m);
+		s.addElement(sp);
+		s.addElement(sink);
+		src.connect(m);
+		m.connect(sp);
+		sp.connect(sink, 0);
+		sp.connect(m, 1);
+		FlowSolver solver = s.solver();
+		solver.solve();
+		assertFalse(solver.isAcyclic());
+		assertTrue(solver.getIterations() > 1);
+		assertEquals(20.0, solver.getInFlow(m), 1e-9);
+		assertEquals(10.0, solver.getInFlow(sink), 1e-9);
+
+		// water circulating without losses never settles
+		HSystem s2 = new HSystem();
+		Source src2 = source(s2, "Src", 10.0);
+		Merge m2 = new Merge("M");
+		Tap t = new Tap("T");
+		t.setOpen(true);
+		s2.addElement(m2);
+		s2.addElement(t);
+		src2.connect(m2);
+		m2.connect(t);
+		t.connect(m2);
+		FlowSolver divergent = s2.solver();
+		divergent.setMaxIterations(1000);
+		assertThrows(IllegalStateException.class, divergent::solve);
+		t.setOpen(false);
+		StoreObserver obs = new StoreObserver();
+		s2.simulate(obs);
+		assertEquals(10.0, obs.inFlowOf("M"), 1e-9);
+	}
+
+	@Test(timeout = 60000)
+	public void testLargeNetwork() {
+		int n = 200_000;
+		HSystem s = new HSystem();
+		Element previous = null;
+		for (int i = 0; i < n; i++) {
+			Source src = source(s, "Src" + i, 1.0);
+			Merge m = new Merge("M" + i);
+			s.addElement(m);
+			src.connect(m);
+			if (previous != null)
+				previous.connect(m);
+			previous = m;
+		}
+		Sink sink = new Sink("S");
+		s.addElement(sink);
+		previous.connect(sink);
+		FlowSolver solver = s.solver();
+		solver.solve();
+		assertEquals(n, solver.getInFlow(sink), 1e-6);
+	}
+}
@@ -0,0 +1,77 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+
+public class TestR21_Parallel {
+
+	private static void assertSameTrace(HSystem s) {
+		List<String> expected = new ArrayList<>();
+		s.simulate(new TraceObserver(expected), true);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			List<String> actual = new ArrayList<>();
+			s.simulateParallel(new TraceObserver(actual), true, pool);
+			assertEquals(expected, actual);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testManySourceTrees() {
+		HSystem s = new HSystem();
+		Random rnd = new Random(7);
+		for (int i = 0; i < 300; i++) {
+			Source src = new Source("Src" + i);
+			src.setFlow(rnd.nextInt(100));
+			s.addElement(src);
+			RandomTrees.grow(s, rnd, src, 0, 1 + rnd.nextInt(200), "E" + i);
+		}
+		assertSameTrace(s);
+	}
+
+	@Test
+	public void testLargeTree() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(1000.0);
+		s.addElement(src);
+		RandomTrees.grow(s, new Random(11), src, 0, 200_000, "E");
+		assertSameTrace(s);
+	}
+
+	@Test(timeout = 60000)
+	public void testDeepChain() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(10.0);
+		s.addElement(src);
+		Element last = src;
+		for (int i = 0; i < 100_000; i++) {
+			Split sp = new Split("Sp" + i);
+			s.addElement(sp);
+			if (last instanceof Split)
+				last.connect(sp, 0);
+			else
+				last.connect(sp);
+			Sink leaf = new Sink("L" + i);
+			s.addElement(leaf);
+			sp.connect(leaf, 1);
+			last = sp;
+		}
+		StoreObserver obs = new StoreObserver();
+		s.simulateParallel(obs, false);
+		assertEquals(5.0, obs.inFlowOf("L0"), 1e-9);
+		assertEquals(2.5, obs.inFlowOf("L1"), 1e-9);
+	}
+}
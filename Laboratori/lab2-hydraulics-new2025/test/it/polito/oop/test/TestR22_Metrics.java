@@ -0,0 +1,97 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+
+public class TestR22_Metrics {
+
+	private static final String TEXT = """
+			source Src 20.0
+			tap T open max=30.0
+			multisplit MS 2 0.25 0.75
+			split Sp max=4.0
+			sink S1
+			sink S2
+			sink S3 max=10.0
+			link Src T
+			link T MS
+			link MS Sp 0
+			link MS S3 1
+			link Sp S1 0
+			link Sp S2 1
+			""";
+
+	@Test
+	public void testMetrics() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		assertNull(s.getMetrics());
+		SimulationMetrics m = s.enableMetrics(3);
+		assertSame(m, s.getMetrics());
+
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertEquals(2.5, obs.inFlowOf("S1"), 1e-9);
+		assertTrue(obs.containsError("Sp"));
+		assertEquals(1, m.getSimulations());
+		assertEquals(2, m.getLastErrorCount());
+		assertEquals(1, m.getElementCount(SimulationResult.SOURCE));
+		assertEquals(1, m.getElementCount(SimulationResult.MULTISPLIT));
+		assertEquals(3, m.getElementCount(SimulationResult.SINK));
+		assertEquals(4, m.getMaxDepth());
+		assertTrue(m.getTotalPropagationNanos() > 0);
+		assertTrue(m.getTotalNotificationNanos() > 0);
+
+		// Sp keeps exceeding its max flow, S3 only in the first simulation
+		((Sink) s.getElement("S3")).setMaxFlow(100.0);
+		s.simulate(new StoreObserver(), true);
+		s.simulate(new StoreObserver());
+		s.simulate(new StoreObserver(), true);
+		assertEquals(3, m.getViolations("Sp"));
+		assertEquals(1, m.getViolations("S3"));
+		s.simulate(new StoreObserver(), true);
+		assertEquals(3, m.getViolations("Sp"));
+		assertEquals(0, m.getViolations("S3"));
+		assertEquals(1, m.getViolationCounts().size());
+		assertEquals(5, m.getSimulations());
+
+		s.disableMetrics();
+		s.simulate(new StoreObserver(), true);
+		assertEquals(5, m.getSimulations());
+	}
+
+	@Test
+	public void testFlightRecorderEvents() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		Path file = Files.createTempFile("hydraulics", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("hydraulic.Simulation");
+			recording.enable("hydraulic.FlowViolation");
+			recording.start();
+			s.simulate(new StoreObserver(), true);
+			recording.stop();
+			recording.dump(file);
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			assertEquals(1, events.stream().filter(e -> e.getEventType().getName().equals("hydraulic.Simulation")).count());
+			assertEquals(2, events.stream().filter(e -> e.getEventType().getName().equals("hydraulic.FlowViolation")).count());
+			RecordedEvent sim = events.stream().filter(e -> e.getEventType().getName().equals("hydraulic.Simulation")).findFirst().get();
+			assertEquals(7, sim.getInt("elements"));
+			assertEquals(2, sim.getInt("errors"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+
+public class TestR23_WhatIf {
+
+	private static final String TEXT = """
+			source Src 40.0
+			tap T1 open
+			multisplit MS 3 0.6 0.4 0.0
+			split Sp
+			tap T2 closed
+			tap T3 open
+			split Sp2
+			sink S1
+			sink S2
+			sink S3
+			sink S4
+			sink S5
+			source Src2 8.0
+			tap T4 open
+			sink S6
+			link Src T1
+			link T1 MS
+			link MS Sp 0
+			link MS T2 1
+			link MS T3 2
+			link Sp S1 0
+			link Sp Sp2 1
+			link Sp2 S2 0
+			link T2 S3
+			link T3 S4
+			link Src2 T4
+			link T4 S6
+			""";
+
+	private static final Map<String, Boolean> OPEN = Map.of("T1", true, "T2", false, "T3", true, "T4", true);
+
+	private static Map<String, Double> sinkFlows(HSystem s) {
+		Map<String, Double> flows = new HashMap<>();
+		s.simulate((level, type, name, in, f) -> {
+			if (type.equals("Sink") && level == SimulationObserver.Level.STATUS)
+				flows.put(name, in);
+		});
+		return flows;
+	}
+
+	private static double change(Map<String, Double> before, Map<String, Double> after, String sink) {
+		double b = before.get(sink), a = after.getOrDefault(sink, Double.NaN);
+		return (Double.isNaN(a) ? 0 : a) - (Double.isNaN(b) ? 0 : b);
+	}
+
+	@Test
+	public void testPredictionsMatchSimulation() throws IOException {
+		HSystem s = HLoader.load(new StringReader(TEXT));
+		StringWriter text = new StringWriter();
+		HLoader.write(s, text);
+		Map<String, Double> before = sinkFlows(s);
+		WhatIf w = s.whatIf();
+		for (Element e : s.getElements()) {
+			for (WhatIf.Action action : WhatIf.Action.values()) {
+				WhatIf.Impact impact = w.evaluate(action, e.getName());
+				HSystem copy = HLoader.load(new StringReader(text.toString()));
+				boolean done;
+				if (action == WhatIf.Action.DELETE) {
+					done = copy.deleteElement(e.getName());
+				} else if (copy.getElement(e.getName()) instanceof Tap t) {
+					t.setOpen(!OPEN.get(e.getName()));
+					done = true;
+				} else {
+					done = false;
+				}
+				assertEquals(impact.toString(), done, impact.isAllowed());
+				if (!done)
+					continue;
+				Map<String, Double> after = sinkFlows(copy);
+				double total = 0;
+				for (String sink : before.keySet()) {
+					double expected = change(before, after, sink);
+					total += expected;
+					assertEquals(impact + " " + sink, expected, impact.getSinkChanges().getOrDefault(sink, 0.0), 1e-9);
+				}
+				assertEquals(impact.toString(), total, impact.getSinkFlowChange(), 1e-9);
+			}
+		}
+		// the live system is unchanged
+		assertEquals(before, sinkFlows(s));
+	}
+
+	@Test
+	public void testRanking() throws IOException {
+		WhatIf w = HLoader.load(new StringReader(TEXT)).whatIf();
+		List<String> taps = List.of("T1", "T2", "T3", "T4");
+		List<WhatIf.Impact> ranked = w.rank(WhatIf.Action.TOGGLE, taps);
+		assertEquals(4, ranked.size());
+		assertEquals("T1", ranked.get(0).getName());
+		assertEquals(-18.0, ranked.get(0).getSinkFlowChange(), 1e-9);
+		assertEquals("T2", ranked.get(1).getName());
+		assertEquals(16.0, ranked.get(1).getSinkFlowChange(), 1e-9);
+		assertEquals("T4", ranked.get(2).getName());
+		assertEquals(-8.0, ranked.get(2).getSinkFlowChange(), 1e-9);
+		assertEquals(0.0, ranked.get(3).getSinkFlowChange(), 1e-9);
+
+		assertFalse(w.evaluate(WhatIf.Action.DELETE, "MS").isAllowed());
+		assertFalse(w.evaluate(WhatIf.Action.TOGGLE, "S1").isAllowed());
+		assertFalse(w.evaluate(WhatIf.Action.DELETE, "Missing").isAllowed());
+
+		List<String> many = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+			many.add(taps.get(i % 4));
+		assertEquals(1000, w.evaluate(WhatIf.Action.TOGGLE, many).size());
+	}
+}
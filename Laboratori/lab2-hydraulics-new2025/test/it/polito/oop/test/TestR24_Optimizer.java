@@ -0,0 +1,153 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestR24_Optimizer {
+
+	private static final String[] NAMES = {"A", "T", "B", "Sp", "C", "D"};
+
+	/**
+	 * Src(100) -> MS: A (max 60), T -> B, Sp -> C (max 15), D (max 15)
+	 */
+	private static HSystem system() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(100.0);
+		Multisplit ms = new Multisplit("MS", 3);
+		ms.setProportions(1.0 / 3, 1.0 / 3, 1.0 / 3);
+		Sink a = new Sink("A");
+		a.setMaxFlow(60.0);
+		Tap t = new Tap("T");
+		t.setOpen(false);
+		Sink b = new Sink("B");
+		Split sp = new Split("Sp");
+		Sink c = new Sink("C");
+		c.setMaxFlow(15.0);
+		Sink d = new Sink("D");
+		d.setMaxFlow(15.0);
+		for (Element e : new Element[]{src, ms, a, t, b, sp, c, d})
+			s.addElement(e);
+		src.connect(ms);
+		ms.connect(a, 0);
+		ms.connect(t, 1);
+		ms.connect(sp, 2);
+		t.connect(b);
+		sp.connect(c, 0);
+		sp.connect(d, 1);
+		return s;
+	}
+
+	@Test
+	public void testMeetDemands() {
+		HSystem s = system();
+		StoreObserver before = new StoreObserver();
+		s.simulate(before, true);
+		assertTrue(before.containsError("C"));
+
+		ProportionOptimizer opt = s.optimizer();
+		opt.setDemand("A", 50.0);
+		opt.setDemand("B", 20.0);
+		opt.setDemand("C", 10.0);
+		opt.setDemand("D", 5.0);
+		assertTrue(opt.solve());
+		assertTrue(opt.isOpen("T"));
+		assertEquals(50.0, opt.getInFlow("A"), 1e-9);
+		assertEquals(30.0, opt.getInFlow("B"), 1e-9);
+		assertEquals(10.0, opt.getInFlow("C"), 1e-9);
+		assertEquals(10.0, opt.getInFlow("D"), 1e-9);
+		assertArrayEquals(new double[]{0.5, 0.3, 0.2}, opt.getProportions("MS"), 1e-9);
+
+		assertEquals(2, opt.apply());
+		StoreObserver after = new StoreObserver();
+		s.simulate(after, true);
+		assertEquals(0, after.getErrorCount());
+		for (String name : NAMES)
+			assertEquals(name, opt.getInFlow(name), after.inFlowOf(name), 0.0);
+		assertEquals(0, opt.apply());
+	}
+
+	@Test
+	public void testIncrementalChanges() {
+		HSystem s = system();
+		ProportionOptimizer opt = s.optimizer();
+		opt.setDemand("A", 50.0);
+		opt.setDemand("C", 10.0);
+		assertTrue(opt.solve());
+		assertFalse(opt.isOpen("T"));
+		// the closed tap takes the flow not wanted by the sinks
+		assertEquals(30.0, opt.getInFlow("T"), 1e-9);
+
+		opt.setDemand("B", 20.0);
+		assertTrue(opt.isOpen("T"));
+		assertEquals(30.0, opt.getInFlow("B"), 1e-9);
+
+		opt.setMaxFlow("B", 25.0);
+		assertTrue(opt.isFeasible());
+		// the excess is divided by the flow each output can still take
+		assertEquals(54.0, opt.getInFlow("A"), 1e-9);
+		assertEquals(22.0, opt.getInFlow("B"), 1e-9);
+		assertEquals(12.0, opt.getInFlow("C"), 1e-9);
+
+		opt.setSourceFlow("Src", 200.0);
+		assertFalse(opt.isFeasible());
+		assertEquals(List.of("A", "B", "C", "D"), opt.getViolations());
+
+		opt.setSourceFlow("Src", 40.0);
+		assertTrue(opt.isFeasible());
+		assertEquals(40.0 * 50 / 90, opt.getInFlow("A"), 1e-9);
+		assertEquals(40.0 * 20 / 90, opt.getInFlow("B"), 1e-9);
+
+		assertThrows(IllegalArgumentException.class, () -> opt.setDemand("T", 1.0));
+		assertThrows(IllegalArgumentException.class, () -> opt.getProportions("Sp"));
+		assertThrows(IllegalArgumentException.class, () -> opt.setMaxFlow("Missing", 1.0));
+	}
+
+	@Test(timeout = 60000)
+	public void testIncrementalMatchesFullSolve() {
+		Random rnd = new Random(49);
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(100_000.0);
+		s.addElement(src);
+		List<String> sinks = new ArrayList<>();
+		RandomTrees.grow(s, rnd, src, 0, 150_000, "E", sinks);
+
+		ProportionOptimizer incremental = s.optimizer();
+		ProportionOptimizer full = s.optimizer();
+		for (String sink : sinks) {
+			double demand = rnd.nextInt(10);
+			incremental.setDemand(sink, demand);
+			full.setDemand(sink, demand);
+		}
+		incremental.solve();
+		for (int i = 1; i <= 200; i++) {
+			String sink = sinks.get(rnd.nextInt(sinks.size()));
+			double demand = rnd.nextInt(10);
+			incremental.setDemand(sink, demand);
+			full.setDemand(sink, demand);
+			if (i % 50 != 0)
+				continue;
+			full.solve();
+			assertEquals(full.isFeasible(), incremental.isFeasible());
+			assertEquals(full.getViolations(), incremental.getViolations());
+			for (Element e : s.getElements())
+				assertEquals(e.getName(), full.getInFlow(e.getName()), incremental.getInFlow(e.getName()), 0.0);
+		}
+
+		incremental.apply();
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertEquals(incremental.getViolations().size(), obs.getErrorCount());
+		for (String sink : sinks)
+			assertEquals(sink, incremental.getInFlow(sink), obs.inFlowOf(sink), 0.0);
+	}
+}
@@ -0,0 +1,141 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestR25_Telemetry {
+
+	private static final String[] NAMES = {"Src", "T", "Sp", "S1", "S2"};
+
+	/**
+	 * Src(20) -> T -> Sp -> S1, S2
+	 */
+	private static HSystem system() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(20.0);
+		Tap t = new Tap("T");
+		t.setOpen(true);
+		Split sp = new Split("Sp");
+		Sink s1 = new Sink("S1");
+		Sink s2 = new Sink("S2");
+		for (Element e : new Element[]{src, t, sp, s1, s2})
+			s.addElement(e);
+		src.connect(t);
+		t.connect(sp);
+		sp.connect(s1, 0);
+		sp.connect(s2, 1);
+		return s;
+	}
+
+	private static void feed(TelemetryReconciler rec, int rounds, double... flows) {
+		for (int r = 0; r < rounds; r++)
+			assertEquals(NAMES.length, rec.ingest(NAMES, flows, NAMES.length));
+	}
+
+	@Test
+	public void testLeak() {
+		TelemetryReconciler rec = system().reconciler(0.1, 1.0);
+		List<String> raised = new ArrayList<>();
+		List<String> cleared = new ArrayList<>();
+		rec.setListener(new TelemetryListener() {
+			@Override
+			public void alertRaised(TelemetryReconciler.Alert alert, Element element, double expected, double residual) {
+				raised.add(alert + " " + element.getName() + " " + expected);
+			}
+			@Override
+			public void alertCleared(TelemetryReconciler.Alert alert, Element element) {
+				cleared.add(alert + " " + element.getName());
+			}
+		});
+		assertEquals(10.0, rec.getExpected("S2"), 0.0);
+
+		feed(rec, 100, 20.0, 20.0, 20.0, 10.0, 7.0);
+		assertEquals(List.of("LEAK S2 10.0"), raised);
+		assertEquals(TelemetryReconciler.Alert.LEAK, rec.getAlert("S2"));
+		assertNull(rec.getAlert("S1"));
+		assertEquals(-3.0, rec.getMeanResidual("S2"), 1e-6);
+		assertEquals(0.0, rec.getVariance("S2"), 1e-9);
+		assertEquals(List.of("S2"), rec.getAlertedElements());
+
+		// noise below the threshold raises nothing
+		feed(rec, 100, 20.3, 19.7, 20.2, 10.4, 9.6);
+		assertEquals(List.of("LEAK S2"), cleared);
+		assertEquals(1, raised.size());
+		assertTrue(rec.getVariance("S1") > 0);
+		assertEquals(1000, rec.getAccepted());
+
+		assertEquals(1, rec.ingest(new String[]{"Missing", "S1"}, new double[]{1.0, 10.0}, 2));
+		assertEquals(1, rec.getRejected());
+	}
+
+	@Test
+	public void testStuckTaps() {
+		HSystem s = system();
+		TelemetryReconciler rec = s.reconciler(0.2, 1.0);
+		feed(rec, 20, 20.0, 20.0, 0.0, 0.0, 0.0);
+		assertEquals(TelemetryReconciler.Alert.STUCK_CLOSED, rec.getAlert("Sp"));
+		assertEquals(TelemetryReconciler.Alert.LEAK, rec.getAlert("S1"));
+
+		((Tap) s.getElement("T")).setOpen(false);
+		rec.refresh();
+		assertEquals(0.0, rec.getExpected("Sp"), 0.0);
+		assertEquals(0, rec.getSamples("Sp"));
+		assertEquals(List.of(), rec.getAlertedElements());
+
+		feed(rec, 20, 20.0, 20.0, 20.0, 10.0, 10.0);
+		assertEquals(TelemetryReconciler.Alert.STUCK_OPEN, rec.getAlert("Sp"));
+		assertEquals(TelemetryReconciler.Alert.EXCESS, rec.getAlert("S1"));
+		assertNull(rec.getAlert("T"));
+	}
+
+	@Test
+	public void testInvalidParameters() {
+		HSystem s = system();
+		assertThrows(IllegalArgumentException.class, () -> s.reconciler(0.0, 1.0));
+		assertThrows(IllegalArgumentException.class, () -> s.reconciler(0.1, 0.0));
+		assertThrows(IllegalArgumentException.class, () -> s.reconciler(0.1, Double.NaN));
+		TelemetryReconciler rec = s.reconciler(0.1, 1.0);
+		assertThrows(IllegalArgumentException.class, () -> rec.setThreshold("S1", 0.0));
+		assertThrows(IllegalArgumentException.class, () -> rec.setThreshold("Missing", 1.0));
+		assertThrows(IllegalArgumentException.class, () -> rec.setMinSamples(-1));
+		rec.setMinSamples(0);
+	}
+
+	@Test(timeout = 60000)
+	public void testThroughput() {
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		src.setFlow(1000.0);
+		s.addElement(src);
+		Element last = src;
+		for (int i = 0; i < 5000; i++) {
+			Tap t = new Tap("T" + i);
+			t.setOpen(true);
+			s.addElement(t);
+			last.connect(t);
+			last = t;
+		}
+		TelemetryReconciler rec = s.reconciler(0.05, 1.0);
+		int batch = 4096;
+		int[] ids = new int[batch];
+		double[] flows = new double[batch];
+		Random rnd = new Random(50);
+		for (int i = 0; i < batch; i++) {
+			ids[i] = rec.idOf("T" + rnd.nextInt(5000));
+			flows[i] = 1000.0 + rnd.nextGaussian() * 0.1;
+		}
+		for (int r = 0; r < 1000; r++)
+			assertEquals(batch, rec.ingest(ids, flows, batch));
+		assertEquals(1000L * batch, rec.getAccepted());
+		assertEquals(List.of(), rec.getAlertedElements());
+	}
+}
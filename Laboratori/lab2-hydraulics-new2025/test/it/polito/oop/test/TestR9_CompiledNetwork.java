@@ -0,0 +1,205 @@
+package it.polito.oop.test;
+
+import hydraulic.*;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TestR9_CompiledNetwork {
+
+	private static HSystem tree(Source src, Split sp, Multisplit ms, Tap t, Sink... sinks) {
+		HSystem s = new HSystem();
+		s.addElement(src);
+		s.addElement(sp);
+		s.addElement(ms);
+		s.addElement(t);
+		for (Sink k : sinks) s.addElement(k);
+		src.connect(sp);
+		sp.connect(ms, 0);
+		sp.connect(t, 1);
+		ms.connect(sinks[0], 0);
+		ms.connect(sinks[1], 1);
+		t.connect(sinks[2]);
+		return s;
+	}
+
+	@Test
+	public void testCompiledFlows(){
+		Source src = new Source("Src");
+		Split sp = new Split("Sp");
+		Multisplit ms = new Multisplit("MS", 2);
+		Tap t = new Tap("T");
+		Sink s1 = new Sink("S1"), s2 = new Sink("S2"), s3 = new Sink("S3");
+		HSystem s = tree(src, sp, ms, t, s1, s2, s3);
+		src.setFlow(40);
+		ms.setProportions(0.25, 0.75);
+		t.setOpen(true);
+
+		FlowNetwork net = s.compile();
+		assertEquals("Wrong number of compiled elements", 7, net.size());
+
+		StoreObserver obs = new StoreObserver();
+		net.simulate(obs);
+		assertEquals(20.0, obs.inFlowOf("MS"), 0.001);
+		assertEquals(5.0, obs.inFlowOf("S1"), 0.001);
+		assertEquals(15.0, obs.inFlowOf("S2"), 0.001);
+		assertEquals(20.0, obs.inFlowOf("S3"), 0.001);
+
+		// parameter changes are picked up by refresh() without recompiling
+		t.setOpen(false);
+		src.setFlow(100);
+		net.refresh();
+		obs = new StoreObserver();
+		net.simulate(obs);
+		assertEquals(50.0, obs.inFlowOf("T"), 0.001);
+		assertEquals(0.0, obs.inFlowOf("S3"), 0.001);
+		assertEquals(12.5, obs.inFlowOf("S1"), 0.001);
+	}
+
+	@Test
+	public void testCompiledMaxFlow(){
+		Source src = new Source("Src");
+		Split sp = new Split("Sp");
+		Multisplit ms = new Multisplit("MS", 2);
+		Tap t = new Tap("T");
+		Sink s1 = new Sink("S1"), s2 = new Sink("S2"), s3 = new Sink("S3");
+		HSystem s = tree(src, sp, ms, t, s1, s2, s3);
+		src.setFlow(40);
+		ms.setProportions(0.5, 0.5);
+		t.setOpen(true);
+		t.setMaxFlow(10);
+		s1.setMaxFlow(20);
+		sp.setMaxFlow(50);
+
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs, true);
+		assertEquals("Wrong number of max flow errors", 1, obs.getErrorCount());
+		assertTrue("Missing error for T", obs.containsError("T"));
+
+		obs = new StoreObserver();
+		s.simulate(obs, false);
+		assertEquals(0, obs.getErrorCount());
+	}
+
+	@Test
+	public void testLongChain(){
+		final int N = 200_000;
+		HSystem s = new HSystem();
+		Source src = new Source("Src");
+		s.addElement(src);
+		Element prev = src;
+		for (int i = 0; i < N; ++i) {
+			Tap t = new Tap("T" + i);
+			t.setOpen(true);
+			s.addElement(t);
+			prev.connect(t);
+			prev = t;
+		}
+		Sink end = new Sink("End");
+		s.addElement(end);
+		prev.connect(end);
+		src.setFlow(7);
+
+		StoreObserver obs = new StoreObserver();
+		s.simulate(obs);
+		assertEquals("Wrong input flow at the end of the chain", 7.0, obs.inFlowOf("End"), 0.001);
+	}
+
+	/**
+	 * Random source trees, plus a multi-split with an unconnected output,
+	 * elements reached by no source and an element never simulated.
+	 */
+	private static HSystem forest(long seed) {
+		HSystem s = new HSystem();
+		Random rnd = new Random(seed);
+		for (int i = 0; i < 20; i++) {
+			Source src = new Source("Src" + i);
+			src.setFlow(rnd.nextInt(100));
+			s.addElement(src);
+			RandomTrees.grow(s, rnd, src, 0, 1 + rnd.nextInt(300), "E" + i);
+		}
+		Source src = new Source("Src");
+		Tap t = new Tap("T");
+		Multisplit ms = new Multisplit("MS", 3);
+		Sink s1 = new Sink("S1"), s2 = new Sink("S2");
+		Split orphan = new Split("Orphan");
+		Sink s3 = new Sink("S3"), s4 = new Sink("S4");
+		Tap idle = new Tap("Idle");
+		for (Element e : new Element[]{src, t, ms, s1, s2, orphan, s3, s4, idle})
+			s.addElement(e);
+		src.setFlow(30);
+		t.setOpen(true);
+		ms.setProportions(0.5, 0.2, 0.3);
+		s1.setMaxFlow(10);
+		idle.setMaxFlow(-1);
+		src.connect(t);
+		t.connect(ms);
+		ms.connect(s1, 0);
+		ms.connect(s2, 2);
+		orphan.connect(s3, 0);
+		orphan.connect(s4, 1);
+		orphan.setFlow(8);
+		return s;
+	}
+
+	/**
+	 * Simulates a system through its elements, as the systems that cannot
+	 * be compiled are.
+	 */
+	private static List<String> elementTrace(HSystem s, boolean check) {
+		List<String> log = new ArrayList<>();
+		TraceObserver obs = new TraceObserver(log);
+		for (Element e : s.getElements())
+			if (e instanceof Source)
+				e.setTreeFlow();
+		for (Element e : s.getElements()) {
+			e.print(obs);
+			if (!(e instanceof Source) && check && !e.maxFlowCheck())
+				e.printError(obs);
+		}
+		return log;
+	}
+
+	private static List<String> trace(HSystem s, boolean check) {
+		List<String> log = new ArrayList<>();
+		s.simulate(new TraceObserver(log), check);
+		return log;
+	}
+
+	@Test
+	public void testSameTraceAsElementSimulation() {
+		HSystem compiled = forest(33);
+		HSystem reference = forest(33);
+		assertEquals(elementTrace(reference, true), trace(compiled, true));
+		assertEquals(elementTrace(reference, false), trace(compiled, false));
+
+		// parameter changes are seen by the network kept by the system
+		Random rnd = new Random(34);
+		for (HSystem s : new HSystem[]{compiled, reference}) {
+			rnd.setSeed(34);
+			for (Element e : s.getElements()) {
+				if (e instanceof Source src && rnd.nextBoolean())
+					src.setFlow(rnd.nextInt(100));
+				else if (e instanceof Tap t)
+					t.setOpen(rnd.nextBoolean());
+				else if (e instanceof Multisplit ms && rnd.nextBoolean())
+					ms.setProportions(0.1, 0.1, 0.8);
+			}
+			s.getElement("S2").setMaxFlow(1);
+		}
+		assertEquals(elementTrace(reference, true), trace(compiled, true));
+
+		// and so are the changes of the connections
+		for (HSystem s : new HSystem[]{compiled, reference}) {
+			assertTrue(s.deleteElement("T"));
+			s.getElement("Src").setFlow(12);
+		}
+		assertEquals(elementTrace(reference, true), trace(compiled, true));
+	}
+}
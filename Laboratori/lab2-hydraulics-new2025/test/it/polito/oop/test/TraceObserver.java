@@ -0,0 +1,23 @@
+package it.polito.oop.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import hydraulic.SimulationObserver;
+
+/**
+ * Observer recording every notification as a line of text, in order,
+ * so that whole simulations can be compared.
+ */
+class TraceObserver implements SimulationObserver {
+	private final List<String> log;
+
+	TraceObserver(List<String> log) {
+		this.log = log;
+	}
+
+	@Override
+	public void notify(Level level, String type, String name, double inFlow, double... flows) {
+		log.add(level + " " + type + " " + name + " " + inFlow + " " + Arrays.toString(flows));
+	}
+}